@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.hawkular.apm.api.internal.actions.helpers.JSON;
+import org.hawkular.apm.api.model.Severity;
 import org.hawkular.apm.api.model.config.Direction;
 import org.hawkular.apm.api.model.config.txn.ConfigMessage;
 import org.hawkular.apm.api.model.config.txn.Expression;
@@ -29,6 +30,8 @@ import org.hawkular.apm.api.model.config.txn.ProcessorAction;
 import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.model.trace.Trace;
 
+import com.jayway.jsonpath.JsonPath;
+
 /**
  * This class provides the JSON expression handler implementation.
  *
@@ -36,6 +39,9 @@ import org.hawkular.apm.api.model.trace.Trace;
  */
 public class JSONExpressionHandler extends DataExpressionHandler {
 
+    /** The compiled jsonpath, which is thread safe, or null if not available */
+    private JsonPath compiled;
+
     /**
      * @param expression
      */
@@ -45,12 +51,36 @@ public class JSONExpressionHandler extends DataExpressionHandler {
 
     @Override
     public List<ConfigMessage> init(Processor processor, ProcessorAction action, boolean predicate) {
-        return super.init(processor, action, predicate);
+        List<ConfigMessage> configMessages = super.init(processor, action, predicate);
+
+        String jsonpath = ((JSONExpression) getExpression()).getJsonpath();
+        if (jsonpath != null && !jsonpath.trim().isEmpty()) {
+            try {
+                compiled = JsonPath.compile(jsonpath);
+            } catch (RuntimeException e) {
+                ConfigMessage configMessage = new ConfigMessage();
+                configMessage.setSeverity(Severity.Error);
+                configMessage.setMessage("Failed to compile jsonpath '" + jsonpath + "': " + e.getMessage());
+                configMessage.setField("jsonpath");
+                if (processor != null) {
+                    configMessage.setProcessor(processor.getDescription());
+                }
+                if (action != null) {
+                    configMessage.setAction(action.getDescription());
+                }
+                configMessages.add(configMessage);
+            }
+        }
+
+        return configMessages;
     }
 
     @Override
     public boolean test(Trace trace, Node node, Direction direction, Map<String, ?> headers,
             Object[] values) {
+        if (compiled != null) {
+            return JSON.predicate(compiled, getDataValue(trace, node, direction, headers, values));
+        }
         return JSON.predicate(((JSONExpression)getExpression()).getJsonpath(),
                             getDataValue(trace, node, direction, headers, values));
     }
@@ -58,6 +88,9 @@ public class JSONExpressionHandler extends DataExpressionHandler {
     @Override
     public String evaluate(Trace trace, Node node, Direction direction, Map<String, ?> headers,
             Object[] values) {
+        if (compiled != null) {
+            return JSON.evaluate(compiled, getDataValue(trace, node, direction, headers, values));
+        }
         return JSON.evaluate(((JSONExpression)getExpression()).getJsonpath(),
                             getDataValue(trace, node, direction, headers, values));
     }
@@ -19,7 +19,11 @@ package org.hawkular.apm.api.internal.actions;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
 import org.hawkular.apm.api.internal.actions.helpers.XML;
+import org.hawkular.apm.api.model.Severity;
 import org.hawkular.apm.api.model.config.Direction;
 import org.hawkular.apm.api.model.config.txn.ConfigMessage;
 import org.hawkular.apm.api.model.config.txn.Expression;
@@ -36,6 +40,12 @@ import org.hawkular.apm.api.model.trace.Trace;
  */
 public class XMLExpressionHandler extends DataExpressionHandler {
 
+    /**
+     * Compiled xpath expressions are not thread safe, so each thread compiles
+     * its own copy on first use. Null if the expression could not be compiled.
+     */
+    private ThreadLocal<XPathExpression> compiled;
+
     /**
      * @param expression
      */
@@ -45,14 +55,46 @@ public class XMLExpressionHandler extends DataExpressionHandler {
 
     @Override
     public List<ConfigMessage> init(Processor processor, ProcessorAction action, boolean predicate) {
-        return super.init(processor, action, predicate);
+        List<ConfigMessage> configMessages = super.init(processor, action, predicate);
+
+        String xpath = ((XMLExpression) getExpression()).getXpath();
+        if (xpath != null && !xpath.trim().isEmpty()) {
+            try {
+                XPathExpression initial = XML.compile(xpath);
+
+                compiled = ThreadLocal.withInitial(() -> {
+                    try {
+                        return XML.compile(xpath);
+                    } catch (XPathExpressionException e) {
+                        // Already validated above
+                        throw new IllegalStateException(e);
+                    }
+                });
+                compiled.set(initial);
+            } catch (XPathExpressionException e) {
+                ConfigMessage configMessage = new ConfigMessage();
+                configMessage.setSeverity(Severity.Error);
+                configMessage.setMessage("Failed to compile xpath '" + xpath + "': " + e.getMessage());
+                configMessage.setField("xpath");
+                if (processor != null) {
+                    configMessage.setProcessor(processor.getDescription());
+                }
+                if (action != null) {
+                    configMessage.setAction(action.getDescription());
+                }
+                configMessages.add(configMessage);
+            }
+        }
 
-        // TODO: Expression validation
+        return configMessages;
     }
 
     @Override
     public boolean test(Trace trace, Node node, Direction direction, Map<String, ?> headers,
             Object[] values) {
+        if (compiled != null) {
+            return XML.predicate(compiled.get(), getDataValue(trace, node, direction, headers, values));
+        }
         return XML.predicate(((XMLExpression) getExpression()).getXpath(),
                 getDataValue(trace, node, direction, headers, values));
     }
@@ -60,6 +102,9 @@ public class XMLExpressionHandler extends DataExpressionHandler {
     @Override
     public String evaluate(Trace trace, Node node, Direction direction, Map<String, ?> headers,
             Object[] values) {
+        if (compiled != null) {
+            return XML.evaluate(compiled.get(), getDataValue(trace, node, direction, headers, values));
+        }
         return XML.evaluate(((XMLExpression) getExpression()).getXpath(),
                 getDataValue(trace, node, direction, headers, values));
     }
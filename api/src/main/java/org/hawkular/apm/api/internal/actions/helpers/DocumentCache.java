@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.api.internal.actions.helpers;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class provides a cache of parsed documents, used to ensure that a
+ * content or header value is only parsed once while the processors are applied
+ * to a node, regardless of how many expressions are evaluated against it.
+ * Values are cached by identity, and only while a scope is active on the
+ * current thread - outside of a scope each request parses the value.
+ *
+ * @author gbrown
+ */
+public class DocumentCache {
+
+    private static final ThreadLocal<DocumentCache> current = ThreadLocal.withInitial(DocumentCache::new);
+
+    private int depth = 0;
+
+    private Map<Object, Object> jsonDocuments;
+    private Map<Object, Object> xmlDocuments;
+
+    private DocumentCache() {
+    }
+
+    /**
+     * This method starts a scope within which parsed documents will be
+     * cached for the current thread. Each call must be matched by a call to
+     * {@link #end()}.
+     */
+    public static void begin() {
+        current.get().depth++;
+    }
+
+    /**
+     * This method ends the scope started by {@link #begin()}, discarding the
+     * cached documents when the outermost scope ends.
+     */
+    public static void end() {
+        DocumentCache cache = current.get();
+        if (cache.depth > 0 && --cache.depth == 0) {
+            cache.jsonDocuments = null;
+            cache.xmlDocuments = null;
+        }
+    }
+
+    /**
+     * This method returns the parsed JSON document for the supplied value.
+     *
+     * @param value The value
+     * @param parser The parser used if the value has not already been parsed
+     * @return The parsed document
+     */
+    static Object getJSON(Object value, Function<Object, Object> parser) {
+        DocumentCache cache = current.get();
+        if (cache.depth == 0 || value == null) {
+            return parser.apply(value);
+        }
+        if (cache.jsonDocuments == null) {
+            cache.jsonDocuments = new IdentityHashMap<>();
+        }
+        return cache.jsonDocuments.computeIfAbsent(value, parser);
+    }
+
+    /**
+     * This method returns the parsed XML document for the supplied value.
+     *
+     * @param value The value
+     * @param parser The parser used if the value has not already been parsed
+     * @return The parsed document
+     */
+    static Object getXML(Object value, Function<Object, Object> parser) {
+        DocumentCache cache = current.get();
+        if (cache.depth == 0 || value == null) {
+            return parser.apply(value);
+        }
+        if (cache.xmlDocuments == null) {
+            cache.xmlDocuments = new IdentityHashMap<>();
+        }
+        return cache.xmlDocuments.computeIfAbsent(value, parser);
+    }
+}
@@ -16,12 +16,15 @@
  */
 package org.hawkular.apm.api.internal.actions.helpers;
 
+import java.nio.ByteBuffer;
+
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.ReadContext;
 
 import net.minidev.json.JSONArray;
 
@@ -48,6 +51,8 @@ public class JSON {
                 ret = (String)data;
             } else if (data instanceof byte[]) {
                 ret = new String((byte[])data);
+            } else if (data instanceof ByteBuffer) {
+                ret = Text.serialize(data);
             } else {
                 try {
                     ret = mapper.writeValueAsString(data);
@@ -80,9 +85,21 @@ public class JSON {
             return false;
         }
 
-        String json = serialize(data);
-        if (json != null) {
-            Object result = JsonPath.parse(json).read(jsonpath);
+        return predicate(JsonPath.compile(jsonpath), data);
+    }
+
+    /**
+     * This method evaluates the predicate based on the compiled jsonpath
+     * expression on the supplied node.
+     *
+     * @param jsonpath The compiled jsonpath expression
+     * @param data The json data
+     * @return The result, or false if the data was invalid
+     */
+    public static boolean predicate(JsonPath jsonpath, Object data) {
+        ReadContext document = parse(data);
+        if (document != null) {
+            Object result = document.read(jsonpath);
             if (result != null) {
                 if (result.getClass() == Boolean.class) {
                     return (Boolean)result;
@@ -105,15 +122,26 @@ public class JSON {
      * @return The result, or null if not found (which may be due to an expression error)
      */
     public static String evaluate(String jsonpath, Object data) {
-        String json = serialize(data);
-
         // No jsonpath means return serialized form
         if (jsonpath == null || jsonpath.trim().isEmpty()) {
-            return json;
+            return serialize(data);
         }
 
-        if (json != null) {
-            Object result = JsonPath.parse(json).read(jsonpath);
+        return evaluate(JsonPath.compile(jsonpath), data);
+    }
+
+    /**
+     * This method evaluates the compiled jsonpath expression on the supplied
+     * node.
+     *
+     * @param jsonpath The compiled jsonpath expression
+     * @param data The json data
+     * @return The result, or null if not found (which may be due to an expression error)
+     */
+    public static String evaluate(JsonPath jsonpath, Object data) {
+        ReadContext document = parse(data);
+        if (document != null) {
+            Object result = document.read(jsonpath);
             if (result != null) {
                 if (result.getClass() == JSONArray.class) {
                     JSONArray arr=(JSONArray)result;
@@ -129,4 +157,18 @@ public class JSON {
         return null;
     }
 
+    /**
+     * This method parses the supplied data into a JSON document. If a
+     * {@link DocumentCache} scope is active, the same data will only be parsed once.
+     *
+     * @param data The json data
+     * @return The parsed document, or null if the data could not be serialized
+     */
+    protected static ReadContext parse(Object data) {
+        return (ReadContext) DocumentCache.getJSON(data, d -> {
+            String json = serialize(d);
+            return json == null ? null : JsonPath.parse(json);
+        });
+    }
+
 }
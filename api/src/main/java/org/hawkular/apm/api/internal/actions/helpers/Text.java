@@ -16,6 +16,8 @@
  */
 package org.hawkular.apm.api.internal.actions.helpers;
 
+import java.nio.ByteBuffer;
+
 import org.hawkular.apm.api.logging.Logger;
 
 /**
@@ -38,6 +40,15 @@ public class Text {
             return (String) value;
         } else if (value instanceof byte[]) {
             return new String((byte[]) value);
+        } else if (value instanceof ByteBuffer) {
+            // Decode the remaining bytes without copying the backing array where possible
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+            byte[] b = new byte[buffer.remaining()];
+            buffer.get(b);
+            return new String(b);
         } else {
             log.severe("Unable to convert value '" + value + "' to string");
         }
@@ -18,6 +18,7 @@ package org.hawkular.apm.api.internal.actions.helpers;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
@@ -28,6 +29,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -46,6 +48,13 @@ public class XML {
     private static final String DEFAULT_INDENT = "yes";
     private static final String DEFAULT_ENCODING = "UTF-8";
 
+    /**
+     * XPath instances are not thread safe, but are expensive to obtain from
+     * the factory, so one is retained per thread.
+     */
+    private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(
+            () -> XPathFactory.newInstance().newXPath());
+
     /**
      * This method serializes the supplied XML object to a string.
      *
@@ -59,6 +68,8 @@ public class XML {
             ret = (String) node;
         } else if (node instanceof byte[]) {
             ret = new String((byte[]) node);
+        } else if (node instanceof ByteBuffer) {
+            ret = Text.serialize(node);
         } else if (node instanceof DOMSource) {
             ret = serializeDOMSource((DOMSource) node);
         } else if (node instanceof Node) {
@@ -95,11 +106,9 @@ public class XML {
             return false;
         }
 
-        // TODO: HWKBTM-104 Investigate caching compiled xpath expressions
         try {
             xpath = getExpression(xpath);
-            XPath xp = XPathFactory.newInstance().newXPath();
-            Boolean result = (Boolean) xp.evaluate(xpath, domNode, XPathConstants.BOOLEAN);
+            Boolean result = (Boolean) XPATH.get().evaluate(xpath, domNode, XPathConstants.BOOLEAN);
 
             if (result != null) {
                 return result;
@@ -111,6 +120,35 @@ public class XML {
         return false;
     }
 
+    /**
+     * This method evaluates the predicate based on the compiled xpath
+     * expression on the supplied node.
+     *
+     * @param xpath The compiled xpath expression
+     * @param node The node
+     * @return The result
+     */
+    public static boolean predicate(XPathExpression xpath, Object node) {
+        Node domNode = getNode(node);
+
+        if (domNode == null) {
+            log.severe("Unable to evaluate non DOM Node object");
+            return false;
+        }
+
+        try {
+            Boolean result = (Boolean) xpath.evaluate(domNode, XPathConstants.BOOLEAN);
+
+            if (result != null) {
+                return result;
+            }
+        } catch (XPathExpressionException e) {
+            log.log(Level.SEVERE, "Failed to execute predicate xpath", e);
+        }
+
+        return false;
+    }
+
     /**
      * This method evaluates the xpath expression on the supplied
      * node. The result can either be a document fragment, a
@@ -134,20 +172,9 @@ public class XML {
             return serialize(node);
         }
 
-        // TODO: HWKBTM-104 Investigate caching compiled xpath expressions
         try {
             xpath = getExpression(xpath);
-            XPath xp = XPathFactory.newInstance().newXPath();
-            Node result = (Node) xp.evaluate(xpath, domNode, XPathConstants.NODE);
-
-            if (result != null) {
-                if (result.getNodeType() == Node.TEXT_NODE) {
-                    return result.getNodeValue();
-                } else if (result.getNodeType() == Node.ATTRIBUTE_NODE) {
-                    return result.getNodeValue();
-                }
-                return serialize(result);
-            }
+            return nodeValue((Node) XPATH.get().evaluate(xpath, domNode, XPathConstants.NODE));
         } catch (DOMException|XPathExpressionException e) {
             log.log(Level.SEVERE, "Failed to evaluate xpath '" + xpath + "'", e);
         }
@@ -155,6 +182,66 @@ public class XML {
         return null;
     }
 
+    /**
+     * This method evaluates the compiled xpath expression on the supplied
+     * node. The result can either be a document fragment, a
+     * text node value or null if the expression references a
+     * missing part of the document.
+     *
+     * @param xpath The compiled xpath expression
+     * @param node The node
+     * @return The result, or null if not found (which may be due to an expression error)
+     */
+    public static String evaluate(XPathExpression xpath, Object node) {
+        Node domNode = getNode(node);
+
+        if (domNode == null) {
+            log.severe("Unable to evaluate non DOM Node object");
+            return null;
+        }
+
+        try {
+            return nodeValue((Node) xpath.evaluate(domNode, XPathConstants.NODE));
+        } catch (DOMException|XPathExpressionException e) {
+            log.log(Level.SEVERE, "Failed to evaluate xpath", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * This method compiles the supplied xpath expression, after transforming
+     * any XPath 2.0 namespace wildcards. The returned expression is not thread
+     * safe, so must only be used by a single thread at a time.
+     *
+     * @param xpath The xpath expression
+     * @return The compiled expression
+     * @throws XPathExpressionException Failed to compile the expression
+     */
+    public static XPathExpression compile(String xpath) throws XPathExpressionException {
+        return XPATH.get().compile(getExpression(xpath));
+    }
+
+    /**
+     * This method returns the string representation of the node selected
+     * by an xpath expression.
+     *
+     * @param result The selected node
+     * @return The node value for text and attribute nodes, otherwise the
+     *              serialized fragment, or null if no node was selected
+     */
+    private static String nodeValue(Node result) {
+        if (result != null) {
+            if (result.getNodeType() == Node.TEXT_NODE) {
+                return result.getNodeValue();
+            } else if (result.getNodeType() == Node.ATTRIBUTE_NODE) {
+                return result.getNodeValue();
+            }
+            return serialize(result);
+        }
+        return null;
+    }
+
     /**
      * This method transforms the XPath expression to replace XPath 2.0
      * namespace wildcards with use of the local-name() function.
@@ -223,6 +310,8 @@ public class XML {
             return (Node) node;
         } else if (node instanceof byte[]) {
             return deserializeString(new String((byte[]) node));
+        } else if (node instanceof ByteBuffer) {
+            return deserializeString(Text.serialize(node));
         } else if (node instanceof String) {
             return deserializeString((String) node);
         } else {
@@ -270,11 +359,9 @@ public class XML {
             return null;
         }
 
-        // TODO: HWKBTM-104 Investigate caching compiled xpath expressions
         try {
             xpath = getExpression(xpath);
-            XPath xp = XPathFactory.newInstance().newXPath();
-            return (Node) xp.evaluate(xpath, domNode, XPathConstants.NODE);
+            return (Node) XPATH.get().evaluate(xpath, domNode, XPathConstants.NODE);
         } catch (XPathExpressionException e) {
             log.log(Level.SEVERE, "Failed to select node for xpath '" + xpath + "'", e);
         }
@@ -284,7 +371,8 @@ public class XML {
 
     /**
      * This method converts the supplied object to a DOM
-     * node.
+     * node. If a {@link DocumentCache} scope is active, the
+     * same object will only be deserialized once.
      *
      * @param node The object
      * @return The node, or null if cannot convert
@@ -294,15 +382,22 @@ public class XML {
             return (Node) node;
         } else if (node instanceof DOMSource) {
             return ((DOMSource) node).getNode();
-        } else {
-            Node n = deserialize(node);
+        }
+        return (Node) DocumentCache.getXML(node, XML::parse);
+    }
 
-            if (n == null) {
-                log.severe("Cannot convert '" + node + "' to DOM node");
-            } else {
-                return n;
-            }
+    /**
+     * This method deserializes the supplied object to a DOM node.
+     *
+     * @param node The object
+     * @return The node, or null if cannot convert
+     */
+    private static Node parse(Object node) {
+        Node n = deserialize(node);
+
+        if (n == null) {
+            log.severe("Cannot convert '" + node + "' to DOM node");
         }
-        return null;
+        return n;
     }
 }
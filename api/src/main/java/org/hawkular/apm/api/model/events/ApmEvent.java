@@ -21,4 +21,9 @@ package org.hawkular.apm.api.model.events;
  */
 public interface ApmEvent {
     String getId();
+
+    /**
+     * @return The timestamp in microseconds
+     */
+    long getTimestamp();
 }
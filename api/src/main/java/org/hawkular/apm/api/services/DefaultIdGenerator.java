@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.api.services;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * This class provides the default id generator, which creates random (version 4) UUIDs.
+ * Unlike {@link UUID#randomUUID()}, which uses a shared {@link java.security.SecureRandom}
+ * that serializes callers, this generator uses random number generators owned by the
+ * calling thread, so ids can be generated concurrently without contention.
+ * <p>
+ * Each half of the UUID is taken from a separate generator, independently seeded from a
+ * {@link java.security.SecureRandom} when first used by the thread. Taking both halves from
+ * a single generator would limit the ids to the 64 bits of that generator's state, making
+ * collisions far more likely than the 122 random bits of the UUID suggest. The ids are
+ * unique, but not cryptographically unpredictable.
+ *
+ * @author gbrown
+ */
+public class DefaultIdGenerator implements IdGenerator {
+
+    private static final SecureRandom seeds = new SecureRandom();
+
+    private static final ThreadLocal<SplittableRandom[]> randoms = ThreadLocal.withInitial(
+            () -> new SplittableRandom[] { new SplittableRandom(seeds.nextLong()),
+                    new SplittableRandom(seeds.nextLong()) });
+
+    @Override
+    public String generate() {
+        SplittableRandom[] random = randoms.get();
+
+        long mostSigBits = (random[0].nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random[1].nextLong() & ~(0xC000000000000000L)) | 0x8000000000000000L;
+
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.api.services;
+
+/**
+ * This interface represents the service used to generate unique ids, e.g. for trace
+ * fragments and derived events. An implementation can be supplied using the
+ * java ServiceLoader mechanism, otherwise the {@link DefaultIdGenerator} will be used.
+ *
+ * @author gbrown
+ */
+public interface IdGenerator {
+
+    /**
+     * This method generates a new unique id. To remain compatible with ids previously
+     * generated, and consumers that may parse them, the id should be in the form of a
+     * UUID string.
+     *
+     * @return The id
+     */
+    String generate();
+
+}
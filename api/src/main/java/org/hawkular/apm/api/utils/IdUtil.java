@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.api.utils;
+
+import org.hawkular.apm.api.services.DefaultIdGenerator;
+import org.hawkular.apm.api.services.IdGenerator;
+import org.hawkular.apm.api.services.ServiceResolver;
+
+/**
+ * This class provides access to the {@link IdGenerator}. The generator is resolved once,
+ * so that generating an id does not require any synchronization.
+ *
+ * @author gbrown
+ */
+public class IdUtil {
+
+    private static final IdGenerator generator = resolve();
+
+    /**
+     * This method returns a new unique id.
+     *
+     * @return The id
+     */
+    public static String createId() {
+        return generator.generate();
+    }
+
+    /**
+     * @return The id generator in use
+     */
+    public static IdGenerator getGenerator() {
+        return generator;
+    }
+
+    private static IdGenerator resolve() {
+        IdGenerator ret = ServiceResolver.getSingletonService(IdGenerator.class);
+        return ret == null ? new DefaultIdGenerator() : ret;
+    }
+
+}
@@ -65,6 +65,18 @@ public class PropertyUtil {
      */
     public static final String HAWKULAR_APM_URI_PUBLISHER = "HAWKULAR_APM_URI_PUBLISHER";
 
+    /**
+     * Client side boolean property to indicate whether trace fragments published via REST
+     * should be gzip compressed.
+     */
+    public static final String HAWKULAR_APM_PUBLISHER_GZIP = "HAWKULAR_APM_PUBLISHER_GZIP";
+
+    /**
+     * Client side property defining the format (json or smile) used when publishing trace
+     * fragments via REST. The default is json.
+     */
+    public static final String HAWKULAR_APM_PUBLISHER_FORMAT = "HAWKULAR_APM_PUBLISHER_FORMAT";
+
     /**
      * The username to use for accessing the APM server.
      */
@@ -110,16 +122,113 @@ public class PropertyUtil {
      */
     public static final String HAWKULAR_APM_COLLECTOR_BATCHTHREADS = "HAWKULAR_APM_COLLECTOR_BATCHTHREADS";
 
+    /**
+     * The capacity of the lock-free buffer used to hold traces before they are batched. If not
+     * specified, traces are batched using a lock-based list.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_BUFFERSIZE = "HAWKULAR_APM_COLLECTOR_BUFFERSIZE";
+
+    /**
+     * The policy (DropNewest, DropOldest or Sample) applied when the trace buffer is full.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY = "HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY";
+
+    /**
+     * The maximum number of trace batches waiting to be published to the server.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_MAXINFLIGHT = "HAWKULAR_APM_COLLECTOR_MAXINFLIGHT";
+
+    /**
+     * The file used to retain trace batches that could not be published, to be replayed
+     * once the server is available. If not specified, such batches are discarded.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_SPILLFILE = "HAWKULAR_APM_COLLECTOR_SPILLFILE";
+
+    /**
+     * The maximum size (in megabytes) of the trace spill file.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_SPILLSIZE = "HAWKULAR_APM_COLLECTOR_SPILLSIZE";
+
+    /**
+     * The maximum number of recent URIs for which the transaction filter decision is cached.
+     * A value of zero disables the cache.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_FILTERCACHESIZE = "HAWKULAR_APM_COLLECTOR_FILTERCACHESIZE";
+
+    /**
+     * The maximum size (in bytes) of request or response content buffered for processing. Content
+     * that exceeds the limit is not processed.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_CONTENTLIMIT = "HAWKULAR_APM_COLLECTOR_CONTENTLIMIT";
+
+    /**
+     * The interval (in milliseconds) after which a correlation, initiated by the collector
+     * (e.g. for an asynchronous callback), expires if it has not been completed.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_CORRELATION_EXPIRY = "HAWKULAR_APM_COLLECTOR_CORRELATION_EXPIRY";
+
+    /**
+     * The maximum number of uncompleted correlations retained by the collector. When exceeded,
+     * the correlations closest to expiring are discarded.
+     */
+    public static final String HAWKULAR_APM_COLLECTOR_CORRELATION_MAXSIZE = "HAWKULAR_APM_COLLECTOR_CORRELATION_MAXSIZE";
+
+    /**
+     * The sampler used by the OpenTracing tracer when one is not explicitly supplied. The value
+     * 'ratelimiting' selects the rate limiting sampler, with its budgets obtained from the collector
+     * configuration and refreshed based on {@link #HAWKULAR_APM_CONFIG_REFRESH}. By default all
+     * traces are sampled.
+     */
+    public static final String HAWKULAR_APM_SAMPLER = "HAWKULAR_APM_SAMPLER";
+
+    /**
+     * The default budget (in traces per second) sampled for each transaction or root endpoint
+     * by the rate limiting sampler. A budget for a specific transaction or endpoint can be
+     * defined using this property name, followed by a ':' and the transaction name or endpoint.
+     */
+    public static final String HAWKULAR_APM_SAMPLING_RATE = "HAWKULAR_APM_SAMPLING_RATE";
+
+    /**
+     * The maximum number of transactions or root endpoints for which the rate limiting sampler
+     * maintains a separate budget. Once reached, the remaining share a single budget.
+     */
+    public static final String HAWKULAR_APM_SAMPLING_MAXENDPOINTS = "HAWKULAR_APM_SAMPLING_MAXENDPOINTS";
+
     /**
      * The time interval (in milliseconds) between checks for expired trace states in the agent.
      */
     public static final String HAWKULAR_APM_AGENT_STATE_EXPIRY_INTERVAL = "HAWKULAR_APM_AGENT_STATE_EXPIRY_INTERVAL";
 
+    /**
+     * The maximum number of suspended trace states retained by the agent. When exceeded, the
+     * trace states closest to expiring are discarded.
+     */
+    public static final String HAWKULAR_APM_AGENT_STATE_MAXSIZE = "HAWKULAR_APM_AGENT_STATE_MAXSIZE";
+
     /**
      * Comma separated list of whitelisted file extensions. All others will be ignored by the agent.
      */
     public static final String HAWKULAR_APM_AGENT_FILE_EXTENSION_WHITELIST = "HAWKULAR_APM_AGENT_FILE_EXTENSION_WHITELIST";
 
+    /**
+     * The maximum number of entries held in each tenant's partition of a server cache. The
+     * limit for a specific cache can be defined using this property name, followed by a ':'
+     * and the cache name.
+     */
+    public static final String HAWKULAR_APM_CACHE_MAXENTRIES = "HAWKULAR_APM_CACHE_MAXENTRIES";
+
+    /**
+     * The eviction strategy (LRU or LIRS) used when a tenant's partition of a server cache
+     * reaches its maximum number of entries.
+     */
+    public static final String HAWKULAR_APM_CACHE_EVICTION = "HAWKULAR_APM_CACHE_EVICTION";
+
+    /**
+     * The time (in milliseconds) after which a tenant's partition of a server cache is removed,
+     * along with its entries, if it has not been accessed. The default is one hour.
+     */
+    public static final String HAWKULAR_APM_CACHE_IDLETIMEOUT = "HAWKULAR_APM_CACHE_IDLETIMEOUT";
+
     /**
      * The maximum number of retry attempts when processing a batch of events.
      */
@@ -136,6 +245,38 @@ public class PropertyUtil {
      */
     public static final String HAWKULAR_APM_PROCESSOR_LAST_RETRY_DELAY = "HAWKULAR_APM_PROCESSOR_LAST_RETRY_DELAY";
 
+    /**
+     * Server side property defining the format (json or smile) of the messages exchanged
+     * between processors via JMS. The default is json.
+     */
+    public static final String HAWKULAR_APM_JMS_FORMAT = "HAWKULAR_APM_JMS_FORMAT";
+
+    /**
+     * Server side property defining the time (in milliseconds) that trace fragments are buffered
+     * before deciding whether the trace should be stored. The default is 0, which disables tail
+     * based sampling. The fragments are buffered in memory, so those received within this window
+     * are lost if the server terminates abruptly.
+     */
+    public static final String HAWKULAR_APM_TAILSAMPLING_WINDOW = "HAWKULAR_APM_TAILSAMPLING_WINDOW";
+
+    /**
+     * Server side property defining the duration percentile, per transaction, above which traces
+     * are always stored by the tail based sampling. The default is 95.
+     */
+    public static final String HAWKULAR_APM_TAILSAMPLING_PERCENTILE = "HAWKULAR_APM_TAILSAMPLING_PERCENTILE";
+
+    /**
+     * Server side property defining the percentage of traces, without a fault and below the duration
+     * percentile, that are stored by the tail based sampling. The default is 10.
+     */
+    public static final String HAWKULAR_APM_TAILSAMPLING_PERCENTAGE = "HAWKULAR_APM_TAILSAMPLING_PERCENTAGE";
+
+    /**
+     * Server side property defining the maximum number of traces buffered by the tail based
+     * sampling. When exceeded, the oldest traces are decided before their window has elapsed.
+     */
+    public static final String HAWKULAR_APM_TAILSAMPLING_MAXTRACES = "HAWKULAR_APM_TAILSAMPLING_MAXTRACES";
+
     /**
      * The standard polling interval (in milliseconds) used by processors.
      */
@@ -22,9 +22,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.hawkular.apm.api.model.config.Direction;
+import org.hawkular.apm.api.model.config.txn.ConfigMessage;
 import org.hawkular.apm.api.model.config.txn.DataSource;
 import org.hawkular.apm.api.model.config.txn.JSONExpression;
 import org.junit.Test;
@@ -156,4 +158,18 @@ public class JSONExpressionHandlerTest {
         assertEquals("hello", result);
     }
 
+    @Test
+    public void testInitInvalidExpression() {
+        JSONExpression json = new JSONExpression();
+        json.setSource(DataSource.Content);
+        json.setKey("0");
+        json.setJsonpath("$.[");
+
+        JSONExpressionHandler handler = new JSONExpressionHandler(json);
+        List<ConfigMessage> messages = handler.init(null, null, true);
+
+        assertEquals(1, messages.size());
+        assertEquals("jsonpath", messages.get(0).getField());
+    }
+
 }
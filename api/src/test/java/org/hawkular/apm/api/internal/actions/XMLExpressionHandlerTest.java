@@ -22,9 +22,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.hawkular.apm.api.model.config.Direction;
+import org.hawkular.apm.api.model.config.txn.ConfigMessage;
 import org.hawkular.apm.api.model.config.txn.DataSource;
 import org.hawkular.apm.api.model.config.txn.XMLExpression;
 import org.junit.Test;
@@ -156,4 +158,49 @@ public class XMLExpressionHandlerTest {
         assertEquals("hello", result);
     }
 
+    @Test
+    public void testInitInvalidExpression() {
+        XMLExpression xml = new XMLExpression();
+        xml.setSource(DataSource.Content);
+        xml.setKey("0");
+        xml.setXpath("/doc/@");
+
+        XMLExpressionHandler handler = new XMLExpressionHandler(xml);
+        List<ConfigMessage> messages = handler.init(null, null, true);
+
+        assertEquals(1, messages.size());
+        assertEquals("xpath", messages.get(0).getField());
+    }
+
+    @Test
+    public void testEvaluateValueMultipleThreads() throws InterruptedException {
+        XMLExpression xml = new XMLExpression();
+        xml.setSource(DataSource.Content);
+        xml.setKey("0");
+        xml.setXpath("/doc/@name");
+
+        XMLExpressionHandler handler = new XMLExpressionHandler(xml);
+        handler.init(null, null, true);
+
+        String[] results = new String[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                Object[] values = new Object[] { "<doc name=\"hello" + index + "\" />" };
+                for (int j = 0; j < 100; j++) {
+                    results[index] = handler.evaluate(null, null, Direction.In, null, values);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            assertEquals("hello" + i, results[i]);
+        }
+    }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.api.internal.actions.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class DocumentCacheTest {
+
+    @Test
+    public void testJSONParsedOnceInScope() {
+        String value = "{ \"name\": \"hello\", \"id\": 1 }";
+
+        DocumentCache.begin();
+        try {
+            assertSame(JSON.parse(value), JSON.parse(value));
+            assertEquals("hello", JSON.evaluate("$.name", value));
+            assertEquals("1", JSON.evaluate("$.id", value));
+        } finally {
+            DocumentCache.end();
+        }
+    }
+
+    @Test
+    public void testJSONNotCachedOutOfScope() {
+        String value = "{ \"name\": \"hello\" }";
+
+        assertNotSame(JSON.parse(value), JSON.parse(value));
+    }
+
+    @Test
+    public void testXMLParsedOnceInScope() {
+        String value = "<doc name=\"hello\" id=\"1\"/>";
+
+        DocumentCache.begin();
+        try {
+            assertSame(XML.getNode(value), XML.getNode(value));
+            assertEquals("hello", XML.evaluate("/doc/@name", value));
+            assertEquals("1", XML.evaluate("/doc/@id", value));
+        } finally {
+            DocumentCache.end();
+        }
+
+        assertNotSame(XML.getNode(value), XML.getNode(value));
+    }
+
+    @Test
+    public void testNestedScope() {
+        String value = "<doc/>";
+
+        DocumentCache.begin();
+        try {
+            Object node = XML.getNode(value);
+
+            DocumentCache.begin();
+            DocumentCache.end();
+
+            assertSame(node, XML.getNode(value));
+        } finally {
+            DocumentCache.end();
+        }
+    }
+}
@@ -20,17 +20,16 @@ import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
 import org.hawkular.apm.api.utils.PropertyUtil;
+import org.hawkular.apm.client.api.utils.ExpiringMap;
 import org.jboss.byteman.rule.Rule;
 import org.jboss.byteman.rule.helper.Helper;
 
@@ -55,11 +54,12 @@ public class OpenTracingManager extends Helper {
 
     private static final ThreadLocal<TraceState> traceState = new ThreadLocal<>();
 
-    private static final Map<String, TraceState> suspendedState = new HashMap<>();
-    private static final ReentrantLock suspendedStateLock = new ReentrantLock();
+    private static final ExpiringMap<String, TraceState> suspendedState;
 
     private static long expiryInterval = 60000;
 
+    private static int maxSuspendedStates = 10000;
+
     // allow access from test
     protected static Set<String> fileExtensionWhitelist = new HashSet<>();
 
@@ -79,6 +79,11 @@ public class OpenTracingManager extends Helper {
             expiryInterval = Long.parseLong(time);
         }
 
+        maxSuspendedStates = PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_AGENT_STATE_MAXSIZE,
+                maxSuspendedStates);
+
+        suspendedState = new ExpiringMap<>(expiryInterval, maxSuspendedStates);
+
         // Create scheduled task
         Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             @Override
@@ -90,9 +95,9 @@ public class OpenTracingManager extends Helper {
         }).scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                cleanup();
+                suspendedState.expire();
             }
-        }, expiryInterval, expiryInterval, TimeUnit.MILLISECONDS);
+        }, suspendedState.getTickInterval(), suspendedState.getTickInterval(), TimeUnit.MILLISECONDS);
     }
 
     public OpenTracingManager(Rule rule) {
@@ -343,23 +348,14 @@ public class OpenTracingManager extends Helper {
         }
 
         if (ts != null) {
-            setExpire(ts);
-
-            try {
-                suspendedStateLock.lock();
-
-                // Check if id already used
-                if (suspendedState.containsKey(id) && log.isLoggable(Level.FINEST)) {
-                    log.finest("WARNING: Overwriting previous suspended trace state = " + suspendedState.get(id)
-                            + " id = " + id);
-                }
-
-                suspendedState.put(id, ts);
+            TraceState previous = suspendedState.put(id, ts);
 
-                traceState.remove();
-            } finally {
-                suspendedStateLock.unlock();
+            // Check if id already used
+            if (previous != null && log.isLoggable(Level.FINEST)) {
+                log.finest("WARNING: Overwriting previous suspended trace state = " + previous + " id = " + id);
             }
+
+            traceState.remove();
         }
     }
 
@@ -371,64 +367,20 @@ public class OpenTracingManager extends Helper {
      * @param id The id of the trace state to resume
      */
     public void resume(String id) {
-        try {
-            suspendedStateLock.lock();
-
-            TraceState ts = suspendedState.get(id);
+        TraceState ts = suspendedState.remove(id);
 
-            if (ts != null) {
-                clearExpire(ts);
-
-                // Log after finding trace state, otherwise may generate alot of logging
-                if (log.isLoggable(Level.FINEST)) {
-                    log.finest("Resume trace state = " + ts + " id = " + id);
-                }
-
-                // Check if thread already used
-                if (traceState.get() != null && log.isLoggable(Level.FINEST)) {
-                    log.finest("WARNING: Overwriting previous trace state = " + traceState.get());
-                }
-
-                traceState.set(ts);
-
-                suspendedState.remove(id);
+        if (ts != null) {
+            // Log after finding trace state, otherwise may generate alot of logging
+            if (log.isLoggable(Level.FINEST)) {
+                log.finest("Resume trace state = " + ts + " id = " + id);
             }
-        } finally {
-            suspendedStateLock.unlock();
-        }
-    }
-
-    private static void setExpire(TraceState ts) {
-        // If too inefficient getting timestamp each time, could have a set
-        // of used trace states, and when schedule does its cycle, it could
-        // assign a single timestamp to all the trace states that have been
-        // accessed during that cycle
-        ts.setExpire(System.currentTimeMillis() + expiryInterval);
-    }
-
-    private static void clearExpire(TraceState ts) {
-        ts.setExpire(0);
-    }
 
-    private static void cleanup() {
-        try {
-            suspendedStateLock.lock();
-
-            long timestamp = System.currentTimeMillis();
-            Iterator<Map.Entry<String, TraceState>> iter = suspendedState.entrySet().iterator();
-
-            while (iter.hasNext()) {
-                Map.Entry<String, TraceState> entry = iter.next();
-                TraceState ts = entry.getValue();
-                if (ts.getExpire() > 0 && ts.getExpire() < timestamp) {
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.finest("Expired trace state = " + ts + " id = " + entry.getKey());
-                    }
-                    iter.remove();
-                }
+            // Check if thread already used
+            if (traceState.get() != null && log.isLoggable(Level.FINEST)) {
+                log.finest("WARNING: Overwriting previous trace state = " + traceState.get());
             }
-        } finally {
-            suspendedStateLock.unlock();
+
+            traceState.set(ts);
         }
     }
 
@@ -564,8 +516,6 @@ public class OpenTracingManager extends Helper {
         private Map<String, Object> variables = new HashMap<>();
         private Map<String, Span> identifiedSpans = new HashMap<>();
 
-        private long expire;
-
         public void pushSpan(Span span, String id) {
             spanStack.push(span);
             idStack.push(id == null ? "" : id);
@@ -601,26 +551,6 @@ public class OpenTracingManager extends Helper {
             return spanStack.isEmpty();
         }
 
-        /**
-         * This method sets the timestamp when this trace state should
-         * be considered expired.
-         *
-         * @param timestamp (in milliseconds)
-         */
-        public void setExpire(long timestamp) {
-            expire = timestamp;
-        }
-
-        /**
-         * This method gets the timestamp when this trace state should
-         * be considered expired.
-         *
-         * @return timestamp (in milliseconds)
-         */
-        public long getExpire() {
-            return expire;
-        }
-
         /**
          * This method provides access to variables associated with this
          * trace.
@@ -17,12 +17,21 @@
 
 package org.hawkular.apm.client.api.recorder;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.hawkular.apm.api.logging.Logger;
@@ -32,10 +41,22 @@ import org.hawkular.apm.api.services.ServiceResolver;
 import org.hawkular.apm.api.services.TracePublisher;
 import org.hawkular.apm.api.utils.PropertyUtil;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * This class is responsible for managing a set of traces and
  * reporting them to the server.
  *
+ * By default, completed traces are collected in a list guarded by a lock. If a buffer
+ * size is configured, the recorder instead uses a bounded lock-free ring buffer, so that
+ * recording a trace never blocks the application thread. When the buffer is full, the
+ * configured {@link OverflowPolicy} determines which traces are discarded.
+ *
+ * The number of batches waiting to be published is bounded. Batches that cannot be
+ * queued, or fail to be published, are written to an optional spill journal and replayed,
+ * with exponential backoff, once the server becomes available again.
+ *
  * @author gbrown
  */
 public class BatchTraceRecorder implements TraceRecorder {
@@ -44,14 +65,39 @@ public class BatchTraceRecorder implements TraceRecorder {
     private static final int DEFAULT_BATCH_THREAD_POOL_SIZE = 5;
     private static final int DEFAULT_BATCH_TIME = 500;
     private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_BUFFER_SIZE = 0;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 50;
+    private static final int DEFAULT_SPILL_SIZE_MB = 64;
+    private static final long INITIAL_REPLAY_BACKOFF = 1000;
+    private static final long MAX_REPLAY_BACKOFF = 60000;
     private static final String HAWKULAR_APM_TENANT_ID = "HAWKULAR_APM_TENANT_ID";
 
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<List<Trace>> TRACE_LIST = new TypeReference<List<Trace>>() {
+    };
+
     private TracePublisher tracePublisher;
 
     private List<Trace> traces;
     private int batchSize;
     private String tenantId;
 
+    private TraceRingBuffer<Trace> ringBuffer;
+    private OverflowPolicy overflowPolicy;
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder flushedCount = new LongAdder();
+    private final LongAdder spilledCount = new LongAdder();
+    private final LongAdder replayedCount = new LongAdder();
+
+    private TraceSpillJournal spillJournal;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private volatile long replayBackoff = INITIAL_REPLAY_BACKOFF;
+    private volatile long nextReplayTime;
+
+    private ScheduledExecutorService scheduler;
     private ExecutorService executor;
     private final ReentrantLock lock = new ReentrantLock();
 
@@ -68,31 +114,48 @@ public class BatchTraceRecorder implements TraceRecorder {
         this.tenantId = builder.tenantId;
         this.batchSize = builder.batchSize;
         this.traces = new ArrayList<>(batchSize + 1);
+        this.overflowPolicy = builder.overflowPolicy;
+
+        if (builder.bufferSize > 0) {
+            this.ringBuffer = new TraceRingBuffer<>(Math.max(builder.bufferSize, batchSize));
+        }
+
+        if (builder.spillFile != null) {
+            try {
+                this.spillJournal = new TraceSpillJournal(Paths.get(builder.spillFile),
+                        builder.spillSizeMB * 1024L * 1024L);
+            } catch (IOException | RuntimeException e) {
+                log.log(Level.SEVERE, "Failed to open trace spill journal '" + builder.spillFile + "'", e);
+            }
+        }
 
         // Create scheduled task
-        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             public Thread newThread(Runnable r) {
                 Thread t = Executors.defaultThreadFactory().newThread(r);
                 t.setDaemon(true);
                 return t;
             }
-        }).scheduleAtFixedRate(new Runnable() {
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                // Initial check, to avoid doing too much work if no
-                // traces reported
-                if (!traces.isEmpty()) {
-                    try {
-                        lock.lock();
-                        submitTraces();
-                    } finally {
-                        lock.unlock();
-                    }
+                replayIfDue();
+
+                if (ringBuffer != null) {
+                    drainBuffer();
+                } else if (!traces.isEmpty()) {
+                    // Initial check, to avoid doing too much work if no
+                    // traces reported
+                    submitTraces();
                 }
             }
         }, builder.batchTime, builder.batchTime, TimeUnit.MILLISECONDS);
 
-        executor = Executors.newFixedThreadPool(builder.threadPoolSize,
+        // Bound the number of batches waiting to be published, so that memory
+        // does not grow when the server is slow or unavailable
+        executor = new ThreadPoolExecutor(builder.threadPoolSize, builder.threadPoolSize,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(builder.maxInFlight),
                 new ThreadFactory() {
                     public Thread newThread(Runnable r) {
                         Thread t = Executors.defaultThreadFactory().newThread(r);
@@ -123,21 +186,148 @@ public class BatchTraceRecorder implements TraceRecorder {
         this.tenantId = tenantId;
     }
 
+    /**
+     * @return The overflow policy applied when the ring buffer is full
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return The capacity of the ring buffer, or 0 if the recorder is not buffered
+     */
+    public int getBufferCapacity() {
+        return ringBuffer == null ? 0 : ringBuffer.capacity();
+    }
+
+    /**
+     * @return The number of traces accepted for reporting
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.sum();
+    }
+
+    /**
+     * @return The number of traces discarded, due to the ring buffer being full or
+     *              the traces not being publishable
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return The number of traces successfully published
+     */
+    public long getFlushedCount() {
+        return flushedCount.sum();
+    }
+
+    /**
+     * @return The number of traces written to the spill journal
+     */
+    public long getSpilledCount() {
+        return spilledCount.sum();
+    }
+
+    /**
+     * @return The number of traces successfully published from the spill journal
+     */
+    public long getReplayedCount() {
+        return replayedCount.sum();
+    }
+
     @Override
     public void record(Trace trace) {
-        if (tracePublisher != null) {
+        if (tracePublisher == null) {
+            log.warning("Trace publisher is not available!");
+        } else if (ringBuffer != null) {
+            recordToBuffer(trace);
+        } else {
+            List<Trace> toSend = null;
             try {
                 lock.lock();
                 traces.add(trace);
+                enqueuedCount.increment();
 
                 if (traces.size() >= batchSize) {
-                    submitTraces();
+                    toSend = takeTraces();
                 }
             } finally {
                 lock.unlock();
             }
-        } else {
-            log.warning("Trace publisher is not available!");
+
+            // Publish outside the lock, so other recording threads are not held up
+            if (toSend != null) {
+                publish(toSend);
+            }
+        }
+    }
+
+    /**
+     * This method adds the trace to the ring buffer, applying the overflow
+     * policy if the buffer is full. It never blocks the calling thread.
+     *
+     * @param trace The trace fragment
+     */
+    protected void recordToBuffer(Trace trace) {
+        if (overflowPolicy == OverflowPolicy.Sample && !isSampledForBuffer()) {
+            droppedCount.increment();
+            return;
+        }
+
+        if (!ringBuffer.offer(trace)) {
+            if (overflowPolicy == OverflowPolicy.DropOldest && ringBuffer.poll() != null) {
+                droppedCount.increment();
+                if (!ringBuffer.offer(trace)) {
+                    droppedCount.increment();
+                    return;
+                }
+            } else {
+                droppedCount.increment();
+                return;
+            }
+        }
+
+        enqueuedCount.increment();
+
+        if (ringBuffer.size() >= batchSize && flushPending.compareAndSet(false, true)) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushPending.set(false);
+                    drainBuffer();
+                }
+            });
+        }
+    }
+
+    /**
+     * This method determines whether a trace should be accepted into the ring
+     * buffer when using the sample policy. Once the buffer is more than half full,
+     * the probability of accepting a trace decreases linearly, reaching zero
+     * when the buffer is full.
+     *
+     * @return Whether the trace should be accepted
+     */
+    private boolean isSampledForBuffer() {
+        int threshold = ringBuffer.capacity() / 2;
+        int excess = ringBuffer.size() - threshold;
+        if (excess <= 0) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextInt(ringBuffer.capacity() - threshold) >= excess;
+    }
+
+    /**
+     * This method drains the ring buffer, submitting the traces in batches.
+     */
+    protected void drainBuffer() {
+        while (ringBuffer.size() > 0) {
+            List<Trace> toSend = new ArrayList<>(Math.min(ringBuffer.size(), batchSize));
+            if (ringBuffer.drainTo(toSend, batchSize) == 0) {
+                break;
+            }
+            publish(toSend);
         }
     }
 
@@ -145,33 +335,224 @@ public class BatchTraceRecorder implements TraceRecorder {
      * This method submits the current list of traces
      */
     protected void submitTraces() {
-        if (!traces.isEmpty()) {
-            // Locally store list and create new list for subsequent traces
-            List<Trace> toSend = traces;
-            traces = new ArrayList<>(batchSize + 1);
+        List<Trace> toSend;
+        try {
+            lock.lock();
+            toSend = takeTraces();
+        } finally {
+            lock.unlock();
+        }
+        if (toSend != null) {
+            publish(toSend);
+        }
+    }
 
+    /**
+     * This method takes the current list of traces, replacing it with a new list
+     * for subsequent traces. It must be called while holding the lock.
+     *
+     * @return The traces, or null if there are none
+     */
+    private List<Trace> takeTraces() {
+        if (traces.isEmpty()) {
+            return null;
+        }
+        List<Trace> toSend = traces;
+        traces = new ArrayList<>(batchSize + 1);
+        return toSend;
+    }
+
+    /**
+     * This method publishes the supplied batch of traces using the executor.
+     *
+     * @param toSend The traces to publish
+     */
+    private void publish(List<Trace> toSend) {
+        try {
             executor.execute(new Runnable() {
                 @Override
                 public void run() {
                     try {
                         tracePublisher.publish(tenantId, toSend);
+                        flushedCount.add(toSend.size());
+                        publishSucceeded();
                     } catch (Exception e) {
-                        // TODO: Retain for retry
                         log.log(Level.SEVERE, "Failed to publish traces", e);
+                        publishFailed();
+                        undelivered(toSend);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            if (log.isLoggable(Level.FINEST)) {
+                log.finest("Maximum number of in-flight batches reached");
+            }
+            spill(toSend);
+        }
+    }
+
+    /**
+     * This method hands the supplied traces, which could not be queued for publishing,
+     * to the scheduler thread to be written to the spill journal. This avoids serializing
+     * and writing the traces on the application thread that recorded them.
+     *
+     * @param toSend The traces that could not be queued
+     */
+    private void spill(List<Trace> toSend) {
+        if (spillJournal == null) {
+            droppedCount.add(toSend.size());
+            return;
+        }
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    undelivered(toSend);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            droppedCount.add(toSend.size());
+        }
+    }
+
+    /**
+     * This method retains the supplied traces in the spill journal, if configured,
+     * otherwise they are discarded.
+     *
+     * @param traces The traces that could not be published
+     */
+    private void undelivered(List<Trace> traces) {
+        if (spillJournal != null) {
+            try {
+                if (spillJournal.append(tenantId, mapper.writeValueAsBytes(traces))) {
+                    spilledCount.add(traces.size());
+                    return;
+                }
+                log.warning("Trace spill journal is full");
+            } catch (Exception e) {
+                log.log(Level.SEVERE, "Failed to write traces to spill journal", e);
+            }
+        }
+        droppedCount.add(traces.size());
+    }
+
+    private void publishSucceeded() {
+        if (replayBackoff != INITIAL_REPLAY_BACKOFF) {
+            replayBackoff = INITIAL_REPLAY_BACKOFF;
+            nextReplayTime = 0;
+        }
+    }
+
+    private void publishFailed() {
+        long backoff = replayBackoff;
+        nextReplayTime = System.currentTimeMillis() + backoff;
+        replayBackoff = Math.min(backoff * 2, MAX_REPLAY_BACKOFF);
+    }
+
+    /**
+     * This method replays batches from the spill journal, if any are outstanding
+     * and the backoff period has expired.
+     */
+    protected void replayIfDue() {
+        if (spillJournal == null || spillJournal.isEmpty()
+                || System.currentTimeMillis() < nextReplayTime
+                || !replaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replay();
+                    } finally {
+                        replaying.set(false);
                     }
                 }
             });
+        } catch (RejectedExecutionException ree) {
+            replaying.set(false);
+        }
+    }
+
+    private void replay() {
+        TraceSpillJournal.Entry entry;
+        while ((entry = spillJournal.peek()) != null) {
+            List<Trace> toSend;
+            try {
+                toSend = mapper.readValue(entry.getPayload(), TRACE_LIST);
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Discarding unreadable batch from trace spill journal", e);
+                spillJournal.remove(entry);
+                continue;
+            }
+            try {
+                tracePublisher.publish(entry.getTenantId(), toSend);
+            } catch (Exception e) {
+                if (log.isLoggable(Level.FINER)) {
+                    log.finer("Failed to replay traces from spill journal: " + e.getMessage());
+                }
+                publishFailed();
+                return;
+            }
+            spillJournal.remove(entry);
+            replayedCount.add(toSend.size());
+            publishSucceeded();
         }
     }
 
     public String toString() {
-        return "BatchTraceRecorder batchSize=" + batchSize + " [" + this.tracePublisher.toString() + "]";
+        return "BatchTraceRecorder batchSize=" + batchSize + " bufferCapacity=" + getBufferCapacity()
+                + " [" + this.tracePublisher.toString() + "]";
+    }
+
+    /**
+     * This enumeration defines how traces are handled when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Discard the trace being recorded.
+         */
+        DropNewest,
+
+        /**
+         * Discard the oldest trace in the buffer, to make room for the trace being recorded.
+         */
+        DropOldest,
+
+        /**
+         * Progressively sample traces once the buffer is more than half full, discarding
+         * all traces when full.
+         */
+        Sample;
+
+        /**
+         * This method returns the policy with the supplied name, ignoring case.
+         *
+         * @param name The name
+         * @return The policy, or null if unknown
+         */
+        public static OverflowPolicy fromName(String name) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name.trim())) {
+                    return policy;
+                }
+            }
+            return null;
+        }
+
     }
 
     public static class BatchTraceRecorderBuilder {
         private int batchSize = DEFAULT_BATCH_SIZE;
         private int batchTime = DEFAULT_BATCH_TIME;
         private int threadPoolSize = DEFAULT_BATCH_THREAD_POOL_SIZE;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DropNewest;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        private String spillFile;
+        private int spillSizeMB = DEFAULT_SPILL_SIZE_MB;
         private String tenantId;
 
         private TracePublisher tracePublisher;
@@ -200,6 +581,65 @@ public class BatchTraceRecorder implements TraceRecorder {
             return this;
         }
 
+        /**
+         * This method sets the capacity of the lock-free ring buffer. A value
+         * of 0 (the default) disables the ring buffer.
+         *
+         * @param bufferSize The buffer size
+         * @return The builder
+         */
+        public BatchTraceRecorderBuilder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * This method sets the policy applied when the ring buffer is full. The
+         * default is {@link OverflowPolicy#DropNewest}.
+         *
+         * @param overflowPolicy The overflow policy
+         * @return The builder
+         */
+        public BatchTraceRecorderBuilder withOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * This method sets the maximum number of batches that can be waiting to
+         * be published.
+         *
+         * @param maxInFlight The maximum number of batches
+         * @return The builder
+         */
+        public BatchTraceRecorderBuilder withMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * This method sets the file used to retain batches that could not be
+         * published. If not set, such batches are discarded.
+         *
+         * @param spillFile The spill journal file
+         * @return The builder
+         */
+        public BatchTraceRecorderBuilder withSpillFile(String spillFile) {
+            this.spillFile = spillFile;
+            return this;
+        }
+
+        /**
+         * This method sets the size of the spill journal file, in megabytes.
+         *
+         * @param spillSizeMB The spill journal size
+         * @return The builder
+         */
+        public BatchTraceRecorderBuilder withSpillSize(int spillSizeMB) {
+            this.spillSizeMB = spillSizeMB;
+            return this;
+        }
+
         public BatchTraceRecorderBuilder withTenantId(String tenantId) {
             this.tenantId = tenantId;
             return this;
@@ -226,6 +666,33 @@ public class BatchTraceRecorder implements TraceRecorder {
                 builder.withBatchPoolSize(Integer.parseInt(threadPoolSize));
             }
 
+            if (PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_BUFFERSIZE, null) != null) {
+                String bufferSize = PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_BUFFERSIZE, null);
+                builder.withBufferSize(Integer.parseInt(bufferSize));
+            }
+
+            if (PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY, null) != null) {
+                String policy = PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY, null);
+                OverflowPolicy overflowPolicy = OverflowPolicy.fromName(policy);
+                if (overflowPolicy == null) {
+                    log.warning("Unknown overflow policy '" + policy + "', using " + builder.overflowPolicy);
+                } else {
+                    builder.withOverflowPolicy(overflowPolicy);
+                }
+            }
+
+            if (PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_MAXINFLIGHT, null) != null) {
+                String maxInFlight = PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_MAXINFLIGHT, null);
+                builder.withMaxInFlight(Integer.parseInt(maxInFlight));
+            }
+
+            builder.withSpillFile(PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_SPILLFILE, null));
+
+            if (PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_SPILLSIZE, null) != null) {
+                String spillSize = PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_SPILLSIZE, null);
+                builder.withSpillSize(Integer.parseInt(spillSize));
+            }
+
             builder.withTenantId(PropertyUtil.getProperty(HAWKULAR_APM_TENANT_ID, null));
 
             return builder;
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hawkular.apm.client.api.recorder;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class provides a bounded, lock-free ring buffer used to hand over
+ * completed trace fragments from application threads to the recorder's flush
+ * thread. Each slot carries a sequence number which determines whether it is
+ * available to a producer or a consumer, so neither side ever blocks.
+ *
+ * @author gbrown
+ */
+class TraceRingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * This constructor initialises the ring buffer with the supplied capacity,
+     * rounded up to the next power of two.
+     *
+     * @param requestedCapacity The minimum capacity
+     */
+    TraceRingBuffer(int requestedCapacity) {
+        if (requestedCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        }
+        int cap = 1;
+        while (cap < requestedCapacity) {
+            cap <<= 1;
+        }
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.slots = new AtomicReferenceArray<>(cap);
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return The capacity of the buffer
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * This method returns an approximation of the number of elements
+     * currently held in the buffer.
+     *
+     * @return The approximate size
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    /**
+     * This method attempts to add the supplied element.
+     *
+     * @param element The element
+     * @return Whether the element was added, false if the buffer is full
+     */
+    boolean offer(T element) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * This method removes the oldest element from the buffer.
+     *
+     * @return The oldest element, or null if the buffer is empty
+     */
+    T poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    T element = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, pos + capacity);
+                    return element;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * This method moves up to the specified number of elements into
+     * the supplied list.
+     *
+     * @param to The list to add the elements to
+     * @param max The maximum number of elements to drain
+     * @return The number of elements drained
+     */
+    int drainTo(List<T> to, int max) {
+        int count = 0;
+        while (count < max) {
+            T element = poll();
+            if (element == null) {
+                break;
+            }
+            to.add(element);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hawkular.apm.client.api.recorder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.hawkular.apm.api.logging.Logger;
+
+/**
+ * This class provides an append-only journal, backed by a memory-mapped file, used
+ * to retain batches of traces that could not be published. Batches are read back
+ * in the order they were appended, and the space is reclaimed once all outstanding
+ * batches have been removed.
+ *
+ * The file starts with a header containing the read and write positions, so that
+ * unsent batches survive a restart of the application.
+ *
+ * @author gbrown
+ */
+class TraceSpillJournal {
+
+    private static final Logger log = Logger.getLogger(TraceSpillJournal.class.getName());
+
+    private static final int HEADER_SIZE = 16;
+    private static final int READ_POSITION_OFFSET = 0;
+    private static final int WRITE_POSITION_OFFSET = 8;
+    private static final int INVALID_LENGTH = -2;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private int readPosition;
+    private int writePosition;
+
+    /**
+     * This constructor opens (or creates) the journal file.
+     *
+     * @param path The path of the journal file
+     * @param size The size of the journal file, in bytes
+     * @throws IOException Failed to open the journal file
+     */
+    TraceSpillJournal(Path path, long size) throws IOException {
+        if (size <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Journal size must be greater than " + HEADER_SIZE);
+        }
+        if (size > Integer.MAX_VALUE) {
+            // A single memory-mapped buffer cannot exceed 2GB
+            throw new IllegalArgumentException("Journal size must not exceed " + Integer.MAX_VALUE);
+        }
+        this.path = path;
+        this.capacity = (int) size;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        readPosition = (int) buffer.getLong(READ_POSITION_OFFSET);
+        writePosition = (int) buffer.getLong(WRITE_POSITION_OFFSET);
+
+        if (readPosition < HEADER_SIZE || writePosition < readPosition || writePosition > capacity) {
+            // New or unrecognised file, so start with an empty journal
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+            storePositions();
+        }
+    }
+
+    /**
+     * @return The path of the journal file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Whether the journal has no outstanding entries
+     */
+    synchronized boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    /**
+     * @return The number of bytes used by outstanding entries
+     */
+    synchronized int getUsed() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * This method appends an entry to the journal.
+     *
+     * @param tenantId The optional tenant id
+     * @param payload The serialized batch
+     * @return Whether the entry was appended, false if there is insufficient space
+     */
+    synchronized boolean append(String tenantId, byte[] payload) {
+        byte[] tenant = tenantId == null ? null : tenantId.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + (tenant == null ? 0 : tenant.length) + payload.length;
+
+        if (writePosition + length > capacity) {
+            compact();
+            if (writePosition + length > capacity) {
+                return false;
+            }
+        }
+
+        buffer.position(writePosition);
+        if (tenant == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(tenant.length);
+            buffer.put(tenant);
+        }
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+
+        writePosition += length;
+        storePositions();
+        return true;
+    }
+
+    /**
+     * This method returns the oldest entry, without removing it. If the entry is
+     * corrupt (e.g. partially written when the application terminated), the
+     * outstanding entries cannot be located, so the journal is reset.
+     *
+     * @return The oldest entry, or null if the journal is empty
+     */
+    synchronized Entry peek() {
+        if (readPosition == writePosition) {
+            return null;
+        }
+        buffer.position(readPosition);
+
+        String tenantId = null;
+        int tenantLength = readLength(-1);
+        if (tenantLength >= 0) {
+            byte[] tenant = new byte[tenantLength];
+            buffer.get(tenant);
+            tenantId = new String(tenant, StandardCharsets.UTF_8);
+        }
+        int payloadLength = tenantLength == INVALID_LENGTH ? INVALID_LENGTH : readLength(0);
+        if (payloadLength == INVALID_LENGTH) {
+            log.severe("Discarding " + (writePosition - readPosition) + " bytes from corrupt trace spill journal '"
+                    + path + "' at position " + readPosition);
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+            storePositions();
+            return null;
+        }
+        byte[] payload = new byte[payloadLength];
+        buffer.get(payload);
+
+        return new Entry(tenantId, payload, buffer.position() - readPosition);
+    }
+
+    /**
+     * This method reads a length field, validating it against the bytes remaining
+     * in the outstanding entries.
+     *
+     * @param min The minimum valid length
+     * @return The length, or {@link #INVALID_LENGTH} if invalid
+     */
+    private int readLength(int min) {
+        if (writePosition - buffer.position() < 4) {
+            return INVALID_LENGTH;
+        }
+        int length = buffer.getInt();
+        if (length < min || length > writePosition - buffer.position()) {
+            return INVALID_LENGTH;
+        }
+        return length;
+    }
+
+    /**
+     * This method removes the supplied entry, which must be the oldest
+     * entry in the journal, as returned by {@link #peek()}.
+     *
+     * @param entry The entry
+     */
+    synchronized void remove(Entry entry) {
+        readPosition += entry.length;
+        if (readPosition == writePosition) {
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+        }
+        storePositions();
+    }
+
+    /**
+     * This method moves the outstanding entries to the start of the journal.
+     */
+    private void compact() {
+        if (readPosition == HEADER_SIZE) {
+            return;
+        }
+        int used = writePosition - readPosition;
+        if (used > 0) {
+            byte[] outstanding = new byte[used];
+            buffer.position(readPosition);
+            buffer.get(outstanding);
+            buffer.position(HEADER_SIZE);
+            buffer.put(outstanding);
+        }
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE + used;
+        storePositions();
+    }
+
+    private void storePositions() {
+        buffer.putLong(READ_POSITION_OFFSET, readPosition);
+        buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+    }
+
+    /**
+     * This class represents a batch read from the journal.
+     */
+    static class Entry {
+        private final String tenantId;
+        private final byte[] payload;
+        private final int length;
+
+        Entry(String tenantId, byte[] payload, int length) {
+            this.tenantId = tenantId;
+            this.payload = payload;
+            this.length = length;
+        }
+
+        /**
+         * @return The tenant id
+         */
+        String getTenantId() {
+            return tenantId;
+        }
+
+        /**
+         * @return The serialized batch
+         */
+        byte[] getPayload() {
+            return payload;
+        }
+    }
+}
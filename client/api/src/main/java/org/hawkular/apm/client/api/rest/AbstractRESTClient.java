@@ -27,6 +27,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -92,18 +94,35 @@ public class AbstractRESTClient implements ServiceStatus {
      * @param tenantId The optional tenant id
      */
     protected void addHeaders(HttpURLConnection connection, String tenantId) {
+        for (Map.Entry<String, String> header : getHeaders(tenantId).entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+    }
+
+    /**
+     * This method returns the tenant and authorization header values to be
+     * used when sending requests.
+     *
+     * @param tenantId The optional tenant id
+     * @return The header values
+     */
+    protected Map<String, String> getHeaders(String tenantId) {
+        Map<String, String> headers = new HashMap<>();
+
         if (tenantId == null) {
             // Check if default tenant provided as property
             tenantId = PropertyUtil.getProperty(PropertyUtil.HAWKULAR_TENANT);
         }
 
         if (tenantId != null) {
-            connection.setRequestProperty(HAWKULAR_TENANT, tenantId);
+            headers.put(HAWKULAR_TENANT, tenantId);
         }
 
         if (authorization != null) {
-            connection.setRequestProperty("Authorization", authorization);
+            headers.put("Authorization", authorization);
         }
+
+        return headers;
     }
 
     public URL getUrl(String path, Object... args) {
@@ -226,11 +245,12 @@ public class AbstractRESTClient implements ServiceStatus {
                 connection.setUseCaches(false);
                 connection.setAllowUserInteraction(false);
                 connection.setRequestProperty("Content-Type", "application/json");
+                connection.setChunkedStreamingMode(0);
 
-                OutputStream os = connection.getOutputStream();
-                os.write(mapper.writeValueAsBytes(toSerialize));
-                os.flush();
-                os.close();
+                // Serialize directly to the connection, rather than creating an intermediate copy
+                try (OutputStream os = connection.getOutputStream()) {
+                    mapper.writeValue(os, toSerialize);
+                }
 
                 return function.apply(connection);
             } catch (IOException e) {
@@ -18,6 +18,7 @@
 package org.hawkular.apm.client.api.sampler;
 
 import org.hawkular.apm.api.model.config.ReportingLevel;
+import org.hawkular.apm.api.model.events.EndpointRef;
 import org.hawkular.apm.api.model.trace.Trace;
 
 /**
@@ -36,6 +37,10 @@ public final class ContextSampler {
     }
 
     public boolean isSampled(Trace trace, ReportingLevel reportingLevel) {
+        return isSampled(trace, reportingLevel, null);
+    }
+
+    public boolean isSampled(Trace trace, ReportingLevel reportingLevel, EndpointRef endpoint) {
         if (reportingLevel != null) {
             switch (reportingLevel) {
                 case Ignore:
@@ -47,7 +52,7 @@ public final class ContextSampler {
             }
         }
 
-        return delegate.isSampled(trace);
+        return delegate.isSampled(trace, endpoint);
     }
 
     public Sampler getDelegate() {
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.sampler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hawkular.apm.api.logging.Logger;
+import org.hawkular.apm.api.logging.Logger.Level;
+import org.hawkular.apm.api.model.config.CollectorConfiguration;
+import org.hawkular.apm.api.model.events.EndpointRef;
+import org.hawkular.apm.api.model.trace.Node;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.ConfigurationService;
+import org.hawkular.apm.api.utils.PropertyUtil;
+
+/**
+ * This sampler limits the number of traces sampled for each transaction, or root
+ * endpoint if the trace is not associated with a named transaction, to a budget
+ * expressed in traces per second.
+ *
+ * Each transaction or endpoint has its own token bucket, whose state is held in a
+ * single atomic value, so the sampling decision does not block. The observed
+ * throughput is also tracked, to derive a sampling probability that spreads the
+ * budget across each second, rather than sampling the first traces that arrive.
+ *
+ * The budgets are obtained from the {@link PropertyUtil#HAWKULAR_APM_SAMPLING_RATE}
+ * properties in the collector configuration, and can be changed at any time using
+ * {@link #configure(CollectorConfiguration)}. When created using
+ * {@link #withConfigurationService(ConfigurationService)}, which is how the sampler is
+ * selected by the {@link PropertyUtil#HAWKULAR_APM_SAMPLER} property, the budgets are
+ * refreshed from the configuration service.
+ *
+ * @author gbrown
+ */
+public class RateLimitingSampler implements Sampler {
+
+    private static final Logger log = Logger.getLogger(RateLimitingSampler.class.getName());
+
+    /** The {@link PropertyUtil#HAWKULAR_APM_SAMPLER} value used to select this sampler */
+    public static final String NAME = "ratelimiting";
+
+    /** The default budget, in traces per second */
+    public static final int DEFAULT_RATE = 10;
+
+    /** The default maximum number of transactions or endpoints with their own budget */
+    public static final int DEFAULT_MAX_ENDPOINTS = 1000;
+
+    private static final String RATE_PREFIX = PropertyUtil.HAWKULAR_APM_SAMPLING_RATE + ":";
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /** Weight given to the most recent throughput observation */
+    private static final double ALPHA = 0.5;
+
+    private volatile Budgets budgets;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final Bucket overflow;
+
+    protected RateLimitingSampler(Budgets budgets) {
+        this.budgets = budgets;
+        this.overflow = new Bucket(budgets.defaultRate, System.nanoTime());
+    }
+
+    /**
+     * This method creates a sampler with the supplied budget for each transaction
+     * or root endpoint.
+     *
+     * @param rate The number of traces per second
+     * @return The sampler
+     */
+    public static RateLimitingSampler withRate(double rate) {
+        return new RateLimitingSampler(new Budgets(rate, Collections.emptyMap(), DEFAULT_MAX_ENDPOINTS));
+    }
+
+    /**
+     * This method creates a sampler with the budgets defined in the supplied
+     * collector configuration.
+     *
+     * @param config The collector configuration
+     * @return The sampler
+     */
+    public static RateLimitingSampler withConfiguration(CollectorConfiguration config) {
+        return new RateLimitingSampler(Budgets.from(config));
+    }
+
+    /**
+     * This method creates a sampler with the budgets defined in the collector configuration
+     * obtained from the supplied configuration service. If the
+     * {@link PropertyUtil#HAWKULAR_APM_CONFIG_REFRESH} property is defined, the budgets
+     * will be refreshed at that interval (in seconds).
+     *
+     * @param configService The configuration service, or null if not available
+     * @return The sampler
+     */
+    public static RateLimitingSampler withConfigurationService(ConfigurationService configService) {
+        return withConfigurationService(configService,
+                PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_CONFIG_REFRESH));
+    }
+
+    /**
+     * This method creates a sampler with the budgets defined in the collector configuration
+     * obtained from the supplied configuration service.
+     *
+     * @param configService The configuration service, or null if not available
+     * @param refresh The refresh interval (in seconds), or null if the budgets should not be refreshed
+     * @return The sampler
+     */
+    static RateLimitingSampler withConfigurationService(ConfigurationService configService, Integer refresh) {
+        RateLimitingSampler sampler = withConfiguration(new CollectorConfiguration());
+        if (configService == null) {
+            log.warning("No configuration service available, so using default sampling budget");
+            return sampler;
+        }
+
+        sampler.refresh(configService);
+
+        if (refresh != null) {
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setDaemon(true);
+                return t;
+            }).scheduleAtFixedRate(() -> sampler.refresh(configService), refresh.intValue(),
+                    refresh.intValue(), TimeUnit.SECONDS);
+        }
+        return sampler;
+    }
+
+    /**
+     * This method applies the budgets from the collector configuration obtained
+     * from the supplied configuration service.
+     *
+     * @param configService The configuration service
+     */
+    void refresh(ConfigurationService configService) {
+        try {
+            CollectorConfiguration config = configService.getCollector(null, null, null, null);
+            if (config != null) {
+                configure(config);
+            }
+        } catch (Exception e) {
+            log.severe("Failed to refresh sampling budgets", e);
+        }
+    }
+
+    /**
+     * This method applies the budgets defined in the supplied collector configuration.
+     * The observed throughput for existing transactions and endpoints is retained.
+     *
+     * @param config The collector configuration
+     */
+    public void configure(CollectorConfiguration config) {
+        Budgets updated = Budgets.from(config);
+        budgets = updated;
+
+        overflow.setRate(updated.defaultRate);
+        buckets.forEach((key, bucket) -> bucket.setRate(updated.getRate(key)));
+
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("Sampling budgets updated: default=" + updated.defaultRate + " specific=" + updated.rates);
+        }
+    }
+
+    @Override
+    public boolean isSampled(Trace trace) {
+        return isSampled(trace, null);
+    }
+
+    @Override
+    public boolean isSampled(Trace trace, EndpointRef endpoint) {
+        return isSampled(getKey(trace, endpoint), System.nanoTime());
+    }
+
+    /**
+     * This method determines whether a trace associated with the supplied
+     * transaction or endpoint should be sampled.
+     *
+     * @param key The transaction name or endpoint
+     * @param now The current time, in nanoseconds
+     * @return Whether the trace should be sampled
+     */
+    boolean isSampled(String key, long now) {
+        return getBucket(key, now).sample(now);
+    }
+
+    /**
+     * This method returns the current sampling probability derived for the
+     * supplied transaction or endpoint.
+     *
+     * @param key The transaction name or endpoint
+     * @return The probability, or 1 if the key is unknown
+     */
+    double getProbability(String key) {
+        Bucket bucket = buckets.get(key);
+        return bucket == null ? 1.0 : bucket.probability;
+    }
+
+    /**
+     * This method identifies the key used to locate the budget for a trace. A
+     * named transaction takes precedence over the root endpoint.
+     *
+     * @param trace The trace
+     * @param endpoint The root endpoint, or null if not known
+     * @return The key
+     */
+    protected static String getKey(Trace trace, EndpointRef endpoint) {
+        if (trace != null && trace.getTransaction() != null) {
+            return trace.getTransaction();
+        }
+        if (endpoint == null && trace != null && !trace.getNodes().isEmpty()) {
+            Node root = trace.getNodes().get(0);
+            endpoint = new EndpointRef(root.getUri(), root.getOperation(), false);
+        }
+        return endpoint == null ? "" : endpoint.toString();
+    }
+
+    private Bucket getBucket(String key, long now) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            Budgets current = budgets;
+            if (buckets.size() >= current.maxEndpoints) {
+                return overflow;
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(current.getRate(k), now));
+        }
+        return bucket;
+    }
+
+    /**
+     * This class represents an immutable set of budgets.
+     */
+    protected static class Budgets {
+        private final double defaultRate;
+        private final Map<String, Double> rates;
+        private final int maxEndpoints;
+
+        Budgets(double defaultRate, Map<String, Double> rates, int maxEndpoints) {
+            this.defaultRate = defaultRate;
+            this.rates = rates;
+            this.maxEndpoints = maxEndpoints;
+        }
+
+        static Budgets from(CollectorConfiguration config) {
+            double defaultRate = parseRate(config.getProperty(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE, null),
+                    DEFAULT_RATE);
+            Map<String, Double> rates = new HashMap<>();
+            for (Map.Entry<String, String> entry : config.getProperties().entrySet()) {
+                if (entry.getKey().startsWith(RATE_PREFIX)) {
+                    rates.put(entry.getKey().substring(RATE_PREFIX.length()),
+                            parseRate(entry.getValue(), defaultRate));
+                }
+            }
+            int maxEndpoints = DEFAULT_MAX_ENDPOINTS;
+            String max = config.getProperty(PropertyUtil.HAWKULAR_APM_SAMPLING_MAXENDPOINTS, null);
+            if (max != null) {
+                try {
+                    maxEndpoints = Integer.parseInt(max);
+                } catch (NumberFormatException e) {
+                    log.severe("Invalid " + PropertyUtil.HAWKULAR_APM_SAMPLING_MAXENDPOINTS + " value: " + max);
+                }
+            }
+            return new Budgets(defaultRate, Collections.unmodifiableMap(rates), maxEndpoints);
+        }
+
+        private static double parseRate(String value, double def) {
+            if (value != null) {
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    log.severe("Invalid sampling rate: " + value);
+                }
+            }
+            return def;
+        }
+
+        double getRate(String key) {
+            Double rate = rates.get(key);
+            return rate == null ? defaultRate : rate;
+        }
+    }
+
+    /**
+     * This class represents the token bucket for a transaction or endpoint. The bucket
+     * is implemented as a generic cell rate algorithm, where the only state is the time
+     * at which the bucket would next be full.
+     */
+    private static class Bucket {
+        private volatile Limit limit;
+        private volatile double probability = 1.0;
+        private double observedRate;
+
+        private final AtomicLong theoreticalArrival;
+        private final AtomicLong windowStart;
+        private final LongAdder arrivals = new LongAdder();
+
+        Bucket(double rate, long now) {
+            this.limit = new Limit(rate);
+            this.theoreticalArrival = new AtomicLong(now);
+            this.windowStart = new AtomicLong(now);
+        }
+
+        void setRate(double rate) {
+            if (rate != limit.rate) {
+                limit = new Limit(rate);
+                if (observedRate > 0) {
+                    probability = Math.min(1.0, rate / observedRate);
+                }
+            }
+        }
+
+        boolean sample(long now) {
+            Limit current = limit;
+            if (current.rate <= 0) {
+                return false;
+            }
+
+            arrivals.increment();
+            long start = windowStart.get();
+            long elapsed = now - start;
+            if (elapsed >= NANOS_PER_SECOND && windowStart.compareAndSet(start, now)) {
+                adapt(current, arrivals.sumThenReset() * (double) NANOS_PER_SECOND / elapsed);
+            }
+
+            double p = probability;
+            if (p < 1.0 && ThreadLocalRandom.current().nextDouble() >= p) {
+                return false;
+            }
+            return acquire(current, now);
+        }
+
+        private void adapt(Limit current, double observed) {
+            // Only called by the thread that closed the window
+            observedRate = observedRate == 0 ? observed : ALPHA * observed + (1 - ALPHA) * observedRate;
+            probability = observedRate <= current.rate ? 1.0 : current.rate / observedRate;
+        }
+
+        private boolean acquire(Limit current, long now) {
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long next = Math.max(tat, now) + current.interval;
+                if (next - now > current.tolerance) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * This class represents the emission interval and burst tolerance derived from a rate.
+     */
+    private static class Limit {
+        private final double rate;
+        private final long interval;
+        private final long tolerance;
+
+        Limit(double rate) {
+            this.rate = rate;
+            if (rate > 0) {
+                this.interval = (long) (NANOS_PER_SECOND / rate);
+                // Allow a burst of up to one second's budget, and at least one trace
+                this.tolerance = (long) (interval * Math.max(1.0, rate));
+            } else {
+                this.interval = Long.MAX_VALUE;
+                this.tolerance = 0;
+            }
+        }
+    }
+}
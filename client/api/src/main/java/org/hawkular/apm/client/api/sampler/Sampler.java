@@ -17,7 +17,12 @@
 
 package org.hawkular.apm.client.api.sampler;
 
+import org.hawkular.apm.api.logging.Logger;
+import org.hawkular.apm.api.model.events.EndpointRef;
 import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.ConfigurationService;
+import org.hawkular.apm.api.services.ServiceResolver;
+import org.hawkular.apm.api.utils.PropertyUtil;
 
 /**
  * @author Pavol Loffay
@@ -26,6 +31,38 @@ public interface Sampler {
 
     boolean isSampled(Trace trace);
 
+    /**
+     * This method determines whether the supplied trace should be sampled, where
+     * the endpoint associated with the root of the trace is known.
+     *
+     * @param trace The trace
+     * @param endpoint The root endpoint, or null if not known
+     * @return Whether the trace should be sampled
+     */
+    default boolean isSampled(Trace trace, EndpointRef endpoint) {
+        return isSampled(trace);
+    }
+
     Sampler ALWAYS_SAMPLE = trace -> true;
     Sampler NEVER_SAMPLE = trace -> false;
+
+    /**
+     * This method returns the sampler selected by the {@link PropertyUtil#HAWKULAR_APM_SAMPLER}
+     * property. An unknown value is logged, and all traces are sampled.
+     *
+     * @return The sampler
+     */
+    static Sampler fromEnvProperties() {
+        String name = PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_SAMPLER);
+        if (name == null) {
+            return ALWAYS_SAMPLE;
+        }
+        if (RateLimitingSampler.NAME.equalsIgnoreCase(name.trim())) {
+            return RateLimitingSampler.withConfigurationService(
+                    ServiceResolver.getSingletonService(ConfigurationService.class));
+        }
+        Logger.getLogger(Sampler.class.getName()).warning("Unknown " + PropertyUtil.HAWKULAR_APM_SAMPLER
+                + " value '" + name + "', so sampling all traces");
+        return ALWAYS_SAMPLE;
+    }
 }
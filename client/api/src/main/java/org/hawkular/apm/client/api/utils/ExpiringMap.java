@@ -0,0 +1,453 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class provides a bounded concurrent map whose entries expire after a fixed
+ * interval, used to hold state that would otherwise leak if the operation expected to
+ * remove it (e.g. an asynchronous callback) never happens.
+ *
+ * Expiry is managed using a timer wheel, where each entry is placed in the slot associated
+ * with its expiry tick. As time advances, only the slots for the elapsed ticks are
+ * inspected, so the cost of expiring entries does not depend on the size of the map.
+ * Each slot is a doubly linked list of its entries, so that entries removed or replaced
+ * in the map are unlinked from their slot immediately, rather than retaining their
+ * value until the slot is next inspected. When the maximum size is exceeded, the entries
+ * closest to expiring are evicted.
+ *
+ * The wheel is advanced when entries are added, and can also be advanced by calling
+ * {@link #expire()}, e.g. from a scheduled task. Only one thread advances the wheel at
+ * a time, other threads simply skip the expiry check. Lookups also check the expiry of
+ * the entry they find, so an expired value is never returned while the wheel is idle.
+ *
+ * @author gbrown
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ExpiringMap<K, V> {
+
+    private static final int TICKS_PER_INTERVAL = 64;
+
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final long expiryInterval;
+    private final long tickInterval;
+    private final int maxSize;
+    private final Slot<K, V>[] wheel;
+    private final int mask;
+
+    private final AtomicLong currentTick;
+    private final AtomicBoolean advancing = new AtomicBoolean();
+
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * This constructor initialises the expiry interval and maximum size of the map.
+     *
+     * @param expiryInterval The interval (in milliseconds) after which an entry expires
+     * @param maxSize The maximum number of entries
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringMap(long expiryInterval, int maxSize) {
+        if (expiryInterval <= 0) {
+            throw new IllegalArgumentException("Expiry interval must be greater than zero");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be greater than zero");
+        }
+        this.expiryInterval = expiryInterval;
+        this.tickInterval = Math.max(1, expiryInterval / TICKS_PER_INTERVAL);
+        this.maxSize = maxSize;
+
+        // The wheel must cover the expiry interval, so that entries are only inspected
+        // when they are due to expire
+        long ticks = expiryInterval / tickInterval + 2;
+        int slots = 1;
+        while (slots < ticks) {
+            slots <<= 1;
+        }
+        wheel = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new Slot<>();
+        }
+        mask = slots - 1;
+        currentTick = new AtomicLong(System.currentTimeMillis() / tickInterval);
+    }
+
+    /**
+     * @return The interval (in milliseconds) after which an entry expires
+     */
+    public long getExpiryInterval() {
+        return expiryInterval;
+    }
+
+    /**
+     * @return The interval (in milliseconds) at which the timer wheel advances
+     */
+    public long getTickInterval() {
+        return tickInterval;
+    }
+
+    /**
+     * @return The maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of entries that have expired
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return The number of entries that have been evicted, due to the map exceeding its maximum size
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of entries held in the timer wheel
+     */
+    int getWheelSize() {
+        int ret = 0;
+        for (int i = 0; i < wheel.length; i++) {
+            ret += wheel[i].size();
+        }
+        return ret;
+    }
+
+    /**
+     * This method returns the value associated with the key.
+     *
+     * @param key The key
+     * @return The value, or null if not found
+     */
+    public V get(K key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    /**
+     * This method returns the value associated with the key, if it has not
+     * expired at the supplied time.
+     *
+     * @param key The key
+     * @param now The current time (in milliseconds)
+     * @return The value, or null if not found
+     */
+    protected V get(K key, long now) {
+        Entry<K, V> entry = getEntry(key, now);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * This method determines whether a value is associated with the key.
+     *
+     * @param key The key
+     * @return Whether the key has a value
+     */
+    public boolean containsKey(K key) {
+        return getEntry(key, System.currentTimeMillis()) != null;
+    }
+
+    /**
+     * This method returns the entry associated with the key, removing it if it
+     * has expired but the wheel has not yet been advanced past its expiry tick.
+     *
+     * @param key The key
+     * @param now The current time (in milliseconds)
+     * @return The entry, or null if not found or expired
+     */
+    private Entry<K, V> getEntry(K key, long now) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null && entry.expiryTick <= now / tickInterval) {
+            if (entries.remove(key, entry)) {
+                unlink(entry);
+                expirations.increment();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * This method associates the value with the key, which will expire after
+     * the expiry interval.
+     *
+     * @param key The key
+     * @param value The value
+     * @return The previous value, or null if none
+     */
+    public V put(K key, V value) {
+        return put(key, value, System.currentTimeMillis());
+    }
+
+    /**
+     * This method associates the value with the key, which will expire after
+     * the expiry interval.
+     *
+     * @param key The key
+     * @param value The value
+     * @param now The current time (in milliseconds)
+     * @return The previous value, or null if none
+     */
+    protected V put(K key, V value, long now) {
+        expire(now);
+
+        Entry<K, V> entry = new Entry<>(key, value, (now + expiryInterval) / tickInterval + 1);
+        Entry<K, V> previous = entries.put(key, entry);
+        link(entry);
+
+        if (previous != null) {
+            unlink(previous);
+        } else if (entries.size() > maxSize) {
+            evict();
+        }
+        return previous == null ? null : previous.value;
+    }
+
+    /**
+     * This method removes the value associated with the key.
+     *
+     * @param key The key
+     * @return The removed value, or null if not found
+     */
+    public V remove(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        unlink(entry);
+        return entry.value;
+    }
+
+    /**
+     * This method removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+        for (int i = 0; i < wheel.length; i++) {
+            while (wheel[i].poll() != null) {
+                // Discard
+            }
+        }
+    }
+
+    /**
+     * This method removes the entries that have expired.
+     */
+    public void expire() {
+        expire(System.currentTimeMillis());
+    }
+
+    /**
+     * This method removes the entries that have expired at the supplied time.
+     *
+     * @param now The current time (in milliseconds)
+     */
+    protected void expire(long now) {
+        long target = now / tickInterval;
+        long tick = currentTick.get();
+
+        if (target <= tick || !advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            tick = currentTick.get();
+
+            // If more than a revolution has elapsed, each slot only needs to be inspected once
+            long end = Math.min(target, tick + wheel.length);
+            List<Entry<K, V>> pending = null;
+
+            for (long t = tick + 1; t <= end; t++) {
+                Slot<K, V> slot = wheel[(int) (t & mask)];
+                Entry<K, V> entry;
+                while ((entry = slot.poll()) != null) {
+                    if (entries.get(entry.key) != entry) {
+                        // Removed or replaced concurrently
+                        continue;
+                    }
+                    if (entry.expiryTick <= target) {
+                        if (entries.remove(entry.key, entry)) {
+                            expirations.increment();
+                        }
+                    } else {
+                        if (pending == null) {
+                            pending = new ArrayList<>();
+                        }
+                        pending.add(entry);
+                    }
+                }
+            }
+
+            if (pending != null) {
+                for (int i = 0; i < pending.size(); i++) {
+                    Entry<K, V> entry = pending.get(i);
+                    if (entries.get(entry.key) == entry) {
+                        link(entry);
+                    }
+                }
+            }
+
+            currentTick.set(target);
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    /**
+     * This method evicts the entry that is closest to expiring.
+     */
+    protected void evict() {
+        long tick = currentTick.get();
+        for (int i = 1; i <= wheel.length; i++) {
+            Slot<K, V> slot = wheel[(int) ((tick + i) & mask)];
+            Entry<K, V> entry;
+            while ((entry = slot.poll()) != null) {
+                if (entries.remove(entry.key, entry)) {
+                    evictions.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method links the entry into the slot for its expiry tick. As the entry
+     * is already visible in the map, a concurrent remove or replace may have found
+     * it without a slot and so skipped the unlink, therefore the entry is checked
+     * again once linked and unlinked if it is no longer current.
+     *
+     * @param entry The entry
+     */
+    private void link(Entry<K, V> entry) {
+        wheel[(int) (entry.expiryTick & mask)].add(entry);
+        if (entries.get(entry.key) != entry) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * This method unlinks the entry from its slot in the timer wheel, if it has
+     * not already been taken from the slot.
+     *
+     * @param entry The entry
+     */
+    private void unlink(Entry<K, V> entry) {
+        Slot<K, V> slot;
+        while ((slot = entry.slot) != null && !slot.remove(entry)) {
+            // Entry moved to another slot, so try again
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (Entry<K, V> entry : entries.values()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(entry.key).append('=').append(entry.value);
+        }
+        return builder.append('}').toString();
+    }
+
+    private static class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiryTick;
+
+        /** The slot containing the entry, with the links guarded by the slot */
+        private volatile Slot<K, V> slot;
+        private Entry<K, V> prev;
+        private Entry<K, V> next;
+
+        Entry(K key, V value, long expiryTick) {
+            this.key = key;
+            this.value = value;
+            this.expiryTick = expiryTick;
+        }
+    }
+
+    /**
+     * This class represents a slot in the timer wheel, as a circular doubly linked
+     * list of entries.
+     */
+    private static class Slot<K, V> {
+        private final Entry<K, V> head = new Entry<>(null, null, 0);
+        private int size;
+
+        Slot() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        synchronized void add(Entry<K, V> entry) {
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+            entry.slot = this;
+            size++;
+        }
+
+        synchronized boolean remove(Entry<K, V> entry) {
+            if (entry.slot != this) {
+                return false;
+            }
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            entry.slot = null;
+            size--;
+            return true;
+        }
+
+        synchronized Entry<K, V> poll() {
+            Entry<K, V> entry = head.next;
+            if (entry == head) {
+                return null;
+            }
+            remove(entry);
+            return entry;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
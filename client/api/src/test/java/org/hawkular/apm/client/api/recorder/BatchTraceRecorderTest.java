@@ -0,0 +1,317 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.recorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.PublisherMetricHandler;
+import org.hawkular.apm.api.services.TracePublisher;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.hawkular.apm.client.api.recorder.BatchTraceRecorder.BatchTraceRecorderBuilder;
+import org.hawkular.apm.client.api.recorder.BatchTraceRecorder.OverflowPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author gbrown
+ */
+public class BatchTraceRecorderTest {
+
+    private static final int NO_BATCH_TIME = 3600000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDropNewest() throws Exception {
+        TestTracePublisher publisher = new TestTracePublisher();
+        TestBatchTraceRecorder recorder = new TestBatchTraceRecorder(bufferedBuilder(publisher)
+                .withOverflowPolicy(OverflowPolicy.DropNewest));
+
+        for (int i = 0; i < 10; i++) {
+            recorder.record(trace(i));
+        }
+
+        assertEquals(8, recorder.getEnqueuedCount());
+        assertEquals(2, recorder.getDroppedCount());
+
+        recorder.flush();
+        waitFor(() -> recorder.getFlushedCount() == 8);
+
+        assertEquals(8, publisher.getTraces().size());
+        assertEquals("0", publisher.getTraces().get(0).getFragmentId());
+        assertEquals("7", publisher.getTraces().get(7).getFragmentId());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        TestTracePublisher publisher = new TestTracePublisher();
+        TestBatchTraceRecorder recorder = new TestBatchTraceRecorder(bufferedBuilder(publisher)
+                .withOverflowPolicy(OverflowPolicy.DropOldest));
+
+        for (int i = 0; i < 10; i++) {
+            recorder.record(trace(i));
+        }
+
+        assertEquals(10, recorder.getEnqueuedCount());
+        assertEquals(2, recorder.getDroppedCount());
+
+        recorder.flush();
+        waitFor(() -> recorder.getFlushedCount() == 8);
+
+        assertEquals(8, publisher.getTraces().size());
+        assertEquals("2", publisher.getTraces().get(0).getFragmentId());
+        assertEquals("9", publisher.getTraces().get(7).getFragmentId());
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        TestTracePublisher publisher = new TestTracePublisher();
+        TestBatchTraceRecorder recorder = new TestBatchTraceRecorder(bufferedBuilder(publisher)
+                .withOverflowPolicy(OverflowPolicy.Sample));
+
+        for (int i = 0; i < 100; i++) {
+            recorder.record(trace(i));
+        }
+
+        // Traces are always accepted until the buffer is half full, and never once it is full
+        assertTrue(recorder.getEnqueuedCount() >= 4);
+        assertTrue(recorder.getEnqueuedCount() <= 8);
+        assertEquals(100, recorder.getEnqueuedCount() + recorder.getDroppedCount());
+
+        recorder.flush();
+        waitFor(() -> recorder.getFlushedCount() == recorder.getEnqueuedCount());
+
+        assertEquals(recorder.getEnqueuedCount(), publisher.getTraces().size());
+    }
+
+    @Test
+    public void testOverflowPolicyProperty() {
+        try {
+            System.setProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY, "dropoldest");
+            assertEquals(OverflowPolicy.DropOldest, new BatchTraceRecorder().getOverflowPolicy());
+
+            System.setProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY, "Unknown");
+            assertEquals(OverflowPolicy.DropNewest, new BatchTraceRecorder().getOverflowPolicy());
+        } finally {
+            System.clearProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_OVERFLOWPOLICY);
+        }
+    }
+
+    @Test
+    public void testRejectedBatchSpilledAndReplayed() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        TestTracePublisher publisher = new TestTracePublisher();
+        publisher.setBlock(blocked);
+
+        BatchTraceRecorder recorder = new BatchTraceRecorderBuilder()
+                .withTracePublisher(publisher)
+                .withBatchSize(1)
+                .withBatchTime(100)
+                .withBatchPoolSize(1)
+                .withMaxInFlight(1)
+                .withSpillFile(folder.newFile().getAbsolutePath())
+                .withSpillSize(1)
+                .build();
+
+        // First batch is being published, second is queued, third is rejected and
+        // written to the spill journal by the scheduler thread
+        recorder.record(trace(0));
+        recorder.record(trace(1));
+        recorder.record(trace(2));
+
+        waitFor(() -> recorder.getSpilledCount() == 1);
+        assertEquals(1, recorder.getSpilledCount());
+        assertEquals(0, recorder.getDroppedCount());
+
+        blocked.countDown();
+
+        waitFor(() -> recorder.getReplayedCount() == 1);
+        assertEquals(2, recorder.getFlushedCount());
+        assertEquals(3, publisher.getTraces().size());
+    }
+
+    @Test
+    public void testFailedBatchReplayedAfterBackoff() throws Exception {
+        TestTracePublisher publisher = new TestTracePublisher();
+        publisher.setFailing(true);
+
+        BatchTraceRecorder recorder = new BatchTraceRecorderBuilder()
+                .withTracePublisher(publisher)
+                .withBatchSize(1)
+                .withBatchTime(50)
+                .withSpillFile(folder.newFile().getAbsolutePath())
+                .withSpillSize(1)
+                .build();
+
+        long start = System.currentTimeMillis();
+        recorder.record(trace(0));
+
+        waitFor(() -> recorder.getSpilledCount() == 1);
+
+        // The replay should not be attempted until the initial backoff has expired
+        Thread.sleep(500);
+        if (System.currentTimeMillis() - start < 1000) {
+            assertEquals(1, publisher.getAttempts());
+        }
+
+        publisher.setFailing(false);
+
+        waitFor(() -> recorder.getReplayedCount() == 1);
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(0, recorder.getFlushedCount());
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals("0", publisher.getTraces().get(0).getFragmentId());
+    }
+
+    @Test
+    public void testSpillSizeAboveIntRange() throws Exception {
+        TestTracePublisher publisher = new TestTracePublisher();
+        publisher.setFailing(true);
+
+        // The journal cannot be mapped, so undelivered traces are dropped, but the recorder is usable
+        BatchTraceRecorder recorder = new BatchTraceRecorderBuilder()
+                .withTracePublisher(publisher)
+                .withBatchSize(1)
+                .withBatchTime(NO_BATCH_TIME)
+                .withSpillFile(folder.newFile().getAbsolutePath())
+                .withSpillSize(4096)
+                .build();
+
+        recorder.record(trace(0));
+
+        waitFor(() -> recorder.getDroppedCount() == 1);
+        assertEquals(0, recorder.getSpilledCount());
+    }
+
+    private static BatchTraceRecorderBuilder bufferedBuilder(TracePublisher publisher) {
+        return new BatchTraceRecorderBuilder()
+                .withTracePublisher(publisher)
+                .withBufferSize(8)
+                .withBatchSize(8)
+                .withBatchTime(NO_BATCH_TIME);
+    }
+
+    private static Trace trace(int id) {
+        return new Trace().setFragmentId(Integer.toString(id));
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.isMet(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue("Condition not met", condition.isMet());
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * This recorder only drains its ring buffer when explicitly flushed, so that the
+     * overflow behaviour can be checked without racing the background drain.
+     */
+    private static class TestBatchTraceRecorder extends BatchTraceRecorder {
+
+        private volatile boolean draining = false;
+
+        TestBatchTraceRecorder(BatchTraceRecorderBuilder builder) {
+            super(builder);
+        }
+
+        void flush() {
+            draining = true;
+            drainBuffer();
+        }
+
+        @Override
+        protected void drainBuffer() {
+            if (draining) {
+                super.drainBuffer();
+            }
+        }
+    }
+
+    private static class TestTracePublisher implements TracePublisher {
+
+        private final List<Trace> traces = new CopyOnWriteArrayList<>();
+
+        private volatile boolean failing = false;
+
+        private volatile CountDownLatch block;
+
+        private volatile int attempts = 0;
+
+        List<Trace> getTraces() {
+            return new ArrayList<>(traces);
+        }
+
+        void setFailing(boolean failing) {
+            this.failing = failing;
+        }
+
+        void setBlock(CountDownLatch block) {
+            this.block = block;
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public int getInitialRetryCount() {
+            return 0;
+        }
+
+        @Override
+        public void publish(String tenantId, List<Trace> items) throws Exception {
+            attempts++;
+            CountDownLatch latch = block;
+            if (latch != null) {
+                latch.await();
+            }
+            if (failing) {
+                throw new Exception("Server unavailable");
+            }
+            traces.addAll(items);
+        }
+
+        @Override
+        public void publish(String tenantId, List<Trace> items, int retryCount, long delay) throws Exception {
+            publish(tenantId, items);
+        }
+
+        @Override
+        public void retry(String tenantId, List<Trace> items, String subscriber, int retryCount, long delay)
+                throws Exception {
+            publish(tenantId, items);
+        }
+
+        @Override
+        public void setMetricHandler(PublisherMetricHandler<Trace> handler) {
+        }
+    }
+}
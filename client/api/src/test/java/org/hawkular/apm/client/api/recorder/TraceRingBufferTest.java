@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.recorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class TraceRingBufferTest {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new TraceRingBuffer<String>(5).capacity());
+        assertEquals(8, new TraceRingBuffer<String>(8).capacity());
+    }
+
+    @Test
+    public void testOfferPollInOrder() {
+        TraceRingBuffer<String> buffer = new TraceRingBuffer<>(4);
+
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        assertEquals(2, buffer.size());
+
+        assertEquals("a", buffer.poll());
+        assertEquals("b", buffer.poll());
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testOfferWhenFull() {
+        TraceRingBuffer<String> buffer = new TraceRingBuffer<>(2);
+
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        assertFalse(buffer.offer("c"));
+
+        assertEquals("a", buffer.poll());
+        assertTrue(buffer.offer("c"));
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(drained, 10));
+        assertEquals("b", drained.get(0));
+        assertEquals("c", drained.get(1));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        TraceRingBuffer<Integer> buffer = new TraceRingBuffer<>(4096);
+        int numThreads = 4;
+        int perThread = 1000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final int base = i * perThread;
+            Thread t = new Thread(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    buffer.offer(base + j);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained, Integer.MAX_VALUE);
+
+        Set<Integer> unique = new HashSet<>(drained);
+        assertEquals(numThreads * perThread, drained.size());
+        assertEquals(numThreads * perThread, unique.size());
+    }
+}
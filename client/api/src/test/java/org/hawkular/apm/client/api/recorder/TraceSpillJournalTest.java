@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.recorder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author gbrown
+ */
+public class TraceSpillJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendPeekRemove() throws IOException {
+        TraceSpillJournal journal = new TraceSpillJournal(folder.newFile().toPath(), 1024);
+        assertTrue(journal.isEmpty());
+
+        assertTrue(journal.append("tenant1", new byte[] { 1, 2, 3 }));
+        assertTrue(journal.append(null, new byte[] { 4 }));
+
+        TraceSpillJournal.Entry entry = journal.peek();
+        assertEquals("tenant1", entry.getTenantId());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, entry.getPayload());
+        journal.remove(entry);
+
+        entry = journal.peek();
+        assertNull(entry.getTenantId());
+        assertArrayEquals(new byte[] { 4 }, entry.getPayload());
+        journal.remove(entry);
+
+        assertTrue(journal.isEmpty());
+        assertNull(journal.peek());
+    }
+
+    @Test
+    public void testReopenRetainsEntries() throws IOException {
+        Path path = folder.newFile().toPath();
+        TraceSpillJournal journal = new TraceSpillJournal(path, 1024);
+        journal.append("tenant1", new byte[] { 1 });
+        journal.append("tenant2", new byte[] { 2 });
+        journal.remove(journal.peek());
+
+        TraceSpillJournal reopened = new TraceSpillJournal(path, 1024);
+        TraceSpillJournal.Entry entry = reopened.peek();
+        assertEquals("tenant2", entry.getTenantId());
+        assertArrayEquals(new byte[] { 2 }, entry.getPayload());
+    }
+
+    @Test
+    public void testFullAndCompact() throws IOException {
+        // Header (16) plus room for two entries of 8 + 40 bytes
+        TraceSpillJournal journal = new TraceSpillJournal(folder.newFile().toPath(), 112);
+
+        assertTrue(journal.append(null, new byte[40]));
+        assertTrue(journal.append(null, new byte[40]));
+        assertFalse(journal.append(null, new byte[40]));
+
+        journal.remove(journal.peek());
+
+        byte[] payload = new byte[40];
+        payload[0] = 7;
+        assertTrue(journal.append(null, payload));
+        assertEquals(96, journal.getUsed());
+
+        journal.remove(journal.peek());
+        assertArrayEquals(payload, journal.peek().getPayload());
+    }
+
+    @Test
+    public void testCorruptEntryResetsJournal() throws IOException {
+        Path path = folder.newFile().toPath();
+        TraceSpillJournal journal = new TraceSpillJournal(path, 1024);
+        journal.append("tenant1", new byte[] { 1 });
+
+        // Overwrite the payload length of the entry, following the header and tenant id
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(16 + 4 + 7);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        TraceSpillJournal reopened = new TraceSpillJournal(path, 1024);
+        assertFalse(reopened.isEmpty());
+        assertNull(reopened.peek());
+        assertTrue(reopened.isEmpty());
+
+        assertTrue(reopened.append("tenant2", new byte[] { 2 }));
+        assertEquals("tenant2", reopened.peek().getTenantId());
+    }
+
+    @Test
+    public void testTruncatedEntryResetsJournal() throws IOException {
+        Path path = folder.newFile().toPath();
+        TraceSpillJournal journal = new TraceSpillJournal(path, 1024);
+        journal.append("tenant1", new byte[] { 1 });
+
+        // Move the write position back, as if the entry was only partially written
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(8);
+            file.writeLong(16 + 6);
+        }
+
+        TraceSpillJournal reopened = new TraceSpillJournal(path, 1024);
+        assertNull(reopened.peek());
+        assertTrue(reopened.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeAboveMappableLimit() throws IOException {
+        new TraceSpillJournal(folder.newFile().toPath(), 2048L * 1024 * 1024);
+    }
+}
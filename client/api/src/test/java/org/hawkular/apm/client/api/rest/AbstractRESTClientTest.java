@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author gbrown
+ */
+public class AbstractRESTClientTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<String> transferEncodings = new ArrayList<>();
+    private final List<byte[]> bodies = new ArrayList<>();
+
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/hawkular/apm/", exchange -> {
+            transferEncodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+            bodies.add(readAll(exchange.getRequestBody()));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPostAsJsonStreamsChunked() throws IOException {
+        AbstractRESTClient client = new AbstractRESTClient(null, null,
+                "http://localhost:" + server.getAddress().getPort());
+
+        List<Trace> traces = Arrays.asList(new Trace().setFragmentId("1"), new Trace().setFragmentId("2"));
+        assertEquals(200, client.postAsJsonTo(null, "traces/fragments", traces));
+
+        assertEquals("chunked", transferEncodings.get(0));
+
+        List<Trace> received = mapper.readValue(bodies.get(0), new TypeReference<List<Trace>>() {
+        });
+        assertEquals(2, received.size());
+        assertEquals("2", received.get(1).getFragmentId());
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ((len = is.read(buf)) != -1) {
+            baos.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+}
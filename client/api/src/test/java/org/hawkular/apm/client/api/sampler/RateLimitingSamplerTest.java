@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.sampler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.apm.api.model.config.CollectorConfiguration;
+import org.hawkular.apm.api.model.config.txn.ConfigMessage;
+import org.hawkular.apm.api.model.config.txn.TransactionConfig;
+import org.hawkular.apm.api.model.config.txn.TransactionSummary;
+import org.hawkular.apm.api.model.events.EndpointRef;
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.ConfigurationService;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class RateLimitingSamplerTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testBudgetPerEndpoint() {
+        RateLimitingSampler sampler = RateLimitingSampler.withRate(5);
+        long now = System.nanoTime();
+
+        assertEquals(5, sample(sampler, "/a", now, 100));
+        assertEquals(5, sample(sampler, "/b", now, 100));
+        assertEquals(0, sample(sampler, "/a", now, 100));
+    }
+
+    @Test
+    public void testBudgetRefills() {
+        RateLimitingSampler sampler = RateLimitingSampler.withRate(5);
+        long now = System.nanoTime();
+
+        assertEquals(5, sample(sampler, "/a", now, 10));
+        assertFalse(sampler.isSampled("/a", now + SECOND / 10));
+        assertTrue(sampler.isSampled("/a", now + SECOND / 5));
+    }
+
+    @Test
+    public void testZeroRate() {
+        RateLimitingSampler sampler = RateLimitingSampler.withRate(0);
+        assertEquals(0, sample(sampler, "/a", System.nanoTime(), 10));
+    }
+
+    @Test
+    public void testProbabilityAdaptsToThroughput() {
+        RateLimitingSampler sampler = RateLimitingSampler.withRate(10);
+        long now = System.nanoTime();
+
+        int sampled = 0;
+        for (int second = 0; second < 5; second++) {
+            // 1000 traces spread evenly across each second
+            for (int i = 0; i < 1000; i++) {
+                if (sampler.isSampled("/a", now + second * SECOND + i * (SECOND / 1000))) {
+                    sampled++;
+                }
+            }
+        }
+
+        assertEquals(0.01, sampler.getProbability("/a"), 0.005);
+        assertTrue("Sampled " + sampled, sampled <= 60);
+        assertEquals(1.0, sampler.getProbability("/b"), 0.0);
+    }
+
+    @Test
+    public void testConfiguredBudgets() {
+        CollectorConfiguration config = new CollectorConfiguration();
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE, "2");
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE + ":txn1", "4");
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE + ":/orders[GET]", "0");
+
+        RateLimitingSampler sampler = RateLimitingSampler.withConfiguration(config);
+        long now = System.nanoTime();
+
+        assertEquals(2, sample(sampler, "/other", now, 10));
+        assertEquals(4, sample(sampler, "txn1", now, 10));
+        assertEquals(0, sample(sampler, "/orders[GET]", now, 10));
+
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE + ":/orders[GET]", "3");
+        sampler.configure(config);
+
+        assertEquals(3, sample(sampler, "/orders[GET]", now, 10));
+    }
+
+    @Test
+    public void testConfigurationServiceRefresh() {
+        TestConfigurationService configService = new TestConfigurationService();
+        configService.config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE, "2");
+
+        RateLimitingSampler sampler = RateLimitingSampler.withConfigurationService(configService, null);
+        long now = System.nanoTime();
+
+        assertEquals(2, sample(sampler, "/a", now, 10));
+
+        configService.config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE, "5");
+        sampler.refresh(configService);
+
+        assertEquals(5, sample(sampler, "/b", now, 10));
+
+        // Budgets retained if the configuration is not available
+        configService.config = null;
+        sampler.refresh(configService);
+
+        assertEquals(5, sample(sampler, "/c", now, 10));
+    }
+
+    @Test
+    public void testNoConfigurationService() {
+        RateLimitingSampler sampler = RateLimitingSampler.withConfigurationService(null, null);
+        assertEquals(RateLimitingSampler.DEFAULT_RATE, sample(sampler, "/a", System.nanoTime(), 100));
+    }
+
+    @Test
+    public void testSamplerProperty() {
+        try {
+            assertSame(Sampler.ALWAYS_SAMPLE, Sampler.fromEnvProperties());
+
+            System.setProperty(PropertyUtil.HAWKULAR_APM_SAMPLER, "RateLimiting");
+            assertTrue(Sampler.fromEnvProperties() instanceof RateLimitingSampler);
+
+            System.setProperty(PropertyUtil.HAWKULAR_APM_SAMPLER, "unknown");
+            assertSame(Sampler.ALWAYS_SAMPLE, Sampler.fromEnvProperties());
+        } finally {
+            System.clearProperty(PropertyUtil.HAWKULAR_APM_SAMPLER);
+        }
+    }
+
+    @Test
+    public void testMaxEndpoints() {
+        CollectorConfiguration config = new CollectorConfiguration();
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE, "1");
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_MAXENDPOINTS, "1");
+
+        RateLimitingSampler sampler = RateLimitingSampler.withConfiguration(config);
+        long now = System.nanoTime();
+
+        assertTrue(sampler.isSampled("/a", now));
+        // Remaining endpoints share the overflow budget
+        assertTrue(sampler.isSampled("/b", now));
+        assertFalse(sampler.isSampled("/c", now));
+    }
+
+    @Test
+    public void testGetKey() {
+        Trace trace = new Trace();
+        assertEquals("", RateLimitingSampler.getKey(trace, null));
+        assertEquals("/orders[GET]", RateLimitingSampler.getKey(trace, new EndpointRef("/orders", "GET", false)));
+
+        Consumer consumer = new Consumer();
+        consumer.setUri("/root");
+        trace.getNodes().add(consumer);
+        assertEquals("/root", RateLimitingSampler.getKey(trace, null));
+
+        trace.setTransaction("txn1");
+        assertEquals("txn1", RateLimitingSampler.getKey(trace, new EndpointRef("/orders", "GET", false)));
+    }
+
+    private static int sample(RateLimitingSampler sampler, String key, long now, int count) {
+        int sampled = 0;
+        for (int i = 0; i < count; i++) {
+            if (sampler.isSampled(key, now)) {
+                sampled++;
+            }
+        }
+        return sampled;
+    }
+
+    private static class TestConfigurationService implements ConfigurationService {
+        private CollectorConfiguration config = new CollectorConfiguration();
+
+        @Override
+        public CollectorConfiguration getCollector(String tenantId, String type, String host, String server) {
+            return config;
+        }
+
+        @Override
+        public List<ConfigMessage> setTransaction(String tenantId, String name, TransactionConfig config) {
+            return null;
+        }
+
+        @Override
+        public List<ConfigMessage> setTransactions(String tenantId, Map<String, TransactionConfig> configs) {
+            return null;
+        }
+
+        @Override
+        public List<ConfigMessage> validateTransaction(TransactionConfig config) {
+            return null;
+        }
+
+        @Override
+        public TransactionConfig getTransaction(String tenantId, String name) {
+            return null;
+        }
+
+        @Override
+        public Map<String, TransactionConfig> getTransactions(String tenantId, long updated) {
+            return null;
+        }
+
+        @Override
+        public List<TransactionSummary> getTransactionSummaries(String tenantId) {
+            return null;
+        }
+
+        @Override
+        public void removeTransaction(String tenantId, String name) {
+        }
+
+        @Override
+        public void clear(String tenantId) {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.api.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class ExpiringMapTest {
+
+    private static final long NOW = System.currentTimeMillis();
+
+    @Test
+    public void testExpire() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        map.put("a", "1", NOW);
+        map.put("b", "2", NOW + 500);
+
+        map.expire(NOW + 900);
+        assertEquals("1", map.get("a"));
+        assertEquals(2, map.size());
+
+        map.expire(NOW + 1100);
+        assertNull(map.get("a"));
+        assertEquals("2", map.get("b"));
+
+        map.expire(NOW + 1600);
+        assertFalse(map.containsKey("b"));
+        assertEquals(0, map.size());
+        assertEquals(2, map.getExpirations());
+        assertEquals(0, map.getEvictions());
+    }
+
+    @Test
+    public void testGetDoesNotReturnExpiredEntry() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        map.put("a", "1", NOW);
+        assertEquals("1", map.get("a", NOW + 900));
+
+        // Wheel has not been advanced, but the entry has expired
+        assertNull(map.get("a", NOW + 1100));
+        assertEquals(0, map.size());
+        assertEquals(0, map.getWheelSize());
+        assertEquals(1, map.getExpirations());
+    }
+
+    @Test
+    public void testRemoveBeforeExpire() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        map.put("a", "1", NOW);
+        assertEquals("1", map.remove("a"));
+
+        map.expire(NOW + 2000);
+        assertEquals(0, map.getExpirations());
+    }
+
+    @Test
+    public void testReplaceRestartsExpiry() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        map.put("a", "1", NOW);
+        assertEquals("1", map.put("a", "2", NOW + 800));
+
+        map.expire(NOW + 1100);
+        assertEquals("2", map.get("a"));
+
+        map.expire(NOW + 1900);
+        assertNull(map.get("a"));
+        assertEquals(1, map.getExpirations());
+    }
+
+    @Test
+    public void testEvictOldestWhenFull() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 2);
+
+        map.put("a", "1", NOW);
+        map.put("b", "2", NOW + 100);
+        map.put("c", "3", NOW + 200);
+
+        assertEquals(2, map.size());
+        assertFalse(map.containsKey("a"));
+        assertTrue(map.containsKey("b"));
+        assertTrue(map.containsKey("c"));
+        assertEquals(1, map.getEvictions());
+    }
+
+    @Test
+    public void testWheelDoesNotGrowWithRemoveChurn() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        for (int i = 0; i < 10000; i++) {
+            map.put("key" + i, "value", NOW);
+            assertEquals("value", map.remove("key" + i));
+        }
+
+        assertEquals(0, map.size());
+        assertEquals(0, map.getWheelSize());
+    }
+
+    @Test
+    public void testWheelDoesNotGrowWithReplaceChurn() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        for (int i = 0; i < 10000; i++) {
+            map.put("key" + (i % 10), "value" + i, NOW + i / 100);
+        }
+
+        assertEquals(10, map.size());
+        assertEquals(10, map.getWheelSize());
+
+        map.expire(NOW + 3600000);
+        assertEquals(0, map.size());
+        assertEquals(0, map.getWheelSize());
+        assertEquals(10, map.getExpirations());
+    }
+
+    @Test
+    public void testExpireAfterLongIdlePeriod() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1000, 100);
+
+        for (int i = 0; i < 50; i++) {
+            map.put("key" + i, "value", NOW + i * 10);
+        }
+
+        map.expire(NOW + 3600000);
+        assertEquals(0, map.size());
+        assertEquals(50, map.getExpirations());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.collector.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.hawkular.apm.api.utils.PropertyUtil;
+
+/**
+ * This class provides a size limited buffer used to capture request and response
+ * content. Buffers are pooled per thread, so that content can be captured for each
+ * node without allocating a new buffer, and the captured bytes are exposed as a
+ * {@link ByteBuffer} view rather than being copied.
+ *
+ * Content beyond the limit is discarded and the buffer marked as truncated.
+ *
+ * @author gbrown
+ */
+public class ContentBuffer {
+
+    /** The default maximum content size, in bytes */
+    private static final int DEFAULT_LIMIT = 4 * 1024 * 1024;
+
+    /** The initial capacity of a new buffer */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Buffers that have grown beyond this capacity are not returned to the pool */
+    private static final int MAX_POOLED_CAPACITY = 256 * 1024;
+
+    private static final int LIMIT = PropertyUtil.getPropertyAsInteger(
+            PropertyUtil.HAWKULAR_APM_COLLECTOR_CONTENTLIMIT, DEFAULT_LIMIT);
+
+    private static final ThreadLocal<ContentBuffer> pool = new ThreadLocal<>();
+
+    private final int limit;
+    private byte[] buf;
+    private int count;
+    private boolean truncated;
+
+    /**
+     * This constructor initialises the buffer with the content limit.
+     *
+     * @param limit The maximum number of bytes retained
+     */
+    protected ContentBuffer(int limit) {
+        this.limit = limit;
+        this.buf = new byte[Math.min(INITIAL_CAPACITY, limit)];
+    }
+
+    /**
+     * This method obtains an empty buffer, reusing the current thread's pooled
+     * buffer if available. The buffer should be returned using {@link #release()}.
+     *
+     * @return The buffer
+     */
+    public static ContentBuffer acquire() {
+        ContentBuffer ret = pool.get();
+        if (ret == null) {
+            return new ContentBuffer(LIMIT);
+        }
+        pool.set(null);
+        return ret;
+    }
+
+    /**
+     * This method returns the buffer to the current thread's pool. The buffer
+     * and any view obtained from it must not be used after it has been released.
+     */
+    public void release() {
+        count = 0;
+        truncated = false;
+        if (buf.length <= MAX_POOLED_CAPACITY && pool.get() == null) {
+            pool.set(this);
+        }
+    }
+
+    /**
+     * This method appends the supplied data, discarding any bytes beyond the limit.
+     *
+     * @param b The bytes
+     * @param offset The offset
+     * @param len The length
+     */
+    public void write(byte[] b, int offset, int len) {
+        int available = limit - count;
+        if (len > available) {
+            truncated = true;
+            len = available;
+        }
+        if (len <= 0) {
+            return;
+        }
+        if (count + len > buf.length) {
+            buf = Arrays.copyOf(buf, Math.min(limit, Math.max(buf.length << 1, count + len)));
+        }
+        System.arraycopy(b, offset, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * @return The number of bytes captured
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return Whether content was discarded because it exceeded the limit
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * This method returns a view of the captured bytes, which is only
+     * valid until the buffer is released.
+     *
+     * @return The captured content
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    /**
+     * @return A copy of the captured bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+}
@@ -18,9 +18,8 @@ package org.hawkular.apm.client.collector.internal;
 
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -45,8 +44,10 @@ import org.hawkular.apm.api.model.trace.Trace;
 import org.hawkular.apm.api.services.ConfigurationService;
 import org.hawkular.apm.api.services.ServiceResolver;
 import org.hawkular.apm.api.utils.EndpointUtil;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.api.utils.PropertyUtil;
 import org.hawkular.apm.client.api.recorder.BatchTraceRecorder;
+import org.hawkular.apm.client.api.utils.ExpiringMap;
 import org.hawkular.apm.client.collector.SessionManager;
 import org.hawkular.apm.client.collector.TraceCollector;
 
@@ -60,6 +61,12 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
     /** The number of seconds to wait before trying again to retrieve the collector config */
     private static final int DEFAULT_CONFIG_RETRY_INTERVAL = 10;
 
+    /** The number of milliseconds after which an uncompleted correlation is discarded */
+    private static final int DEFAULT_CORRELATION_EXPIRY = 300000;
+
+    /** The maximum number of uncompleted correlations */
+    private static final int DEFAULT_CORRELATION_MAXSIZE = 10000;
+
     private FragmentManager fragmentManager = new FragmentManager();
 
     private FilterManager filterManager;
@@ -70,7 +77,21 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
 
     private BatchTraceRecorder recorder;
 
-    private Map<String, FragmentBuilder> correlations = new ConcurrentHashMap<String, FragmentBuilder>();
+    private ExpiringMap<String, FragmentBuilder> correlations = new ExpiringMap<String, FragmentBuilder>(
+            PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_COLLECTOR_CORRELATION_EXPIRY,
+                    DEFAULT_CORRELATION_EXPIRY),
+            PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_COLLECTOR_CORRELATION_MAXSIZE,
+                    DEFAULT_CORRELATION_MAXSIZE));
+
+    /** Shared by all collectors, to expire their uncompleted correlations */
+    private static final ScheduledExecutorService correlationExpiryScheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = Executors.defaultThreadFactory().newThread(r);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
     private static final Level warningLogLevel = Level.WARNING;
 
@@ -87,6 +108,7 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
 
     {
         setConfigurationService(ServiceResolver.getSingletonService(ConfigurationService.class));
+        initCorrelationExpiry();
     }
 
     public DefaultTraceCollector() {
@@ -150,6 +172,21 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
         }
     }
 
+    /**
+     * This method schedules the expiry of uncompleted correlations, so that they are
+     * released even when no further correlations are added.
+     */
+    protected void initCorrelationExpiry() {
+        final ExpiringMap<String, FragmentBuilder> map = correlations;
+
+        correlationExpiryScheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                map.expire();
+            }
+        }, map.getTickInterval(), map.getTickInterval(), TimeUnit.MILLISECONDS);
+    }
+
     /**
      * This method initialises the refresh cycle.
      */
@@ -178,26 +215,21 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
                         for (Map.Entry<String, TransactionConfig> stringBusinessTxnConfigEntry : changed.entrySet()) {
                             TransactionConfig btc = stringBusinessTxnConfigEntry.getValue();
 
-                            if (btc.isDeleted()) {
-                                if (log.isLoggable(Level.FINER)) {
-                                    log.finer("Removing config for btxn '" + stringBusinessTxnConfigEntry.getKey() + "' = " + btc);
-                                }
-
-                                filterManager.remove(stringBusinessTxnConfigEntry.getKey());
-                                processorManager.remove(stringBusinessTxnConfigEntry.getKey());
-                            } else {
-                                if (log.isLoggable(Level.FINER)) {
-                                    log.finer("Changed config for btxn '" + stringBusinessTxnConfigEntry.getKey() + "' = " + btc);
-                                }
-
-                                filterManager.init(stringBusinessTxnConfigEntry.getKey(), btc);
-                                processorManager.init(stringBusinessTxnConfigEntry.getKey(), btc);
+                            if (log.isLoggable(Level.FINER)) {
+                                log.finer((btc.isDeleted() ? "Removing" : "Changed") + " config for btxn '"
+                                        + stringBusinessTxnConfigEntry.getKey() + "' = " + btc);
                             }
 
                             if (btc.getLastUpdated() > configLastUpdated) {
                                 configLastUpdated = btc.getLastUpdated();
                             }
                         }
+
+                        // Publish a single new snapshot of the filters and processors for all changes
+                        filterManager.update(changed);
+                        if (processorManager != null) {
+                            processorManager.update(changed);
+                        }
                     } catch (Exception e) {
                         log.log(Level.SEVERE, "Failed to update transaction configuration", e);
                     }
@@ -893,7 +925,20 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
      */
     protected void processInContent(String location, FragmentBuilder builder, int hashCode) {
         if (builder.isInBufferActive(hashCode)) {
-            processIn(location, null, builder.getInData(hashCode));
+            ContentBuffer content = builder.takeInBuffer(hashCode);
+            try {
+                if (content.isTruncated()) {
+                    // Partial content cannot be reliably processed
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("processInContent: location=[" + location + "] hashCode=" + hashCode
+                                + " content exceeded limit of " + content.size() + " bytes, so not processed");
+                    }
+                } else {
+                    processIn(location, null, content.asByteBuffer());
+                }
+            } finally {
+                content.release();
+            }
         } else if (log.isLoggable(Level.FINEST)) {
             log.finest("processInContent: location=[" + location + "] hashCode=" + hashCode
                     + " in buffer is not active");
@@ -1001,7 +1046,20 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
      */
     protected void processOutContent(String location, FragmentBuilder builder, int hashCode) {
         if (builder.isOutBufferActive(hashCode)) {
-            processOut(location, null, builder.getOutData(hashCode));
+            ContentBuffer content = builder.takeOutBuffer(hashCode);
+            try {
+                if (content.isTruncated()) {
+                    // Partial content cannot be reliably processed
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("processOutContent: location=[" + location + "] hashCode=" + hashCode
+                                + " content exceeded limit of " + content.size() + " bytes, so not processed");
+                    }
+                } else {
+                    processOut(location, null, content.asByteBuffer());
+                }
+            } finally {
+                content.release();
+            }
         } else if (log.isLoggable(Level.FINEST)) {
             log.finest("processOutContent: location=[" + location + "] hashCode=" + hashCode
                     + " out buffer is not active");
@@ -1505,7 +1563,7 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
     protected void spawnFragment(FragmentBuilder parentBuilder, Node node, int position,
                             FragmentBuilder spawnedBuilder) {
         Trace trace = parentBuilder.getTrace();
-        String id = UUID.randomUUID().toString();
+        String id = IdUtil.createId();
         String location = null;
         String uri = null;
         String operation = null;
@@ -1691,6 +1749,17 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
         return fragmentManager;
     }
 
+    /**
+     * This method sets the context with which the fragment builders are associated,
+     * e.g. a {@link ScopedFragmentContext} for applications that process a request
+     * across multiple threads. This must be set before the collector is used.
+     *
+     * @param context The fragment context
+     */
+    public void setFragmentContext(FragmentContext context) {
+        fragmentManager = new FragmentManager(context);
+    }
+
     /**
      * This method reports diagnostic information to the log.
      */
@@ -1699,7 +1768,8 @@ public class DefaultTraceCollector implements TraceCollector, SessionManager {
             log.finest(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>");
             log.finest("COLLECTOR DIAGNOSTICS:");
             fragmentManager.diagnostics();
-            log.finest("Correlation (" + correlations.size() + "): " + correlations);
+            log.finest("Correlation (" + correlations.size() + ", expired=" + correlations.getExpirations()
+                    + ", evicted=" + correlations.getEvictions() + "): " + correlations);
             log.finest("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
         }
     }
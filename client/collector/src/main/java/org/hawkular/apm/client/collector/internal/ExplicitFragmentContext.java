@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.collector.internal;
+
+/**
+ * This class provides an explicit fragment context, that can be created for a unit of
+ * work (e.g. a request) and carried with it across the threads used to process it. The
+ * context is made current using a {@link ScopedFragmentContext}.
+ *
+ * @author gbrown
+ */
+public class ExplicitFragmentContext implements FragmentContext {
+
+    private volatile FragmentBuilder builder;
+
+    @Override
+    public FragmentBuilder getFragmentBuilder() {
+        return builder;
+    }
+
+    @Override
+    public void setFragmentBuilder(FragmentBuilder builder) {
+        this.builder = builder;
+    }
+
+}
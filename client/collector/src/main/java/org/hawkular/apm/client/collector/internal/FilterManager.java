@@ -17,6 +17,7 @@
 package org.hawkular.apm.client.collector.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,7 @@ import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
 import org.hawkular.apm.api.model.config.CollectorConfiguration;
 import org.hawkular.apm.api.model.config.txn.TransactionConfig;
+import org.hawkular.apm.api.utils.PropertyUtil;
 
 /**
  * This class manages the filtering of URIs.
@@ -35,12 +37,20 @@ public class FilterManager {
 
     private static final Logger log = Logger.getLogger(FilterManager.class.getName());
 
-    private Map<String, FilterProcessor> filterMap = new HashMap<String, FilterProcessor>();
-    private List<FilterProcessor> globalExclusionFilters = new ArrayList<FilterProcessor>();
-    private List<FilterProcessor> btxnFilters = new ArrayList<FilterProcessor>();
+    /**
+     * Immutable snapshot of the filters. The snapshot is replaced, under the
+     * manager's lock, when the configuration changes, so that application
+     * threads can read it without locking.
+     */
+    private volatile Filters filters = new Filters(Collections.emptyMap(),
+            Collections.emptyList(), Collections.emptyList(), 0);
 
     private boolean onlyNamedTransactions = false;
 
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
     private static final FilterProcessor unnamedBTxn = new FilterProcessor();
 
     /**
@@ -58,10 +68,10 @@ public class FilterManager {
      * @param config The configuration
      */
     protected void init(CollectorConfiguration config) {
-        for (String btxn : config.getTransactions().keySet()) {
-            TransactionConfig btc = config.getTransactions().get(btxn);
-            init(btxn, btc);
-        }
+        cacheSize = Integer.parseInt(config.getProperty(PropertyUtil.HAWKULAR_APM_COLLECTOR_FILTERCACHESIZE,
+                Integer.toString(DEFAULT_CACHE_SIZE)));
+
+        update(config.getTransactions());
 
         onlyNamedTransactions = new Boolean(config.getProperty(
                 "HAWKULAR_APM_COLLECTOR_ONLYNAMED", Boolean.FALSE.toString()));
@@ -75,32 +85,7 @@ public class FilterManager {
      * @param btc The configuration
      */
     public void init(String txn, TransactionConfig btc) {
-        FilterProcessor fp = null;
-
-        if (btc.getFilter() != null) {
-            fp = new FilterProcessor(txn, btc);
-        }
-
-        synchronized (filterMap) {
-            // Check if old filter processor needs to be removed
-            FilterProcessor oldfp = filterMap.get(txn);
-            if (oldfp != null) {
-                globalExclusionFilters.remove(oldfp);
-                btxnFilters.remove(oldfp);
-            }
-
-            if (fp != null) {
-                // Add new filter processor
-                filterMap.put(txn, fp);
-                if (fp.isIncludeAll()) {
-                    globalExclusionFilters.add(fp);
-                } else {
-                    btxnFilters.add(fp);
-                }
-            } else {
-                filterMap.remove(txn);
-            }
-        }
+        update(Collections.singletonMap(txn, btc));
     }
 
     /**
@@ -109,13 +94,50 @@ public class FilterManager {
      * @param txn The name of the transaction
      */
     public void remove(String txn) {
-        synchronized (filterMap) {
-            // Check if old filter processor needs to be removed
-            FilterProcessor oldfp = filterMap.get(txn);
-            if (oldfp != null) {
-                globalExclusionFilters.remove(oldfp);
-                btxnFilters.remove(oldfp);
+        update(Collections.singletonMap(txn, null));
+    }
+
+    /**
+     * This method applies the supplied transaction configuration changes,
+     * publishing a single new snapshot of the filters. Deleted (or null)
+     * transaction configurations are removed.
+     *
+     * @param changed The changed transaction configurations, keyed by name
+     */
+    public void update(Map<String, TransactionConfig> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            Map<String, FilterProcessor> filterMap = new HashMap<>(filters.filterMap);
+            List<FilterProcessor> globalExclusionFilters = new ArrayList<>(filters.globalExclusionFilters);
+            List<FilterProcessor> btxnFilters = new ArrayList<>(filters.btxnFilters);
+
+            for (Map.Entry<String, TransactionConfig> entry : changed.entrySet()) {
+                String txn = entry.getKey();
+                TransactionConfig btc = entry.getValue();
+
+                // Check if old filter processor needs to be removed
+                FilterProcessor oldfp = filterMap.remove(txn);
+                if (oldfp != null) {
+                    globalExclusionFilters.remove(oldfp);
+                    btxnFilters.remove(oldfp);
+                }
+
+                if (btc != null && !btc.isDeleted() && btc.getFilter() != null) {
+                    // Add new filter processor
+                    FilterProcessor fp = new FilterProcessor(txn, btc);
+                    filterMap.put(txn, fp);
+                    if (fp.isIncludeAll()) {
+                        globalExclusionFilters.add(fp);
+                    } else {
+                        btxnFilters.add(fp);
+                    }
+                }
             }
+
+            filters = new Filters(filterMap, globalExclusionFilters, btxnFilters, cacheSize);
         }
     }
 
@@ -129,39 +151,19 @@ public class FilterManager {
      *                  or null if endpoint should be excluded
      */
     public FilterProcessor getFilterProcessor(String endpoint) {
-        FilterProcessor ret = (onlyNamedTransactions ? null : unnamedBTxn);
-
-        synchronized (filterMap) {
-            // First check if a global exclusion filter applies
-            for (int i = 0; i < globalExclusionFilters.size(); i++) {
-                if (globalExclusionFilters.get(i).isExcluded(endpoint)) {
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.finest("Excluding endpoint=" + endpoint);
-                    }
-                    return null;
-                }
-            }
-
-            // Check if transaction specific applies
-            for (int i = 0; i < btxnFilters.size(); i++) {
-                if (btxnFilters.get(i).isIncluded(endpoint)) {
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.finest("Endpoint has passed inclusion filter: endpoint=" + endpoint);
-                    }
-                    if (btxnFilters.get(i).isExcluded(endpoint)) {
-                        if (log.isLoggable(Level.FINEST)) {
-                            log.finest("Endpoint has failed exclusion filter: endpoint=" + endpoint);
-                        }
-                        return null;
-                    }
-                    ret = btxnFilters.get(i);
+        FilterProcessor ret = filters.matcher.match(endpoint);
 
-                    if (log.isLoggable(Level.FINEST)) {
-                        log.finest("Endpoint belongs to transaction '" + ret + ": endpoint=" + endpoint);
-                    }
-                    break;
-                }
+        if (ret == FilterMatcher.EXCLUDED) {
+            if (log.isLoggable(Level.FINEST)) {
+                log.finest("Excluding endpoint=" + endpoint);
             }
+            return null;
+        } else if (ret == FilterMatcher.NO_TRANSACTION) {
+            return (onlyNamedTransactions ? null : unnamedBTxn);
+        }
+
+        if (log.isLoggable(Level.FINEST)) {
+            log.finest("Endpoint belongs to transaction '" + ret + ": endpoint=" + endpoint);
         }
 
         return ret;
@@ -171,42 +173,40 @@ public class FilterManager {
      * @return the filterMap
      */
     protected Map<String, FilterProcessor> getFilterMap() {
-        return filterMap;
-    }
-
-    /**
-     * @param filterMap the filterMap to set
-     */
-    protected void setFilterMap(Map<String, FilterProcessor> filterMap) {
-        this.filterMap = filterMap;
+        return filters.filterMap;
     }
 
     /**
      * @return the globalExclusionFilters
      */
     protected List<FilterProcessor> getGlobalExclusionFilters() {
-        return globalExclusionFilters;
-    }
-
-    /**
-     * @param globalExclusionFilters the globalExclusionFilters to set
-     */
-    protected void setGlobalExclusionFilters(List<FilterProcessor> globalExclusionFilters) {
-        this.globalExclusionFilters = globalExclusionFilters;
+        return filters.globalExclusionFilters;
     }
 
     /**
      * @return the btxnFilters
      */
     protected List<FilterProcessor> getBtxnFilters() {
-        return btxnFilters;
+        return filters.btxnFilters;
     }
 
     /**
-     * @param btxnFilters the btxnFilters to set
+     * This class represents an immutable snapshot of the filters.
      */
-    protected void setBtxnFilters(List<FilterProcessor> btxnFilters) {
-        this.btxnFilters = btxnFilters;
+    private static class Filters {
+
+        private final Map<String, FilterProcessor> filterMap;
+        private final List<FilterProcessor> globalExclusionFilters;
+        private final List<FilterProcessor> btxnFilters;
+        private final FilterMatcher matcher;
+
+        Filters(Map<String, FilterProcessor> filterMap, List<FilterProcessor> globalExclusionFilters,
+                List<FilterProcessor> btxnFilters, int cacheSize) {
+            this.filterMap = Collections.unmodifiableMap(filterMap);
+            this.globalExclusionFilters = Collections.unmodifiableList(globalExclusionFilters);
+            this.btxnFilters = Collections.unmodifiableList(btxnFilters);
+            this.matcher = new FilterMatcher(this.globalExclusionFilters, this.btxnFilters, cacheSize);
+        }
     }
 
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.collector.internal;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class provides a compiled form of the transaction filters, used to
+ * determine the transaction (if any) associated with an endpoint.
+ *
+ * The inclusion filters that are anchored to a literal prefix are indexed in
+ * a prefix trie, so a single pass over the endpoint identifies the candidate
+ * transactions, which are then checked in their configured order. Filters that
+ * cannot be indexed are always candidates. Recent decisions are held in a
+ * bounded LRU cache, which is discarded along with the matcher when the
+ * configuration changes.
+ *
+ * @author gbrown
+ */
+class FilterMatcher {
+
+    /** Result representing an excluded endpoint */
+    static final FilterProcessor EXCLUDED = new FilterProcessor();
+
+    /** Result representing an endpoint that does not belong to a named transaction */
+    static final FilterProcessor NO_TRANSACTION = new FilterProcessor();
+
+    private static final int CACHE_SEGMENTS = 16;
+
+    private final List<FilterProcessor> globalExclusionFilters;
+    private final List<FilterProcessor> btxnFilters;
+
+    private final TrieNode root = new TrieNode();
+    private final BitSet unindexed = new BitSet();
+
+    private final Map<String, FilterProcessor>[] cache;
+
+    /**
+     * This constructor compiles the supplied filters.
+     *
+     * @param globalExclusionFilters The filters that apply to all endpoints
+     * @param btxnFilters The transaction specific filters, in priority order
+     * @param cacheSize The maximum number of cached decisions, or zero to disable
+     */
+    @SuppressWarnings("unchecked")
+    FilterMatcher(List<FilterProcessor> globalExclusionFilters, List<FilterProcessor> btxnFilters,
+            int cacheSize) {
+        this.globalExclusionFilters = globalExclusionFilters;
+        this.btxnFilters = btxnFilters;
+
+        for (int i = 0; i < btxnFilters.size(); i++) {
+            List<String> prefixes = btxnFilters.get(i).getInclusionPrefixes();
+            if (prefixes == null) {
+                unindexed.set(i);
+            } else {
+                for (int j = 0; j < prefixes.size(); j++) {
+                    root.add(prefixes.get(j), i);
+                }
+            }
+        }
+
+        if (cacheSize > 0) {
+            // Segmented, so that concurrent requests rarely contend for the same lock
+            int segmentSize = Math.max(1, cacheSize / CACHE_SEGMENTS);
+            cache = new Map[CACHE_SEGMENTS];
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = new LinkedHashMap<String, FilterProcessor>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, FilterProcessor> eldest) {
+                        return size() > segmentSize;
+                    }
+                };
+            }
+        } else {
+            cache = null;
+        }
+    }
+
+    /**
+     * This method determines the filter processor for the supplied endpoint.
+     *
+     * @param endpoint The endpoint
+     * @return The filter processor for the endpoint's transaction, {@link #NO_TRANSACTION}
+     *              if it does not belong to a transaction, or {@link #EXCLUDED}
+     */
+    FilterProcessor match(String endpoint) {
+        if (cache == null) {
+            return evaluate(endpoint);
+        }
+
+        Map<String, FilterProcessor> segment = cache[(endpoint.hashCode() & 0x7FFFFFFF) % CACHE_SEGMENTS];
+        FilterProcessor ret;
+        synchronized (segment) {
+            ret = segment.get(endpoint);
+        }
+        if (ret == null) {
+            ret = evaluate(endpoint);
+            synchronized (segment) {
+                segment.put(endpoint, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * This method evaluates the filters against the supplied endpoint.
+     *
+     * @param endpoint The endpoint
+     * @return The result
+     */
+    private FilterProcessor evaluate(String endpoint) {
+        // First check if a global exclusion filter applies
+        for (int i = 0; i < globalExclusionFilters.size(); i++) {
+            if (globalExclusionFilters.get(i).isExcluded(endpoint)) {
+                return EXCLUDED;
+            }
+        }
+
+        // Check the candidate transactions, in priority order
+        BitSet candidates = root.candidates(endpoint, unindexed);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            FilterProcessor fp = btxnFilters.get(i);
+            if (fp.isIncluded(endpoint)) {
+                return fp.isExcluded(endpoint) ? EXCLUDED : fp;
+            }
+        }
+
+        return NO_TRANSACTION;
+    }
+
+    /**
+     * This class represents a node in the prefix trie.
+     */
+    private static class TrieNode {
+
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private BitSet filters;
+
+        void add(String prefix, int index) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNode());
+            }
+            if (node.filters == null) {
+                node.filters = new BitSet();
+            }
+            node.filters.set(index);
+        }
+
+        BitSet candidates(String endpoint, BitSet unindexed) {
+            BitSet ret = (BitSet) unindexed.clone();
+            TrieNode node = this;
+            for (int i = 0; i < endpoint.length() && node != null; i++) {
+                node = node.children.get(endpoint.charAt(i));
+                if (node != null && node.filters != null) {
+                    ret.or(node.filters);
+                }
+            }
+            return ret;
+        }
+    }
+}
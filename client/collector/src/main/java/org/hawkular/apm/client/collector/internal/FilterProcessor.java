@@ -34,9 +34,14 @@ public class FilterProcessor {
 
     private TransactionConfig config;
 
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String QUANTIFIERS = "?*+{";
+
     private List<Predicate<String>> inclusions = new ArrayList<Predicate<String>>();
     private List<Predicate<String>> exclusions = new ArrayList<Predicate<String>>();
 
+    private List<String> inclusionPrefixes = new ArrayList<String>();
+
     /**
      * The default constructor.
      */
@@ -61,11 +66,111 @@ public class FilterProcessor {
      */
     protected void init() {
         for (int i = 0; i < config.getFilter().getInclusions().size(); i++) {
-            inclusions.add(Pattern.compile(config.getFilter().getInclusions().get(i)).asPredicate());
+            String regex = config.getFilter().getInclusions().get(i);
+            inclusions.add(compile(regex));
+
+            if (inclusionPrefixes != null) {
+                String prefix = getAnchoredPrefix(regex);
+                if (prefix == null) {
+                    inclusionPrefixes = null;
+                } else {
+                    inclusionPrefixes.add(prefix);
+                }
+            }
         }
         for (int i = 0; i < config.getFilter().getExclusions().size(); i++) {
-            exclusions.add(Pattern.compile(config.getFilter().getExclusions().get(i)).asPredicate());
+            exclusions.add(compile(config.getFilter().getExclusions().get(i)));
+        }
+    }
+
+    /**
+     * This method returns the literal prefix that an endpoint must start with to
+     * match each of the inclusion filters.
+     *
+     * @return The prefixes, or null if one or more inclusion filters is not anchored
+     *              to a literal prefix
+     */
+    protected List<String> getInclusionPrefixes() {
+        return inclusionPrefixes;
+    }
+
+    /**
+     * This method compiles the supplied regular expression into a predicate that
+     * finds the expression within an endpoint. Plain literals are matched without
+     * using the regex engine.
+     *
+     * @param regex The regular expression
+     * @return The predicate
+     */
+    protected static Predicate<String> compile(String regex) {
+        String literal = getLiteral(regex);
+        if (literal != null) {
+            return endpoint -> endpoint.contains(literal);
+        }
+        return Pattern.compile(regex).asPredicate();
+    }
+
+    /**
+     * This method returns the literal string matched by the supplied regular expression.
+     *
+     * @param regex The regular expression
+     * @return The literal, or null if the expression contains any regex constructs
+     */
+    protected static String getLiteral(String regex) {
+        StringBuilder buf = new StringBuilder(regex.length());
+        int end = parseLiteral(regex, 0, buf);
+        return end == regex.length() && buf.length() > 0 ? buf.toString() : null;
+    }
+
+    /**
+     * This method returns the literal prefix of a regular expression that is anchored
+     * to the start of the endpoint, e.g. '^/shop/orders' for '^/shop/orders/[0-9]+'.
+     *
+     * @param regex The regular expression
+     * @return The prefix, or null if the expression is not anchored to a literal prefix
+     */
+    protected static String getAnchoredPrefix(String regex) {
+        // Alternation could apply to the anchor itself, so must be matched by the regex
+        if (!regex.startsWith("^") || regex.indexOf('|') != -1) {
+            return null;
+        }
+        StringBuilder buf = new StringBuilder(regex.length());
+        int end = parseLiteral(regex, 1, buf);
+
+        // If the literal is followed by a quantifier, its last character is optional
+        if (end < regex.length() && QUANTIFIERS.indexOf(regex.charAt(end)) != -1 && buf.length() > 0) {
+            buf.setLength(buf.length() - 1);
+        }
+        return buf.length() > 0 ? buf.toString() : null;
+    }
+
+    /**
+     * This method parses the literal characters from the supplied position in the
+     * regular expression.
+     *
+     * @param regex The regular expression
+     * @param pos The start position
+     * @param buf The buffer to receive the literal characters
+     * @return The position of the first character that is not part of the literal
+     */
+    private static int parseLiteral(String regex, int pos, StringBuilder buf) {
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '\\') {
+                // Escaped punctuation is a literal, other escapes (e.g. \d, \Q) are not
+                if (pos + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+                    buf.append(regex.charAt(pos + 1));
+                    pos += 2;
+                    continue;
+                }
+                break;
+            } else if (META_CHARACTERS.indexOf(c) != -1) {
+                break;
+            }
+            buf.append(c);
+            pos++;
         }
+        return pos;
     }
 
     /**
@@ -16,17 +16,14 @@
  */
 package org.hawkular.apm.client.collector.internal;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
-import java.util.UUID;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
@@ -34,6 +31,7 @@ import org.hawkular.apm.api.model.config.ReportingLevel;
 import org.hawkular.apm.api.model.trace.ContainerNode;
 import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.api.utils.NodeUtil;
 import org.hawkular.apm.api.utils.PropertyUtil;
 
@@ -71,15 +69,15 @@ public class FragmentBuilder {
     private ReportingLevel level = ReportingLevel.All;
 
     private int inHashCode = 0;
-    private ByteArrayOutputStream inStream = null;
+    private ContentBuffer inBuffer = null;
     private int outHashCode = 0;
-    private ByteArrayOutputStream outStream = null;
+    private ContentBuffer outBuffer = null;
 
-    private AtomicInteger threadCount = new AtomicInteger();
+    private LongAdder threadCount = new LongAdder();
 
     {
         trace = new Trace()
-                .setFragmentId(UUID.randomUUID().toString())
+                .setFragmentId(IdUtil.createId())
                 .setTimestamp(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()))
                 .setHostName(PropertyUtil.getHostName())
                 .setHostAddress(PropertyUtil.getHostAddress());
@@ -236,8 +234,11 @@ public class FragmentBuilder {
     public void pushNode(Node node) {
         initNode(node);
 
-        // Reset in stream
-        inStream = null;
+        // Reset in buffer
+        if (inBuffer != null) {
+            inBuffer.release();
+            inBuffer = null;
+        }
 
         synchronized (nodeStack) {
 
@@ -483,8 +484,11 @@ public class FragmentBuilder {
      * @param hashCode The hash code
      */
     public void initInBuffer(int hashCode) {
+        if (inBuffer != null) {
+            inBuffer.release();
+        }
         inHashCode = hashCode;
-        inStream = new ByteArrayOutputStream();
+        inBuffer = ContentBuffer.acquire();
     }
 
     /**
@@ -494,7 +498,7 @@ public class FragmentBuilder {
      * @return Whether the data buffer is active
      */
     public boolean isInBufferActive(int hashCode) {
-        return inStream != null && (hashCode == -1 || hashCode == inHashCode);
+        return inBuffer != null && (hashCode == -1 || hashCode == inHashCode);
     }
 
     /**
@@ -506,40 +510,56 @@ public class FragmentBuilder {
      * @param len The length
      */
     public void writeInData(int hashCode, byte[] b, int offset, int len) {
-        if (inStream != null && (hashCode == -1 || hashCode == inHashCode)) {
-            inStream.write(b, offset, len);
+        if (inBuffer != null && (hashCode == -1 || hashCode == inHashCode)) {
+            inBuffer.write(b, offset, len);
         }
     }
 
     /**
-     * This method returns the data associated with the in
+     * This method returns a copy of the data associated with the in
      * buffer and resets the buffer to be inactive.
      *
      * @param hashCode The hash code, or -1 to ignore the hash code
      * @return The data
      */
     public byte[] getInData(int hashCode) {
-        if (inStream != null && (hashCode == -1 || hashCode == inHashCode)) {
-            try {
-                inStream.close();
-            } catch (IOException e) {
-                log.severe("Failed to close in data stream: " + e);
-            }
-            byte[] b = inStream.toByteArray();
-            inStream = null;
+        ContentBuffer buffer = takeInBuffer(hashCode);
+        if (buffer != null) {
+            byte[] b = buffer.toByteArray();
+            buffer.release();
             return b;
         }
         return null;
     }
 
+    /**
+     * This method returns the in buffer, without copying its content, and
+     * resets the buffer to be inactive. The caller is responsible for
+     * releasing the returned buffer.
+     *
+     * @param hashCode The hash code, or -1 to ignore the hash code
+     * @return The buffer, or null if not active
+     */
+    public ContentBuffer takeInBuffer(int hashCode) {
+        if (inBuffer != null && (hashCode == -1 || hashCode == inHashCode)) {
+            ContentBuffer buffer = inBuffer;
+            inBuffer = null;
+            return buffer;
+        }
+        return null;
+    }
+
     /**
      * This method initialises the out data buffer.
      *
      * @param hashCode The hash code
      */
     public void initOutBuffer(int hashCode) {
+        if (outBuffer != null) {
+            outBuffer.release();
+        }
         outHashCode = hashCode;
-        outStream = new ByteArrayOutputStream();
+        outBuffer = ContentBuffer.acquire();
     }
 
     /**
@@ -549,7 +569,7 @@ public class FragmentBuilder {
      * @return Whether the data buffer is active
      */
     public boolean isOutBufferActive(int hashCode) {
-        return outStream != null && (hashCode == -1 || hashCode == outHashCode);
+        return outBuffer != null && (hashCode == -1 || hashCode == outHashCode);
     }
 
     /**
@@ -561,32 +581,45 @@ public class FragmentBuilder {
      * @param len The length
      */
     public void writeOutData(int hashCode, byte[] b, int offset, int len) {
-        if (outStream != null && (hashCode == -1 || hashCode == outHashCode)) {
-            outStream.write(b, offset, len);
+        if (outBuffer != null && (hashCode == -1 || hashCode == outHashCode)) {
+            outBuffer.write(b, offset, len);
         }
     }
 
     /**
-     * This method returns the data associated with the out
+     * This method returns a copy of the data associated with the out
      * buffer and resets the buffer to be inactive.
      *
      * @param hashCode The hash code, or -1 to ignore the hash code
      * @return The data
      */
     public byte[] getOutData(int hashCode) {
-        if (outStream != null && (hashCode == -1 || hashCode == outHashCode)) {
-            try {
-                outStream.close();
-            } catch (IOException e) {
-                log.severe("Failed to close out data stream: " + e);
-            }
-            byte[] b = outStream.toByteArray();
-            outStream = null;
+        ContentBuffer buffer = takeOutBuffer(hashCode);
+        if (buffer != null) {
+            byte[] b = buffer.toByteArray();
+            buffer.release();
             return b;
         }
         return null;
     }
 
+    /**
+     * This method returns the out buffer, without copying its content, and
+     * resets the buffer to be inactive. The caller is responsible for
+     * releasing the returned buffer.
+     *
+     * @param hashCode The hash code, or -1 to ignore the hash code
+     * @return The buffer, or null if not active
+     */
+    public ContentBuffer takeOutBuffer(int hashCode) {
+        if (outBuffer != null && (hashCode == -1 || hashCode == outHashCode)) {
+            ContentBuffer buffer = outBuffer;
+            outBuffer = null;
+            return buffer;
+        }
+        return null;
+    }
+
     /**
      * This method stores state information associated with the name and optional
      * context.
@@ -624,25 +657,21 @@ public class FragmentBuilder {
      * @return The thread count
      */
     public int getThreadCount() {
-        return threadCount.get();
+        return threadCount.intValue();
     }
 
     /**
      * Increment the thread count.
-     *
-     * @return The incremented thread count
      */
-    protected int incrementThreadCount() {
-        return threadCount.incrementAndGet();
+    protected void incrementThreadCount() {
+        threadCount.increment();
     }
 
     /**
      * Decrement the thread count.
-     *
-     * @return The decremented thread count
      */
-    protected int decrementThreadCount() {
-        return threadCount.decrementAndGet();
+    protected void decrementThreadCount() {
+        threadCount.decrement();
     }
 
     /**
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.collector.internal;
+
+/**
+ * This interface represents the context with which the fragment builder, for the
+ * current unit of work, is associated. The default implementation associates the
+ * builder with the current thread, however alternative implementations can associate
+ * the builder with an explicit context object (e.g. one carried with a request in an
+ * asynchronous framework), avoiding the need for a thread local per thread.
+ *
+ * @author gbrown
+ */
+public interface FragmentContext {
+
+    /**
+     * This method returns the fragment builder associated with the context.
+     *
+     * @return The fragment builder, or null if not associated
+     */
+    FragmentBuilder getFragmentBuilder();
+
+    /**
+     * This method associates the fragment builder with the context.
+     *
+     * @param builder The fragment builder, or null to remove the association
+     */
+    void setFragmentBuilder(FragmentBuilder builder);
+
+}
@@ -16,15 +16,16 @@
  */
 package org.hawkular.apm.client.collector.internal;
 
-import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
 
 /**
- * This class manages the set of fragment builders.
+ * This class manages the set of fragment builders. The builders are associated with
+ * a {@link FragmentContext}, which by default is the current thread of execution.
  *
  * @author gbrown
  */
@@ -32,16 +33,40 @@ public class FragmentManager {
 
     private static final Logger log = Logger.getLogger(FragmentManager.class.getName());
 
-    private ThreadLocal<FragmentBuilder> builders = new ThreadLocal<FragmentBuilder>();
+    private final FragmentContext context;
 
-    private AtomicInteger threadCounter = new AtomicInteger();
-    private Set<String> threadNames = new HashSet<String>();
+    private final LongAdder threadCounter = new LongAdder();
+    private final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The default constructor, associating fragment builders with the current thread.
+     */
+    public FragmentManager() {
+        this(new ThreadFragmentContext());
+    }
+
+    /**
+     * This constructor initialises the context with which the fragment
+     * builders will be associated.
+     *
+     * @param context The fragment context
+     */
+    public FragmentManager(FragmentContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return the fragment context
+     */
+    public FragmentContext getContext() {
+        return context;
+    }
 
     /**
      * @return the threadCounter
      */
     protected int getThreadCounter() {
-        return threadCounter.get();
+        return threadCounter.intValue();
     }
 
     /**
@@ -50,7 +75,7 @@ public class FragmentManager {
      * @return Whether the current thread of execution has a fragment builder
      */
     public boolean hasFragmentBuilder() {
-        return builders.get() != null;
+        return context.getFragmentBuilder() != null;
     }
 
     /**
@@ -60,24 +85,22 @@ public class FragmentManager {
      * @return The fragment builder for this thread of execution
      */
     public FragmentBuilder getFragmentBuilder() {
-        FragmentBuilder builder = builders.get();
+        FragmentBuilder builder = context.getFragmentBuilder();
 
         if (builder == null) {
             if (log.isLoggable(Level.FINEST)) {
                 log.finest("Creating new FragmentBuilder");
             }
             builder = new FragmentBuilder();
-            builders.set(builder);
+            context.setFragmentBuilder(builder);
 
-            int currentCount = threadCounter.incrementAndGet();
-            int builderCount = builder.incrementThreadCount();
+            threadCounter.increment();
+            builder.incrementThreadCount();
 
             if (log.isLoggable(Level.FINEST)) {
-                log.finest("Associate Thread with FragmentBuilder(1): Total Thread Count = " + currentCount
-                        + " : Fragment Thread Count = " + builderCount);
-                synchronized (threadNames) {
-                    threadNames.add(Thread.currentThread().getName());
-                }
+                log.finest("Associate Thread with FragmentBuilder(1): Total Thread Count = " + threadCounter.sum()
+                        + " : Fragment Thread Count = " + builder.getThreadCount());
+                threadNames.add(Thread.currentThread().getName());
             }
         }
 
@@ -90,36 +113,34 @@ public class FragmentManager {
      * @param builder The fragment builder
      */
     public void setFragmentBuilder(FragmentBuilder builder) {
-        FragmentBuilder currentBuilder = builders.get();
+        FragmentBuilder currentBuilder = context.getFragmentBuilder();
 
         if (currentBuilder == null && builder != null) {
-            int currentCount = threadCounter.incrementAndGet();
-            int builderCount = builder.incrementThreadCount();
+            threadCounter.increment();
+            builder.incrementThreadCount();
             if (log.isLoggable(Level.FINEST)) {
-                log.finest("Associate Thread with FragmentBuilder(2): Total Thread Count = " + currentCount
-                        + " : Fragment Thread Count = " + builderCount);
-                synchronized (threadNames) {
-                    threadNames.add(Thread.currentThread().getName());
-                }
+                log.finest("Associate Thread with FragmentBuilder(2): Total Thread Count = " + threadCounter.sum()
+                        + " : Fragment Thread Count = " + builder.getThreadCount());
+                threadNames.add(Thread.currentThread().getName());
             }
         } else if (currentBuilder != null && builder == null) {
-            int currentCount = threadCounter.decrementAndGet();
+            threadCounter.decrement();
             if (log.isLoggable(Level.FINEST)) {
-                log.finest("Disassociate Thread from FragmentBuilder(2): Total Thread Count = " + currentCount);
-                synchronized (threadNames) {
-                    threadNames.remove(Thread.currentThread().getName());
-                }
+                log.finest("Disassociate Thread from FragmentBuilder(2): Total Thread Count = "
+                        + threadCounter.sum());
+                threadNames.remove(Thread.currentThread().getName());
             }
         } else if (currentBuilder != builder) {
-            int oldCount = currentBuilder.decrementThreadCount();
-            int newCount = builder.incrementThreadCount();
+            currentBuilder.decrementThreadCount();
+            builder.incrementThreadCount();
             if (log.isLoggable(Level.FINEST)) {
                 log.finest("WARNING: Overwriting thread's fragment builder: old=[" + currentBuilder
-                        + " count=" + oldCount + "] now=[" + builder + " count=" + newCount + "]");
+                        + " count=" + currentBuilder.getThreadCount() + "] now=[" + builder
+                        + " count=" + builder.getThreadCount() + "]");
             }
         }
 
-        builders.set(builder);
+        context.setFragmentBuilder(builder);
     }
 
     /**
@@ -127,31 +148,28 @@ public class FragmentManager {
      * current thread of execution.
      */
     public void clear() {
-        int currentCount = threadCounter.decrementAndGet();
+        threadCounter.decrement();
         if (log.isLoggable(Level.FINEST)) {
-            log.finest("Clear: Disassociate Thread from FragmentBuilder(1): current thread count=" + currentCount);
-            synchronized (threadNames) {
-                threadNames.remove(Thread.currentThread().getName());
-            }
+            log.finest("Clear: Disassociate Thread from FragmentBuilder(1): current thread count="
+                    + threadCounter.sum());
+            threadNames.remove(Thread.currentThread().getName());
         }
-        FragmentBuilder currentBuilder = builders.get();
+        FragmentBuilder currentBuilder = context.getFragmentBuilder();
         if (currentBuilder != null) {
             currentBuilder.decrementThreadCount();
         }
-        builders.remove();
+        context.setFragmentBuilder(null);
     }
 
     /**
      * This method reports diagnostic information to the log.
      */
     public void diagnostics() {
-        log.finest("Thread count = " + threadCounter);
-        if (threadCounter.get() > 0) {
+        log.finest("Thread count = " + threadCounter.sum());
+        if (threadCounter.sum() > 0) {
             log.finest("Thread names:");
-            synchronized (threadNames) {
-                for (String name : threadNames) {
-                    log.finest("\t" + name);
-                }
+            for (String name : threadNames) {
+                log.finest("\t" + name);
             }
         }
     }
@@ -17,6 +17,7 @@
 package org.hawkular.apm.client.collector.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +29,7 @@ import org.hawkular.apm.api.internal.actions.ExpressionHandler;
 import org.hawkular.apm.api.internal.actions.ExpressionHandlerFactory;
 import org.hawkular.apm.api.internal.actions.ProcessorActionHandler;
 import org.hawkular.apm.api.internal.actions.ProcessorActionHandlerFactory;
+import org.hawkular.apm.api.internal.actions.helpers.DocumentCache;
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
 import org.hawkular.apm.api.model.Constants;
@@ -49,7 +51,12 @@ public class ProcessorManager {
 
     private static Logger log = Logger.getLogger(ProcessorManager.class.getName());
 
-    private Map<String, List<ProcessorWrapper>> processors = new HashMap<String, List<ProcessorWrapper>>();
+    /**
+     * Immutable snapshot of the processors, keyed by transaction name. The snapshot
+     * is replaced, under the manager's lock, when the configuration changes, so that
+     * application threads can read it without locking.
+     */
+    private volatile Map<String, List<ProcessorWrapper>> processors = Collections.emptyMap();
 
     /**
      * This constructor initialises the processor manager with the configuration.
@@ -66,10 +73,7 @@ public class ProcessorManager {
      * @param config The configuration
      */
     protected void init(CollectorConfiguration config) {
-        for (String btxn : config.getTransactions().keySet()) {
-            TransactionConfig btc = config.getTransactions().get(btxn);
-            init(btxn, btc);
-        }
+        update(config.getTransactions());
     }
 
     /**
@@ -80,26 +84,7 @@ public class ProcessorManager {
      * @param btc The configuration
      */
     public void init(String txn, TransactionConfig btc) {
-        if (log.isLoggable(Level.FINE)) {
-            log.fine("ProcessManager: initialise btxn '" + txn + "' config=" + btc
-                    + " processors=" + btc.getProcessors().size());
-        }
-
-        if (btc.getProcessors() != null && !btc.getProcessors().isEmpty()) {
-            List<ProcessorWrapper> procs = new ArrayList<ProcessorWrapper>();
-
-            for (int i = 0; i < btc.getProcessors().size(); i++) {
-                procs.add(new ProcessorWrapper(btc.getProcessors().get(i)));
-            }
-
-            synchronized (processors) {
-                processors.put(txn, procs);
-            }
-        } else {
-            synchronized (processors) {
-                processors.remove(txn);
-            }
-        }
+        update(Collections.singletonMap(txn, btc));
     }
 
     /**
@@ -108,8 +93,61 @@ public class ProcessorManager {
      * @param txn The transaction name
      */
     public void remove(String txn) {
-        synchronized (processors) {
-            processors.remove(txn);
+        synchronized (this) {
+            if (processors.containsKey(txn)) {
+                Map<String, List<ProcessorWrapper>> snapshot = new HashMap<>(processors);
+                snapshot.remove(txn);
+                processors = Collections.unmodifiableMap(snapshot);
+            }
+        }
+    }
+
+    /**
+     * This method applies the supplied transaction configuration changes,
+     * publishing a single new snapshot of the processors. Deleted transactions
+     * are removed.
+     *
+     * @param changed The changed transaction configurations, keyed by name
+     */
+    public void update(Map<String, TransactionConfig> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        // Build the processors outside the lock, as initialising their
+        // expressions may be relatively expensive
+        Map<String, List<ProcessorWrapper>> built = new HashMap<>();
+        for (Map.Entry<String, TransactionConfig> entry : changed.entrySet()) {
+            String txn = entry.getKey();
+            TransactionConfig btc = entry.getValue();
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("ProcessManager: initialise btxn '" + txn + "' config=" + btc
+                        + " processors=" + btc.getProcessors().size());
+            }
+
+            if (!btc.isDeleted() && btc.getProcessors() != null && !btc.getProcessors().isEmpty()) {
+                List<ProcessorWrapper> procs = new ArrayList<ProcessorWrapper>();
+
+                for (int i = 0; i < btc.getProcessors().size(); i++) {
+                    procs.add(new ProcessorWrapper(btc.getProcessors().get(i)));
+                }
+
+                built.put(txn, Collections.unmodifiableList(procs));
+            }
+        }
+
+        synchronized (this) {
+            Map<String, List<ProcessorWrapper>> snapshot = new HashMap<>(processors);
+            for (String txn : changed.keySet()) {
+                List<ProcessorWrapper> procs = built.get(txn);
+                if (procs != null) {
+                    snapshot.put(txn, procs);
+                } else {
+                    snapshot.remove(txn);
+                }
+            }
+            processors = Collections.unmodifiableMap(snapshot);
         }
     }
 
@@ -126,11 +164,7 @@ public class ProcessorManager {
         boolean ret = false;
 
         if (trace.getTransaction() != null) {
-            List<ProcessorWrapper> procs = null;
-
-            synchronized (processors) {
-                procs = processors.get(trace.getTransaction());
-            }
+            List<ProcessorWrapper> procs = processors.get(trace.getTransaction());
 
             if (procs != null) {
                 for (int i = 0; !ret && i < procs.size(); i++) {
@@ -160,11 +194,7 @@ public class ProcessorManager {
         boolean ret = false;
 
         if (trace.getTransaction() != null) {
-            List<ProcessorWrapper> procs = null;
-
-            synchronized (processors) {
-                procs = processors.get(trace.getTransaction());
-            }
+            List<ProcessorWrapper> procs = processors.get(trace.getTransaction());
 
             if (procs != null) {
                 for (int i = 0; !ret && i < procs.size(); i++) {
@@ -202,19 +232,22 @@ public class ProcessorManager {
         }
 
         if (trace.getTransaction() != null) {
-            List<ProcessorWrapper> procs = null;
-
-            synchronized (processors) {
-                procs = processors.get(trace.getTransaction());
-            }
+            List<ProcessorWrapper> procs = processors.get(trace.getTransaction());
 
             if (log.isLoggable(Level.FINEST)) {
                 log.finest("ProcessManager: trace name=" + trace.getTransaction() + " processors=" + procs);
             }
 
             if (procs != null) {
-                for (int i = 0; i < procs.size(); i++) {
-                    procs.get(i).process(trace, node, direction, headers, values);
+                // Content and headers are parsed at most once for this node and direction,
+                // regardless of how many expressions are evaluated against them
+                DocumentCache.begin();
+                try {
+                    for (int i = 0; i < procs.size(); i++) {
+                        procs.get(i).process(trace, node, direction, headers, values);
+                    }
+                } finally {
+                    DocumentCache.end();
                 }
             }
         }
@@ -231,7 +264,7 @@ public class ProcessorManager {
      * @param processors the processors to set
      */
     protected void setProcessors(Map<String, List<ProcessorWrapper>> processors) {
-        this.processors = processors;
+        this.processors = Collections.unmodifiableMap(new HashMap<>(processors));
     }
 
     /**
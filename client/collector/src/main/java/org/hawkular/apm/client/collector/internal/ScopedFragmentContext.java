@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.collector.internal;
+
+import java.util.concurrent.Callable;
+
+/**
+ * This class provides a fragment context that delegates to a context bound for the
+ * duration of a call, for example an {@link ExplicitFragmentContext} associated with the
+ * request being processed. The binding is always restored when the call completes, so
+ * no fragment builder remains associated with the (possibly pooled) thread afterwards.
+ * When no context is bound, the fallback context is used.
+ *
+ * As a scoped value is not available in the supported Java version, the bound context
+ * is held in a single thread local, which is only set for the duration of the call.
+ *
+ * @author gbrown
+ */
+public class ScopedFragmentContext implements FragmentContext {
+
+    private final ThreadLocal<FragmentContext> scope = new ThreadLocal<FragmentContext>();
+
+    private final FragmentContext fallback;
+
+    /**
+     * The default constructor, using the thread as the fallback context.
+     */
+    public ScopedFragmentContext() {
+        this(new ThreadFragmentContext());
+    }
+
+    /**
+     * This constructor initialises the fallback context used when no
+     * context has been bound.
+     *
+     * @param fallback The fallback context
+     */
+    public ScopedFragmentContext(FragmentContext fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * This method runs the task with the supplied context bound.
+     *
+     * @param context The context
+     * @param task The task
+     */
+    public void run(FragmentContext context, Runnable task) {
+        FragmentContext previous = scope.get();
+        scope.set(context);
+        try {
+            task.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * This method calls the task with the supplied context bound.
+     *
+     * @param context The context
+     * @param task The task
+     * @return The result of the task
+     * @throws Exception Failed to perform the task
+     */
+    public <T> T call(FragmentContext context, Callable<T> task) throws Exception {
+        FragmentContext previous = scope.get();
+        scope.set(context);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * @return The context bound to the current call, or null if none
+     */
+    public FragmentContext current() {
+        return scope.get();
+    }
+
+    @Override
+    public FragmentBuilder getFragmentBuilder() {
+        FragmentContext context = scope.get();
+        return (context == null ? fallback : context).getFragmentBuilder();
+    }
+
+    @Override
+    public void setFragmentBuilder(FragmentBuilder builder) {
+        FragmentContext context = scope.get();
+        (context == null ? fallback : context).setFragmentBuilder(builder);
+    }
+
+    private void restore(FragmentContext previous) {
+        if (previous == null) {
+            scope.remove();
+        } else {
+            scope.set(previous);
+        }
+    }
+
+}
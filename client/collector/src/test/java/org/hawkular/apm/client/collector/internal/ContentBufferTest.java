@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.collector.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class ContentBufferTest {
+
+    @Test
+    public void testWriteBeyondLimit() {
+        ContentBuffer buffer = new ContentBuffer(8);
+
+        byte[] data = "Hello World".getBytes();
+        buffer.write(data, 0, 6);
+        assertFalse(buffer.isTruncated());
+
+        buffer.write(data, 6, 5);
+        assertTrue(buffer.isTruncated());
+        assertEquals(8, buffer.size());
+        assertEquals("Hello Wo", new String(buffer.toByteArray()));
+    }
+
+    @Test
+    public void testGrowAndView() {
+        ContentBuffer buffer = new ContentBuffer(1024 * 1024);
+
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + (i % 26));
+        }
+        buffer.write(data, 0, data.length);
+
+        assertEquals(data.length, buffer.asByteBuffer().remaining());
+        assertEquals(new String(data), new String(buffer.toByteArray()));
+    }
+
+    @Test
+    public void testReleaseReusesBuffer() {
+        ContentBuffer buffer = ContentBuffer.acquire();
+        buffer.write("Hello".getBytes(), 0, 5);
+        buffer.release();
+
+        ContentBuffer reused = ContentBuffer.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+        reused.release();
+    }
+}
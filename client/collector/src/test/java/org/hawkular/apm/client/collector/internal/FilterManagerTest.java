@@ -17,10 +17,14 @@
 package org.hawkular.apm.client.collector.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.hawkular.apm.api.model.config.CollectorConfiguration;
 import org.hawkular.apm.api.model.config.txn.Filter;
 import org.hawkular.apm.api.model.config.txn.TransactionConfig;
@@ -168,4 +172,64 @@ public class FilterManagerTest {
         assertEquals(0, fm.getGlobalExclusionFilters().size());
         assertEquals(1, fm.getBtxnFilters().size());
     }
+
+    @Test
+    public void testUpdate() {
+        CollectorConfiguration config = new CollectorConfiguration();
+        TransactionConfig btc1 = new TransactionConfig();
+        Filter f1 = new Filter();
+        f1.getInclusions().add("first");
+        btc1.setFilter(f1);
+        config.getTransactions().put("btc1", btc1);
+
+        FilterManager fm = new FilterManager(config);
+
+        assertEquals("btc1", fm.getFilterProcessor("first").getTransaction());
+
+        TransactionConfig deleted = new TransactionConfig();
+        deleted.setDeleted(true);
+
+        TransactionConfig btc2 = new TransactionConfig();
+        Filter f2 = new Filter();
+        f2.getInclusions().add("second");
+        btc2.setFilter(f2);
+
+        Map<String, TransactionConfig> changed = new HashMap<>();
+        changed.put("btc1", deleted);
+        changed.put("btc2", btc2);
+        fm.update(changed);
+
+        assertFalse(fm.getFilterMap().containsKey("btc1"));
+        assertEquals(1, fm.getBtxnFilters().size());
+        assertNull(fm.getFilterProcessor("first").getTransaction());
+        assertEquals("btc2", fm.getFilterProcessor("second").getTransaction());
+    }
+
+    @Test
+    public void testPriorityOrderWithIndexedFilters() {
+        CollectorConfiguration config = new CollectorConfiguration();
+
+        // Unindexed filter, defined first, so takes priority
+        TransactionConfig btc1 = new TransactionConfig();
+        Filter f1 = new Filter();
+        f1.getInclusions().add("orders/[0-9]+$");
+        btc1.setFilter(f1);
+        config.getTransactions().put("btc1", btc1);
+
+        TransactionConfig btc2 = new TransactionConfig();
+        Filter f2 = new Filter();
+        f2.getInclusions().add("^/shop/orders");
+        f2.getExclusions().add("/shop/orders/admin");
+        btc2.setFilter(f2);
+        config.getTransactions().put("btc2", btc2);
+
+        FilterManager fm = new FilterManager(config);
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals("btc1", fm.getFilterProcessor("/shop/orders/10").getTransaction());
+            assertEquals("btc2", fm.getFilterProcessor("/shop/orders/list").getTransaction());
+            assertNull(fm.getFilterProcessor("/shop/orders/admin"));
+            assertNull(fm.getFilterProcessor("/other").getTransaction());
+        }
+    }
 }
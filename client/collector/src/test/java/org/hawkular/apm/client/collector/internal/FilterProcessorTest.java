@@ -16,7 +16,9 @@
  */
 package org.hawkular.apm.client.collector.internal;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.hawkular.apm.api.model.config.txn.Filter;
@@ -89,4 +91,22 @@ public class FilterProcessorTest {
         assertTrue(fp.isExcluded("http://localhost:8080/hawkular/apm/transactions"));
     }
 
+    @Test
+    public void testGetLiteral() {
+        assertEquals("/shop/orders", FilterProcessor.getLiteral("/shop/orders"));
+        assertEquals("/shop/index.html", FilterProcessor.getLiteral("/shop/index\\.html"));
+        assertNull(FilterProcessor.getLiteral("/shop/index.html"));
+        assertNull(FilterProcessor.getLiteral("^/shop"));
+        assertNull(FilterProcessor.getLiteral("/shop\\d"));
+    }
+
+    @Test
+    public void testGetAnchoredPrefix() {
+        assertEquals("/shop/orders/", FilterProcessor.getAnchoredPrefix("^/shop/orders/[0-9]+"));
+        assertEquals("/shop/order", FilterProcessor.getAnchoredPrefix("^/shop/orders?"));
+        assertEquals("/shop", FilterProcessor.getAnchoredPrefix("^/shop"));
+        assertNull(FilterProcessor.getAnchoredPrefix("/shop"));
+        assertNull(FilterProcessor.getAnchoredPrefix("^/shop|/admin"));
+        assertNull(FilterProcessor.getAnchoredPrefix("^(?i)/shop"));
+    }
 }
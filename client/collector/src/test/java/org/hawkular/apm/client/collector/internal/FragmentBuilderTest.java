@@ -486,4 +486,18 @@ public class FragmentBuilderTest {
         assertFalse(builder.isOutBufferActive(1));
     }
 
+    @Test
+    public void testTakeInBuffer() {
+        FragmentBuilder builder = new FragmentBuilder();
+        builder.initInBuffer(1);
+
+        String data = "Hello World";
+        builder.writeInData(1, data.getBytes(), 0, data.length());
+
+        ContentBuffer buffer = builder.takeInBuffer(1);
+        assertEquals(data.length(), buffer.asByteBuffer().remaining());
+        assertFalse(builder.isInBufferActive(1));
+        buffer.release();
+    }
+
 }
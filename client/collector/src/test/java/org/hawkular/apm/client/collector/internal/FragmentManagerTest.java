@@ -17,7 +17,11 @@
 package org.hawkular.apm.client.collector.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -50,4 +54,47 @@ public class FragmentManagerTest {
         assertNotEquals("Should NOT be same builder", builder1, builder2);
     }
 
+    @Test
+    public void testExplicitContext() {
+        ScopedFragmentContext scoped = new ScopedFragmentContext();
+        FragmentManager manager = new FragmentManager(scoped);
+        ExplicitFragmentContext request = new ExplicitFragmentContext();
+
+        FragmentBuilder[] builders = new FragmentBuilder[2];
+        scoped.run(request, () -> builders[0] = manager.getFragmentBuilder());
+
+        assertSame(builders[0], request.getFragmentBuilder());
+        assertFalse("Builder should not be associated with thread", manager.hasFragmentBuilder());
+        assertNull(scoped.current());
+
+        // Resume processing of the request, potentially on another thread
+        scoped.run(request, () -> builders[1] = manager.getFragmentBuilder());
+
+        assertSame(builders[0], builders[1]);
+        assertEquals(1, builders[0].getThreadCount());
+
+        scoped.run(request, manager::clear);
+
+        assertNull(request.getFragmentBuilder());
+        assertEquals(0, builders[0].getThreadCount());
+    }
+
+    @Test
+    public void testNestedScopes() {
+        ScopedFragmentContext scoped = new ScopedFragmentContext();
+        FragmentManager manager = new FragmentManager(scoped);
+        ExplicitFragmentContext outer = new ExplicitFragmentContext();
+        ExplicitFragmentContext inner = new ExplicitFragmentContext();
+
+        scoped.run(outer, () -> {
+            FragmentBuilder builder = manager.getFragmentBuilder();
+            scoped.run(inner, () -> assertFalse(manager.hasFragmentBuilder()));
+            assertSame(outer, scoped.current());
+            assertSame(builder, manager.getFragmentBuilder());
+        });
+
+        assertNotNull(outer.getFragmentBuilder());
+        assertNull(inner.getFragmentBuilder());
+    }
+
 }
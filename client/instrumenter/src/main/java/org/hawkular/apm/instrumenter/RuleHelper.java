@@ -27,6 +27,7 @@ import org.hawkular.apm.api.logging.Logger.Level;
 import org.hawkular.apm.api.model.config.Direction;
 import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.services.ServiceResolver;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.client.collector.SessionManager;
 import org.hawkular.apm.client.collector.TraceCollector;
 import org.hawkular.apm.instrumenter.faults.FaultDescriptor;
@@ -97,7 +98,7 @@ public class RuleHelper extends Helper implements SessionManager {
      * @return The unique id
      */
     public String createUUID() {
-        return java.util.UUID.randomUUID().toString();
+        return IdUtil.createId();
     }
 
     /**
@@ -53,8 +53,26 @@ public class APMSpan extends AbstractSpan implements PropagableState {
 
     private TraceContext traceContext;
 
-    private NodeBuilder nodeBuilder;
-    private String nodePath;
+    /**
+     * The node builder is not created for child spans once the trace instance has
+     * been decided as not sampled, as the node would not be reported. If the decision
+     * is subsequently overridden, the node builder is created when required.
+     */
+    private volatile NodeBuilder nodeBuilder;
+
+    private volatile boolean completed = false;
+
+    /** Whether the span was added to the trace context of its parent span */
+    private boolean joined = false;
+
+    /**
+     * The node path is only derived when requested, from the span associated with the parent
+     * node (or the root node of the fragment if null) and the position within the parent.
+     * A position of -1 indicates the span is associated with the root node.
+     */
+    private APMSpan parentSpan;
+    private int nodePosition = -1;
+    private volatile String nodePath;
 
     private String interactionId;
 
@@ -74,16 +92,15 @@ public class APMSpan extends AbstractSpan implements PropagableState {
             initReferences(builder, recorder, sampler);
         }
 
-        // If no nodebuilder established based on reference information, then create a new
-        // one and trace context
-        if (nodeBuilder == null) {
+        // If no trace context established based on reference information, then create a new
+        // node builder and trace context
+        if (traceContext == null) {
             initTopLevelState(this, recorder, sampler);
         }
 
-        // Initialise node path
-        nodePath = nodeBuilder.getNodePath();
-
-        traceContext.startProcessingNode();
+        if (!joined) {
+            traceContext.startProcessingNode();
+        }
     }
 
     protected void initReferences(APMSpanBuilder builder, TraceRecorder recorder, ContextSampler sampler) {
@@ -103,7 +120,7 @@ public class APMSpan extends AbstractSpan implements PropagableState {
 
                 // Process references for direct ChildOf
                 if (References.CHILD_OF.equals(primaryRef.getReferenceType())) {
-                    initChildOf(builder, primaryRef);
+                    initChildOf(builder, recorder, primaryRef, sampler);
 
                     // Process references for direct FollowsFrom
                 } else if (References.FOLLOWS_FROM.equals(primaryRef.getReferenceType())) {
@@ -164,7 +181,7 @@ public class APMSpan extends AbstractSpan implements PropagableState {
      * @param sampler The sampler
      */
     protected void initTopLevelState(APMSpan topSpan, TraceRecorder recorder, ContextSampler sampler) {
-        nodeBuilder = new NodeBuilder();
+        nodeBuilder = NodeBuilder.acquire();
         traceContext = new TraceContext(topSpan, nodeBuilder, recorder, sampler);
     }
 
@@ -199,14 +216,24 @@ public class APMSpan extends AbstractSpan implements PropagableState {
      * This method initialises the span based on a 'child-of' relationship.
      *
      * @param builder  The span builder
+     * @param recorder The trace recorder
      * @param ref      The 'child-of' relationship
+     * @param sampler The sampler
      */
-    protected void initChildOf(APMSpanBuilder builder, Reference ref) {
+    protected void initChildOf(APMSpanBuilder builder, TraceRecorder recorder, Reference ref, ContextSampler sampler) {
         APMSpan parent = (APMSpan) ref.getReferredTo();
 
-        if (parent.getNodeBuilder() != null) {
-            nodeBuilder = new NodeBuilder(parent.getNodeBuilder());
+        // Once the trace context has been joined, the node builders will not be released
+        // for reuse by another trace instance until this span has completed
+        if (!parent.isCompleted() && parent.traceContext.joinProcessingNode()) {
+            joined = true;
             traceContext = parent.traceContext;
+            parentSpan = parent;
+
+            // Only create a node for the span if the trace instance is being sampled
+            if (traceContext.isSampled()) {
+                materializeNode();
+            }
 
             // As it is not possible to know if a tag has been set after span
             // creation, we use this situation to check if the parent span
@@ -219,6 +246,11 @@ public class APMSpan extends AbstractSpan implements PropagableState {
                 traceContext.setTransaction(
                         parent.getTags().get(Constants.PROP_TRANSACTION_NAME).toString());
             }
+        } else {
+            // The parent span has completed, so create a separate trace fragment,
+            // propagating the trace id, transaction name and reporting level
+            initTopLevelState(this, recorder, sampler);
+            traceContext.initTraceState(parent.state());
         }
 
         processRemainingReferences(builder, ref);
@@ -293,6 +325,11 @@ public class APMSpan extends AbstractSpan implements PropagableState {
      * @param primaryRef The primary reference, if null if one was not found
      */
     protected void processRemainingReferences(APMSpanBuilder builder, Reference primaryRef) {
+        // No node to correlate if the span is not being sampled
+        if (getNodeBuilder() == null) {
+            return;
+        }
+
         // Check if other references
         for (Reference ref : builder.references) {
             if (primaryRef == ref) {
@@ -334,20 +371,60 @@ public class APMSpan extends AbstractSpan implements PropagableState {
 
         // Create new node builder for the actual span, as a child of the 'Consumer' that
         // is providing the link back to the referenced node
-        nodeBuilder = new NodeBuilder(getNodeBuilder());
+        nodeBuilder = NodeBuilder.acquire(getNodeBuilder());
+        nodePosition = nodeBuilder.getPosition();
     }
 
     protected void setInteractionId(String id) {
         interactionId = id;
-        getNodeBuilder().addCorrelationId(new CorrelationIdentifier(Scope.Interaction, id));
+        if (getNodeBuilder() != null) {
+            getNodeBuilder().addCorrelationId(new CorrelationIdentifier(Scope.Interaction, id));
+        }
     }
 
     protected String getInteractionId() {
         return interactionId;
     }
 
+    /**
+     * This method returns the node builder for the span, creating it if the span
+     * was started while the trace instance was not sampled. The nodes for any ancestor
+     * spans, in the same trace fragment, that were also started while not sampled are
+     * created first, so that the span's node is placed in the complete tree.
+     *
+     * @return The node builder
+     */
+    private synchronized NodeBuilder materializeNode() {
+        NodeBuilder builder = nodeBuilder;
+        if (builder == null) {
+            // Only child spans are created without a node, so the parent span will be available
+            builder = NodeBuilder.acquire(parentSpan.materializeNode());
+            nodePosition = builder.getPosition();
+            nodePath = null;
+
+            // An interaction id is only assigned to a span without a node when injecting its
+            // context, so the node represents the producer of the interaction
+            if (interactionId != null) {
+                builder.setNodeType(NodeType.Producer);
+                builder.addCorrelationId(new CorrelationIdentifier(Scope.Interaction, interactionId));
+            }
+            nodeBuilder = builder;
+        }
+        return builder;
+    }
+
     protected String getNodePath() {
-        return nodePath;
+        String path = nodePath;
+        if (path == null) {
+            if (nodePosition == -1) {
+                path = traceContext.getRootNodePath();
+            } else {
+                String parentPath = parentSpan == null ? traceContext.getRootNodePath() : parentSpan.getNodePath();
+                path = parentPath + ':' + nodePosition;
+            }
+            nodePath = path;
+        }
+        return path;
     }
 
     @Override
@@ -369,21 +446,39 @@ public class APMSpan extends AbstractSpan implements PropagableState {
     /**
      * This method will complete the information associated with the node builder
      * in preparation for the trace fragment being built (once all nodes have
-     * been completed).
+     * been completed). If the trace is not being sampled, the processing is
+     * deferred, and only performed if the sampling decision is overridden. Spans
+     * created after the trace was decided as not sampled have no node, so it is
+     * created when the deferred processing is performed.
      */
     private void completeNode() {
-        if (nodeBuilder == null) {
-            return;
+        completed = true;
+
+        if (!traceContext.isSampled()) {
+            traceContext.checkSamplingPriority(getTags());
         }
-        nodeBuilder.setOperation(getOperationName());
-        nodeBuilder.setTimestamp(TimeUtil.toMicros(getStart()));
-        nodeBuilder.setDuration(TimeUnit.NANOSECONDS.toMicros(getDuration().toNanos()));
 
-        // Process the span to initialise the node
-        traceContext.getNodeProcessors().forEach(np -> np.process(traceContext, this, nodeBuilder));
+        if (traceContext.isSampled()) {
+            processNode(materializeNode());
+        } else {
+            traceContext.deferNodeProcessing(() -> processNode(materializeNode()));
+        }
 
         traceContext.endProcessingNode();
-        nodeBuilder = null;
+    }
+
+    /**
+     * This method initialises the node builder from the span.
+     *
+     * @param builder The node builder
+     */
+    private void processNode(NodeBuilder builder) {
+        builder.setOperation(getOperationName());
+        builder.setTimestamp(TimeUtil.toMicros(getStart()));
+        builder.setDuration(TimeUnit.NANOSECONDS.toMicros(getDuration().toNanos()));
+
+        // Process the span to initialise the node
+        traceContext.getNodeProcessors().forEach(np -> np.process(traceContext, this, builder));
     }
 
     /**
@@ -392,16 +487,16 @@ public class APMSpan extends AbstractSpan implements PropagableState {
      * @return Whether the span has been completed
      */
     private boolean isCompleted() {
-        return nodeBuilder == null;
+        return completed;
     }
 
     /**
      * This method returns the node builder associated with the span.
      *
-     * @return The node builder
+     * @return The node builder, or null if completed or not sampled
      */
     protected NodeBuilder getNodeBuilder() {
-        return nodeBuilder;
+        return completed ? null : nodeBuilder;
     }
 
     /**
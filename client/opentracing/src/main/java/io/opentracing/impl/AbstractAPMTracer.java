@@ -19,11 +19,11 @@ package io.opentracing.impl;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.model.Constants;
 import org.hawkular.apm.api.model.trace.NodeType;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.client.api.recorder.BatchTraceRecorder;
 import org.hawkular.apm.client.api.recorder.TraceRecorder;
 import org.hawkular.apm.client.api.sampler.ContextSampler;
@@ -44,7 +44,7 @@ public abstract class AbstractAPMTracer extends AbstractTracer {
     private ContextSampler sampler;
 
     public AbstractAPMTracer() {
-        this(new BatchTraceRecorder(), Sampler.ALWAYS_SAMPLE);
+        this(new BatchTraceRecorder(), Sampler.fromEnvProperties());
     }
 
     public AbstractAPMTracer(TraceRecorder recorder, Sampler sampler) {
@@ -75,8 +75,11 @@ public abstract class AbstractAPMTracer extends AbstractTracer {
     @Override
     public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
         if (spanContext instanceof APMSpan) {
-            ((APMSpan) spanContext).setInteractionId(UUID.randomUUID().toString());
-            ((APMSpan) spanContext).getNodeBuilder().setNodeType(NodeType.Producer);
+            APMSpan span = (APMSpan) spanContext;
+            span.setInteractionId(IdUtil.createId());
+            if (span.getNodeBuilder() != null) {
+                span.getNodeBuilder().setNodeType(NodeType.Producer);
+            }
         }
         super.inject(spanContext, format, carrier);
     }
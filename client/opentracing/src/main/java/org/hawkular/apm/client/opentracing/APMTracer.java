@@ -33,11 +33,11 @@ import io.opentracing.impl.AbstractAPMTracer;
 public class APMTracer extends AbstractAPMTracer {
 
     public APMTracer() {
-        this(new BatchTraceRecorder(), Sampler.ALWAYS_SAMPLE, DeploymentMetaData.getInstance());
+        this(new BatchTraceRecorder(), Sampler.fromEnvProperties(), DeploymentMetaData.getInstance());
     }
 
     public APMTracer(TraceRecorder recorder) {
-        this(recorder, Sampler.ALWAYS_SAMPLE, DeploymentMetaData.getInstance());
+        this(recorder, Sampler.fromEnvProperties(), DeploymentMetaData.getInstance());
     }
 
     public APMTracer(TraceRecorder recorder, Sampler sampler) {
@@ -16,7 +16,9 @@
  */
 package org.hawkular.apm.client.opentracing;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,10 +39,19 @@ import org.hawkular.apm.api.utils.NodeUtil;
  * this process. So instead a tree of node builders is constructed, and only converted into
  * a node tree as a final step.
  *
+ * To minimise the allocations performed for each span, the collections are only created
+ * when first used, the node path is only derived when requested, and builders obtained
+ * using {@link #acquire()} can be returned to a per thread pool once the node tree has
+ * been built.
+ *
  * @author gbrown
  */
 public class NodeBuilder {
 
+    private static final int POOL_SIZE = 64;
+
+    private static final ThreadLocal<Deque<NodeBuilder>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
     private String uri;
     private String operation;
     private String endpointType = "n/a";    // Default endpoint type used to signify an external endpoint but
@@ -50,9 +61,9 @@ public class NodeBuilder {
      * Duration in microseconds
      */
     private long duration;
-    private Set<Property> properties = new HashSet<>();
-    private List<CorrelationIdentifier> correlationIds = new ArrayList<>();
-    private List<NodeBuilder> nodes = new ArrayList<>();
+    private Set<Property> properties;
+    private List<CorrelationIdentifier> correlationIds;
+    private List<NodeBuilder> nodes;
 
     /**
      * Timestamp in microseconds
@@ -63,6 +74,9 @@ public class NodeBuilder {
 
     private String nodePath;
 
+    private NodeBuilder parent;
+    private int position;
+
     /**
      * The default constructor.
      */
@@ -75,8 +89,72 @@ public class NodeBuilder {
      * @param parent The parent
      */
     public NodeBuilder(NodeBuilder parent) {
-        int pos = parent.addChildNode(this);
-        nodePath = String.format("%s:%d", parent.getNodePath(), pos);
+        initParent(parent);
+    }
+
+    /**
+     * This method obtains a node builder, reusing a previously released builder
+     * if one is available.
+     *
+     * @return The node builder
+     */
+    public static NodeBuilder acquire() {
+        NodeBuilder ret = pool.get().poll();
+        return ret == null ? new NodeBuilder() : ret;
+    }
+
+    /**
+     * This method obtains a node builder, as a child of the supplied parent.
+     *
+     * @param parent The parent
+     * @return The node builder
+     */
+    public static NodeBuilder acquire(NodeBuilder parent) {
+        NodeBuilder ret = acquire();
+        ret.initParent(parent);
+        return ret;
+    }
+
+    /**
+     * This method returns this node builder, and its child node builders, to the
+     * pool. It must only be called once the node hierarchy has been built, and the
+     * builders are no longer referenced.
+     */
+    public void release() {
+        if (nodes != null) {
+            for (int i = 0; i < nodes.size(); i++) {
+                nodes.get(i).release();
+            }
+        }
+        reset();
+
+        Deque<NodeBuilder> builders = pool.get();
+        if (builders.size() < POOL_SIZE) {
+            builders.push(this);
+        }
+    }
+
+    private void reset() {
+        uri = null;
+        operation = null;
+        endpointType = "n/a";
+        componentType = null;
+        duration = 0;
+        timestamp = 0;
+        nodeType = NodeType.Component;
+        nodePath = null;
+        parent = null;
+        position = 0;
+
+        // The collections are referenced by the built nodes, so cannot be reused
+        properties = null;
+        correlationIds = null;
+        nodes = null;
+    }
+
+    private void initParent(NodeBuilder parent) {
+        this.parent = parent;
+        this.position = parent.addChildNode(this);
     }
 
     /**
@@ -86,19 +164,33 @@ public class NodeBuilder {
      * @param child
      * @return The position of the child node
      */
-    protected int addChildNode(NodeBuilder child) {
-        synchronized (nodes) {
-            nodes.add(child);
-            return nodes.size() - 1;
+    protected synchronized int addChildNode(NodeBuilder child) {
+        if (nodes == null) {
+            nodes = new ArrayList<>();
         }
+        nodes.add(child);
+        return nodes.size() - 1;
     }
 
     /**
-     * This method returns the node path associated with this node.
+     * This method returns the position of this node within its parent.
+     *
+     * @return The position, or 0 if a root node
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * This method returns the node path associated with this node, deriving
+     * it from the parent's node path if not explicitly set.
      *
      * @return The node path
      */
     public String getNodePath() {
+        if (nodePath == null && parent != null) {
+            nodePath = parent.getNodePath() + ':' + position;
+        }
         return nodePath;
     }
 
@@ -170,7 +262,10 @@ public class NodeBuilder {
      * @return The node builder
      */
     public NodeBuilder addProperty(Property property) {
-        this.properties.add(property);
+        if (properties == null) {
+            properties = new HashSet<>();
+        }
+        properties.add(property);
         return this;
     }
 
@@ -179,7 +274,10 @@ public class NodeBuilder {
      * @return The node builder
      */
     public NodeBuilder addCorrelationId(CorrelationIdentifier cid) {
-        this.correlationIds.add(cid);
+        if (correlationIds == null) {
+            correlationIds = new ArrayList<>();
+        }
+        correlationIds.add(cid);
         return this;
     }
 
@@ -212,15 +310,21 @@ public class NodeBuilder {
             ret = new Producer();
             ((Producer) ret).setEndpointType(endpointType);
         }
-        ret.setCorrelationIds(correlationIds);
+        if (correlationIds != null) {
+            ret.setCorrelationIds(correlationIds);
+        }
         ret.setOperation(operation);
-        ret.setProperties(properties);
+        if (properties != null) {
+            ret.setProperties(properties);
+        }
         ret.setUri(uri);
         ret.setDuration(duration);
         ret.setTimestamp(timestamp);
 
-        for (int i = 0; i < nodes.size(); i++) {
-            ret.getNodes().add(nodes.get(i).build());
+        if (nodes != null) {
+            for (int i = 0; i < nodes.size(); i++) {
+                ret.getNodes().add(nodes.get(i).build());
+            }
         }
 
         // Check if template has been supplied for URI
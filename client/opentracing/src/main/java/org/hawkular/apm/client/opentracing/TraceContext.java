@@ -19,18 +19,15 @@ package org.hawkular.apm.client.opentracing;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.model.Constants;
-import org.hawkular.apm.api.model.Property;
 import org.hawkular.apm.api.model.config.ReportingLevel;
 import org.hawkular.apm.api.model.events.EndpointRef;
-import org.hawkular.apm.api.model.trace.ContainerNode;
 import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.api.utils.PropertyUtil;
 import org.hawkular.apm.client.api.recorder.TraceRecorder;
 import org.hawkular.apm.client.api.sampler.ContextSampler;
@@ -53,6 +50,8 @@ public class TraceContext {
 
     private NodeBuilder rootNode;
 
+    private String rootNodePath;
+
     private String transaction;
 
     private ReportingLevel reportingLevel;
@@ -62,6 +61,20 @@ public class TraceContext {
     private TraceRecorder recorder;
     private ContextSampler sampler;
 
+    /**
+     * The sampling decision may be made by any thread using the trace instance, e.g. one
+     * creating a child span for an asynchronous activity
+     */
+    private volatile boolean samplingDecided = false;
+    private volatile boolean sampled = true;
+    private volatile boolean samplingOverridden = false;
+
+    /**
+     * Node processing for spans completed while the trace is not sampled, only
+     * performed if the sampling decision is later overridden
+     */
+    private List<Runnable> deferredProcessing;
+
     private static List<NodeProcessor> nodeProcessors = new ArrayList<>();
 
     static {
@@ -82,13 +95,14 @@ public class TraceContext {
         this.sampler = sampler;
 
         trace = new Trace();
-        trace.setFragmentId(UUID.randomUUID().toString());
+        trace.setFragmentId(IdUtil.createId());
         trace.setTraceId(trace.getFragmentId());
         trace.setHostName(PropertyUtil.getHostName());
         trace.setHostAddress(PropertyUtil.getHostAddress());
 
         // Initialise the root node's path
-        rootNode.setNodePath(String.format("%s:0", trace.getFragmentId()));
+        rootNodePath = trace.getFragmentId() + ":0";
+        rootNode.setNodePath(rootNodePath);
 
     }
 
@@ -100,31 +114,140 @@ public class TraceContext {
         nodeCount.incrementAndGet();
     }
 
+    /**
+     * This method makes the sampling decision for the trace instance, if not already
+     * made, and derives the reporting level to be propagated. The decision is deferred
+     * until first required (i.e. when a child span is created, the trace state is
+     * propagated, or the trace instance completes), so that the tags supplied when
+     * building the top level span, such as the transaction name and URL, are available
+     * to the sampler.
+     */
+    private void decideSampling() {
+        if (!samplingDecided) {
+            synchronized (this) {
+                if (!samplingDecided) {
+                    if (transaction == null && topSpan.getTags().containsKey(Constants.PROP_TRANSACTION_NAME)) {
+                        transaction = topSpan.getTags().get(Constants.PROP_TRANSACTION_NAME).toString();
+                    }
+                    trace.setTransaction(transaction);
+
+                    sampled = sampler == null || sampler.isSampled(trace, reportingLevel, getSourceEndpoint());
+                    if (reportingLevel == null) {
+                        reportingLevel = sampled ? ReportingLevel.All : ReportingLevel.None;
+                    }
+                    samplingDecided = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method attempts to add a node to the trace instance, for a span created as a
+     * child of an existing span. The node can only be added while the trace instance is
+     * still being processed, as once all nodes have completed, the node builders are
+     * released for use by other trace instances.
+     *
+     * @return Whether the node was added, or false if the trace instance has completed
+     */
+    public boolean joinProcessingNode() {
+        while (true) {
+            int count = nodeCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (nodeCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * This method determines whether the trace instance is currently being sampled.
+     * If not, the node processing associated with completed spans can be deferred,
+     * as it will only be required if the decision is overridden.
+     *
+     * @return Whether the trace instance is sampled
+     */
+    public boolean isSampled() {
+        decideSampling();
+        return sampled || samplingOverridden;
+    }
+
+    /**
+     * This method checks whether the supplied span tags override the sampling
+     * decision, using a positive sampling priority. When the decision is overridden,
+     * the node processing deferred for spans that have already completed is performed,
+     * so their nodes are created before those of the spans that are still active.
+     *
+     * @param tags The span tags
+     */
+    public void checkSamplingPriority(Map<String, Object> tags) {
+        Object priority = tags.get(Tags.SAMPLING_PRIORITY.getKey());
+        if (priority != null) {
+            try {
+                if (Integer.parseInt(priority.toString()) > 0) {
+                    reportingLevel = ReportingLevel.All;
+                    samplingOverridden = true;
+
+                    List<Runnable> deferred;
+                    synchronized (this) {
+                        deferred = deferredProcessing;
+                        deferredProcessing = null;
+                    }
+                    if (deferred != null) {
+                        deferred.forEach(Runnable::run);
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                // continue on error
+            }
+        }
+    }
+
+    /**
+     * This method defers the node processing for a completed span, until it is known
+     * whether the trace instance will be reported.
+     *
+     * @param processing The node processing
+     */
+    public void deferNodeProcessing(Runnable processing) {
+        synchronized (this) {
+            if (deferredProcessing == null) {
+                deferredProcessing = new ArrayList<>();
+            }
+            deferredProcessing.add(processing);
+        }
+    }
+
     /**
      * This method indicates the end of processing a node within the trace
      * instance. Once all nodes for a trace have completed being processed,
-     * the trace will be reported.
+     * the trace will be reported if sampled.
      */
     public void endProcessingNode() {
         if (nodeCount.decrementAndGet() == 0 && recorder != null) {
-            Node node = rootNode.build();
+            List<Runnable> deferred;
+            synchronized (this) {
+                deferred = deferredProcessing;
+                deferredProcessing = null;
+            }
 
-            trace.setTimestamp(node.getTimestamp());
-            trace.setTransaction(getTransaction());
-            trace.getNodes().add(node);
+            if (isSampled()) {
+                if (deferred != null) {
+                    deferred.forEach(Runnable::run);
+                }
 
-            if (checkForSamplingProperties(node)) {
-                reportingLevel = ReportingLevel.All;
-            }
+                Node node = rootNode.build();
 
-            boolean sampled = sampler.isSampled(trace, reportingLevel);
-            if (sampled && reportingLevel == null) {
-                reportingLevel = ReportingLevel.All;
-            }
+                trace.setTimestamp(node.getTimestamp());
+                trace.setTransaction(getTransaction());
+                trace.getNodes().add(node);
 
-            if (sampled) {
                 recorder.record(trace);
             }
+
+            // All spans have completed, so the node builders are no longer required
+            rootNode.release();
         }
     }
 
@@ -164,6 +287,7 @@ public class TraceContext {
      * @return the reportingLevel
      */
     public ReportingLevel getReportingLevel() {
+        decideSampling();
         return reportingLevel;
     }
 
@@ -183,6 +307,15 @@ public class TraceContext {
         return nodeProcessors;
     }
 
+    /**
+     * This method returns the node path of the root node in the trace fragment.
+     *
+     * @return The root node path
+     */
+    public String getRootNodePath() {
+        return rootNodePath;
+    }
+
     /**
      * This method returns the top span associated with the traces involved in the current
      * service invocation.
@@ -224,31 +357,4 @@ public class TraceContext {
             setReportingLevel(ReportingLevel.valueOf(level.toString()));
         }
     }
-
-    /**
-     * This method is looking for sampling tag in nodes properties to override current sampling.
-     *
-     * @param node It sh
-     * @return boolean whether trace should be sampled or not
-     */
-    private static boolean checkForSamplingProperties(Node node) {
-        Set<Property> samplingProperties = node instanceof ContainerNode ?
-                ((ContainerNode) node).getPropertiesIncludingDescendants(Tags.SAMPLING_PRIORITY.getKey()) :
-                node.getProperties(Tags.SAMPLING_PRIORITY.getKey());
-
-        for (Property prop: samplingProperties) {
-            int priority = 0;
-            try {
-                priority = Integer.parseInt(prop.getValue());
-            } catch (NumberFormatException ex) {
-                // continue on error
-            }
-
-            if (priority > 0) {
-                return true;
-            }
-        }
-
-        return false;
-    }
 }
@@ -18,7 +18,11 @@
 package io.opentracing.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -26,7 +30,12 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.hawkular.apm.api.model.Constants;
+import org.hawkular.apm.api.model.config.ReportingLevel;
+import org.hawkular.apm.api.model.trace.ContainerNode;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.client.api.sampler.Sampler;
 import org.hawkular.apm.client.opentracing.APMTracer;
+import org.hawkular.apm.client.opentracing.APMTracerTest;
 import org.junit.Test;
 
 import io.opentracing.References;
@@ -36,6 +45,7 @@ import io.opentracing.Tracer;
 import io.opentracing.impl.AbstractSpanBuilder.Reference;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMapExtractAdapter;
+import io.opentracing.propagation.TextMapInjectAdapter;
 
 /**
  * @author gbrown
@@ -131,6 +141,63 @@ public class APMSpanTest {
         assertEquals(ref1, APMSpan.findPrimaryReference(Arrays.asList(ref1, ref2, ref3, ref4)));
     }
 
+    @Test
+    public void testUnsampledChildSpansHaveNoNode() {
+        APMTracerTest.TestTraceRecorder recorder = new APMTracerTest.TestTraceRecorder();
+        Tracer tracer = new APMTracer(recorder, Sampler.NEVER_SAMPLE);
+
+        APMSpan rootSpan = (APMSpan) tracer.buildSpan("root").start();
+        assertNotNull(rootSpan.getNodeBuilder());
+
+        APMSpan child = (APMSpan) tracer.buildSpan("child").asChildOf((Span) rootSpan).start();
+        assertNull(child.getNodeBuilder());
+
+        APMSpan grandchild = (APMSpan) tracer.buildSpan("grandchild").asChildOf((Span) child).start();
+        assertNull(grandchild.getNodeBuilder());
+        assertSame(rootSpan.getTraceContext(), grandchild.getTraceContext());
+
+        Map<String, String> carrier = new HashMap<>();
+        tracer.inject(grandchild.context(), Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(carrier));
+        assertEquals(ReportingLevel.None.name(), carrier.get(Constants.HAWKULAR_APM_LEVEL));
+
+        grandchild.finish();
+        child.finish();
+        rootSpan.finish();
+
+        assertEquals(0, recorder.getTraces().size());
+    }
+
+    @Test
+    public void testChildOfAfterTraceCompleted() {
+        APMTracerTest.TestTraceRecorder recorder = new APMTracerTest.TestTraceRecorder();
+        Tracer tracer = new APMTracer(recorder, Sampler.ALWAYS_SAMPLE);
+
+        APMSpan root1 = (APMSpan) tracer.buildSpan("root1").start();
+        root1.finish();
+        assertEquals(1, recorder.getTraces().size());
+
+        // Reuses the node builders released by the completed trace instance
+        APMSpan root2 = (APMSpan) tracer.buildSpan("root2").start();
+
+        APMSpan late = (APMSpan) tracer.buildSpan("late").asChildOf((Span) root1).start();
+        assertNotSame(root1.getTraceContext(), late.getTraceContext());
+        assertNotSame(root2.getTraceContext(), late.getTraceContext());
+        assertEquals(root1.getTraceContext().getTraceId(), late.getTraceContext().getTraceId());
+        late.finish();
+
+        root2.finish();
+
+        assertEquals(3, recorder.getTraces().size());
+
+        Trace lateFragment = recorder.getTraces().get(1);
+        assertEquals(recorder.getTraces().get(0).getTraceId(), lateFragment.getTraceId());
+        assertEquals("late", lateFragment.getNodes().get(0).getOperation());
+
+        Trace trace2 = recorder.getTraces().get(2);
+        assertEquals("root2", trace2.getNodes().get(0).getOperation());
+        assertTrue(((ContainerNode) trace2.getNodes().get(0)).getNodes().isEmpty());
+    }
+
     protected SpanContext extractSpanContext(Tracer tracer, String id) {
         Map<String, String> headers = new HashMap<>();
         headers.put(Constants.HAWKULAR_APM_TRACEID, TEST_APM_TRACEID);
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.client.opentracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.hawkular.apm.api.model.Property;
+import org.hawkular.apm.api.model.trace.Component;
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.CorrelationIdentifier;
+import org.hawkular.apm.api.model.trace.CorrelationIdentifier.Scope;
+import org.hawkular.apm.api.model.trace.Node;
+import org.hawkular.apm.api.model.trace.NodeType;
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class NodeBuilderTest {
+
+    @Test
+    public void testNodePathDerivedFromParent() {
+        NodeBuilder root = new NodeBuilder();
+        root.setNodePath("frag:0");
+
+        NodeBuilder child1 = NodeBuilder.acquire(root);
+        NodeBuilder child2 = NodeBuilder.acquire(root);
+        NodeBuilder grandchild = NodeBuilder.acquire(child2);
+
+        assertEquals(1, child2.getPosition());
+        assertEquals("frag:0:0", child1.getNodePath());
+        assertEquals("frag:0:1:0", grandchild.getNodePath());
+    }
+
+    @Test
+    public void testBuildWithoutCollections() {
+        Node node = new NodeBuilder().build();
+
+        assertTrue(node instanceof Component);
+        assertTrue(node.getProperties().isEmpty());
+        assertTrue(node.getCorrelationIds().isEmpty());
+        assertTrue(((Component) node).getNodes().isEmpty());
+    }
+
+    @Test
+    public void testReleasedBuilderReused() {
+        NodeBuilder root = NodeBuilder.acquire();
+        root.setNodePath("frag:0");
+        root.setNodeType(NodeType.Consumer).setUri("/test").setDuration(100);
+        root.addProperty(new Property("name", "value"));
+        root.addCorrelationId(new CorrelationIdentifier(Scope.Interaction, "id"));
+        NodeBuilder child = NodeBuilder.acquire(root);
+
+        Consumer consumer = (Consumer) root.build();
+        root.release();
+
+        // The built nodes are unaffected by releasing the builders
+        assertEquals(1, consumer.getProperties().size());
+        assertEquals(1, consumer.getCorrelationIds().size());
+        assertEquals(1, consumer.getNodes().size());
+
+        NodeBuilder reused = NodeBuilder.acquire();
+        NodeBuilder reused2 = NodeBuilder.acquire();
+        assertTrue(reused == root || reused == child);
+        assertTrue(reused2 == root || reused2 == child);
+
+        assertNull(reused.getNodePath());
+        Node node = reused.build();
+        assertTrue(node instanceof Component);
+        assertNull(node.getUri());
+        assertEquals(0, node.getDuration());
+        assertTrue(node.getProperties().isEmpty());
+    }
+
+    @Test
+    public void testReleaseReturnsBuilderToPool() {
+        NodeBuilder builder = NodeBuilder.acquire();
+        builder.release();
+        assertSame(builder, NodeBuilder.acquire());
+    }
+}
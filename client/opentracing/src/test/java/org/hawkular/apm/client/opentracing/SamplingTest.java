@@ -17,11 +17,22 @@
 
 package org.hawkular.apm.client.opentracing;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.hawkular.apm.api.model.Constants;
+import org.hawkular.apm.api.model.config.CollectorConfiguration;
 import org.hawkular.apm.api.model.config.ReportingLevel;
+import org.hawkular.apm.api.model.events.EndpointRef;
+import org.hawkular.apm.api.model.trace.ContainerNode;
+import org.hawkular.apm.api.model.trace.Node;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.hawkular.apm.client.api.sampler.RateLimitingSampler;
 import org.hawkular.apm.client.api.sampler.Sampler;
 import org.junit.Assert;
 import org.junit.Test;
@@ -177,6 +188,135 @@ public class SamplingTest {
         Assert.assertEquals(2, traceRecorder.getTraces().size());
     }
 
+    @Test
+    public void testUnsampledDecisionPropagated() {
+        APMTracerTest.TestTraceRecorder traceRecorder = new APMTracerTest.TestTraceRecorder();
+        Tracer tracer = new APMTracer(traceRecorder, Sampler.NEVER_SAMPLE);
+
+        Span rootSpan = tracer.buildSpan("foo")
+                .start();
+
+        Map<String, String> carrier = new HashMap<>();
+        tracer.inject(rootSpan.context(), Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(carrier));
+        Assert.assertEquals(ReportingLevel.None.name(), carrier.get(Constants.HAWKULAR_APM_LEVEL));
+
+        rootSpan.finish();
+        Assert.assertEquals(0, traceRecorder.getTraces().size());
+    }
+
+    @Test
+    public void testUnsampledOverriddenBySamplingPriority() {
+        APMTracerTest.TestTraceRecorder traceRecorder = new APMTracerTest.TestTraceRecorder();
+        Tracer tracer = new APMTracer(traceRecorder, Sampler.NEVER_SAMPLE);
+
+        Span rootSpan = tracer.buildSpan("root")
+                .start();
+
+        Span before = tracer.buildSpan("before")
+                .asChildOf(rootSpan)
+                .start();
+        before.finish();
+
+        Span priority = tracer.buildSpan("priority")
+                .asChildOf(rootSpan)
+                .start();
+
+        Span nested = tracer.buildSpan("nested")
+                .asChildOf(priority)
+                .start();
+        nested.setTag(Tags.SAMPLING_PRIORITY.getKey(), 1);
+        nested.finish();
+
+        priority.finish();
+
+        Span after = tracer.buildSpan("after")
+                .asChildOf(rootSpan)
+                .withTag("myTag", "myValue")
+                .start();
+        after.finish();
+
+        rootSpan.finish();
+
+        Assert.assertEquals(1, traceRecorder.getTraces().size());
+
+        Trace trace = traceRecorder.getTraces().get(0);
+        Assert.assertEquals("root", trace.getNodes().get(0).getOperation());
+
+        List<Node> children = ((ContainerNode) trace.getNodes().get(0)).getNodes();
+        Assert.assertEquals(3, children.size());
+        Assert.assertEquals("before", children.get(0).getOperation());
+        Assert.assertEquals("priority", children.get(1).getOperation());
+        Assert.assertEquals("after", children.get(2).getOperation());
+        Assert.assertTrue(children.get(2).hasProperty("myTag"));
+
+        List<Node> nestedChildren = ((ContainerNode) children.get(1)).getNodes();
+        Assert.assertEquals(1, nestedChildren.size());
+        Assert.assertEquals("nested", nestedChildren.get(0).getOperation());
+    }
+
+    @Test
+    public void testSamplerUsesTransactionAndEndpoint() {
+        APMTracerTest.TestTraceRecorder traceRecorder = new APMTracerTest.TestTraceRecorder();
+        List<String> sampled = new ArrayList<>();
+        Tracer tracer = new APMTracer(traceRecorder, new Sampler() {
+            @Override
+            public boolean isSampled(Trace trace) {
+                return false;
+            }
+
+            @Override
+            public boolean isSampled(Trace trace, EndpointRef endpoint) {
+                sampled.add(trace.getTransaction() + " " + endpoint.getUri());
+                return "keep".equals(trace.getTransaction()) && "/hello".equals(endpoint.getUri());
+            }
+        });
+
+        Span kept = tracer.buildSpan("root")
+                .withTag(Constants.PROP_TRANSACTION_NAME, "keep")
+                .withTag(Tags.HTTP_URL.getKey(), "http://localhost:8080/hello")
+                .start();
+        tracer.buildSpan("child").asChildOf(kept).start().finish();
+        kept.finish();
+
+        Span dropped = tracer.buildSpan("root")
+                .withTag(Constants.PROP_TRANSACTION_NAME, "drop")
+                .withTag(Tags.HTTP_URL.getKey(), "http://localhost:8080/hello")
+                .start();
+        tracer.buildSpan("child").asChildOf(dropped).start().finish();
+        dropped.finish();
+
+        Assert.assertEquals(Arrays.asList("keep /hello", "drop /hello"), sampled);
+        Assert.assertEquals(1, traceRecorder.getTraces().size());
+        Assert.assertEquals("keep", traceRecorder.getTraces().get(0).getTransaction());
+    }
+
+    @Test
+    public void testRateLimitingSamplerBudgetPerTransaction() {
+        CollectorConfiguration config = new CollectorConfiguration();
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE, "0");
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE + ":txnA", "2");
+        config.getProperties().put(PropertyUtil.HAWKULAR_APM_SAMPLING_RATE + ":txnB", "5");
+
+        APMTracerTest.TestTraceRecorder traceRecorder = new APMTracerTest.TestTraceRecorder();
+        Tracer tracer = new APMTracer(traceRecorder, RateLimitingSampler.withConfiguration(config));
+
+        for (int i = 0; i < 10; i++) {
+            for (String txn : Arrays.asList("txnA", "txnB", "txnC")) {
+                Span root = tracer.buildSpan("root")
+                        .withTag(Constants.PROP_TRANSACTION_NAME, txn)
+                        .start();
+                tracer.buildSpan("child").asChildOf(root).start().finish();
+                root.finish();
+            }
+        }
+
+        Map<String, Long> counts = traceRecorder.getTraces().stream()
+                .collect(Collectors.groupingBy(Trace::getTransaction, Collectors.counting()));
+        Assert.assertEquals(Long.valueOf(2), counts.get("txnA"));
+        Assert.assertEquals(Long.valueOf(5), counts.get("txnB"));
+        Assert.assertNull(counts.get("txnC"));
+    }
+
     private SpanContext extractedTraceState(Tracer tracer, ReportingLevel reportingLevel) {
         Map<String, String> headers = new HashMap<>();
         headers.put(Constants.HAWKULAR_APM_TRACEID, "foo");
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.trace.publisher.rest.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.hawkular.apm.api.utils.PropertyUtil;
+
+/**
+ * This class provides the default transport, which reuses persistent HTTP connections
+ * and optionally gzip compresses the content.
+ *
+ * Connections are returned to the JVM's keep-alive cache, rather than being closed, by
+ * fully consuming the response and not disconnecting. The number of idle connections
+ * retained per destination is controlled by the <code>http.maxConnections</code> system
+ * property, which should be at least the number of batch publishing threads.
+ *
+ * @author gbrown
+ */
+public class KeepAliveTraceTransport implements TraceTransport {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private boolean gzip;
+
+    public KeepAliveTraceTransport() {
+        this(PropertyUtil.getPropertyAsBoolean(PropertyUtil.HAWKULAR_APM_PUBLISHER_GZIP));
+    }
+
+    public KeepAliveTraceTransport(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return Whether content is gzip compressed
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    @Override
+    public int post(URL url, Map<String, String> headers, ContentWriter content) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setDoInput(true);
+        connection.setUseCaches(false);
+        connection.setAllowUserInteraction(false);
+        connection.setRequestProperty("Connection", "keep-alive");
+        connection.setRequestProperty("Content-Type", "application/json");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        // Stream the content, rather than letting the connection buffer the complete request
+        connection.setChunkedStreamingMode(0);
+
+        if (gzip) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            try (OutputStream os = new GZIPOutputStream(connection.getOutputStream(), BUFFER_SIZE)) {
+                content.writeTo(os);
+            }
+        } else {
+            try (OutputStream os = connection.getOutputStream()) {
+                content.writeTo(os);
+            }
+        }
+
+        int statusCode = connection.getResponseCode();
+
+        // Consume the response, so that the connection can be reused
+        InputStream is = statusCode < HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getInputStream() : connection.getErrorStream();
+        if (is != null) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            try {
+                while (is.read(buf) != -1) {
+                    // Discard
+                }
+            } finally {
+                is.close();
+            }
+        }
+
+        return statusCode;
+    }
+
+    @Override
+    public String toString() {
+        return "KeepAliveTraceTransport gzip=" + gzip;
+    }
+}
@@ -16,34 +16,84 @@
  */
 package org.hawkular.apm.trace.publisher.rest.client;
 
+import java.net.URL;
 import java.time.Clock;
 import java.util.List;
+import java.util.Map;
 
 import org.hawkular.apm.api.logging.Logger;
 import org.hawkular.apm.api.logging.Logger.Level;
 import org.hawkular.apm.api.model.trace.Trace;
 import org.hawkular.apm.api.services.PublisherMetricHandler;
+import org.hawkular.apm.api.services.ServiceResolver;
 import org.hawkular.apm.api.services.TracePublisher;
 import org.hawkular.apm.api.utils.PropertyUtil;
 import org.hawkular.apm.client.api.rest.AbstractRESTClient;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
 /**
  * This class provides the REST client implementation for the Trace Publisher
- * API.
+ * API. The trace fragments are sent using a {@link TraceTransport}, which by default
+ * reuses persistent connections. The fragments are encoded as JSON, or optionally using
+ * the more compact binary Smile format.
  *
  * @author gbrown
  */
 public class TracePublisherRESTClient extends AbstractRESTClient implements TracePublisher {
     private static final Logger log = Logger.getLogger(TracePublisherRESTClient.class.getName());
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String APPLICATION_SMILE = "application/x-jackson-smile";
+    private static final String SMILE_FORMAT = "smile";
     private PublisherMetricHandler<Trace> handler = null;
     private Clock clock = Clock.systemUTC();
+    private TraceTransport transport;
+    private ObjectWriter traceWriter;
+    private String contentType;
 
     public TracePublisherRESTClient() {
         super(PropertyUtil.HAWKULAR_APM_URI_PUBLISHER);
+        initTransport();
     }
 
     public TracePublisherRESTClient(String username, String password, String url) {
         super(username, password, url);
+        initTransport();
+    }
+
+    private void initTransport() {
+        transport = ServiceResolver.getSingletonService(TraceTransport.class);
+        if (transport == null) {
+            transport = new KeepAliveTraceTransport();
+        }
+
+        if (SMILE_FORMAT.equalsIgnoreCase(PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_PUBLISHER_FORMAT))) {
+            traceWriter = SmileWriterFactory.create();
+            contentType = APPLICATION_SMILE;
+        } else {
+            traceWriter = mapper.writerFor(Trace.class);
+            contentType = APPLICATION_JSON;
+        }
+        traceWriter = traceWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * @return The transport
+     */
+    public TraceTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param transport The transport
+     */
+    public void setTransport(TraceTransport transport) {
+        this.transport = transport;
     }
 
     @Override
@@ -54,7 +104,20 @@ public class TracePublisherRESTClient extends AbstractRESTClient implements Trac
     @Override
     public void publish(String tenantId, List<Trace> traces) throws Exception {
         long startTime = clock.millis();
-        int statusCode = postAsJsonTo(tenantId, "traces/fragments", traces);
+        URL url = getUrl("traces/fragments");
+        Map<String, String> headers = getHeaders(tenantId);
+        headers.put("Content-Type", contentType);
+        int statusCode = transport.post(url, headers, os -> {
+            // Serialize each trace directly to the connection, avoiding an intermediate
+            // representation of the complete batch
+            try (JsonGenerator generator = traceWriter.getFactory().createGenerator(os)) {
+                generator.writeStartArray();
+                for (int i = 0; i < traces.size(); i++) {
+                    traceWriter.writeValue(generator, traces.get(i));
+                }
+                generator.writeEndArray();
+            }
+        });
         if (log.isLoggable(Level.FINEST)) {
             log.finest("Status code is: " + statusCode);
         }
@@ -86,4 +149,24 @@ public class TracePublisherRESTClient extends AbstractRESTClient implements Trac
         this.handler = handler;
     }
 
+    @Override
+    public String toString() {
+        return super.toString() + " contentType=" + contentType + " transport=[" + transport + "]";
+    }
+
+    /**
+     * This class isolates the dependency on the Smile data format, so that it is only
+     * required when the format has been selected.
+     */
+    private static class SmileWriterFactory {
+
+        static ObjectWriter create() {
+            // Repeated field names and short string values (e.g. URIs, host names and
+            // property names) are only encoded once per batch
+            return new ObjectMapper(new SmileFactory()
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES))
+                    .writerFor(Trace.class);
+        }
+    }
+
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.trace.publisher.rest.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * This interface represents the transport used by the REST trace publisher to
+ * send serialized trace fragments to the server. An alternative implementation can be
+ * supplied using the java ServiceLoader mechanism.
+ *
+ * @author gbrown
+ */
+public interface TraceTransport {
+
+    /**
+     * This method posts the content to the URL. The content is written directly
+     * to the request's output stream, so that it does not need to be held in memory.
+     *
+     * @param url The URL
+     * @param headers The request headers
+     * @param content The writer for the JSON content
+     * @return The response status code
+     * @throws IOException Failed to send the content
+     */
+    int post(URL url, Map<String, String> headers, ContentWriter content) throws IOException;
+
+    /**
+     * This interface represents a component that writes the request content.
+     */
+    @FunctionalInterface
+    interface ContentWriter {
+
+        /**
+         * This method writes the content to the supplied output stream.
+         *
+         * @param os The output stream
+         * @throws IOException Failed to write the content
+         */
+        void writeTo(OutputStream os) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.trace.publisher.rest.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author gbrown
+ */
+public class KeepAliveTraceTransportTest {
+
+    private static final String CONTENT = "[{\"fragmentId\":\"1\"}]";
+
+    private HttpServer server;
+    private URL url;
+
+    private volatile int status = 200;
+    private volatile String receivedEncoding;
+    private volatile String receivedContent;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/traces", this::handle);
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/traces");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        receivedEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        InputStream is = exchange.getRequestBody();
+        if ("gzip".equals(receivedEncoding)) {
+            is = new GZIPInputStream(is);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int len;
+        while ((len = is.read(buf)) != -1) {
+            baos.write(buf, 0, len);
+        }
+        receivedContent = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+
+        byte[] response = status == 200 ? new byte[0] : "Failed".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    @Test
+    public void testPostUncompressed() throws IOException {
+        KeepAliveTraceTransport transport = new KeepAliveTraceTransport(false);
+
+        assertEquals(200, post(transport));
+        assertNull(receivedEncoding);
+        assertEquals(CONTENT, receivedContent);
+    }
+
+    @Test
+    public void testPostGzip() throws IOException {
+        KeepAliveTraceTransport transport = new KeepAliveTraceTransport(true);
+
+        assertEquals(200, post(transport));
+        assertEquals("gzip", receivedEncoding);
+        assertEquals(CONTENT, receivedContent);
+    }
+
+    @Test
+    public void testGzipProperty() {
+        try {
+            System.setProperty(PropertyUtil.HAWKULAR_APM_PUBLISHER_GZIP, "true");
+            assertTrue(new KeepAliveTraceTransport().isGzip());
+
+            System.setProperty(PropertyUtil.HAWKULAR_APM_PUBLISHER_GZIP, "false");
+            assertFalse(new KeepAliveTraceTransport().isGzip());
+        } finally {
+            System.clearProperty(PropertyUtil.HAWKULAR_APM_PUBLISHER_GZIP);
+        }
+        assertFalse(new KeepAliveTraceTransport().isGzip());
+    }
+
+    @Test
+    public void testErrorStatusReturned() throws IOException {
+        KeepAliveTraceTransport transport = new KeepAliveTraceTransport(true);
+
+        status = 500;
+        assertEquals(500, post(transport));
+
+        // The error response is consumed, so the transport can continue to be used
+        status = 200;
+        assertEquals(200, post(transport));
+        assertEquals(CONTENT, receivedContent);
+    }
+
+    @Test(expected = IOException.class)
+    public void testConnectionRefused() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        new KeepAliveTraceTransport(false).post(new URL("http://localhost:" + port + "/traces"),
+                Collections.emptyMap(), os -> os.write(CONTENT.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private int post(KeepAliveTraceTransport transport) throws IOException {
+        return transport.post(url, Collections.singletonMap("Content-Type", "application/json"),
+                os -> os.write(CONTENT.getBytes(StandardCharsets.UTF_8)));
+    }
+}
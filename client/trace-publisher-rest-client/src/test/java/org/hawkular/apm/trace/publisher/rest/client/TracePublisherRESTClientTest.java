@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.trace.publisher.rest.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author gbrown
+ */
+public class TracePublisherRESTClientTest {
+
+    private static final TypeReference<List<Trace>> TRACE_LIST = new TypeReference<List<Trace>>() {
+    };
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testPublishStreamsBatch() throws Exception {
+        CapturingTransport transport = new CapturingTransport(204);
+        TracePublisherRESTClient client = new TracePublisherRESTClient(null, null, "http://localhost:8080");
+        client.setTransport(transport);
+
+        client.publish("tenant1", Arrays.asList(new Trace().setFragmentId("1"), new Trace().setFragmentId("2")));
+
+        assertEquals("http://localhost:8080/hawkular/apm/traces/fragments", transport.url.toString());
+        assertEquals("application/json", transport.headers.get("Content-Type"));
+        assertEquals("tenant1", transport.headers.get("Hawkular-Tenant"));
+
+        List<Trace> traces = mapper.readValue(transport.content, TRACE_LIST);
+        assertEquals(2, traces.size());
+        assertEquals("1", traces.get(0).getFragmentId());
+        assertEquals("2", traces.get(1).getFragmentId());
+    }
+
+    @Test
+    public void testPublishSmile() throws Exception {
+        TracePublisherRESTClient client;
+        try {
+            System.setProperty(PropertyUtil.HAWKULAR_APM_PUBLISHER_FORMAT, "smile");
+            client = new TracePublisherRESTClient(null, null, "http://localhost:8080");
+        } finally {
+            System.clearProperty(PropertyUtil.HAWKULAR_APM_PUBLISHER_FORMAT);
+        }
+        CapturingTransport transport = new CapturingTransport(204);
+        client.setTransport(transport);
+
+        client.publish(null, Arrays.asList(new Trace().setFragmentId("1").setTraceId("t1"),
+                new Trace().setFragmentId("2").setTraceId("t1")));
+
+        assertEquals("application/x-jackson-smile", transport.headers.get("Content-Type"));
+
+        List<Trace> traces = new ObjectMapper(new SmileFactory()).readValue(transport.content, TRACE_LIST);
+        assertEquals(2, traces.size());
+        assertEquals("1", traces.get(0).getFragmentId());
+        assertEquals("t1", traces.get(1).getTraceId());
+    }
+
+    @Test
+    public void testPublishEmptyBatch() throws Exception {
+        CapturingTransport transport = new CapturingTransport(204);
+        TracePublisherRESTClient client = new TracePublisherRESTClient(null, null, "http://localhost:8080");
+        client.setTransport(transport);
+
+        client.publish(null, new ArrayList<>());
+
+        List<Trace> traces = mapper.readValue(transport.content, TRACE_LIST);
+        assertEquals(0, traces.size());
+    }
+
+    @Test
+    public void testPublishFailureStatus() throws Exception {
+        TracePublisherRESTClient client = new TracePublisherRESTClient(null, null, "http://localhost:8080");
+        client.setTransport(new CapturingTransport(500));
+
+        try {
+            client.publish(null, Arrays.asList(new Trace().setFragmentId("1")));
+            fail("Should have thrown exception");
+        } catch (Exception e) {
+            assertEquals("Failed to publish trace fragments: status=[500]", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPublishChunked() throws Exception {
+        List<String> transferEncodings = new ArrayList<>();
+        List<byte[]> bodies = new ArrayList<>();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/hawkular/apm/traces/fragments", exchange -> {
+            transferEncodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+            bodies.add(readAll(exchange.getRequestBody()));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+
+        try {
+            TracePublisherRESTClient client = new TracePublisherRESTClient(null, null,
+                    "http://localhost:" + server.getAddress().getPort());
+            client.setTransport(new KeepAliveTraceTransport(false));
+
+            List<Trace> batch = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                batch.add(new Trace().setFragmentId("fragment" + i));
+            }
+            client.publish(null, batch);
+
+            assertEquals("chunked", transferEncodings.get(0));
+            List<Trace> traces = mapper.readValue(bodies.get(0), TRACE_LIST);
+            assertEquals(1000, traces.size());
+            assertEquals("fragment999", traces.get(999).getFragmentId());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ((len = is.read(buf)) != -1) {
+            baos.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
+    private static class CapturingTransport implements TraceTransport {
+
+        private final int status;
+        private URL url;
+        private Map<String, String> headers;
+        private byte[] content;
+
+        CapturingTransport(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public int post(URL url, Map<String, String> headers, ContentWriter writer) throws IOException {
+            this.url = url;
+            this.headers = headers;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (OutputStream os = baos) {
+                writer.writeTo(os);
+            }
+            this.content = baos.toByteArray();
+            return status;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.apm.api.model.config.CollectorConfiguration;
+import org.hawkular.apm.api.model.config.txn.ConfigMessage;
+import org.hawkular.apm.api.model.config.txn.Filter;
+import org.hawkular.apm.api.model.config.txn.TransactionConfig;
+import org.hawkular.apm.api.model.config.txn.TransactionSummary;
+import org.hawkular.apm.api.services.ConfigurationService;
+
+/**
+ * This configuration service provides a fixed collector configuration, used
+ * when benchmarking the trace collector. It is registered as a service, so that
+ * it is located by the collector without requiring a server.
+ *
+ * @author gbrown
+ */
+public class BenchmarkConfigurationService implements ConfigurationService {
+
+    /** The transaction associated with URIs starting with {@link #URI_PREFIX} */
+    public static final String TRANSACTION = "orders";
+
+    /** The URI prefix for the benchmark transaction */
+    public static final String URI_PREFIX = "/orders";
+
+    private final CollectorConfiguration config = new CollectorConfiguration();
+
+    public BenchmarkConfigurationService() {
+        TransactionConfig txn = new TransactionConfig();
+        txn.setFilter(new Filter());
+        txn.getFilter().getInclusions().add("^" + URI_PREFIX);
+        config.getTransactions().put(TRANSACTION, txn);
+    }
+
+    @Override
+    public CollectorConfiguration getCollector(String tenantId, String type, String host, String server) {
+        return config;
+    }
+
+    @Override
+    public List<ConfigMessage> setTransaction(String tenantId, String name, TransactionConfig config) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ConfigMessage> setTransactions(String tenantId, Map<String, TransactionConfig> configs) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ConfigMessage> validateTransaction(TransactionConfig config) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public TransactionConfig getTransaction(String tenantId, String name) {
+        return config.getTransactions().get(name);
+    }
+
+    @Override
+    public Map<String, TransactionConfig> getTransactions(String tenantId, long updated) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<TransactionSummary> getTransactionSummaries(String tenantId) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void removeTransaction(String tenantId, String name) {
+    }
+
+    @Override
+    public void clear(String tenantId) {
+    }
+}
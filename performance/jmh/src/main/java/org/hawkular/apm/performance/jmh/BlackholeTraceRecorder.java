@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.client.api.recorder.TraceRecorder;
+
+/**
+ * This trace recorder discards the recorded traces, so that benchmarks only measure
+ * the cost of creating them.
+ *
+ * @author gbrown
+ */
+public class BlackholeTraceRecorder implements TraceRecorder {
+
+    private volatile Trace last;
+
+    @Override
+    public void record(Trace trace) {
+        // Retain the last trace, to prevent the creation being optimised away
+        last = trace;
+    }
+
+    /**
+     * @return The last recorded trace
+     */
+    public Trace getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.trace.Component;
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.Producer;
+import org.hawkular.apm.client.collector.internal.FragmentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark measures the cost of building a trace fragment hierarchy.
+ *
+ * @author gbrown
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FragmentBuilderBenchmark {
+
+    private static final String URI = "/orders";
+    private static final String REMOTE_URI = "http://localhost:8080/inventory";
+
+    @Benchmark
+    public FragmentBuilder pushPopNodes() {
+        FragmentBuilder builder = new FragmentBuilder();
+
+        Consumer consumer = new Consumer();
+        consumer.setUri(URI);
+        builder.pushNode(consumer);
+
+        Component component = new Component();
+        component.setUri(URI);
+        builder.pushNode(component);
+
+        Producer producer = new Producer();
+        producer.setUri(REMOTE_URI);
+        builder.pushNode(producer);
+
+        builder.popNode(Producer.class, REMOTE_URI);
+        builder.popNode(Component.class, URI);
+        builder.popNode(Consumer.class, URI);
+
+        return builder;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.config.CollectorConfiguration;
+import org.hawkular.apm.api.model.config.Direction;
+import org.hawkular.apm.api.model.config.txn.DataExpression;
+import org.hawkular.apm.api.model.config.txn.DataSource;
+import org.hawkular.apm.api.model.config.txn.JSONExpression;
+import org.hawkular.apm.api.model.config.txn.Processor;
+import org.hawkular.apm.api.model.config.txn.SetPropertyAction;
+import org.hawkular.apm.api.model.config.txn.TextExpression;
+import org.hawkular.apm.api.model.config.txn.TransactionConfig;
+import org.hawkular.apm.api.model.config.txn.XMLExpression;
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.NodeType;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.client.collector.internal.ProcessorManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark measures the cost of processing request content, to extract a
+ * property using the different expression types.
+ *
+ * @author gbrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorManagerBenchmark {
+
+    private static final String TRANSACTION = "orders";
+
+    @Param({ "xml", "json", "text" })
+    public String expression;
+
+    private ProcessorManager processorManager;
+    private Trace trace;
+    private String content;
+
+    @Setup
+    public void setup() {
+        DataExpression expr;
+        if (expression.equals("xml")) {
+            XMLExpression xml = new XMLExpression();
+            xml.setXpath("/order/@id");
+            expr = xml;
+            content = "<order id=\"1234\"><item>book</item><quantity>2</quantity></order>";
+        } else if (expression.equals("json")) {
+            JSONExpression json = new JSONExpression();
+            json.setJsonpath("$.id");
+            expr = json;
+            content = "{\"id\":\"1234\",\"item\":\"book\",\"quantity\":2}";
+        } else {
+            expr = new TextExpression();
+            content = "1234";
+        }
+        expr.setSource(DataSource.Content);
+        expr.setKey("0");
+
+        SetPropertyAction action = new SetPropertyAction();
+        action.setName("orderId");
+        action.setExpression(expr);
+
+        Processor processor = new Processor();
+        processor.setNodeType(NodeType.Consumer);
+        processor.setDirection(Direction.In);
+        processor.getActions().add(action);
+
+        TransactionConfig txn = new TransactionConfig();
+        txn.getProcessors().add(processor);
+
+        CollectorConfiguration config = new CollectorConfiguration();
+        config.getTransactions().put(TRANSACTION, txn);
+
+        processorManager = new ProcessorManager(config);
+
+        trace = new Trace();
+        trace.setTransaction(TRANSACTION);
+    }
+
+    @Benchmark
+    public Consumer process() {
+        Consumer consumer = new Consumer();
+        consumer.setUri("/orders");
+        processorManager.process(trace, consumer, Direction.In, null, content);
+        return consumer;
+    }
+}
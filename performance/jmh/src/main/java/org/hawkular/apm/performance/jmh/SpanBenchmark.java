@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.client.api.recorder.TraceRecorder;
+import org.hawkular.apm.client.api.sampler.Sampler;
+import org.hawkular.apm.client.opentracing.APMTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.opentracing.Span;
+
+/**
+ * This benchmark measures the cost of starting and finishing spans using the
+ * APM tracer. Run with the GC profiler (-prof gc) to report the bytes allocated
+ * per operation.
+ *
+ * @author gbrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanBenchmark {
+
+    private APMTracer sampledTracer;
+    private APMTracer unsampledTracer;
+
+    @Setup
+    public void setup() {
+        TraceRecorder recorder = new BlackholeTraceRecorder();
+        sampledTracer = new APMTracer(recorder, Sampler.ALWAYS_SAMPLE);
+        unsampledTracer = new APMTracer(recorder, Sampler.NEVER_SAMPLE);
+    }
+
+    @Benchmark
+    public Span singleSpan() {
+        Span span = sampledTracer.buildSpan("GET").withTag("http.url", "http://localhost:8080/orders").start();
+        span.finish();
+        return span;
+    }
+
+    @Benchmark
+    public void nestedSpans(Blackhole blackhole) {
+        nestedSpans(sampledTracer, blackhole);
+    }
+
+    @Benchmark
+    public void nestedSpansUnsampled(Blackhole blackhole) {
+        nestedSpans(unsampledTracer, blackhole);
+    }
+
+    private static void nestedSpans(APMTracer tracer, Blackhole blackhole) {
+        Span parent = tracer.buildSpan("GET").withTag("http.url", "http://localhost:8080/orders").start();
+        for (int i = 0; i < 3; i++) {
+            Span child = tracer.buildSpan("query").asChildOf(parent).withTag("component", "jdbc").start();
+            child.finish();
+            blackhole.consume(child);
+        }
+        parent.finish();
+        blackhole.consume(parent);
+    }
+}
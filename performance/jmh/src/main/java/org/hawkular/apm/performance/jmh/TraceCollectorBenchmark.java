@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.client.api.recorder.BatchTraceRecorder;
+import org.hawkular.apm.client.collector.internal.DefaultTraceCollector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark measures the cost of reporting consumer and producer activity
+ * through the trace collector, as performed by the instrumentation rules.
+ *
+ * @author gbrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceCollectorBenchmark {
+
+    private static final String URI = BenchmarkConfigurationService.URI_PREFIX + "/1234";
+    private static final String REMOTE_URI = "http://localhost:8080/inventory";
+
+    private DefaultTraceCollector collector;
+
+    @Setup
+    public void setup() {
+        collector = new DefaultTraceCollector(new BatchTraceRecorder.BatchTraceRecorderBuilder()
+                .withTracePublisher(new BlackholeTracePublisher())
+                .build());
+    }
+
+    @Benchmark
+    public void consumerStartEnd() {
+        collector.consumerStart(null, URI, "HTTP", "GET", null);
+        collector.consumerEnd(null, URI, "HTTP", "GET");
+    }
+
+    @Benchmark
+    public void consumerWithProducer() {
+        collector.consumerStart(null, URI, "HTTP", "GET", null);
+        collector.producerStart(null, REMOTE_URI, "HTTP", "GET", null);
+        collector.producerEnd(null, REMOTE_URI, "HTTP", "GET");
+        collector.consumerEnd(null, URI, "HTTP", "GET");
+    }
+}
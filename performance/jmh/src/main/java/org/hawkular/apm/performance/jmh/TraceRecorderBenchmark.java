@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.client.api.recorder.BatchTraceRecorder;
+import org.hawkular.apm.client.api.recorder.BatchTraceRecorder.OverflowPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This benchmark measures the cost of recording trace fragments, when
+ * multiple application threads are recording concurrently. A buffer size
+ * of 0 uses the lock guarded list, otherwise the lock-free ring buffer is
+ * used with the overflow policy (which has no effect on the list).
+ *
+ * @author gbrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TraceRecorderBenchmark {
+
+    @Param({ "0", "65536" })
+    public int bufferSize;
+
+    @Param({ "DropNewest", "DropOldest", "Sample" })
+    public OverflowPolicy overflowPolicy;
+
+    private BatchTraceRecorder recorder;
+    private Trace trace;
+
+    @Setup
+    public void setup() {
+        recorder = new BatchTraceRecorder.BatchTraceRecorderBuilder()
+                .withTracePublisher(new BlackholeTracePublisher())
+                .withBufferSize(bufferSize)
+                .withOverflowPolicy(overflowPolicy)
+                .build();
+
+        trace = new Trace();
+        trace.setTraceId("1");
+        trace.setFragmentId("1");
+        Consumer consumer = new Consumer();
+        consumer.setUri("/orders");
+        trace.getNodes().add(consumer);
+    }
+
+    @Benchmark
+    public void record() {
+        recorder.record(trace);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh.server;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.events.CommunicationDetails;
+import org.hawkular.apm.api.model.events.CompletionTime;
+import org.hawkular.apm.api.model.events.NodeDetails;
+import org.hawkular.apm.api.model.events.SourceInfo;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.server.api.task.ProcessingUnit;
+import org.hawkular.apm.server.api.utils.SourceInfoUtil;
+import org.hawkular.apm.server.processor.communicationdetails.CommunicationDetailsDeriver;
+import org.hawkular.apm.server.processor.nodedetails.NodeDetailsDeriver;
+import org.hawkular.apm.server.processor.tracecompletiontime.TraceCompletionInformation;
+import org.hawkular.apm.server.processor.tracecompletiontime.TraceCompletionInformationInitiator;
+import org.hawkular.apm.server.processor.tracecompletiontime.TraceCompletionInformationProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This benchmark measures the server side derivers, invoked through a {@link ProcessingUnit}
+ * as they are by the message driven beans, using in-memory caches. Each invocation processes
+ * a batch of {@link TraceGenerator#BATCH_SIZE} trace fragments, so the throughput is reported
+ * in fragments per second and the GC profiler's normalized allocation rate is per fragment.
+ *
+ * @author gbrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(TraceGenerator.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeriverBenchmark {
+
+    private static final String TENANT = "benchmark";
+
+    @Param({ "1", "3" })
+    public int depth;
+
+    @Param({ "1", "4" })
+    public int fanOut;
+
+    private List<Trace> fragments;
+
+    private ProcessingUnit<Trace, CommunicationDetails> communicationDetailsUnit;
+    private ProcessingUnit<Trace, NodeDetails> nodeDetailsUnit;
+    private ProcessingUnit<Trace, TraceCompletionInformation> completionInitiatorUnit;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws Exception {
+        fragments = TraceGenerator.traces(depth, fanOut);
+
+        CommunicationDetailsDeriver communicationDetailsDeriver = new CommunicationDetailsDeriver();
+        communicationDetailsDeriver.setSourceInfoCache(new InMemorySourceInfoCache());
+        communicationDetailsUnit = new ProcessingUnit<>();
+        communicationDetailsUnit.setProcessor(communicationDetailsDeriver);
+        communicationDetailsUnit.setResultHandler((tenantId, items) -> blackhole.consume(items));
+
+        nodeDetailsUnit = new ProcessingUnit<>();
+        nodeDetailsUnit.setProcessor(new NodeDetailsDeriver());
+        nodeDetailsUnit.setResultHandler((tenantId, items) -> blackhole.consume(items));
+
+        // Populate the communication details used to complete the traces
+        InMemoryCommunicationDetailsCache communicationDetailsCache = new InMemoryCommunicationDetailsCache();
+        ProcessingUnit<Trace, CommunicationDetails> populator = new ProcessingUnit<>();
+        populator.setProcessor(communicationDetailsDeriver);
+        populator.setResultHandler(communicationDetailsCache::store);
+        populator.handle(TENANT, fragments);
+
+        TraceCompletionInformationProcessor completionProcessor = new TraceCompletionInformationProcessor();
+        completionProcessor.setCommunicationDetailsCache(communicationDetailsCache);
+        ProcessingUnit<TraceCompletionInformation, TraceCompletionInformation> completionProcessorUnit =
+                new ProcessingUnit<>();
+        completionProcessorUnit.setProcessor(completionProcessor);
+        completionProcessorUnit.setResultHandler((tenantId, items) -> blackhole.consume(items));
+
+        completionInitiatorUnit = new ProcessingUnit<>();
+        completionInitiatorUnit.setProcessor(new TraceCompletionInformationInitiator());
+        completionInitiatorUnit.setResultHandler((tenantId, items) -> {
+            // The initiated completion times are normally published to a topic, which results
+            // in the properties being deserialized into a mutable set before being processed
+            for (int i = 0; i < items.size(); i++) {
+                CompletionTime ct = items.get(i).getCompletionTime();
+                ct.setProperties(new HashSet<>(ct.getProperties()));
+            }
+            completionProcessorUnit.handle(tenantId, items);
+        });
+    }
+
+    @Benchmark
+    public List<SourceInfo> sourceInfo() throws Exception {
+        return SourceInfoUtil.getSourceInfo(TENANT, fragments);
+    }
+
+    @Benchmark
+    public void communicationDetails() throws Exception {
+        communicationDetailsUnit.handle(TENANT, fragments);
+    }
+
+    @Benchmark
+    public void nodeDetails() throws Exception {
+        nodeDetailsUnit.handle(TENANT, fragments);
+    }
+
+    @Benchmark
+    public void traceCompletion() throws Exception {
+        completionInitiatorUnit.handle(TENANT, fragments);
+    }
+}
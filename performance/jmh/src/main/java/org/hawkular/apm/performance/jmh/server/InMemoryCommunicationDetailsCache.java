@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hawkular.apm.api.model.events.CommunicationDetails;
+import org.hawkular.apm.server.api.services.CommunicationDetailsCache;
+
+/**
+ * This class provides an in-memory communication details cache, standing in for the
+ * infinispan based implementation so that only the processors are measured.
+ *
+ * @author gbrown
+ */
+public class InMemoryCommunicationDetailsCache implements CommunicationDetailsCache {
+
+    private final Map<String, CommunicationDetails> singleConsumer = new ConcurrentHashMap<>();
+    private final Map<String, List<CommunicationDetails>> multipleConsumers = new ConcurrentHashMap<>();
+
+    @Override
+    public CommunicationDetails get(String tenantId, String id) {
+        return singleConsumer.get(id);
+    }
+
+    @Override
+    public List<CommunicationDetails> getById(String tenantId, String id) {
+        List<CommunicationDetails> ret = multipleConsumers.get(id);
+        return ret == null ? Collections.emptyList() : ret;
+    }
+
+    @Override
+    public void store(String tenantId, List<CommunicationDetails> details) {
+        for (int i = 0; i < details.size(); i++) {
+            CommunicationDetails cd = details.get(i);
+            if (cd.isMultiConsumer()) {
+                multipleConsumers.computeIfAbsent(cd.getLinkId(), k -> new ArrayList<>()).add(cd);
+            } else {
+                singleConsumer.put(cd.getLinkId(), cd);
+            }
+        }
+    }
+}
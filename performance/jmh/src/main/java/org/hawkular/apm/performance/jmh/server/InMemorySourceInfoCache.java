@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hawkular.apm.api.model.events.SourceInfo;
+import org.hawkular.apm.server.api.services.SourceInfoCache;
+
+/**
+ * This class provides an in-memory source info cache, standing in for the
+ * infinispan based implementation so that only the derivers are measured.
+ *
+ * @author gbrown
+ */
+public class InMemorySourceInfoCache implements SourceInfoCache {
+
+    private final Map<String, SourceInfo> sourceInfo = new ConcurrentHashMap<>();
+
+    @Override
+    public SourceInfo get(String tenantId, String id) {
+        return sourceInfo.get(id);
+    }
+
+    @Override
+    public void store(String tenantId, List<SourceInfo> information) {
+        for (int i = 0; i < information.size(); i++) {
+            SourceInfo si = information.get(i);
+            sourceInfo.put(si.getId(), si);
+        }
+    }
+
+    /**
+     * @return The number of entries in the cache
+     */
+    public int size() {
+        return sourceInfo.size();
+    }
+}
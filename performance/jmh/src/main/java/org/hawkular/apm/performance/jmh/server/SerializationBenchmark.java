@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh.server;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.server.api.model.zipkin.Span;
+import org.hawkular.apm.server.api.utils.zipkin.ZipkinSpanConvertor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * This benchmark measures the serialization of trace fragments, as performed when they are
+ * published and stored, and the conversion of zipkin spans. Each invocation processes a batch
+ * of {@link TraceGenerator#BATCH_SIZE} fragments (or spans), so the throughput is reported
+ * in fragments per second and the GC profiler's normalized allocation rate is per fragment.
+ *
+ * @author gbrown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(TraceGenerator.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final TypeReference<List<Trace>> TRACE_LIST = new TypeReference<List<Trace>>() {
+    };
+
+    @Param({ "1", "3" })
+    public int depth;
+
+    @Param({ "1", "4" })
+    public int fanOut;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private List<Trace> fragments;
+    private byte[] serialized;
+    private List<zipkin.Span> zipkinSpans;
+
+    @Setup
+    public void setup() throws Exception {
+        fragments = TraceGenerator.traces(depth, fanOut);
+        serialized = mapper.writeValueAsBytes(fragments);
+        zipkinSpans = TraceGenerator.zipkinSpans(depth, fanOut);
+    }
+
+    @Benchmark
+    public byte[] serializeTraces() throws Exception {
+        return mapper.writeValueAsBytes(fragments);
+    }
+
+    @Benchmark
+    public List<Trace> deserializeTraces() throws Exception {
+        return mapper.readValue(serialized, TRACE_LIST);
+    }
+
+    @Benchmark
+    public List<Span> convertZipkinSpans() {
+        return ZipkinSpanConvertor.spans(zipkinSpans);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.performance.jmh.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.apm.api.model.Property;
+import org.hawkular.apm.api.model.trace.Component;
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.Producer;
+import org.hawkular.apm.api.model.trace.Trace;
+
+import zipkin.Annotation;
+import zipkin.BinaryAnnotation;
+import zipkin.Constants;
+import zipkin.Endpoint;
+import zipkin.Span;
+
+/**
+ * This class generates synthetic trace fragments for the server side benchmarks. Each
+ * trace is a tree of fragments, where every fragment contains a consumer, a database
+ * component and one producer per outbound call. The producers are linked to the consumers
+ * of the next level of fragments using interaction correlation ids, so the derivers
+ * are able to correlate the fragments in the same way as for real traces.
+ *
+ * @author gbrown
+ */
+public class TraceGenerator {
+
+    /** The number of fragments (or spans) in each generated batch. */
+    public static final int BATCH_SIZE = 256;
+
+    private static final String TRANSACTION = "orders";
+    private static final String HTTP = "HTTP";
+    private static final long FRAGMENT_DURATION = 4000000;
+    private static final long LATENCY = 10000;
+
+    private TraceGenerator() {
+    }
+
+    /**
+     * This method generates a batch of {@link #BATCH_SIZE} trace fragments. Fragments are
+     * produced parent first, so any consumer in the batch has its producer earlier in the
+     * same batch.
+     *
+     * @param depth The number of levels of fragments in each trace
+     * @param fanOut The number of outbound calls made by each fragment, other than the last level
+     * @return The trace fragments
+     */
+    public static List<Trace> traces(int depth, int fanOut) {
+        List<Trace> fragments = new ArrayList<>(BATCH_SIZE);
+        long timestamp = System.currentTimeMillis() * 1000;
+
+        for (int t = 0; fragments.size() < BATCH_SIZE; t++) {
+            String traceId = "trace" + t;
+            fragment(fragments, traceId, traceId, null, 0, depth, fanOut, timestamp, FRAGMENT_DURATION);
+        }
+        return fragments;
+    }
+
+    private static void fragment(List<Trace> fragments, String traceId, String fragmentId, String linkId,
+            int level, int depth, int fanOut, long timestamp, long duration) {
+        if (fragments.size() >= BATCH_SIZE) {
+            return;
+        }
+        Trace trace = new Trace()
+                .setTraceId(traceId)
+                .setFragmentId(fragmentId)
+                .setTransaction(TRANSACTION)
+                .setTimestamp(timestamp)
+                .setHostName("host" + level)
+                .setHostAddress("10.0.0." + level);
+        fragments.add(trace);
+
+        Consumer consumer = new Consumer("/service" + level, HTTP);
+        consumer.setOperation("GET");
+        consumer.setTimestamp(timestamp);
+        consumer.setDuration(duration);
+        consumer.getProperties().add(new Property("level", Integer.toString(level)));
+        if (linkId != null) {
+            consumer.addInteractionCorrelationId(linkId);
+        }
+        trace.getNodes().add(consumer);
+
+        Component db = new Component("jdbc:h2:mem:orders", "Database");
+        db.setOperation("SELECT");
+        db.setTimestamp(timestamp + 100);
+        db.setDuration(duration / 10);
+        consumer.getNodes().add(db);
+
+        int calls = level + 1 < depth ? fanOut : 0;
+        if (calls == 0) {
+            return;
+        }
+        long callDuration = (duration - db.getDuration()) / calls;
+        List<String> links = new ArrayList<>(calls);
+
+        for (int i = 0; i < calls; i++) {
+            String link = fragmentId + ":" + i;
+            long callTimestamp = timestamp + db.getDuration() + i * callDuration;
+
+            Producer producer = new Producer("/service" + (level + 1), HTTP);
+            producer.setOperation("GET");
+            producer.setTimestamp(callTimestamp);
+            producer.setDuration(callDuration);
+            producer.addInteractionCorrelationId(link);
+            consumer.getNodes().add(producer);
+            links.add(link);
+        }
+
+        for (int i = 0; i < calls; i++) {
+            fragment(fragments, traceId, links.get(i), links.get(i), level + 1, depth, fanOut,
+                    timestamp + db.getDuration() + i * callDuration + LATENCY, callDuration - 2 * LATENCY);
+        }
+    }
+
+    /**
+     * This method generates a batch of {@link #BATCH_SIZE} zipkin spans, with the same
+     * shape as the trace fragments produced by {@link #traces(int, int)}.
+     *
+     * @param depth The number of levels of spans in each trace
+     * @param fanOut The number of child spans of each span, other than the last level
+     * @return The zipkin spans
+     */
+    public static List<Span> zipkinSpans(int depth, int fanOut) {
+        List<Span> spans = new ArrayList<>(BATCH_SIZE);
+        long timestamp = System.currentTimeMillis() * 1000;
+
+        for (long t = 1; spans.size() < BATCH_SIZE; t++) {
+            zipkinSpan(spans, t, null, 0, depth, fanOut, timestamp, FRAGMENT_DURATION);
+        }
+        return spans;
+    }
+
+    private static void zipkinSpan(List<Span> spans, long traceId, Long parentId, int level,
+            int depth, int fanOut, long timestamp, long duration) {
+        if (spans.size() >= BATCH_SIZE) {
+            return;
+        }
+        long id = traceId * 100000 + spans.size();
+        Endpoint server = Endpoint.create("service" + level, 0x0a000000 + level, 8080);
+
+        spans.add(Span.builder()
+                .traceId(traceId)
+                .id(id)
+                .parentId(parentId)
+                .name("get")
+                .timestamp(timestamp)
+                .duration(duration)
+                .addAnnotation(Annotation.create(timestamp, Constants.SERVER_RECV, server))
+                .addAnnotation(Annotation.create(timestamp + duration, Constants.SERVER_SEND, server))
+                .addBinaryAnnotation(BinaryAnnotation.create("http.url",
+                        "http://service" + level + ":8080/service" + level, server))
+                .addBinaryAnnotation(BinaryAnnotation.create("level", Integer.toString(level), server))
+                .build());
+
+        int calls = level + 1 < depth ? fanOut : 0;
+        for (int i = 0; i < calls; i++) {
+            long callDuration = duration / (calls + 1);
+            zipkinSpan(spans, traceId, id, level + 1, depth, fanOut,
+                    timestamp + i * callDuration + LATENCY, callDuration - 2 * LATENCY);
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.generated;
+public class FragmentBuilderBenchmark_jmhType extends FragmentBuilderBenchmark_jmhType_B3 {
+}
+
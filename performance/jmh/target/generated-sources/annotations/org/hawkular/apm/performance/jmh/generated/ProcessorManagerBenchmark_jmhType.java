@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.generated;
+public class ProcessorManagerBenchmark_jmhType extends ProcessorManagerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.generated;
+public class SpanBenchmark_jmhType extends SpanBenchmark_jmhType_B3 {
+}
+
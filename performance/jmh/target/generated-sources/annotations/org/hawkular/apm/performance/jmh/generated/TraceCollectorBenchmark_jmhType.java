@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.generated;
+public class TraceCollectorBenchmark_jmhType extends TraceCollectorBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.generated;
+public class TraceRecorderBenchmark_jmhType extends TraceRecorderBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.server.generated;
+public class DeriverBenchmark_jmhType extends DeriverBenchmark_jmhType_B3 {
+}
+
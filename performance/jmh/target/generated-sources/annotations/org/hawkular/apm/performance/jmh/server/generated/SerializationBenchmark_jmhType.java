@@ -0,0 +1,4 @@
+package org.hawkular.apm.performance.jmh.server.generated;
+public class SerializationBenchmark_jmhType extends SerializationBenchmark_jmhType_B3 {
+}
+
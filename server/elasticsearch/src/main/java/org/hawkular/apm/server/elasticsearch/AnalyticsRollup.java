@@ -0,0 +1,690 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.Constants;
+import org.hawkular.apm.api.model.analytics.NodeSummaryStatistics;
+import org.hawkular.apm.api.model.analytics.NodeTimeseriesStatistics;
+import org.hawkular.apm.api.model.analytics.NodeTimeseriesStatistics.NodeComponentTypeStatistics;
+import org.hawkular.apm.api.model.analytics.Percentiles;
+import org.hawkular.apm.api.model.analytics.TimeseriesStatistics;
+import org.hawkular.apm.api.model.events.CompletionTime;
+import org.hawkular.apm.api.model.events.NodeDetails;
+import org.hawkular.apm.api.model.trace.NodeType;
+
+/**
+ * This class folds {@link NodeDetails} and {@link CompletionTime} events into per minute
+ * rollups, keyed by the dimensions used by the analytics dashboards (transaction, node type,
+ * component type, uri, operation and host). The rollups are accumulated in memory, per index,
+ * until they are drained to be stored. As each rollup records counts, sums and a mergeable
+ * {@link LatencySketch}, rollups for the same key (e.g. stored by different servers, or
+ * after a previous flush) can be merged when queried.
+ *
+ * @author gbrown
+ */
+public class AnalyticsRollup {
+
+    /** The duration of a rollup bucket, in microseconds. */
+    public static final long BUCKET_DURATION = TimeUnit.MINUTES.toMicros(1);
+
+    /** The percentiles returned when derived from rollups. */
+    private static final int[] PERCENTILES = { 1, 5, 25, 50, 75, 95, 99 };
+
+    private final Map<String, Map<List<Object>, NodeRollup>> nodeRollups = new HashMap<>();
+
+    private final Map<String, Map<List<Object>, CompletionRollup>> completionRollups = new HashMap<>();
+
+    /**
+     * This method folds the supplied node details into the rollups for the index.
+     *
+     * @param index The index
+     * @param nodeDetails The node details
+     */
+    public synchronized void addNodeDetails(String index, List<NodeDetails> nodeDetails) {
+        Map<List<Object>, NodeRollup> rollups = nodeRollups.computeIfAbsent(index, k -> new HashMap<>());
+
+        for (NodeDetails nd : nodeDetails) {
+            long timestamp = getBucketStart(nd.getTimestamp());
+            String type = nd.getType() == null ? null : nd.getType().name();
+            List<Object> key = Arrays.asList(timestamp, nd.getTransaction(), type, nd.getComponentType(),
+                    nd.getUri(), nd.getOperation(), nd.getHostName());
+
+            NodeRollup rollup = rollups.get(key);
+            if (rollup == null) {
+                rollup = new NodeRollup();
+                rollup.setTimestamp(timestamp);
+                rollup.setTransaction(nd.getTransaction());
+                rollup.setType(type);
+                rollup.setComponentType(nd.getComponentType());
+                rollup.setUri(nd.getUri());
+                rollup.setOperation(nd.getOperation());
+                rollup.setHostName(nd.getHostName());
+                rollups.put(key, rollup);
+            }
+            rollup.record(nd.getActual(), nd.getElapsed());
+        }
+    }
+
+    /**
+     * This method folds the supplied completion times into the rollups for the index.
+     *
+     * @param index The index
+     * @param completionTimes The completion times
+     */
+    public synchronized void addCompletionTimes(String index, List<CompletionTime> completionTimes) {
+        Map<List<Object>, CompletionRollup> rollups = completionRollups.computeIfAbsent(index,
+                k -> new HashMap<>());
+
+        for (CompletionTime ct : completionTimes) {
+            long timestamp = getBucketStart(ct.getTimestamp());
+            List<Object> key = Arrays.asList(timestamp, ct.getTransaction(), ct.getUri(), ct.getOperation(),
+                    ct.getEndpointType(), ct.getHostName());
+
+            CompletionRollup rollup = rollups.get(key);
+            if (rollup == null) {
+                rollup = new CompletionRollup();
+                rollup.setTimestamp(timestamp);
+                rollup.setTransaction(ct.getTransaction());
+                rollup.setUri(ct.getUri());
+                rollup.setOperation(ct.getOperation());
+                rollup.setEndpointType(ct.getEndpointType());
+                rollup.setHostName(ct.getHostName());
+                rollups.put(key, rollup);
+            }
+            rollup.record(ct.getDuration(), ct.hasProperty(Constants.PROP_FAULT));
+        }
+    }
+
+    /**
+     * This method removes and returns the node rollups accumulated for the index.
+     *
+     * @param index The index
+     * @return The node rollups
+     */
+    public synchronized Collection<NodeRollup> drainNodeRollups(String index) {
+        Map<List<Object>, NodeRollup> rollups = nodeRollups.remove(index);
+        return rollups == null ? new ArrayList<>() : rollups.values();
+    }
+
+    /**
+     * This method removes and returns the completion rollups accumulated for the index.
+     *
+     * @param index The index
+     * @return The completion rollups
+     */
+    public synchronized Collection<CompletionRollup> drainCompletionRollups(String index) {
+        Map<List<Object>, CompletionRollup> rollups = completionRollups.remove(index);
+        return rollups == null ? new ArrayList<>() : rollups.values();
+    }
+
+    /**
+     * This method returns the start of the rollup bucket containing the supplied timestamp.
+     *
+     * @param timestamp The timestamp, in microseconds
+     * @return The start of the bucket, in microseconds
+     */
+    public static long getBucketStart(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, BUCKET_DURATION);
+    }
+
+    /**
+     * This method derives the node summary statistics from the supplied rollups, following
+     * the same grouping as the aggregation over the raw node details.
+     *
+     * @param rollups The node rollups
+     * @return The node summary statistics
+     */
+    public static List<NodeSummaryStatistics> toNodeSummaryStatistics(Collection<NodeRollup> rollups) {
+        Map<List<Object>, NodeRollup> merged = new HashMap<>();
+
+        for (NodeRollup rollup : rollups) {
+            String componentType;
+            String uri = rollup.getUri();
+            String operation = rollup.getOperation();
+
+            if (rollup.getComponentType() == null) {
+                // Nodes without a component type are summarised by type and uri
+                componentType = rollup.getType();
+                operation = null;
+                if (uri == null) {
+                    continue;
+                }
+            } else {
+                if (NodeType.Consumer.name().equalsIgnoreCase(rollup.getType())
+                        || NodeType.Producer.name().equalsIgnoreCase(rollup.getType())) {
+                    componentType = rollup.getType().toLowerCase();
+                } else {
+                    componentType = rollup.getComponentType();
+                }
+                if (uri == null && operation == null) {
+                    continue;
+                }
+            }
+
+            merged.computeIfAbsent(Arrays.asList(componentType, uri, operation), k -> new NodeRollup())
+                    .merge(rollup);
+        }
+
+        List<NodeSummaryStatistics> ret = new ArrayList<>();
+        for (Map.Entry<List<Object>, NodeRollup> entry : merged.entrySet()) {
+            NodeRollup rollup = entry.getValue();
+            NodeSummaryStatistics stat = new NodeSummaryStatistics();
+            stat.setComponentType((String) entry.getKey().get(0));
+            stat.setUri((String) entry.getKey().get(1));
+            stat.setOperation((String) entry.getKey().get(2));
+            stat.setActual(rollup.getActual() / rollup.getCount());
+            stat.setElapsed(rollup.getElapsed() / rollup.getCount());
+            stat.setCount(rollup.getCount());
+            ret.add(stat);
+        }
+        ret.sort(Comparator.comparingLong(NodeSummaryStatistics::getCount).reversed());
+        return ret;
+    }
+
+    /**
+     * This method derives the node timeseries statistics from the supplied rollups.
+     *
+     * @param rollups The node rollups
+     * @param interval The interval, in microseconds, which must be a multiple of the
+     *                  {@link #BUCKET_DURATION}
+     * @return The node timeseries statistics
+     */
+    public static List<NodeTimeseriesStatistics> toNodeTimeseriesStatistics(Collection<NodeRollup> rollups,
+            long interval) {
+        Map<Long, Map<String, NodeRollup>> merged = new TreeMap<>();
+
+        for (NodeRollup rollup : rollups) {
+            if (rollup.getComponentType() != null) {
+                merged.computeIfAbsent(getIntervalStart(rollup.getTimestamp(), interval), k -> new TreeMap<>())
+                        .computeIfAbsent(rollup.getComponentType(), k -> new NodeRollup())
+                        .merge(rollup);
+            }
+        }
+
+        List<NodeTimeseriesStatistics> ret = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, NodeRollup>> entry : merged.entrySet()) {
+            NodeTimeseriesStatistics stat = new NodeTimeseriesStatistics();
+            stat.setTimestamp(entry.getKey());
+            entry.getValue().forEach((componentType, rollup) -> stat.getComponentTypes().put(componentType,
+                    new NodeComponentTypeStatistics(rollup.getActual() / rollup.getCount(), rollup.getCount())));
+            ret.add(stat);
+        }
+        return ret;
+    }
+
+    /**
+     * This method derives the completion timeseries statistics from the supplied rollups.
+     *
+     * @param rollups The completion rollups
+     * @param interval The interval, in microseconds, which must be a multiple of the
+     *                  {@link #BUCKET_DURATION}
+     * @return The completion timeseries statistics
+     */
+    public static List<TimeseriesStatistics> toTimeseriesStatistics(Collection<CompletionRollup> rollups,
+            long interval) {
+        Map<Long, CompletionRollup> merged = new TreeMap<>();
+
+        for (CompletionRollup rollup : rollups) {
+            merged.computeIfAbsent(getIntervalStart(rollup.getTimestamp(), interval), k -> new CompletionRollup())
+                    .merge(rollup);
+        }
+
+        List<TimeseriesStatistics> ret = new ArrayList<>();
+        for (Map.Entry<Long, CompletionRollup> entry : merged.entrySet()) {
+            CompletionRollup rollup = entry.getValue();
+            TimeseriesStatistics stat = new TimeseriesStatistics();
+            stat.setTimestamp(entry.getKey());
+            stat.setAverage(rollup.getDuration() / rollup.getCount());
+            stat.setMin(rollup.getMinDuration());
+            stat.setMax(rollup.getMaxDuration());
+            stat.setCount(rollup.getCount());
+            stat.setFaultCount(rollup.getFaultCount());
+            ret.add(stat);
+        }
+        return ret;
+    }
+
+    /**
+     * This method derives the completion time percentiles from the supplied rollups.
+     *
+     * @param rollups The completion rollups
+     * @return The percentiles
+     */
+    public static Percentiles toPercentiles(Collection<CompletionRollup> rollups) {
+        LatencySketch sketch = new LatencySketch();
+        rollups.forEach(rollup -> sketch.merge(rollup.getDurationSketch()));
+
+        Percentiles ret = new Percentiles();
+        if (sketch.getCount() > 0) {
+            for (int percentile : PERCENTILES) {
+                ret.addPercentile(percentile, sketch.getValueAtPercentile(percentile));
+            }
+        }
+        return ret;
+    }
+
+    private static long getIntervalStart(long timestamp, long interval) {
+        return timestamp - Math.floorMod(timestamp, interval);
+    }
+
+    /**
+     * This class represents the rollup of the node details, with the same dimensions,
+     * recorded within a minute.
+     */
+    public static class NodeRollup {
+
+        private String transaction;
+        private String type;
+        private String componentType;
+        private String uri;
+        private String operation;
+        private String hostName;
+        private long timestamp;
+        private long count;
+        private long actual;
+        private long elapsed;
+        private LatencySketch actualSketch = new LatencySketch();
+
+        /**
+         * @return the transaction
+         */
+        public String getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * @param transaction the transaction
+         */
+        public void setTransaction(String transaction) {
+            this.transaction = transaction;
+        }
+
+        /**
+         * @return the node type
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @param type the node type
+         */
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        /**
+         * @return the component type
+         */
+        public String getComponentType() {
+            return componentType;
+        }
+
+        /**
+         * @param componentType the component type
+         */
+        public void setComponentType(String componentType) {
+            this.componentType = componentType;
+        }
+
+        /**
+         * @return the uri
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @param uri the uri
+         */
+        public void setUri(String uri) {
+            this.uri = uri;
+        }
+
+        /**
+         * @return the operation
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @param operation the operation
+         */
+        public void setOperation(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * @return the host name
+         */
+        public String getHostName() {
+            return hostName;
+        }
+
+        /**
+         * @param hostName the host name
+         */
+        public void setHostName(String hostName) {
+            this.hostName = hostName;
+        }
+
+        /**
+         * @return the start of the minute, in microseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @param timestamp the start of the minute, in microseconds
+         */
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return the number of node details
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @param count the number of node details
+         */
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        /**
+         * @return the total actual time
+         */
+        public long getActual() {
+            return actual;
+        }
+
+        /**
+         * @param actual the total actual time
+         */
+        public void setActual(long actual) {
+            this.actual = actual;
+        }
+
+        /**
+         * @return the total elapsed time
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @param elapsed the total elapsed time
+         */
+        public void setElapsed(long elapsed) {
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * @return the sketch of the actual times
+         */
+        public LatencySketch getActualSketch() {
+            return actualSketch;
+        }
+
+        /**
+         * @param actualSketch the sketch of the actual times
+         */
+        public void setActualSketch(LatencySketch actualSketch) {
+            this.actualSketch = actualSketch;
+        }
+
+        private void record(long actual, long elapsed) {
+            this.count++;
+            this.actual += actual;
+            this.elapsed += elapsed;
+            this.actualSketch.record(actual);
+        }
+
+        private void merge(NodeRollup other) {
+            this.count += other.count;
+            this.actual += other.actual;
+            this.elapsed += other.elapsed;
+            this.actualSketch.merge(other.actualSketch);
+        }
+
+    }
+
+    /**
+     * This class represents the rollup of the completion times, with the same dimensions,
+     * recorded within a minute.
+     */
+    public static class CompletionRollup {
+
+        private String transaction;
+        private String uri;
+        private String operation;
+        private String endpointType;
+        private String hostName;
+        private long timestamp;
+        private long count;
+        private long faultCount;
+        private long duration;
+        private long minDuration = Long.MAX_VALUE;
+        private long maxDuration = Long.MIN_VALUE;
+        private LatencySketch durationSketch = new LatencySketch();
+
+        /**
+         * @return the transaction
+         */
+        public String getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * @param transaction the transaction
+         */
+        public void setTransaction(String transaction) {
+            this.transaction = transaction;
+        }
+
+        /**
+         * @return the uri
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @param uri the uri
+         */
+        public void setUri(String uri) {
+            this.uri = uri;
+        }
+
+        /**
+         * @return the operation
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @param operation the operation
+         */
+        public void setOperation(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * @return the endpoint type
+         */
+        public String getEndpointType() {
+            return endpointType;
+        }
+
+        /**
+         * @param endpointType the endpoint type
+         */
+        public void setEndpointType(String endpointType) {
+            this.endpointType = endpointType;
+        }
+
+        /**
+         * @return the host name
+         */
+        public String getHostName() {
+            return hostName;
+        }
+
+        /**
+         * @param hostName the host name
+         */
+        public void setHostName(String hostName) {
+            this.hostName = hostName;
+        }
+
+        /**
+         * @return the start of the minute, in microseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @param timestamp the start of the minute, in microseconds
+         */
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return the number of completion times
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @param count the number of completion times
+         */
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        /**
+         * @return the number of completion times associated with a fault
+         */
+        public long getFaultCount() {
+            return faultCount;
+        }
+
+        /**
+         * @param faultCount the number of completion times associated with a fault
+         */
+        public void setFaultCount(long faultCount) {
+            this.faultCount = faultCount;
+        }
+
+        /**
+         * @return the total duration
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @param duration the total duration
+         */
+        public void setDuration(long duration) {
+            this.duration = duration;
+        }
+
+        /**
+         * @return the minimum duration
+         */
+        public long getMinDuration() {
+            return minDuration;
+        }
+
+        /**
+         * @param minDuration the minimum duration
+         */
+        public void setMinDuration(long minDuration) {
+            this.minDuration = minDuration;
+        }
+
+        /**
+         * @return the maximum duration
+         */
+        public long getMaxDuration() {
+            return maxDuration;
+        }
+
+        /**
+         * @param maxDuration the maximum duration
+         */
+        public void setMaxDuration(long maxDuration) {
+            this.maxDuration = maxDuration;
+        }
+
+        /**
+         * @return the sketch of the durations
+         */
+        public LatencySketch getDurationSketch() {
+            return durationSketch;
+        }
+
+        /**
+         * @param durationSketch the sketch of the durations
+         */
+        public void setDurationSketch(LatencySketch durationSketch) {
+            this.durationSketch = durationSketch;
+        }
+
+        private void record(long duration, boolean fault) {
+            this.count++;
+            if (fault) {
+                this.faultCount++;
+            }
+            this.duration += duration;
+            this.minDuration = Math.min(this.minDuration, duration);
+            this.maxDuration = Math.max(this.maxDuration, duration);
+            this.durationSketch.record(duration);
+        }
+
+        private void merge(CompletionRollup other) {
+            this.count += other.count;
+            this.faultCount += other.faultCount;
+            this.duration += other.duration;
+            this.minDuration = Math.min(this.minDuration, other.minDuration);
+            this.maxDuration = Math.max(this.maxDuration, other.maxDuration);
+            this.durationSketch.merge(other.durationSketch);
+        }
+
+    }
+}
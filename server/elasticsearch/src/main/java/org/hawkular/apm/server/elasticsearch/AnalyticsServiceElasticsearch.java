@@ -20,6 +20,7 @@ import static org.hawkular.apm.server.elasticsearch.ElasticsearchUtil.buildQuery
 import static org.hawkular.apm.server.elasticsearch.TraceServiceElasticsearch.TRACE_TYPE;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -28,25 +29,31 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
-import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
-import org.elasticsearch.client.AdminClient;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.indices.IndexMissingException;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.filter.Filter;
@@ -90,6 +97,10 @@ import org.hawkular.apm.api.services.ConfigurationService;
 import org.hawkular.apm.api.services.Criteria;
 import org.hawkular.apm.api.services.StoreException;
 import org.hawkular.apm.api.utils.EndpointUtil;
+import org.hawkular.apm.api.utils.IdUtil;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.hawkular.apm.server.elasticsearch.AnalyticsRollup.CompletionRollup;
+import org.hawkular.apm.server.elasticsearch.AnalyticsRollup.NodeRollup;
 import org.hawkular.apm.server.elasticsearch.log.MsgLogger;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -109,9 +120,119 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     private static final ObjectMapper mapper = new ObjectMapper();
     private static ElasticsearchClient client = ElasticsearchClient.getSingleton();
 
+    /**
+     * Property name for enabling the rollup of node details and completion times into per
+     * minute summaries, used to answer the summary, timeseries and percentile queries.
+     */
+    public static final String ANALYTICS_ROLLUP = "HAWKULAR_APM_ANALYTICS_ROLLUP";
+
+    /**
+     * Property name for the interval (in milliseconds) at which the accumulated rollups are stored.
+     */
+    public static final String ANALYTICS_ROLLUP_FLUSH_INTERVAL = "HAWKULAR_APM_ANALYTICS_ROLLUP_FLUSH_INTERVAL";
+
+    /**
+     * Default rollup flush interval.
+     */
+    public static final int ANALYTICS_ROLLUP_FLUSH_INTERVAL_DEFAULT = 60000;
+
+    /**
+     * Property name for the maximum number of rollups, per index, retained after failing to be stored.
+     */
+    public static final String ANALYTICS_ROLLUP_MAX_PENDING = "HAWKULAR_APM_ANALYTICS_ROLLUP_MAX_PENDING";
+
+    /**
+     * Default maximum number of pending rollups per index.
+     */
+    public static final int ANALYTICS_ROLLUP_MAX_PENDING_DEFAULT = 100000;
+
+    private static final String NODE_ROLLUP_TYPE = "noderollup";
+    private static final String COMPLETION_ROLLUP_TYPE = "completionrollup";
+    private static final int MAX_ROLLUPS_PER_QUERY = 1000;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private boolean rollupEnabled = PropertyUtil.getPropertyAsBoolean(ANALYTICS_ROLLUP);
+
+    private long rollupFlushInterval = PropertyUtil.getPropertyAsInteger(ANALYTICS_ROLLUP_FLUSH_INTERVAL,
+            ANALYTICS_ROLLUP_FLUSH_INTERVAL_DEFAULT);
+
+    private int maxPendingRollups = PropertyUtil.getPropertyAsInteger(ANALYTICS_ROLLUP_MAX_PENDING,
+            ANALYTICS_ROLLUP_MAX_PENDING_DEFAULT);
+
+    private final AnalyticsRollup rollup = new AnalyticsRollup();
+
+    /** The tenant associated with each index for which rollups have been accumulated. */
+    private final Map<String, Optional<String>> rollupTenants = new ConcurrentHashMap<>();
+
+    /** The rollups, per index, that have been drained but not yet successfully stored. */
+    private final Map<String, List<PendingRollup>> pendingRollups = new HashMap<>();
+
+    /** The number of pending rollups discarded, as they could not be stored. */
+    private final LongAdder droppedRollups = new LongAdder();
+
+    /** Identifies this server instance in the ids of the rollups it stores. */
+    private final String serverId = IdUtil.createId();
+
+    private long rollupGeneration;
+
+    private ScheduledExecutorService rollupScheduler;
+
     @Inject
     private ConfigurationService configService;
 
+    /**
+     * This method determines whether node details and completion times are rolled up.
+     *
+     * @return Whether rollups are enabled
+     */
+    public boolean isRollupEnabled() {
+        return rollupEnabled;
+    }
+
+    /**
+     * This method sets whether node details and completion times are rolled up.
+     *
+     * @param rollupEnabled Whether rollups are enabled
+     */
+    public void setRollupEnabled(boolean rollupEnabled) {
+        this.rollupEnabled = rollupEnabled;
+    }
+
+    /**
+     * @return The interval (in milliseconds) at which the accumulated rollups are stored
+     */
+    public long getRollupFlushInterval() {
+        return rollupFlushInterval;
+    }
+
+    /**
+     * @param rollupFlushInterval The interval (in milliseconds) at which the accumulated rollups are stored
+     */
+    public void setRollupFlushInterval(long rollupFlushInterval) {
+        this.rollupFlushInterval = rollupFlushInterval;
+    }
+
+    /**
+     * @return The maximum number of rollups, per index, retained after failing to be stored
+     */
+    public int getMaxPendingRollups() {
+        return maxPendingRollups;
+    }
+
+    /**
+     * @param maxPendingRollups The maximum number of rollups, per index, retained after failing to be stored
+     */
+    public void setMaxPendingRollups(int maxPendingRollups) {
+        this.maxPendingRollups = maxPendingRollups;
+    }
+
+    /**
+     * @return The number of rollups discarded, due to the maximum number of pending rollups being exceeded
+     */
+    public long getDroppedRollupCount() {
+        return droppedRollups.sum();
+    }
+
     @Override
     protected List<Trace> getFragments(String tenantId, Criteria criteria) {
         return TraceServiceElasticsearch.internalQuery(client, tenantId, criteria);
@@ -120,7 +241,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public List<TransactionInfo> getTransactionInfo(String tenantId, Criteria criteria) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -181,7 +302,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public List<PropertyInfo> getPropertyInfo(String tenantId, Criteria criteria) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -224,7 +345,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public List<CompletionTime> getTraceCompletions(String tenantId, Criteria criteria) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -244,8 +365,14 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
 
     @Override
     public Percentiles getTraceCompletionPercentiles(String tenantId, Criteria criteria) {
+        if (isRollupQuery(criteria)) {
+            List<CompletionRollup> rollups = getRollups(tenantId, COMPLETION_ROLLUP_TYPE, criteria,
+                    CompletionRollup.class);
+            return rollups == null ? null : AnalyticsRollup.toPercentiles(rollups);
+        }
+
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -269,8 +396,14 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
 
     @Override
     public List<TimeseriesStatistics> getTraceCompletionTimeseriesStatistics(String tenantId, Criteria criteria, long interval) {
+        if (isRollupQuery(criteria) && isRollupInterval(interval)) {
+            List<CompletionRollup> rollups = getRollups(tenantId, COMPLETION_ROLLUP_TYPE, criteria,
+                    CompletionRollup.class);
+            return rollups == null ? null : AnalyticsRollup.toTimeseriesStatistics(rollups, interval);
+        }
+
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -319,7 +452,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public List<Cardinality> getTraceCompletionPropertyDetails(String tenantId, Criteria criteria, String property) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -362,8 +495,13 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
 
     @Override
     public List<NodeTimeseriesStatistics> getNodeTimeseriesStatistics(String tenantId, Criteria criteria, long interval) {
+        if (isRollupQuery(criteria) && isRollupInterval(interval)) {
+            List<NodeRollup> rollups = getRollups(tenantId, NODE_ROLLUP_TYPE, criteria, NodeRollup.class);
+            return rollups == null ? null : AnalyticsRollup.toNodeTimeseriesStatistics(rollups, interval);
+        }
+
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -397,8 +535,13 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
 
     @Override
     public Collection<NodeSummaryStatistics> getNodeSummaryStatistics(String tenantId, Criteria criteria) {
+        if (isRollupQuery(criteria)) {
+            List<NodeRollup> rollups = getRollups(tenantId, NODE_ROLLUP_TYPE, criteria, NodeRollup.class);
+            return rollups == null ? null : AnalyticsRollup.toNodeSummaryStatistics(rollups);
+        }
+
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -588,7 +731,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
      */
     private void buildCommunicationSummaryStatistics(Map<String, CommunicationSummaryStatistics> stats, String index,
                                                      Criteria criteria, boolean addMetrics) {
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return;
         }
 
@@ -833,7 +976,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public List<TimeseriesStatistics> getEndpointResponseTimeseriesStatistics(String tenantId, Criteria criteria, long interval) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -879,7 +1022,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
 
     protected List<Cardinality> getEndpointPropertyDetails(String tenantId, Criteria criteria, String property) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -925,7 +1068,7 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public Set<String> getHostNames(String tenantId, Criteria criteria) {
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return null;
         }
 
@@ -945,11 +1088,253 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     @Override
     public void storeNodeDetails(String tenantId, List<NodeDetails> nodeDetails) throws StoreException {
         bulkStoreApmEvents(tenantId, nodeDetails, NODE_DETAILS_TYPE);
+
+        if (rollupEnabled) {
+            rollupTenants.putIfAbsent(client.getIndex(tenantId), Optional.ofNullable(tenantId));
+            rollup.addNodeDetails(client.getIndex(tenantId), nodeDetails);
+            scheduleRollupFlush();
+        }
     }
 
     @Override
     public void storeTraceCompletions(String tenantId, List<CompletionTime> completionTimes) throws StoreException {
         bulkStoreApmEvents(tenantId, completionTimes, TRACE_COMPLETION_TIME_TYPE);
+
+        if (rollupEnabled) {
+            rollupTenants.putIfAbsent(client.getIndex(tenantId), Optional.ofNullable(tenantId));
+            rollup.addCompletionTimes(client.getIndex(tenantId), completionTimes);
+            scheduleRollupFlush();
+        }
+    }
+
+    /**
+     * This method starts the periodic storing of the accumulated rollups, if not
+     * already started.
+     */
+    private synchronized void scheduleRollupFlush() {
+        if (rollupScheduler == null) {
+            rollupScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setDaemon(true);
+                return t;
+            });
+            rollupScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    flushRollups();
+                } catch (RuntimeException e) {
+                    msgLog.errorFailedToStoreRollups(e.getMessage());
+                }
+            }, rollupFlushInterval, rollupFlushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This method stops the periodic storing of the rollups, and stores those that
+     * have been accumulated since the last flush.
+     */
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            if (rollupScheduler != null) {
+                rollupScheduler.shutdownNow();
+                rollupScheduler = null;
+            }
+        }
+        flushRollups();
+    }
+
+    /**
+     * This method stores the rollups accumulated for all tenants. It is called periodically,
+     * based on the flush interval, and on shutdown. As the raw events have already been
+     * stored, a failure to store the rollups is logged rather than causing the events to be
+     * redelivered, which would result in them being counted again in subsequent rollups.
+     * Instead the rollups are retained and stored again on the next flush, up to the maximum
+     * number of pending rollups per index, beyond which the oldest are discarded. Each rollup is
+     * stored with an id derived from its key, minute, this server and the flush in which it
+     * was drained, so storing it again replaces, rather than duplicates, a copy that was
+     * partially stored.
+     */
+    protected void flushRollups() {
+        synchronized (pendingRollups) {
+            long generation = rollupGeneration++;
+
+            for (Map.Entry<String, Optional<String>> entry : rollupTenants.entrySet()) {
+                String index = entry.getKey();
+                List<PendingRollup> pending = pendingRollups.computeIfAbsent(index, k -> new ArrayList<>());
+
+                for (NodeRollup nodeRollup : rollup.drainNodeRollups(index)) {
+                    pending.add(new PendingRollup(NODE_ROLLUP_TYPE, getRollupId(NODE_ROLLUP_TYPE,
+                            nodeRollup.getTimestamp(), generation, nodeRollup.getTransaction(),
+                            nodeRollup.getType(), nodeRollup.getComponentType(), nodeRollup.getUri(),
+                            nodeRollup.getOperation(), nodeRollup.getHostName()),
+                            nodeRollup.getTimestamp(), toJson(nodeRollup)));
+                }
+                for (CompletionRollup completionRollup : rollup.drainCompletionRollups(index)) {
+                    pending.add(new PendingRollup(COMPLETION_ROLLUP_TYPE, getRollupId(COMPLETION_ROLLUP_TYPE,
+                            completionRollup.getTimestamp(), generation, completionRollup.getTransaction(),
+                            completionRollup.getUri(), completionRollup.getOperation(),
+                            completionRollup.getEndpointType(), completionRollup.getHostName()),
+                            completionRollup.getTimestamp(), toJson(completionRollup)));
+                }
+
+                int excess = pending.size() - maxPendingRollups;
+                if (excess > 0) {
+                    pending.subList(0, excess).clear();
+                    droppedRollups.add(excess);
+                    msgLog.warnDroppedRollups(excess, index);
+                }
+
+                if (pending.isEmpty()) {
+                    pendingRollups.remove(index);
+                } else if (storeRollups(entry.getValue().orElse(null), index, pending)) {
+                    pendingRollups.remove(index);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method stores the supplied rollups.
+     *
+     * @param tenantId The tenant id
+     * @param index The index
+     * @param rollups The rollups
+     * @return Whether the rollups were stored
+     */
+    boolean storeRollups(String tenantId, String index, List<PendingRollup> rollups) {
+        try {
+            BulkRequestBuilder bulkRequestBuilder = client.getClient().prepareBulk();
+
+            for (PendingRollup pending : rollups) {
+                bulkRequestBuilder.add(toIndexRequestBuilder(client, tenantId, pending.type, pending.id,
+                        TimeUnit.MICROSECONDS.toMillis(pending.timestamp), pending.json));
+            }
+
+            BulkResponse bulkItemResponses = bulkRequestBuilder.execute().actionGet();
+
+            client.indexUpdated(index);
+
+            if (bulkItemResponses.hasFailures()) {
+                msgLog.errorFailedToStoreRollups(bulkItemResponses.buildFailureMessage());
+                return false;
+            }
+            if (msgLog.isTraceEnabled()) {
+                msgLog.tracef("Stored %d rollups", rollups.size());
+            }
+            return true;
+        } catch (StoreException | ElasticsearchException e) {
+            msgLog.errorFailedToStoreRollups(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * This method derives the id of a rollup document.
+     *
+     * @param type The rollup type
+     * @param timestamp The start of the rollup's minute
+     * @param generation The flush generation
+     * @param key The rollup's key fields
+     * @return The id
+     */
+    private String getRollupId(String type, long timestamp, long generation, String... key) {
+        StringBuilder builder = new StringBuilder(type).append('|').append(timestamp);
+        for (String field : key) {
+            builder.append('|').append(field);
+        }
+        builder.append('|').append(serverId).append('|').append(generation);
+        return UUID.nameUUIDFromBytes(builder.toString().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * This method determines whether the supplied criteria can be answered from the
+     * rollups, which only record the transaction, uri, operation and host name dimensions.
+     * Queries using other criteria are answered from the raw events.
+     *
+     * @param criteria The criteria
+     * @return Whether the rollups should be used
+     */
+    private boolean isRollupQuery(Criteria criteria) {
+        return rollupEnabled && criteria.getProperties().isEmpty() && criteria.getCorrelationIds().isEmpty()
+                && criteria.getLowerBound() == 0 && criteria.getUpperBound() == 0;
+    }
+
+    /**
+     * This method determines whether timeseries statistics for the supplied interval can be
+     * derived from the rollups. The interval, like the timestamps of the stored events, is in
+     * microseconds.
+     *
+     * @param interval The interval
+     * @return Whether the rollups can be used
+     */
+    private static boolean isRollupInterval(long interval) {
+        return interval > 0 && interval % AnalyticsRollup.BUCKET_DURATION == 0;
+    }
+
+    /**
+     * This method retrieves the rollups, of the supplied type, relevant to the criteria. The
+     * time range is applied at the granularity of the rollup buckets, so a bucket is included if
+     * it starts within the minute containing the start time, up to the end time. Events that
+     * have not yet been flushed to the stored rollups are not included.
+     *
+     * @param tenantId The tenant id
+     * @param type The rollup type
+     * @param criteria The criteria
+     * @param cls The rollup class
+     * @return The rollups, or null if the index does not exist
+     */
+    private <T> List<T> getRollups(String tenantId, String type, Criteria criteria, Class<T> cls) {
+        String index = client.getIndex(tenantId);
+        if (!client.refresh(index)) {
+            return null;
+        }
+
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .must(QueryBuilders.rangeQuery(ElasticsearchUtil.TIMESTAMP_FIELD)
+                        .from(AnalyticsRollup.getBucketStart(TimeUnit.MILLISECONDS.toMicros(criteria.calculateStartTime())))
+                        .to(TimeUnit.MILLISECONDS.toMicros(criteria.calculateEndTime())));
+        if (criteria.getTransaction() != null && !criteria.getTransaction().trim().isEmpty()) {
+            query.must(QueryBuilders.termQuery(ElasticsearchUtil.TRANSACTION_FIELD, criteria.getTransaction()));
+        }
+        if (criteria.getHostName() != null && !criteria.getHostName().trim().isEmpty()) {
+            query.must(QueryBuilders.termQuery("hostName", criteria.getHostName()));
+        }
+        if (criteria.getUri() != null && !criteria.getUri().trim().isEmpty()) {
+            query.must(QueryBuilders.termQuery(ElasticsearchUtil.URI_FIELD, criteria.getUri()));
+        }
+        if (criteria.getOperation() != null && !criteria.getOperation().trim().isEmpty()) {
+            query.must(QueryBuilders.termQuery(ElasticsearchUtil.OPERATION_FIELD, criteria.getOperation()));
+        }
+
+        SearchRequestBuilder request = getBaseSearchRequestBuilder(type, index, criteria, query, MAX_ROLLUPS_PER_QUERY)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setScroll(SCROLL_KEEP_ALIVE);
+
+        FilterBuilder filter = ElasticsearchUtil.buildFilter(criteria);
+        if (filter != null) {
+            request.setPostFilter(filter);
+        }
+
+        List<T> ret = new ArrayList<>();
+        SearchResponse response = request.execute().actionGet();
+        try {
+            while (response.getHits().getHits().length > 0) {
+                for (SearchHit hit : response.getHits()) {
+                    try {
+                        ret.add(mapper.readValue(hit.getSourceAsString(), cls));
+                    } catch (IOException e) {
+                        msgLog.errorFailedToParse(e);
+                    }
+                }
+                response = client.getClient().prepareSearchScroll(response.getScrollId())
+                        .setScroll(SCROLL_KEEP_ALIVE)
+                        .execute()
+                        .actionGet();
+            }
+        } finally {
+            client.getClient().prepareClearScroll().addScrollId(response.getScrollId()).execute().actionGet();
+        }
+        return ret;
     }
 
     private void bulkStoreApmEvents(String tenantId, List<? extends ApmEvent> events, String type) throws StoreException {
@@ -967,11 +1352,14 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
                 msgLog.tracef("Storing event: %s", json);
             }
 
-            bulkRequestBuilder.add(toIndexRequestBuilder(client, tenantId, type, event.getId(), json));
+            bulkRequestBuilder.add(toIndexRequestBuilder(client, tenantId, type, event.getId(),
+                    TimeUnit.MICROSECONDS.toMillis(event.getTimestamp()), json));
         }
 
         BulkResponse bulkItemResponses = bulkRequestBuilder.execute().actionGet();
 
+        client.indexUpdated(client.getIndex(tenantId));
+
         if (bulkItemResponses.hasFailures()) {
             if (msgLog.isTraceEnabled()) {
                 msgLog.trace("Failed to store event to elasticsearch: " + bulkItemResponses.buildFailureMessage());
@@ -986,9 +1374,34 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
 
     @Override
     public void clear(String tenantId) {
+        String index = client.getIndex(tenantId);
+        synchronized (pendingRollups) {
+            rollupTenants.remove(index);
+            pendingRollups.remove(index);
+            rollup.drainNodeRollups(index);
+            rollup.drainCompletionRollups(index);
+        }
+
         client.clearTenant(tenantId);
     }
 
+    /**
+     * This class represents a rollup that has been drained, with the id it will be stored with.
+     */
+    static class PendingRollup {
+        private final String type;
+        private final String id;
+        private final long timestamp;
+        private final String json;
+
+        PendingRollup(String type, String id, long timestamp, String json) {
+            this.type = type;
+            this.id = id;
+            this.timestamp = timestamp;
+            this.json = json;
+        }
+    }
+
     private static String toJson(Object ct) {
         try {
             return mapper.writeValueAsString(ct);
@@ -997,10 +1410,11 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
         }
     }
 
-    private static IndexRequestBuilder toIndexRequestBuilder(ElasticsearchClient client, String tenantId, String type, String id, String json) {
+    private static IndexRequestBuilder toIndexRequestBuilder(ElasticsearchClient client, String tenantId, String type,
+            String id, long timestamp, String json) throws StoreException {
         return client
                 .getClient()
-                .prepareIndex(client.getIndex(tenantId),type, id)
+                .prepareIndex(client.initIndex(tenantId, type, timestamp), type, id)
                 .setSource(json);
     }
 
@@ -1016,22 +1430,6 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
         return s;
     }
 
-    private static boolean refresh(String index) {
-        try {
-            AdminClient adminClient = client.getClient().admin();
-            RefreshRequestBuilder refreshRequestBuilder = adminClient.indices().prepareRefresh(index);
-            adminClient.indices().refresh(refreshRequestBuilder.request()).actionGet();
-            return true;
-        } catch (IndexMissingException t) {
-            // Ignore, as means that no traces have
-            // been stored yet
-            if (msgLog.isTraceEnabled()) {
-                msgLog.tracef("Index [%s] not found, unable to proceed.", index);
-            }
-            return false;
-        }
-    }
-
     private static Cardinality toCardinality(Terms.Bucket bucket) {
         Cardinality card = new Cardinality();
         card.setValue(bucket.getKey());
@@ -1104,8 +1502,15 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     }
 
     private long getTraceCompletionCount(String tenantId, Criteria criteria, boolean onlyFaulty) {
+        if (isRollupQuery(criteria)) {
+            List<CompletionRollup> rollups = getRollups(tenantId, COMPLETION_ROLLUP_TYPE, criteria,
+                    CompletionRollup.class);
+            return rollups == null ? 0 : rollups.stream()
+                    .mapToLong(r -> onlyFaulty ? r.getFaultCount() : r.getCount()).sum();
+        }
+
         String index = client.getIndex(tenantId);
-        if (!refresh(index)) {
+        if (!client.refresh(index)) {
             return 0;
         }
 
@@ -1136,7 +1541,9 @@ public class AnalyticsServiceElasticsearch extends AbstractAnalyticsService {
     }
 
     private SearchRequestBuilder getBaseSearchRequestBuilder(String type, String index, Criteria criteria, BoolQueryBuilder query, int maxSize) {
-        return client.getClient().prepareSearch(index)
+        return client.getClient().prepareSearch(client.getIndices(index, type,
+                        criteria.calculateStartTime(), criteria.calculateEndTime()))
+                .setIndicesOptions(client.getIndicesOptions())
                 .setTypes(type)
                 .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
                 .setTimeout(TimeValue.timeValueMillis(criteria.getTimeout()))
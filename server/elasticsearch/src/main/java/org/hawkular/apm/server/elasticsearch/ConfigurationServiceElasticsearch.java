@@ -22,7 +22,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
@@ -38,6 +37,7 @@ import org.hawkular.apm.api.model.config.txn.TransactionConfig;
 import org.hawkular.apm.api.model.config.txn.TransactionSummary;
 import org.hawkular.apm.api.services.AbstractConfigurationService;
 import org.hawkular.apm.api.services.ConfigurationLoader;
+import org.hawkular.apm.server.elasticsearch.ElasticsearchClient.ReadConsistency;
 import org.hawkular.apm.server.elasticsearch.log.MsgLogger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -105,9 +105,7 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
         try {
             String index = client.getIndex(tenantId);
 
-            RefreshRequestBuilder refreshRequestBuilder =
-                    client.getClient().admin().indices().prepareRefresh(index);
-            client.getClient().admin().indices().refresh(refreshRequestBuilder.request()).actionGet();
+            client.refresh(index, ReadConsistency.READ_YOUR_WRITES);
 
             // Only retrieve valid configurations
             SearchResponse response = client.getClient().prepareSearch(index)
@@ -161,6 +159,7 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
                 .setSource(mapper.writeValueAsString(config));
 
         builder.execute().actionGet();
+        client.indexUpdated(client.getIndex(tenantId));
 
         if (messages.isEmpty()) {
             ConfigMessage cm = new ConfigMessage();
@@ -173,6 +172,7 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
                     TXN_CONFIG_INVALID_TYPE, name);
 
             deletion.execute().actionGet();
+            client.indexUpdated(client.getIndex(tenantId));
 
         } else {
             ConfigMessage cm = new ConfigMessage();
@@ -195,10 +195,6 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
         try {
             String index = client.getIndex(tenantId);
 
-            RefreshRequestBuilder refreshRequestBuilder =
-                    client.getClient().admin().indices().prepareRefresh(index);
-            client.getClient().admin().indices().refresh(refreshRequestBuilder.request()).actionGet();
-
             // First check if an invalid config exists
             GetResponse response = client.getClient().prepareGet(
                     index, TXN_CONFIG_INVALID_TYPE, name).setRouting(name)
@@ -247,9 +243,7 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
         String index = client.getIndex(tenantId);
 
         try {
-            RefreshRequestBuilder refreshRequestBuilder =
-                    client.getClient().admin().indices().prepareRefresh(index);
-            client.getClient().admin().indices().refresh(refreshRequestBuilder.request()).actionGet();
+            client.refresh(index, ReadConsistency.READ_YOUR_WRITES);
 
             SearchResponse response = client.getClient().prepareSearch(index)
                     .setTypes(TXN_CONFIG_TYPE)
@@ -324,9 +318,7 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
         String index = client.getIndex(tenantId);
 
         try {
-            RefreshRequestBuilder refreshRequestBuilder =
-                    client.getClient().admin().indices().prepareRefresh(index);
-            client.getClient().admin().indices().refresh(refreshRequestBuilder.request()).actionGet();
+            client.refresh(index, ReadConsistency.READ_YOUR_WRITES);
 
             // Should only obtain valid transactions
             SearchResponse response = client.getClient().prepareSearch(index)
@@ -379,6 +371,7 @@ public class ConfigurationServiceElasticsearch extends AbstractConfigurationServ
                 TXN_CONFIG_INVALID_TYPE, name);
 
         deletion.execute().actionGet();
+        client.indexUpdated(client.getIndex(tenantId));
 
         if (msgLog.isTraceEnabled()) {
             msgLog.tracef("Remove transaction config with name[%s]", name);
@@ -18,14 +18,28 @@ package org.hawkular.apm.server.elasticsearch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.io.IOUtils;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
@@ -33,6 +47,9 @@ import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRespon
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequestBuilder;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.IndicesAdminClient;
 import org.elasticsearch.client.transport.TransportClient;
@@ -40,16 +57,26 @@ import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndexAlreadyExistsException;
+import org.elasticsearch.indices.IndexMissingException;
 import org.hawkular.apm.api.services.StoreException;
 import org.hawkular.apm.api.utils.PropertyUtil;
 
 /**
- * This class represents the ElasticSearch client.
+ * This class represents the ElasticSearch client. The refresh statistics are available
+ * via JMX, using the object name 'org.hawkular.apm:type=ElasticsearchClient'.
  */
-public class ElasticsearchClient {
+public class ElasticsearchClient implements ElasticsearchClientMXBean {
+
+    private static final String OBJECT_NAME = "org.hawkular.apm:type=ElasticsearchClient";
 
     private static final String HAWKULAR_APM_MAPPING_JSON = "hawkular-apm-mapping.json";
 
+    private static final String INDEX_PREFIX = "apm-";
+
+    private static final String TIME_INDEX_PREFIX = "apm_";
+
     /**
      * Settings for the index this store is related to.
      */
@@ -93,6 +120,88 @@ public class ElasticsearchClient {
 
     private String cluster;
 
+    /**
+     * Property name for the default read consistency, see {@link ReadConsistency}.
+     */
+    public static final String ELASTICSEARCH_READ_CONSISTENCY = "HAWKULAR_APM_ELASTICSEARCH_READ_CONSISTENCY";
+
+    /**
+     * Default read consistency.
+     */
+    public static final String ELASTICSEARCH_READ_CONSISTENCY_DEFAULT = ReadConsistency.EVENTUAL.name();
+
+    private ReadConsistency readConsistency;
+
+    /**
+     * Property name for the minimum interval (in milliseconds) between refreshes of an index,
+     * performed on behalf of readers requiring {@link ReadConsistency#READ_YOUR_WRITES}.
+     */
+    public static final String ELASTICSEARCH_REFRESH_INTERVAL = "HAWKULAR_APM_ELASTICSEARCH_REFRESH_INTERVAL";
+
+    /**
+     * Default refresh interval.
+     */
+    public static final int ELASTICSEARCH_REFRESH_INTERVAL_DEFAULT = 1000;
+
+    private int refreshInterval;
+
+    /**
+     * Property name for the period covered by each time based index, see {@link IndexPeriod}.
+     */
+    public static final String ELASTICSEARCH_INDEX_PERIOD = "HAWKULAR_APM_ELASTICSEARCH_INDEX_PERIOD";
+
+    /**
+     * Default index period.
+     */
+    public static final String ELASTICSEARCH_INDEX_PERIOD_DEFAULT = IndexPeriod.NONE.name();
+
+    private IndexPeriod indexPeriod;
+
+    /**
+     * Property name for the number of periods for which time based indices are retained.
+     */
+    public static final String ELASTICSEARCH_INDEX_RETENTION = "HAWKULAR_APM_ELASTICSEARCH_INDEX_RETENTION";
+
+    /**
+     * Default index retention, retaining all indices.
+     */
+    public static final int ELASTICSEARCH_INDEX_RETENTION_DEFAULT = 0;
+
+    private int indexRetention;
+
+    /**
+     * Property name for the number of shards of each index, overriding the value defined in
+     * the index settings.
+     */
+    public static final String ELASTICSEARCH_SHARDS = "HAWKULAR_APM_ELASTICSEARCH_SHARDS";
+
+    /**
+     * Property name for the number of replicas of each index, overriding the value defined in
+     * the index settings.
+     */
+    public static final String ELASTICSEARCH_REPLICAS = "HAWKULAR_APM_ELASTICSEARCH_REPLICAS";
+
+    private static final String SHARDS_SETTING = "index.number_of_shards";
+
+    private static final String REPLICAS_SETTING = "index.number_of_replicas";
+
+    /**
+     * The maximum number of time based indices that will be named in a query, above
+     * which the alias for all of the indices will be used.
+     */
+    private static final int MAX_INDICES_PER_QUERY = 100;
+
+    private final Map<String, IndexState> indexStates = new ConcurrentHashMap<>();
+
+    private final LongAdder refreshCount = new LongAdder();
+
+    private final LongAdder coalescedRefreshCount = new LongAdder();
+
+    private final LongAdder refreshWaitTime = new LongAdder();
+
+    /** The document types defined in the mapping, used to identify the aliases to refresh */
+    private volatile List<String> mappingTypes;
+
     private static final Object SYNC = new Object();
 
     private static ElasticsearchEmbeddedNode node = null;
@@ -117,6 +226,16 @@ public class ElasticsearchClient {
         }
 
         cluster = PropertyUtil.getProperty(ELASTICSEARCH_CLUSTER, ELASTICSEARCH_CLUSTER_DEFAULT);
+
+        readConsistency = ReadConsistency.valueOf(PropertyUtil.getProperty(ELASTICSEARCH_READ_CONSISTENCY,
+                ELASTICSEARCH_READ_CONSISTENCY_DEFAULT).toUpperCase());
+        refreshInterval = PropertyUtil.getPropertyAsInteger(ELASTICSEARCH_REFRESH_INTERVAL,
+                ELASTICSEARCH_REFRESH_INTERVAL_DEFAULT);
+
+        indexPeriod = IndexPeriod.valueOf(PropertyUtil.getProperty(ELASTICSEARCH_INDEX_PERIOD,
+                ELASTICSEARCH_INDEX_PERIOD_DEFAULT).toUpperCase());
+        indexRetention = PropertyUtil.getPropertyAsInteger(ELASTICSEARCH_INDEX_RETENTION,
+                ELASTICSEARCH_INDEX_RETENTION_DEFAULT);
     }
 
     /**
@@ -154,6 +273,79 @@ public class ElasticsearchClient {
         this.hosts = hosts;
     }
 
+    /**
+     * This method returns the default read consistency.
+     *
+     * @return The read consistency
+     */
+    public ReadConsistency getReadConsistency() {
+        return readConsistency;
+    }
+
+    /**
+     * This method sets the default read consistency.
+     *
+     * @param readConsistency The read consistency
+     */
+    public void setReadConsistency(ReadConsistency readConsistency) {
+        this.readConsistency = readConsistency;
+    }
+
+    /**
+     * This method returns the minimum interval between refreshes of an index.
+     *
+     * @return The refresh interval, in milliseconds
+     */
+    @Override
+    public int getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * This method sets the minimum interval between refreshes of an index.
+     *
+     * @param refreshInterval The refresh interval, in milliseconds
+     */
+    public void setRefreshInterval(int refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * This method returns the period covered by each time based index.
+     *
+     * @return The index period
+     */
+    public IndexPeriod getIndexPeriod() {
+        return indexPeriod;
+    }
+
+    /**
+     * This method sets the period covered by each time based index.
+     *
+     * @param indexPeriod The index period
+     */
+    public void setIndexPeriod(IndexPeriod indexPeriod) {
+        this.indexPeriod = indexPeriod;
+    }
+
+    /**
+     * This method returns the number of periods for which time based indices are retained.
+     *
+     * @return The number of periods, or 0 if all indices are retained
+     */
+    public int getIndexRetention() {
+        return indexRetention;
+    }
+
+    /**
+     * This method sets the number of periods for which time based indices are retained.
+     *
+     * @param indexRetention The number of periods, or 0 if all indices are retained
+     */
+    public void setIndexRetention(int indexRetention) {
+        this.indexRetention = indexRetention;
+    }
+
     /**
      * Initialize the client.
      *
@@ -197,13 +389,15 @@ public class ElasticsearchClient {
                         new Integer(host[1])));
             }
         }
+
+        registerMBean();
     }
 
     public String getIndex(String tenantId) {
         if (tenantId == null) {
-            return "apm-hawkular";
+            return INDEX_PREFIX + "hawkular";
         }
-        return "apm-" + tenantId.toLowerCase();
+        return INDEX_PREFIX + tenantId.toLowerCase();
     }
 
     @SuppressWarnings("unchecked")
@@ -217,50 +411,322 @@ public class ElasticsearchClient {
                         log.fine("Initialise mappings for tenantId = " + tenantId);
                     }
 
-                    InputStream s = Thread.currentThread().getContextClassLoader()
-                            .getResourceAsStream(HAWKULAR_APM_MAPPING_JSON);
-                    if (s == null) {
-                        s = ElasticsearchClient.class.getResourceAsStream("/" + HAWKULAR_APM_MAPPING_JSON);
-                    }
+                    Map<String, Object> dataMap = loadMapping();
 
-                    if (s != null) {
-                        try {
-                            String jsonDefaultUserIndex = IOUtils.toString(s);
+                    if (dataMap != null) {
+                        if (createIndex(index, (Map<String, Object>) dataMap.get(SETTINGS))) {
                             if (log.isLoggable(Level.FINEST)) {
-                                log.finest("Mapping [" + jsonDefaultUserIndex + "]");
+                                log.finest("Index '" + index + "' created");
                             }
+                            // refresh index
+                            RefreshRequestBuilder refreshRequestBuilder = getClient().admin().indices()
+                                    .prepareRefresh(index);
+                            getClient().admin().indices().refresh(refreshRequestBuilder.request())
+                            .actionGet();
+                        } else if (log.isLoggable(Level.FINEST)) {
+                            log.finest("Index '" + index + "' already exists. Doing nothing.");
+                        }
+
+                        // Apply mapping in case changes have occurred - however will only be done
+                        // once per server session, for a particular index (i.e. tenant)
+                        prepareMapping(index, (Map<String, Object>) dataMap.get(MAPPINGS));
+
+                        knownIndices.add(index);
+                        indexState(index).exists = true;
+                    }
+                }
+            }
+        }
+    }
 
-                            Map<String, Object> dataMap = XContentFactory.xContent(jsonDefaultUserIndex)
-                                    .createParser(jsonDefaultUserIndex).mapAndClose();
+    /**
+     * This method returns the index in which a document, of the supplied type and with the
+     * supplied timestamp, should be stored. If a time based {@link IndexPeriod} has been
+     * configured, then the document will be stored in the index covering the period
+     * containing the timestamp, which will be created (with an alias named after the tenant's
+     * index and the document type) if it does not already exist. Creating a new time based
+     * index also causes any indices older than the retention period to be deleted. A document
+     * whose timestamp is older than the retention period (e.g. arriving late, or from a host
+     * with a skewed clock) is stored in the oldest retained index, rather than creating an
+     * index that would immediately be deleted.
+     *
+     * @param tenantId The tenant id
+     * @param type The document type
+     * @param timestamp The timestamp, in milliseconds
+     * @return The index
+     * @throws StoreException Failed to initialise the index
+     */
+    @SuppressWarnings("unchecked")
+    public String initIndex(String tenantId, String type, long timestamp) throws StoreException {
+        initTenant(tenantId);
+
+        String index = getIndex(tenantId);
+        if (indexPeriod == IndexPeriod.NONE) {
+            return index;
+        }
 
-                            if (createIndex(index, (Map<String, Object>) dataMap.get(SETTINGS))) {
-                                if (log.isLoggable(Level.FINEST)) {
-                                    log.finest("Index '" + index + "' created");
+        long now = System.currentTimeMillis();
+        if (indexRetention > 0) {
+            long oldest = indexPeriod.getStart(now - indexRetention * indexPeriod.getDuration());
+            if (timestamp < oldest) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Document of type '" + type + "' with timestamp " + timestamp
+                            + " is older than the retention period, so storing in the oldest retained index");
+                }
+                timestamp = oldest;
+            }
+        }
+
+        String alias = getAlias(index, type);
+        String timeIndex = alias + "-" + indexPeriod.format(timestamp);
+
+        if (!knownIndices.contains(timeIndex)) {
+            synchronized (knownIndices) {
+                if (!knownIndices.contains(timeIndex)) {
+                    Map<String, Object> dataMap = loadMapping();
+
+                    if (dataMap != null) {
+                        try {
+                            if (createIndex(timeIndex, (Map<String, Object>) dataMap.get(SETTINGS))) {
+                                if (log.isLoggable(Level.FINE)) {
+                                    log.fine("Index '" + timeIndex + "' created");
                                 }
-                                // refresh index
-                                RefreshRequestBuilder refreshRequestBuilder = getClient().admin().indices()
-                                        .prepareRefresh(index);
-                                getClient().admin().indices().refresh(refreshRequestBuilder.request())
-                                .actionGet();
-                            } else if (log.isLoggable(Level.FINEST)) {
-                                log.finest("Index '" + index + "' already exists. Doing nothing.");
                             }
+                        } catch (IndexAlreadyExistsException iaee) {
+                            // Created concurrently by another server
+                        }
 
-                            // Apply mapping in case changes have occurred - however will only be done
-                            // once per server session, for a particular index (i.e. tenant)
-                            prepareMapping(index, (Map<String, Object>) dataMap.get(MAPPINGS));
+                        Map<String, Object> mappings = (Map<String, Object>) dataMap.get(MAPPINGS);
+                        prepareMapping(timeIndex, Collections.singletonMap(type, mappings.get(type)));
 
-                            knownIndices.add(index);
-                        } catch (IOException ioe) {
-                            throw new StoreException(ioe);
-                        }
-                    } else {
-                        log.warning("Could not locate '" + HAWKULAR_APM_MAPPING_JSON
-                                + "' index mapping file. Mapping file required to use elasticsearch");
+                        client.admin().indices().prepareAliases().addAlias(timeIndex, alias).execute().actionGet();
+
+                        knownIndices.add(timeIndex);
+
+                        applyRetention(alias, now);
                     }
                 }
             }
         }
+
+        return timeIndex;
+    }
+
+    /**
+     * This method returns the indices that should be queried for documents of the supplied
+     * type. If a time based {@link IndexPeriod} has been configured, this will be the
+     * tenant's index (holding any documents stored before the time based indices were used)
+     * and the alias for all of the time based indices associated with the type.
+     *
+     * @param index The tenant's index
+     * @param type The document type
+     * @return The indices
+     */
+    public String[] getIndices(String index, String type) {
+        if (indexPeriod == IndexPeriod.NONE) {
+            return new String[] { index };
+        }
+        return new String[] { index, getAlias(index, type) };
+    }
+
+    /**
+     * This method returns the indices that should be queried for documents of the supplied
+     * type within a time range. If a time based {@link IndexPeriod} has been configured, this
+     * will be the tenant's index and the time based indices covering the range. The named
+     * indices may not exist, so queries should use {@link #getIndicesOptions()}.
+     *
+     * @param index The tenant's index
+     * @param type The document type
+     * @param startTime The start time, in milliseconds
+     * @param endTime The end time, in milliseconds
+     * @return The indices
+     */
+    public String[] getIndices(String index, String type, long startTime, long endTime) {
+        if (indexPeriod == IndexPeriod.NONE) {
+            return new String[] { index };
+        }
+
+        String alias = getAlias(index, type);
+        long start = indexPeriod.getStart(startTime);
+        if (endTime < start || (endTime - start) / indexPeriod.getDuration() >= MAX_INDICES_PER_QUERY) {
+            return getIndices(index, type);
+        }
+
+        List<String> indices = new ArrayList<>();
+        indices.add(index);
+        for (long time = start; time <= endTime; time += indexPeriod.getDuration()) {
+            indices.add(alias + "-" + indexPeriod.format(time));
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    /**
+     * This method returns the options that should be used when querying the indices returned
+     * from {@link #getIndices(String, String, long, long)}, so that indices that do not exist
+     * are ignored.
+     *
+     * @return The indices options
+     */
+    public IndicesOptions getIndicesOptions() {
+        return IndicesOptions.lenientExpandOpen();
+    }
+
+    /**
+     * This method returns the source of the document, of the supplied type and id. If time
+     * based indices are used, the document is located using a search across the indices
+     * associated with the type.
+     *
+     * @param index The tenant's index
+     * @param type The document type
+     * @param id The document id
+     * @return The document source, or null if not found
+     */
+    public String getSource(String index, String type, String id) {
+        if (indexPeriod == IndexPeriod.NONE) {
+            GetResponse response = client.prepareGet(index, type, id)
+                    .setRouting(id)
+                    .execute()
+                    .actionGet();
+            return response.isSourceEmpty() ? null : response.getSourceAsString();
+        }
+
+        // Unlike a get, a search is not realtime, so the indices may need to be refreshed
+        refresh(index);
+
+        SearchResponse response = client.prepareSearch(getIndices(index, type))
+                .setIndicesOptions(getIndicesOptions())
+                .setTypes(type)
+                .setQuery(QueryBuilders.idsQuery(type).ids(id))
+                .setSize(1)
+                .execute()
+                .actionGet();
+        return response.getHits().getHits().length == 0 ? null : response.getHits().getAt(0).getSourceAsString();
+    }
+
+    /**
+     * This method returns the alias for the time based indices of the supplied type. The
+     * alias (and therefore the time based indices) uses a different prefix to the tenants'
+     * indices, so that it cannot have the same name as another tenant's index (e.g. the
+     * 'trace' alias for tenant 'foo' and the index for tenant 'foo-trace'). As neither the
+     * document type nor the period contain a '-', the names of the aliases and time
+     * based indices for different tenants are also distinct.
+     *
+     * @param index The tenant's index
+     * @param type The document type
+     * @return The alias
+     */
+    protected static String getAlias(String index, String type) {
+        return TIME_INDEX_PREFIX + index.substring(INDEX_PREFIX.length()) + "-" + type;
+    }
+
+    /**
+     * This method deletes the time based indices associated with the supplied alias, that
+     * are older than the retention period.
+     *
+     * @param alias The alias
+     * @param now The current time, in milliseconds
+     */
+    private void applyRetention(String alias, long now) {
+        if (indexRetention <= 0) {
+            return;
+        }
+
+        String prefix = alias + "-";
+        String oldest = prefix + indexPeriod.format(now - indexRetention * indexPeriod.getDuration());
+
+        List<String> expired = new ArrayList<>();
+        for (String index : getTimeIndices(prefix, indexPeriod)) {
+            if (index.compareTo(oldest) < 0) {
+                expired.add(index);
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Deleting expired indices " + expired);
+            }
+            client.admin().indices().prepareDelete(expired.toArray(new String[expired.size()]))
+                    .execute().actionGet();
+            knownIndices.removeAll(expired);
+        }
+    }
+
+    /**
+     * This method returns the time based indices with the supplied prefix, followed by a suffix
+     * for one of the supplied periods. The suffix must match exactly, as the prefix may also
+     * be the prefix of another tenant's indices.
+     *
+     * @param prefix The prefix
+     * @param periods The index periods
+     * @return The indices
+     */
+    private List<String> getTimeIndices(String prefix, IndexPeriod... periods) {
+        List<String> ret = new ArrayList<>();
+        for (String index : client.admin().cluster().prepareState().execute().actionGet().getState()
+                .getMetaData().concreteAllIndices()) {
+            if (isTimeIndex(index, prefix, periods)) {
+                ret.add(index);
+            }
+        }
+        return ret;
+    }
+
+    private static boolean isTimeIndex(String index, String prefix, IndexPeriod... periods) {
+        if (index.startsWith(prefix)) {
+            String suffix = index.substring(prefix.length());
+            for (IndexPeriod period : periods) {
+                if (period.isSuffix(suffix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method loads the index settings and mappings.
+     *
+     * @return The index settings and mappings, or null if not found
+     * @throws StoreException Failed to load the index settings and mappings
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> loadMapping() throws StoreException {
+        InputStream s = Thread.currentThread().getContextClassLoader()
+                .getResourceAsStream(HAWKULAR_APM_MAPPING_JSON);
+        if (s == null) {
+            s = ElasticsearchClient.class.getResourceAsStream("/" + HAWKULAR_APM_MAPPING_JSON);
+        }
+
+        if (s == null) {
+            log.warning("Could not locate '" + HAWKULAR_APM_MAPPING_JSON
+                    + "' index mapping file. Mapping file required to use elasticsearch");
+            return null;
+        }
+
+        try {
+            String jsonDefaultUserIndex = IOUtils.toString(s);
+            if (log.isLoggable(Level.FINEST)) {
+                log.finest("Mapping [" + jsonDefaultUserIndex + "]");
+            }
+
+            Map<String, Object> dataMap = XContentFactory.xContent(jsonDefaultUserIndex)
+                    .createParser(jsonDefaultUserIndex).mapAndClose();
+
+            Map<String, Object> settings = new HashMap<>((Map<String, Object>) dataMap.get(SETTINGS));
+            String shards = PropertyUtil.getProperty(ELASTICSEARCH_SHARDS);
+            if (shards != null) {
+                settings.put(SHARDS_SETTING, Integer.valueOf(shards));
+            }
+            String replicas = PropertyUtil.getProperty(ELASTICSEARCH_REPLICAS);
+            if (replicas != null) {
+                settings.put(REPLICAS_SETTING, Integer.valueOf(replicas));
+            }
+            dataMap.put(SETTINGS, settings);
+
+            return dataMap;
+        } catch (IOException ioe) {
+            throw new StoreException(ioe);
+        }
     }
 
     /**
@@ -375,7 +841,219 @@ public class ElasticsearchClient {
             }
 
             knownIndices.remove(index);
+            indexStates.remove(index);
+
+            clearTimeIndices(index);
+        }
+    }
+
+    /**
+     * This method removes the time based indices associated with the tenant's index.
+     *
+     * @param index The tenant's index
+     */
+    @SuppressWarnings("unchecked")
+    private void clearTimeIndices(String index) {
+        Map<String, Object> dataMap;
+        try {
+            dataMap = loadMapping();
+        } catch (StoreException se) {
+            log.log(Level.SEVERE, "Failed to load mappings", se);
+            return;
+        }
+        if (dataMap == null) {
+            return;
+        }
+
+        // Indices created with any period are removed, in case the period has been changed
+        List<String> timeIndices = new ArrayList<>();
+        for (String type : ((Map<String, Object>) dataMap.get(MAPPINGS)).keySet()) {
+            String prefix = getAlias(index, type) + "-";
+            timeIndices.addAll(getTimeIndices(prefix, IndexPeriod.values()));
+            knownIndices.removeIf(known -> isTimeIndex(known, prefix, IndexPeriod.values()));
+        }
+
+        if (!timeIndices.isEmpty()) {
+            client.admin().indices().prepareDelete(timeIndices.toArray(new String[timeIndices.size()]))
+                    .execute().actionGet();
+        }
+    }
+
+    /**
+     * This method records that the index has been updated, so that the next reader
+     * requiring {@link ReadConsistency#READ_YOUR_WRITES} will cause it to be refreshed.
+     *
+     * @param index The index
+     */
+    public void indexUpdated(String index) {
+        IndexState state = indexState(index);
+        state.exists = true;
+        state.updates.incrementAndGet();
+    }
+
+    /**
+     * This method prepares the index to be read, using the default read consistency.
+     *
+     * @param index The index
+     * @return Whether the index exists
+     */
+    public boolean refresh(String index) {
+        return refresh(index, readConsistency);
+    }
+
+    /**
+     * This method prepares the index to be read. With {@link ReadConsistency#EVENTUAL}
+     * consistency the index is not refreshed, so recent updates become visible
+     * based on the index's periodic refresh interval. With
+     * {@link ReadConsistency#READ_YOUR_WRITES} consistency, if the index has been updated
+     * since the start of its last refresh, the reader waits until the refresh interval
+     * has elapsed since that refresh and then refreshes the index. Refreshes are performed
+     * by one reader at a time, so readers arriving while a refresh is pending or in progress
+     * wait for it, and only refresh again if they require updates made after it started.
+     *
+     * @param index The index
+     * @param consistency The read consistency required by the caller
+     * @return Whether the index exists
+     */
+    public boolean refresh(String index, ReadConsistency consistency) {
+        IndexState state = indexState(index);
+
+        // The updates that must be visible to this reader
+        long required = state.updates.get();
+
+        if (consistency == ReadConsistency.READ_YOUR_WRITES && state.refreshed < required) {
+            synchronized (state) {
+                if (state.refreshed < required) {
+                    awaitRefreshInterval(state);
+
+                    // Updates recorded before the refresh starts will be visible once it completes
+                    long updates = state.updates.get();
+                    state.lastRefresh = System.currentTimeMillis();
+                    try {
+                        if (indexPeriod == IndexPeriod.NONE) {
+                            client.admin().indices().prepareRefresh(index).execute().actionGet();
+                        } else {
+                            client.admin().indices().prepareRefresh(getRefreshIndices(index))
+                                    .setIndicesOptions(getIndicesOptions()).execute().actionGet();
+                        }
+                        refreshCount.increment();
+                    } catch (IndexMissingException ime) {
+                        state.exists = false;
+                    }
+                    state.refreshed = updates;
+                } else {
+                    // Satisfied by a refresh performed while waiting
+                    coalescedRefreshCount.increment();
+                }
+            }
+        }
+
+        if (!state.exists) {
+            state.exists = client.admin().indices().prepareExists(index).execute().actionGet().isExists();
+            if (!state.exists && log.isLoggable(Level.FINEST)) {
+                log.finest("Index '" + index + "' does not exist");
+            }
         }
+
+        return state.exists;
+    }
+
+    /**
+     * This method returns the indices to refresh when using time based indices, which are
+     * the tenant's index and the aliases for its time based indices. The aliases are named
+     * explicitly, as a wildcard would also match the indices of other tenants whose id has
+     * the tenant's id as a prefix.
+     *
+     * @param index The tenant's index
+     * @return The indices
+     */
+    @SuppressWarnings("unchecked")
+    String[] getRefreshIndices(String index) {
+        List<String> types = mappingTypes;
+        if (types == null) {
+            try {
+                Map<String, Object> dataMap = loadMapping();
+                if (dataMap != null) {
+                    types = new ArrayList<>(((Map<String, Object>) dataMap.get(MAPPINGS)).keySet());
+                    mappingTypes = types;
+                }
+            } catch (StoreException se) {
+                log.log(Level.SEVERE, "Failed to load mappings", se);
+            }
+            if (types == null) {
+                return new String[] { index };
+            }
+        }
+
+        String[] indices = new String[types.size() + 1];
+        indices[0] = index;
+        for (int i = 0; i < types.size(); i++) {
+            indices[i + 1] = getAlias(index, types.get(i));
+        }
+        return indices;
+    }
+
+    /**
+     * This method waits until the refresh interval has elapsed since the last
+     * refresh of the index.
+     *
+     * @param state The index state
+     */
+    private void awaitRefreshInterval(IndexState state) {
+        long wait = state.lastRefresh + refreshInterval - System.currentTimeMillis();
+        if (wait > 0) {
+            refreshWaitTime.add(wait);
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return refreshCount.sum();
+    }
+
+    @Override
+    public long getCoalescedRefreshCount() {
+        return coalescedRefreshCount.sum();
+    }
+
+    @Override
+    public long getRefreshWaitTime() {
+        return refreshWaitTime.sum();
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            // Replace the client registered by a previous deployment
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Failed to register Elasticsearch client statistics", e);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            log.log(Level.FINEST, "Failed to unregister Elasticsearch client statistics", e);
+        }
+    }
+
+    private IndexState indexState(String index) {
+        return indexStates.computeIfAbsent(index, k -> new IndexState());
     }
 
     /**
@@ -384,6 +1062,7 @@ public class ElasticsearchClient {
      */
     @PreDestroy
     public void close() {
+        unregisterMBean();
         if (node != null) {
             node.close();
         }
@@ -397,4 +1076,129 @@ public class ElasticsearchClient {
     public String toString() {
         return "ElasticsearchClient[hosts='" + hosts + "']";
     }
+
+    /**
+     * The read consistency required when querying an index.
+     */
+    public enum ReadConsistency {
+
+        /**
+         * Updates become visible based on the index's periodic refresh.
+         */
+        EVENTUAL,
+
+        /**
+         * Updates made through this client are visible to subsequent reads, subject
+         * to the refresh interval.
+         */
+        READ_YOUR_WRITES
+
+    }
+
+    /**
+     * The period covered by each time based index. With time based indices, documents are
+     * stored in an index per tenant, document type and period, so that retention can be
+     * managed by deleting whole indices and queries over a time range only need to
+     * search the indices covering that range.
+     */
+    public enum IndexPeriod {
+
+        /**
+         * All documents for a tenant are stored in a single index.
+         */
+        NONE(null, 0),
+
+        /**
+         * Documents are stored in an index per hour.
+         */
+        HOURLY("yyyy.MM.dd.HH", TimeUnit.HOURS.toMillis(1)),
+
+        /**
+         * Documents are stored in an index per day.
+         */
+        DAILY("yyyy.MM.dd", TimeUnit.DAYS.toMillis(1));
+
+        private final String pattern;
+        private final long duration;
+        private final DateTimeFormatter formatter;
+
+        IndexPeriod(String pattern, long duration) {
+            this.pattern = pattern;
+            this.duration = duration;
+            this.formatter = pattern == null ? null : DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+        }
+
+        /**
+         * @return The pattern used to derive the index suffix
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return The duration of the period, in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * This method returns the index suffix for the period containing the supplied time.
+         *
+         * @param time The time, in milliseconds
+         * @return The index suffix
+         */
+        public String format(long time) {
+            return formatter.format(Instant.ofEpochMilli(time));
+        }
+
+        /**
+         * This method determines whether the supplied value is an index suffix
+         * derived from this period's pattern.
+         *
+         * @param suffix The suffix
+         * @return Whether the suffix matches the pattern
+         */
+        public boolean isSuffix(String suffix) {
+            if (pattern == null || suffix.length() != pattern.length()) {
+                return false;
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                if (Character.isLetter(ch) ? !Character.isDigit(suffix.charAt(i)) : ch != suffix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * This method returns the start of the period containing the supplied time.
+         *
+         * @param time The time, in milliseconds
+         * @return The start of the period, in milliseconds
+         */
+        public long getStart(long time) {
+            return time - Math.floorMod(time, duration);
+        }
+
+    }
+
+    /**
+     * This class tracks the state of an index used to determine whether it needs
+     * to be refreshed before being read.
+     */
+    private static class IndexState {
+
+        private volatile boolean exists;
+
+        /** The number of updates recorded against the index */
+        private final AtomicLong updates = new AtomicLong();
+
+        /** The number of updates recorded before the start of the last refresh */
+        private volatile long refreshed;
+
+        private long lastRefresh;
+
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.elasticsearch;
+
+/**
+ * This interface exposes the statistics of the Elasticsearch client via JMX.
+ *
+ * @author gbrown
+ */
+public interface ElasticsearchClientMXBean {
+
+    /**
+     * @return The minimum interval (in milliseconds) between refreshes of an index
+     */
+    int getRefreshInterval();
+
+    /**
+     * @return The number of index refreshes performed on behalf of readers
+     */
+    long getRefreshCount();
+
+    /**
+     * @return The number of reads that did not refresh the index, as the updates they
+     *                  required were made visible by another reader's refresh
+     */
+    long getCoalescedRefreshCount();
+
+    /**
+     * @return The total time (in milliseconds) that readers have waited for the refresh
+     *                  interval to elapse before refreshing an index
+     */
+    long getRefreshWaitTime();
+
+}
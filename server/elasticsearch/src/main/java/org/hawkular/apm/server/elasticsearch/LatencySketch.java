@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.elasticsearch;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * This class provides a mergeable sketch of a latency distribution. Values are recorded
+ * in log-linear buckets (in the style of an HDR histogram), where values below
+ * {@link #LINEAR_LIMIT} are recorded exactly and larger values are recorded with a
+ * relative error of less than 1%. As the buckets are fixed, sketches recorded separately
+ * (e.g. for different minutes, or by different servers) can be merged without loss of
+ * accuracy.
+ *
+ * @author gbrown
+ */
+public class LatencySketch {
+
+    /** Values below this limit are recorded in their own bucket. */
+    protected static final int LINEAR_LIMIT = 128;
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int LINEAR_BITS = 7;
+
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+
+    private long count = 0;
+
+    /**
+     * This method records the supplied value.
+     *
+     * @param value The value
+     */
+    public void record(long value) {
+        buckets.merge(index(Math.max(0, value)), 1L, Long::sum);
+        count++;
+    }
+
+    /**
+     * This method merges the supplied sketch into this sketch.
+     *
+     * @param other The other sketch
+     */
+    public void merge(LatencySketch other) {
+        for (Map.Entry<Integer, Long> entry : other.buckets.entrySet()) {
+            buckets.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        count += other.count;
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * This method returns the estimated value at the supplied percentile.
+     *
+     * @param percentile The percentile (0-100)
+     * @return The estimated value, or 0 if no values have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long cumulative = 0;
+        for (Map.Entry<Integer, Long> entry : buckets.entrySet()) {
+            cumulative += entry.getValue();
+            if (cumulative >= rank) {
+                return value(entry.getKey());
+            }
+        }
+        return value(buckets.lastKey());
+    }
+
+    /**
+     * This method returns the sketch as an array of bucket index and count pairs,
+     * which is the form in which it is stored.
+     *
+     * @return The bucket index and count pairs
+     */
+    @JsonValue
+    public long[] toArray() {
+        long[] ret = new long[buckets.size() * 2];
+        int i = 0;
+        for (Map.Entry<Integer, Long> entry : buckets.entrySet()) {
+            ret[i++] = entry.getKey();
+            ret[i++] = entry.getValue();
+        }
+        return ret;
+    }
+
+    /**
+     * This method creates a sketch from an array of bucket index and count pairs.
+     *
+     * @param pairs The bucket index and count pairs
+     * @return The sketch
+     */
+    @JsonCreator
+    public static LatencySketch fromArray(long[] pairs) {
+        LatencySketch ret = new LatencySketch();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            ret.buckets.merge((int) pairs[i], pairs[i + 1], Long::sum);
+            ret.count += pairs[i + 1];
+        }
+        return ret;
+    }
+
+    /**
+     * This method returns the index of the bucket containing the supplied value.
+     *
+     * @param value The value
+     * @return The bucket index
+     */
+    protected static int index(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * This method returns the value representing the supplied bucket, which is
+     * the mid point of the range of values recorded in the bucket.
+     *
+     * @param index The bucket index
+     * @return The value
+     */
+    protected static long value(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width / 2;
+    }
+
+}
@@ -21,18 +21,19 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
-import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.indices.IndexMissingException;
@@ -41,6 +42,7 @@ import org.hawkular.apm.api.model.Constants;
 import org.hawkular.apm.api.model.Property;
 import org.hawkular.apm.api.model.trace.Component;
 import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.CorrelationIdentifier;
 import org.hawkular.apm.api.model.trace.InteractionNode;
 import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.model.trace.Producer;
@@ -66,6 +68,11 @@ public class SpanServiceElasticsearch implements SpanService {
 
     public static final String SPAN_TYPE = "span";
 
+    /** The maximum number of spans retrieved by each page of the scroll */
+    private static final int MAX_SPANS_PER_QUERY = 1000;
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
     private static final ObjectMapper mapper = new ObjectMapper();
 
     private ElasticsearchClient client = ElasticsearchClient.getSingleton();
@@ -73,46 +80,64 @@ public class SpanServiceElasticsearch implements SpanService {
 
     @Override
     public Span getSpan(String tenantId, String id) {
+        Span span = fetchSpan(tenantId, id);
+
+        if (span != null) {
+            span = enrichServerSpan(span, clientId -> fetchSpan(tenantId, clientId));
+        }
+
+        log.tracef("Get span with id[%s] is: %s", id, span);
 
-        GetResponse response = null;
+        return span;
+    }
+
+    /**
+     * This method retrieves the span, as stored, with the supplied id.
+     *
+     * @param tenantId The tenant id
+     * @param id The span id
+     * @return The span, or null if not found
+     */
+    private Span fetchSpan(String tenantId, String id) {
+        String source = null;
         try {
-            response = client.getClient()
-                    .prepareGet(client.getIndex(tenantId), SPAN_TYPE, id)
-                    .setRouting(id)
-                    .execute()
-                    .actionGet();
+            source = client.getSource(client.getIndex(tenantId), SPAN_TYPE, id);
         } catch (IndexMissingException ex) {
             log.errorf("Missing span index %s", tenantId);
             return null;
         }
 
         Span span = null;
-        if (!response.isSourceEmpty()) {
+        if (source != null) {
             try {
-                span = deserialize(response.getSourceAsString(), Span.class);
-
-                /**
-                 * Enrich server span with client span annotations
-                 */
-                if (span.serverSpan() && span.url() == null) {
-                    Span clientSpan = getSpan(tenantId, SpanUniqueIdGenerator.getClientId(span.getId()));
-                    if (clientSpan != null && clientSpan.url() != null) {
-                        BinaryAnnotation httpURLAnnotation = new BinaryAnnotation();
-                        httpURLAnnotation.setKey(Constants.ZIPKIN_BIN_ANNOTATION_HTTP_URL);
-                        httpURLAnnotation.setValue(clientSpan.url().toString());
-
-                        List<BinaryAnnotation> binaryAnnotationsWithURL = new ArrayList<>(span.getBinaryAnnotations());
-                        binaryAnnotationsWithURL.add(httpURLAnnotation);
-                        span = new Span(span, binaryAnnotationsWithURL, span.getAnnotations());
-                    }
-                }
+                span = deserialize(source, Span.class);
             } catch (IOException ex) {
                 log.errorFailedToParse(ex);
             }
         }
+        return span;
+    }
 
-        log.tracef("Get span with id[%s] is: %s", id, span);
-
+    /**
+     * This method enriches a server span with the URL of the associated client span.
+     *
+     * @param span The span
+     * @param lookup The function used to find a span by id
+     * @return The enriched span, or the supplied span if no enrichment was necessary
+     */
+    private static Span enrichServerSpan(Span span, Function<String, Span> lookup) {
+        if (span.serverSpan() && span.url() == null) {
+            Span clientSpan = lookup.apply(SpanUniqueIdGenerator.getClientId(span.getId()));
+            if (clientSpan != null && clientSpan.url() != null) {
+                BinaryAnnotation httpURLAnnotation = new BinaryAnnotation();
+                httpURLAnnotation.setKey(Constants.ZIPKIN_BIN_ANNOTATION_HTTP_URL);
+                httpURLAnnotation.setValue(clientSpan.url().toString());
+
+                List<BinaryAnnotation> binaryAnnotationsWithURL = new ArrayList<>(span.getBinaryAnnotations());
+                binaryAnnotationsWithURL.add(httpURLAnnotation);
+                span = new Span(span, binaryAnnotationsWithURL, span.getAnnotations());
+            }
+        }
         return span;
     }
 
@@ -123,21 +148,13 @@ public class SpanServiceElasticsearch implements SpanService {
         final String index = client.getIndex(tenantId);
         try {
 
-            RefreshRequestBuilder refreshRequestBuilder = client.getClient()
-                    .admin()
-                    .indices()
-                    .prepareRefresh(index);
-
-            client.getClient()
-                    .admin()
-                    .indices()
-                    .refresh(refreshRequestBuilder.request())
-                    .actionGet();
+            client.refresh(index);
 
             QueryBuilder query = QueryBuilders.termQuery("parentId", id);
 
             SearchRequestBuilder request = client.getClient()
-                    .prepareSearch(index)
+                    .prepareSearch(client.getIndices(index, SPAN_TYPE))
+                    .setIndicesOptions(client.getIndicesOptions())
                     .setTypes(SPAN_TYPE)
                     .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
                     .setQuery(query);
@@ -189,13 +206,19 @@ public class SpanServiceElasticsearch implements SpanService {
             // modified id is used in index
             final String modifiedId = spanIdSupplier.apply(span);
 
+            // spans without a timestamp are stored in the index for the current period
+            long timestamp = span.getTimestamp() == null ? System.currentTimeMillis()
+                    : TimeUnit.MICROSECONDS.toMillis(span.getTimestamp());
+
             bulkRequestBuilder.add(client.getClient()
-                    .prepareIndex(client.getIndex(tenantId), SPAN_TYPE, modifiedId)
+                    .prepareIndex(client.initIndex(tenantId, SPAN_TYPE, timestamp), SPAN_TYPE, modifiedId)
                     .setSource(json));
         }
 
         BulkResponse bulkItemResponses = bulkRequestBuilder.execute().actionGet();
 
+        client.indexUpdated(client.getIndex(tenantId));
+
         if (bulkItemResponses.hasFailures()) {
             log.tracef("Failed to store spans to elasticsearch: %s", bulkItemResponses.buildFailureMessage());
             throw new StoreException(bulkItemResponses.buildFailureMessage());
@@ -211,90 +234,180 @@ public class SpanServiceElasticsearch implements SpanService {
 
     @Override
     public Trace getTraceFragment(String tenantId, String id) {
-        Span span = getSpan(tenantId, id);
+        Span span = fetchSpan(tenantId, id);
 
         if (span == null) {
             return null;
         }
 
-        InteractionNode interactionNode = spanToNode(span);
-        interactionNode.setNodes(recursiveTraceFragment(tenantId, span));
-
-        Trace trace = spanToTrace(span);
-        trace.getNodes().add(interactionNode);
-
-        return trace;
+        return buildTraceFragment(getTraceSpans(tenantId, id, span), id);
     }
 
     @Override
     public Trace getTrace(String tenantId, String id) {
-        Span span = getSpan(tenantId, id);
-        if (span == null || span.serverSpan()) {
+        Span span = fetchSpan(tenantId, id);
+
+        if (span == null) {
             // We need to check if there is a client span for the same id
             String clientId = SpanUniqueIdGenerator.getClientId(id);
-            if (getSpan(tenantId, clientId) != null) {
-                // Replace the top level id we are interested in with the
-                // client side version
-                id = clientId;
+            span = fetchSpan(tenantId, clientId);
+            if (span == null) {
+                return null;
             }
+            id = clientId;
+        }
+
+        TraceSpans spans = getTraceSpans(tenantId, id, span);
+
+        if (span.serverSpan() && spans.getSpan(SpanUniqueIdGenerator.getClientId(id)) != null) {
+            // Replace the top level id we are interested in with the
+            // client side version
+            id = SpanUniqueIdGenerator.getClientId(id);
         }
 
-        Trace trace = getTraceFragment(tenantId, id);
+        Trace trace = buildTraceFragment(spans, id);
 
         if (trace != null) {
-            processConnectedFragment(tenantId, trace);
+            processConnectedFragment(tenantId, spans, trace);
         }
 
         return trace;
     }
 
     /**
-     * This method aggregates enhances the root trace, representing the
-     * complete end to end instance view, with the details available from
-     * a linked trace fragment that should be attached to the supplied
-     * Producer node. If the producer node is null then don't merge
-     * (as fragment is root) and just recursively process the fragment
-     * to identify additional linked fragments.
+     * This method attaches the linked trace fragments, built from the supplied
+     * spans, to the Producer nodes of the fragment.
      *
      * @param tenantId The tenant id
+     * @param spans The spans associated with the trace
      * @param fragment The fragment to be processed
      */
-    protected void processConnectedFragment(String tenantId, Trace fragment) {
+    private void processConnectedFragment(String tenantId, TraceSpans spans, Trace fragment) {
 
         List<Producer> producers = NodeUtil.findNodes(fragment.getNodes(), Producer.class);
 
         for (Producer producer : producers) {
-            if (!producer.getCorrelationIds().isEmpty()) {
-                List<Trace> fragments = getTraceFragments(tenantId, producer.getCorrelationIds().stream()
-                        .map(correlationIdentifier -> correlationIdentifier.getValue())
-                        .collect(Collectors.toList()));
+            for (CorrelationIdentifier correlationId : producer.getCorrelationIds()) {
+                Trace descendant = buildTraceFragment(spans, correlationId.getValue());
+
+                if (descendant == null) {
+                    // Linked fragment is not part of the same trace
+                    descendant = getTraceFragment(tenantId, correlationId.getValue());
+                }
 
-                for (Trace descendant : fragments) {
+                if (descendant != null) {
                     // Attach the fragment root nodes to the producer
                     producer.getNodes().addAll(descendant.getNodes());
-                    processConnectedFragment(tenantId, descendant);
+                    processConnectedFragment(tenantId, spans, descendant);
                 }
             }
         }
     }
 
-    private List<Trace> getTraceFragments(String tenantId, List<String> ids) {
-        List<Trace> traces = new ArrayList<>();
+    /**
+     * This method retrieves all of the spans associated with the trace that the
+     * supplied span belongs to, using a scroll whose first page is the result of
+     * the initial query, so further pages are only requested if the trace contains
+     * more than {@link #MAX_SPANS_PER_QUERY} spans.
+     *
+     * @param tenantId The tenant id
+     * @param id The id of the span
+     * @param span The span
+     * @return The spans associated with the trace
+     */
+    private TraceSpans getTraceSpans(String tenantId, String id, Span span) {
+        TraceSpans spans = new TraceSpans();
+
+        if (span.getTraceId() != null) {
+            final String index = client.getIndex(tenantId);
+            try {
+                client.refresh(index);
+
+                SearchRequestBuilder request = client.getClient()
+                        .prepareSearch(client.getIndices(index, SPAN_TYPE))
+                        .setIndicesOptions(client.getIndicesOptions())
+                        .setTypes(SPAN_TYPE)
+                        .setQuery(QueryBuilders.termQuery("traceId", span.getTraceId()))
+                        .setSize(MAX_SPANS_PER_QUERY)
+                        .setScroll(SCROLL_KEEP_ALIVE);
 
-        for (String id: ids) {
-            Trace traceFragment = getTraceFragment(tenantId, id);
-            if (traceFragment != null) {
-                traces.add(traceFragment);
+                SearchResponse response = request.execute().actionGet();
+                try {
+                    long total = response.getHits().getTotalHits();
+                    long retrieved = addSpans(spans, response);
+
+                    // Only continue the scroll if the trace did not fit in the first page
+                    while (retrieved < total) {
+                        response = client.getClient()
+                                .prepareSearchScroll(response.getScrollId())
+                                .setScroll(SCROLL_KEEP_ALIVE)
+                                .execute()
+                                .actionGet();
+                        int count = addSpans(spans, response);
+                        if (count == 0) {
+                            break;
+                        }
+                        retrieved += count;
+                    }
+                } finally {
+                    client.getClient()
+                            .prepareClearScroll()
+                            .addScrollId(response.getScrollId())
+                            .execute()
+                            .actionGet();
+                }
+            } catch (IndexMissingException ex) {
+                log.errorf("No index[%s] found, so unable to retrieve spans", index);
             }
         }
 
-        return traces;
+        if (spans.getSpan(id) == null) {
+            spans.add(id, span);
+        }
+
+        log.tracef("Get spans with traceId[%s] is: %d spans", span.getTraceId(), spans.size());
+
+        return spans;
+    }
+
+    private int addSpans(TraceSpans spans, SearchResponse response) {
+        for (SearchHit searchHitFields : response.getHits()) {
+            try {
+                spans.add(searchHitFields.getId(), deserialize(searchHitFields.getSourceAsString(), Span.class));
+            } catch (IOException ex) {
+                log.errorFailedToParse(ex);
+            }
+        }
+        return response.getHits().getHits().length;
     }
 
-    private List<Node> recursiveTraceFragment(String tenantId, Span parent) {
-        List<Span> spanChildren = getChildren(tenantId, parent.getId());
+    /**
+     * This method builds the trace fragment for the supplied span id.
+     *
+     * @param spans The spans associated with the trace
+     * @param id The span id
+     * @return The trace fragment, or null if the span is not found
+     */
+    private Trace buildTraceFragment(TraceSpans spans, String id) {
+        Span span = spans.getSpan(id);
+
+        if (span == null) {
+            return null;
+        }
 
-        if (spanChildren == null) {
+        InteractionNode interactionNode = spanToNode(span);
+        interactionNode.setNodes(recursiveTraceFragment(spans, span));
+
+        Trace trace = spanToTrace(span);
+        trace.getNodes().add(interactionNode);
+
+        return trace;
+    }
+
+    private List<Node> recursiveTraceFragment(TraceSpans spans, Span parent) {
+        List<Span> spanChildren = spans.getChildren(parent.getId());
+
+        if (spanChildren.isEmpty()) {
             return Collections.emptyList();
         }
 
@@ -308,7 +421,7 @@ public class SpanServiceElasticsearch implements SpanService {
             }
 
             if (!child.clientSpan()) {
-                node.setNodes(recursiveTraceFragment(tenantId, child));
+                node.setNodes(recursiveTraceFragment(spans, child));
             }
         }
 
@@ -375,4 +488,49 @@ public class SpanServiceElasticsearch implements SpanService {
 
         return out.toString();
     }
+
+    /**
+     * This class holds the spans associated with a trace, indexed by their unique id
+     * (see {@link SpanUniqueIdGenerator}) and parent id, so that the trace can be
+     * assembled in memory.
+     */
+    private static class TraceSpans {
+
+        private final Map<String, Span> spans = new HashMap<>();
+
+        private final Map<String, List<Span>> children = new HashMap<>();
+
+        void add(String id, Span span) {
+            spans.put(id, span);
+            if (span.getParentId() != null && !span.serverSpan()) {
+                children.computeIfAbsent(span.getParentId(), parentId -> new ArrayList<>()).add(span);
+            }
+        }
+
+        /**
+         * This method returns the span with the supplied id, with server spans
+         * enriched with the details from the associated client span.
+         *
+         * @param id The unique span id
+         * @return The span, or null if not found
+         */
+        Span getSpan(String id) {
+            Span span = spans.get(id);
+            return span == null ? null : enrichServerSpan(span, spans::get);
+        }
+
+        /**
+         * This method returns the (non server) child spans of the supplied span id.
+         *
+         * @param id The parent span id
+         * @return The child spans
+         */
+        List<Span> getChildren(String id) {
+            return children.getOrDefault(id, Collections.emptyList());
+        }
+
+        int size() {
+            return spans.size();
+        }
+    }
 }
@@ -21,14 +21,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
-import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -118,13 +117,10 @@ public class TraceServiceElasticsearch implements TraceService {
     public Trace getFragment(String tenantId, String id) {
         Trace ret = null;
 
-        GetResponse response = client.getClient().prepareGet(
-                client.getIndex(tenantId), TRACE_TYPE, id).setRouting(id)
-                .execute()
-                .actionGet();
-        if (!response.isSourceEmpty()) {
+        String source = client.getSource(client.getIndex(tenantId), TRACE_TYPE, id);
+        if (source != null) {
             try {
-                ret = mapper.readValue(response.getSourceAsString(), Trace.class);
+                ret = mapper.readValue(source, Trace.class);
             } catch (Exception e) {
                 msgLog.errorFailedToParse(e);
             }
@@ -143,13 +139,13 @@ public class TraceServiceElasticsearch implements TraceService {
         String index = client.getIndex(tenantId);
 
         try {
-            RefreshRequestBuilder refreshRequestBuilder = client.getClient().admin().indices().prepareRefresh(index);
-            client.getClient().admin().indices().refresh(refreshRequestBuilder.request()).actionGet();
+            client.refresh(index);
 
             BoolQueryBuilder query = QueryBuilders.boolQuery()
                     .must(QueryBuilders.termQuery("traceId", traceId));
 
-            SearchRequestBuilder request = client.getClient().prepareSearch(index)
+            SearchRequestBuilder request = client.getClient().prepareSearch(client.getIndices(index, TRACE_TYPE))
+                    .setIndicesOptions(client.getIndicesOptions())
                     .setTypes(TRACE_TYPE)
                     .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
                     .setSize(MAX_FRAGMENTS_PER_TRACE)
@@ -286,13 +282,14 @@ public class TraceServiceElasticsearch implements TraceService {
         String index = client.getIndex(tenantId);
 
         try {
-            RefreshRequestBuilder refreshRequestBuilder = client.getClient().admin().indices().prepareRefresh(index);
-            client.getClient().admin().indices().refresh(refreshRequestBuilder.request()).actionGet();
+            client.refresh(index);
 
             BoolQueryBuilder query = ElasticsearchUtil.buildQuery(criteria,
                     ElasticsearchUtil.TRANSACTION_FIELD, Trace.class);
 
-            SearchRequestBuilder request = client.getClient().prepareSearch(index)
+            SearchRequestBuilder request = client.getClient().prepareSearch(client.getIndices(index, TRACE_TYPE,
+                    criteria.calculateStartTime(), criteria.calculateEndTime()))
+                    .setIndicesOptions(client.getIndicesOptions())
                     .setTypes(TRACE_TYPE)
                     .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
                     .setTimeout(TimeValue.timeValueMillis(criteria.getTimeout()))
@@ -355,7 +352,8 @@ public class TraceServiceElasticsearch implements TraceService {
                     msgLog.tracef("Storing trace: %s", json);
                 }
 
-                bulkRequestBuilder.add(client.getClient().prepareIndex(client.getIndex(tenantId),
+                bulkRequestBuilder.add(client.getClient().prepareIndex(client.initIndex(tenantId,
+                        TRACE_TYPE, TimeUnit.MICROSECONDS.toMillis(trace.getTimestamp())),
                         TRACE_TYPE, trace.getFragmentId()).setSource(json));
             }
         } catch (JsonProcessingException e) {
@@ -364,6 +362,8 @@ public class TraceServiceElasticsearch implements TraceService {
 
         BulkResponse bulkItemResponses = bulkRequestBuilder.execute().actionGet();
 
+        client.indexUpdated(client.getIndex(tenantId));
+
         if (bulkItemResponses.hasFailures()) {
 
             if (msgLog.isTraceEnabled()) {
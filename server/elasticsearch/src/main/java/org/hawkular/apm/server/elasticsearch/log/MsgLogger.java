@@ -46,4 +46,12 @@ public interface MsgLogger extends BasicLogger {
     @Message(id = 600202, value = "Query timed out")
     void warnQueryTimedOut();
 
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 600203, value = "Failed to store analytics rollups: %s")
+    void errorFailedToStoreRollups(String message);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 600204, value = "Discarded %d analytics rollups for index %s that could not be stored")
+    void warnDroppedRollups(int count, String index);
+
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.api.model.Constants;
+import org.hawkular.apm.api.model.Property;
+import org.hawkular.apm.api.model.analytics.NodeTimeseriesStatistics;
+import org.hawkular.apm.api.model.analytics.Percentiles;
+import org.hawkular.apm.api.model.analytics.TimeseriesStatistics;
+import org.hawkular.apm.api.model.events.CompletionTime;
+import org.hawkular.apm.api.model.events.NodeDetails;
+import org.hawkular.apm.server.elasticsearch.AnalyticsRollup.CompletionRollup;
+import org.hawkular.apm.server.elasticsearch.AnalyticsRollup.NodeRollup;
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class AnalyticsRollupTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMicros(1);
+
+    @Test
+    public void testNodeDetailsFoldedPerMinute() {
+        AnalyticsRollup rollup = new AnalyticsRollup();
+
+        rollup.addNodeDetails("index", Arrays.asList(nodeDetails(1000, "db", 100),
+                nodeDetails(2000, "db", 300), nodeDetails(MINUTE + 1000, "db", 500),
+                nodeDetails(3000, "ejb", 150)));
+
+        Collection<NodeRollup> rollups = rollup.drainNodeRollups("index");
+        assertEquals(3, rollups.size());
+        assertTrue(rollup.drainNodeRollups("index").isEmpty());
+
+        NodeRollup db = rollups.stream().filter(r -> r.getTimestamp() == 0
+                && r.getComponentType().equals("db")).findFirst().get();
+        assertEquals(2, db.getCount());
+        assertEquals(400, db.getActual());
+        assertEquals(2, db.getActualSketch().getCount());
+    }
+
+    @Test
+    public void testNodeTimeseriesFromMergedRollups() {
+        AnalyticsRollup rollup = new AnalyticsRollup();
+        List<NodeRollup> rollups = new ArrayList<>();
+
+        // Simulate rollups for the same minute being flushed separately
+        rollup.addNodeDetails("index", Arrays.asList(nodeDetails(1000, "db", 100)));
+        rollups.addAll(rollup.drainNodeRollups("index"));
+        rollup.addNodeDetails("index", Arrays.asList(nodeDetails(2000, "db", 300),
+                nodeDetails(MINUTE + 1000, "db", 500)));
+        rollups.addAll(rollup.drainNodeRollups("index"));
+
+        List<NodeTimeseriesStatistics> stats = AnalyticsRollup.toNodeTimeseriesStatistics(rollups, MINUTE);
+        assertEquals(2, stats.size());
+        assertEquals(0, stats.get(0).getTimestamp());
+        assertEquals(200, stats.get(0).getComponentTypes().get("db").getDuration());
+        assertEquals(2, stats.get(0).getComponentTypes().get("db").getCount());
+        assertEquals(MINUTE, stats.get(1).getTimestamp());
+
+        stats = AnalyticsRollup.toNodeTimeseriesStatistics(rollups, 2 * MINUTE);
+        assertEquals(1, stats.size());
+        assertEquals(3, stats.get(0).getComponentTypes().get("db").getCount());
+    }
+
+    @Test
+    public void testCompletionTimeseriesAndPercentiles() {
+        AnalyticsRollup rollup = new AnalyticsRollup();
+
+        List<CompletionTime> completionTimes = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            CompletionTime ct = new CompletionTime();
+            ct.setTransaction("txn");
+            ct.setTimestamp(i * 1000);
+            ct.setDuration(i);
+            if (i % 10 == 0) {
+                ct.getProperties().add(new Property(Constants.PROP_FAULT, "fault"));
+            }
+            completionTimes.add(ct);
+        }
+        rollup.addCompletionTimes("index", completionTimes);
+
+        Collection<CompletionRollup> rollups = rollup.drainCompletionRollups("index");
+        assertEquals(1, rollups.size());
+
+        List<TimeseriesStatistics> stats = AnalyticsRollup.toTimeseriesStatistics(rollups, MINUTE);
+        assertEquals(1, stats.size());
+        assertEquals(100, stats.get(0).getCount());
+        assertEquals(10, stats.get(0).getFaultCount());
+        assertEquals(1, stats.get(0).getMin());
+        assertEquals(100, stats.get(0).getMax());
+        assertEquals(50, stats.get(0).getAverage());
+
+        Percentiles percentiles = AnalyticsRollup.toPercentiles(rollups);
+        assertEquals(Long.valueOf(50), percentiles.getPercentiles().get(50));
+        assertEquals(Long.valueOf(95), percentiles.getPercentiles().get(95));
+    }
+
+    protected static NodeDetails nodeDetails(long timestamp, String componentType, long actual) {
+        NodeDetails nd = new NodeDetails();
+        nd.setTransaction("txn");
+        nd.setTimestamp(timestamp);
+        nd.setComponentType(componentType);
+        nd.setActual(actual);
+        nd.setElapsed(actual * 2);
+        return nd;
+    }
+}
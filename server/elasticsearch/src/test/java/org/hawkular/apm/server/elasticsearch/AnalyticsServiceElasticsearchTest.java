@@ -40,6 +40,7 @@ import org.hawkular.apm.api.model.analytics.CommunicationSummaryStatistics;
 import org.hawkular.apm.api.model.analytics.EndpointInfo;
 import org.hawkular.apm.api.model.analytics.NodeSummaryStatistics;
 import org.hawkular.apm.api.model.analytics.NodeTimeseriesStatistics;
+import org.hawkular.apm.api.model.analytics.Percentiles;
 import org.hawkular.apm.api.model.analytics.PropertyInfo;
 import org.hawkular.apm.api.model.analytics.TimeseriesStatistics;
 import org.hawkular.apm.api.model.config.CollectorConfiguration;
@@ -114,6 +115,7 @@ public class AnalyticsServiceElasticsearchTest {
 
     @After
     public void afterTest() {
+        analytics.close();
         bts.clear(null);
         analytics.clear(null);
     }
@@ -2778,4 +2780,198 @@ public class AnalyticsServiceElasticsearchTest {
         assertEquals(1, cards1.get(0).getCount());
     }
 
+    @Test
+    public void testGetNodeSummaryStatisticsFromRollups() throws StoreException {
+        analytics.setRollupEnabled(true);
+
+        NodeDetails ct1_1 = new NodeDetails();
+        ct1_1.setTransaction(TXN);
+        ct1_1.setTimestamp(1500);
+        ct1_1.setActual(100);
+        ct1_1.setElapsed(200);
+        ct1_1.setType(NodeType.Component);
+        ct1_1.setComponentType(Constants.COMPONENT_DATABASE);
+        ct1_1.setUri("jdbc");
+
+        NodeDetails ct1_2 = new NodeDetails();
+        ct1_2.setTransaction(TXN);
+        ct1_2.setTimestamp(1600);
+        ct1_2.setActual(300);
+        ct1_2.setElapsed(600);
+        ct1_2.setType(NodeType.Component);
+        ct1_2.setComponentType(Constants.COMPONENT_DATABASE);
+        ct1_2.setUri("jdbc");
+
+        NodeDetails ct1_3 = new NodeDetails();
+        ct1_3.setTransaction(TXN);
+        ct1_3.setTimestamp(1700);
+        ct1_3.setActual(150);
+        ct1_3.setElapsed(300);
+        ct1_3.setType(NodeType.Consumer);
+        ct1_3.setUri("hello");
+
+        // Store in separate batches, with a flush between, so the rollups for the
+        // same minute need to be merged
+        analytics.storeNodeDetails(null, Arrays.asList(ct1_1, ct1_3));
+        analytics.flushRollups();
+        analytics.storeNodeDetails(null, Arrays.asList(ct1_2));
+        analytics.flushRollups();
+
+        Criteria criteria = new Criteria();
+        criteria.setStartTime(1).setEndTime(10000);
+
+        Wait.until(() -> analytics.getNodeSummaryStatistics(null, criteria).size() == 2);
+        Collection<NodeSummaryStatistics> stats = analytics.getNodeSummaryStatistics(null, criteria);
+
+        Map<String,NodeSummaryStatistics> results=
+                stats.stream().collect(Collectors.toMap(x -> x.getComponentType(), x -> x));
+
+        assertEquals("jdbc", results.get(Constants.COMPONENT_DATABASE).getUri());
+        assertEquals(2, results.get(Constants.COMPONENT_DATABASE).getCount());
+        assertEquals(200, results.get(Constants.COMPONENT_DATABASE).getActual());
+        assertEquals(400, results.get(Constants.COMPONENT_DATABASE).getElapsed());
+
+        assertEquals("hello", results.get("Consumer").getUri());
+        assertEquals(1, results.get("Consumer").getCount());
+        assertEquals(150, results.get("Consumer").getActual());
+
+        // Properties are not recorded in the rollups, so answered from the raw node details
+        criteria.addProperty("missing", "value", Operator.HAS);
+        assertTrue(analytics.getNodeSummaryStatistics(null, criteria).isEmpty());
+    }
+
+    @Test
+    public void testGetTraceCompletionStatisticsFromRollups() throws StoreException {
+        analytics.setRollupEnabled(true);
+
+        List<CompletionTime> completionTimes = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            CompletionTime ct = new CompletionTime();
+            ct.setTransaction(TXN);
+            ct.setTimestamp(i * 1000);
+            ct.setDuration(i);
+            if (i % 10 == 0) {
+                ct.getProperties().add(new Property(Constants.PROP_FAULT, "Failed"));
+            }
+            completionTimes.add(ct);
+        }
+
+        analytics.storeTraceCompletions(null, completionTimes);
+        analytics.flushRollups();
+
+        Criteria criteria = new Criteria();
+        criteria.setTransaction(TXN).setStartTime(1).setEndTime(10000);
+
+        Wait.until(() -> analytics.getTraceCompletionCount(null, criteria) == 100);
+        assertEquals(100, analytics.getTraceCompletionCount(null, criteria));
+        assertEquals(10, analytics.getTraceCompletionFaultCount(null, criteria));
+
+        Percentiles percentiles = analytics.getTraceCompletionPercentiles(null, criteria);
+        assertEquals(Long.valueOf(50), percentiles.getPercentiles().get(50));
+        assertEquals(Long.valueOf(99), percentiles.getPercentiles().get(99));
+
+        List<TimeseriesStatistics> stats = analytics.getTraceCompletionTimeseriesStatistics(null, criteria,
+                60000000);
+        assertEquals(1, stats.size());
+        assertEquals(0, stats.get(0).getTimestamp());
+        assertEquals(100, stats.get(0).getCount());
+        assertEquals(10, stats.get(0).getFaultCount());
+        assertEquals(1, stats.get(0).getMin());
+        assertEquals(100, stats.get(0).getMax());
+
+        criteria.setTransaction("other");
+        assertEquals(0, analytics.getTraceCompletionCount(null, criteria));
+    }
+
+    @Test
+    public void testRollupsNotFlushedByQuery() throws StoreException {
+        analytics.setRollupEnabled(true);
+
+        analytics.storeTraceCompletions(null, createCompletionTimes(10));
+
+        Criteria criteria = new Criteria();
+        criteria.setTransaction(TXN).setStartTime(1).setEndTime(10000);
+
+        assertEquals(0, analytics.getTraceCompletionCount(null, criteria));
+
+        analytics.flushRollups();
+
+        Wait.until(() -> analytics.getTraceCompletionCount(null, criteria) == 10);
+        assertEquals(10, analytics.getTraceCompletionCount(null, criteria));
+    }
+
+    @Test
+    public void testRollupsFlushedOnSchedule() throws StoreException {
+        analytics.setRollupEnabled(true);
+        analytics.setRollupFlushInterval(100);
+
+        analytics.storeTraceCompletions(null, createCompletionTimes(10));
+
+        Criteria criteria = new Criteria();
+        criteria.setTransaction(TXN).setStartTime(1).setEndTime(10000);
+
+        Wait.until(() -> analytics.getTraceCompletionCount(null, criteria) == 10);
+        assertEquals(10, analytics.getTraceCompletionCount(null, criteria));
+    }
+
+    @Test
+    public void testRollupsFlushedOnClose() throws StoreException {
+        analytics.setRollupEnabled(true);
+
+        analytics.storeTraceCompletions(null, createCompletionTimes(10));
+        analytics.close();
+
+        Criteria criteria = new Criteria();
+        criteria.setTransaction(TXN).setStartTime(1).setEndTime(10000);
+
+        Wait.until(() -> analytics.getTraceCompletionCount(null, criteria) == 10);
+        assertEquals(10, analytics.getTraceCompletionCount(null, criteria));
+    }
+
+    @Test
+    public void testPendingRollupsBounded() throws StoreException {
+        AnalyticsServiceElasticsearch failing = new AnalyticsServiceElasticsearch() {
+            @Override
+            boolean storeRollups(String tenantId, String index, List<PendingRollup> rollups) {
+                return false;
+            }
+        };
+        failing.setRollupEnabled(true);
+        failing.setMaxPendingRollups(15);
+
+        try {
+            // Each completion time is in a separate minute, so results in a separate rollup
+            List<CompletionTime> completionTimes = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                CompletionTime ct = new CompletionTime();
+                ct.setTransaction(TXN);
+                ct.setTimestamp(i * 60000000L);
+                ct.setDuration(i);
+                completionTimes.add(ct);
+            }
+
+            failing.storeTraceCompletions(null, completionTimes);
+            failing.flushRollups();
+            assertEquals(0, failing.getDroppedRollupCount());
+
+            failing.storeTraceCompletions(null, completionTimes);
+            failing.flushRollups();
+            assertEquals(5, failing.getDroppedRollupCount());
+        } finally {
+            failing.close();
+        }
+    }
+
+    private static List<CompletionTime> createCompletionTimes(int count) {
+        List<CompletionTime> completionTimes = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            CompletionTime ct = new CompletionTime();
+            ct.setTransaction(TXN);
+            ct.setTimestamp(i * 1000);
+            ct.setDuration(i);
+            completionTimes.add(ct);
+        }
+        return completionTimes;
+    }
+
 }
@@ -16,8 +16,29 @@
  */
 package org.hawkular.apm.server.elasticsearch;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.Criteria;
+import org.hawkular.apm.api.services.StoreException;
+import org.hawkular.apm.server.elasticsearch.ElasticsearchClient.IndexPeriod;
+import org.hawkular.apm.server.elasticsearch.ElasticsearchClient.ReadConsistency;
 import org.junit.Test;
 
 /**
@@ -48,4 +69,308 @@ public class ElasticsearchClientTest {
         assertEquals(TESTHOSTS, client.getHosts());
     }
 
+    @Test
+    public void testRefreshMissingIndex() {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        assertFalse(client.refresh(client.getIndex("refreshmissing"), ReadConsistency.READ_YOUR_WRITES));
+    }
+
+    @Test
+    public void testRefreshOnlyWhenUpdated() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        client.initTenant("refreshupdated");
+        String index = client.getIndex("refreshupdated");
+
+        try {
+            long refreshes = client.getRefreshCount();
+
+            assertTrue(client.refresh(index, ReadConsistency.READ_YOUR_WRITES));
+            assertEquals(refreshes, client.getRefreshCount());
+
+            client.indexUpdated(index);
+            assertTrue(client.refresh(index, ReadConsistency.EVENTUAL));
+            assertEquals(refreshes, client.getRefreshCount());
+
+            assertTrue(client.refresh(index, ReadConsistency.READ_YOUR_WRITES));
+            assertEquals(refreshes + 1, client.getRefreshCount());
+
+            assertTrue(client.refresh(index, ReadConsistency.READ_YOUR_WRITES));
+            assertEquals(refreshes + 1, client.getRefreshCount());
+        } finally {
+            client.clearTenant("refreshupdated");
+        }
+    }
+
+    @Test
+    public void testRefreshWaitsForInterval() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        client.initTenant("refreshinterval");
+        String index = client.getIndex("refreshinterval");
+        int interval = client.getRefreshInterval();
+
+        try {
+            client.setRefreshInterval(500);
+
+            long refreshes = client.getRefreshCount();
+
+            client.indexUpdated(index);
+            assertTrue(client.refresh(index, ReadConsistency.READ_YOUR_WRITES));
+            assertEquals(refreshes + 1, client.getRefreshCount());
+
+            // Update within the interval must still be refreshed, once the interval has elapsed
+            long start = System.currentTimeMillis();
+            client.indexUpdated(index);
+            assertTrue(client.refresh(index, ReadConsistency.READ_YOUR_WRITES));
+            assertEquals(refreshes + 2, client.getRefreshCount());
+            assertTrue(System.currentTimeMillis() - start >= 400);
+        } finally {
+            client.setRefreshInterval(interval);
+            client.clearTenant("refreshinterval");
+        }
+    }
+
+    @Test
+    public void testRefreshCoalesced() throws Exception {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        client.initTenant("refreshcoalesced");
+        String index = client.getIndex("refreshcoalesced");
+        int interval = client.getRefreshInterval();
+
+        try {
+            client.setRefreshInterval(500);
+
+            client.indexUpdated(index);
+            assertTrue(client.refresh(index, ReadConsistency.READ_YOUR_WRITES));
+
+            long refreshes = client.getRefreshCount();
+            long coalesced = client.getCoalescedRefreshCount();
+            long waited = client.getRefreshWaitTime();
+
+            // Concurrent readers within the interval share a single refresh
+            client.indexUpdated(index);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> client.refresh(index, ReadConsistency.READ_YOUR_WRITES)));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+            executor.shutdown();
+
+            assertEquals(refreshes + 1, client.getRefreshCount());
+            assertEquals(coalesced + 3, client.getCoalescedRefreshCount());
+            assertTrue(client.getRefreshWaitTime() > waited);
+        } finally {
+            client.setRefreshInterval(interval);
+            client.clearTenant("refreshcoalesced");
+        }
+    }
+
+    @Test
+    public void testStatisticsViaJMX() throws Exception {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.hawkular.apm:type=ElasticsearchClient");
+
+        assertEquals(client.getRefreshInterval(), server.getAttribute(objectName, "RefreshInterval"));
+        assertNotNull(server.getAttribute(objectName, "RefreshCount"));
+        assertNotNull(server.getAttribute(objectName, "CoalescedRefreshCount"));
+        assertNotNull(server.getAttribute(objectName, "RefreshWaitTime"));
+    }
+
+    @Test
+    public void testGetIndicesNoPeriod() {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        String index = client.getIndex("indicesnone");
+
+        assertArrayEquals(new String[] { index }, client.getIndices(index, "trace"));
+        assertArrayEquals(new String[] { index }, client.getIndices(index, "trace", 0, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testGetIndicesHourly() {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        IndexPeriod period = client.getIndexPeriod();
+
+        try {
+            client.setIndexPeriod(IndexPeriod.HOURLY);
+            String index = client.getIndex("indiceshourly");
+
+            // 2016-01-01T10:30Z to 2016-01-01T12:10Z
+            long start = 1451644200000L;
+            long end = start + TimeUnit.MINUTES.toMillis(100);
+
+            assertArrayEquals(new String[] { index, "apm_indiceshourly-trace-2016.01.01.10",
+                    "apm_indiceshourly-trace-2016.01.01.11", "apm_indiceshourly-trace-2016.01.01.12" },
+                    client.getIndices(index, "trace", start, end));
+
+            // Too many periods, so use the alias
+            assertArrayEquals(new String[] { index, "apm_indiceshourly-trace" },
+                    client.getIndices(index, "trace", 0, end));
+        } finally {
+            client.setIndexPeriod(period);
+        }
+    }
+
+    @Test
+    public void testIndexRetention() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        IndexPeriod period = client.getIndexPeriod();
+        int retention = client.getIndexRetention();
+        String index = client.getIndex("indexretention");
+
+        try {
+            client.setIndexPeriod(IndexPeriod.DAILY);
+
+            long now = System.currentTimeMillis();
+            String expired = client.initIndex("indexretention", "trace", now - TimeUnit.DAYS.toMillis(5));
+            assertTrue(indexExists(client, expired));
+
+            client.setIndexRetention(2);
+            String current = client.initIndex("indexretention", "trace", now);
+
+            assertTrue(indexExists(client, current));
+            assertFalse(indexExists(client, expired));
+        } finally {
+            client.setIndexPeriod(period);
+            client.setIndexRetention(retention);
+            client.clearTenant("indexretention");
+        }
+
+        assertFalse(indexExists(client, ElasticsearchClient.getAlias(index, "trace") + "-"
+                + IndexPeriod.DAILY.format(System.currentTimeMillis())));
+    }
+
+    @Test
+    public void testExpiredDocumentStoredInOldestIndex() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        IndexPeriod period = client.getIndexPeriod();
+        int retention = client.getIndexRetention();
+        String index = client.getIndex("expireddocument");
+
+        try {
+            client.setIndexPeriod(IndexPeriod.DAILY);
+            client.setIndexRetention(2);
+
+            long now = System.currentTimeMillis();
+            String stored = client.initIndex("expireddocument", "trace", now - TimeUnit.DAYS.toMillis(5));
+
+            assertEquals(ElasticsearchClient.getAlias(index, "trace") + "-" + IndexPeriod.DAILY.format(now - TimeUnit.DAYS.toMillis(2)), stored);
+            assertTrue(indexExists(client, stored));
+            assertFalse(indexExists(client, ElasticsearchClient.getAlias(index, "trace") + "-"
+                    + IndexPeriod.DAILY.format(now - TimeUnit.DAYS.toMillis(5))));
+        } finally {
+            client.setIndexPeriod(period);
+            client.setIndexRetention(retention);
+            client.clearTenant("expireddocument");
+        }
+    }
+
+    @Test
+    public void testClearTenantMatchesExactly() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        IndexPeriod period = client.getIndexPeriod();
+
+        try {
+            client.setIndexPeriod(IndexPeriod.DAILY);
+
+            long now = System.currentTimeMillis();
+            String tenant = client.initIndex("cleartenant", "trace", now);
+            String other = client.initIndex("cleartenant-trace-x", "trace", now);
+
+            client.clearTenant("cleartenant");
+
+            assertFalse(indexExists(client, tenant));
+            assertTrue(indexExists(client, other));
+        } finally {
+            client.setIndexPeriod(period);
+            client.clearTenant("cleartenant");
+            client.clearTenant("cleartenant-trace-x");
+        }
+    }
+
+    @Test
+    public void testAliasDoesNotClashWithTenantIndex() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        IndexPeriod period = client.getIndexPeriod();
+
+        try {
+            client.setIndexPeriod(IndexPeriod.DAILY);
+
+            long now = System.currentTimeMillis();
+            String tenant = client.initIndex("aliasclash", "trace", now);
+            String other = client.initIndex("aliasclash-trace", "trace", now);
+
+            assertTrue(indexExists(client, client.getIndex("aliasclash")));
+            assertTrue(indexExists(client, client.getIndex("aliasclash-trace")));
+            assertTrue(indexExists(client, tenant));
+            assertTrue(indexExists(client, other));
+            assertFalse(tenant.equals(other));
+        } finally {
+            client.setIndexPeriod(period);
+            client.clearTenant("aliasclash");
+            client.clearTenant("aliasclash-trace");
+        }
+    }
+
+    @Test
+    public void testRefreshIndicesOnlyForTenant() {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        String index = client.getIndex("refreshtenant");
+
+        List<String> indices = Arrays.asList(client.getRefreshIndices(index));
+
+        assertEquals(index, indices.get(0));
+        assertTrue(indices.contains("apm_refreshtenant-trace"));
+        assertTrue(indices.contains("apm_refreshtenant-span"));
+        for (String name : indices) {
+            assertFalse(name.contains("*"));
+        }
+    }
+
+    @Test
+    public void testStoreAndQueryDaily() throws StoreException {
+        ElasticsearchClient client = ElasticsearchClient.getSingleton();
+        IndexPeriod period = client.getIndexPeriod();
+        TraceServiceElasticsearch ts = new TraceServiceElasticsearch();
+
+        try {
+            client.setIndexPeriod(IndexPeriod.DAILY);
+
+            long now = System.currentTimeMillis();
+
+            Trace trace1 = new Trace();
+            trace1.setFragmentId("id1");
+            trace1.setTraceId("id1");
+            trace1.setTimestamp(TimeUnit.MILLISECONDS.toMicros(now));
+
+            Trace trace2 = new Trace();
+            trace2.setFragmentId("id2");
+            trace2.setTraceId("id2");
+            trace2.setTimestamp(TimeUnit.MILLISECONDS.toMicros(now - TimeUnit.DAYS.toMillis(3)));
+
+            ts.storeFragments("indexdaily", Arrays.asList(trace1, trace2));
+
+            assertNotNull(ts.getFragment("indexdaily", "id1"));
+            assertNotNull(ts.getFragment("indexdaily", "id2"));
+
+            Criteria criteria = new Criteria();
+            criteria.setStartTime(now - TimeUnit.HOURS.toMillis(1));
+
+            List<Trace> result = ts.searchFragments("indexdaily", criteria);
+            assertEquals(1, result.size());
+            assertEquals("id1", result.get(0).getFragmentId());
+
+            criteria.setStartTime(now - TimeUnit.DAYS.toMillis(4));
+            assertEquals(2, ts.searchFragments("indexdaily", criteria).size());
+        } finally {
+            client.setIndexPeriod(period);
+            ts.clear("indexdaily");
+        }
+    }
+
+    private static boolean indexExists(ElasticsearchClient client, String index) {
+        return client.getClient().admin().indices().prepareExists(index).execute().actionGet().isExists();
+    }
 }
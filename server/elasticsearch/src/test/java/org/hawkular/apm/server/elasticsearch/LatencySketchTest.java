@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * @author gbrown
+ */
+public class LatencySketchTest {
+
+    @Test
+    public void testSmallValuesExact() {
+        LatencySketch sketch = new LatencySketch();
+        for (int i = 1; i <= 100; i++) {
+            sketch.record(i);
+        }
+
+        assertEquals(100, sketch.getCount());
+        assertEquals(50, sketch.getValueAtPercentile(50));
+        assertEquals(95, sketch.getValueAtPercentile(95));
+        assertEquals(100, sketch.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testRelativeError() {
+        for (long value = LatencySketch.LINEAR_LIMIT; value < Long.MAX_VALUE / 3; value = value * 3 + 7) {
+            long estimate = LatencySketch.value(LatencySketch.index(value));
+            assertTrue("Value " + value + " estimate " + estimate,
+                    Math.abs(estimate - value) <= value / 100);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        LatencySketch sketch1 = new LatencySketch();
+        LatencySketch sketch2 = new LatencySketch();
+        LatencySketch all = new LatencySketch();
+        for (int i = 0; i < 1000; i++) {
+            long value = i * 1000L;
+            (i % 2 == 0 ? sketch1 : sketch2).record(value);
+            all.record(value);
+        }
+
+        sketch1.merge(sketch2);
+
+        assertEquals(all.getCount(), sketch1.getCount());
+        for (int percentile : new int[] { 1, 25, 50, 75, 99 }) {
+            assertEquals(all.getValueAtPercentile(percentile), sketch1.getValueAtPercentile(percentile));
+        }
+        long p50 = sketch1.getValueAtPercentile(50);
+        assertTrue(Math.abs(p50 - 499000) <= 499000 / 100);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        LatencySketch sketch = new LatencySketch();
+        sketch.record(5);
+        sketch.record(5);
+        sketch.record(123456);
+
+        ObjectMapper mapper = new ObjectMapper();
+        String json = mapper.writeValueAsString(sketch);
+        LatencySketch result = mapper.readValue(json, LatencySketch.class);
+
+        assertEquals(3, result.getCount());
+        assertEquals(5, result.getValueAtPercentile(50));
+        assertEquals(sketch.getValueAtPercentile(100), result.getValueAtPercentile(100));
+    }
+}
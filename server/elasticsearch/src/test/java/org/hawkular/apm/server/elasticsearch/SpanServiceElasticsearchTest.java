@@ -19,6 +19,7 @@ package org.hawkular.apm.server.elasticsearch;
 
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -520,6 +521,52 @@ public class SpanServiceElasticsearchTest {
         Assert.assertEquals(0, rootProducerNode.getNodes().size());
     }
 
+    @Test
+    public void testGetEndToEndTraceLarge() throws StoreException, InterruptedException {
+        int numDescendants = 600;
+
+        Span rootServerSpan = new Span(null, serverAnnotations());
+        rootServerSpan.setId("root");
+        rootServerSpan.setTraceId("root");
+
+        List<Span> spans = new ArrayList<>();
+        spans.add(rootServerSpan);
+
+        for (int i = 0; i < numDescendants; i++) {
+            Span clientDescendant = new Span(null, clientAnnotations());
+            clientDescendant.setId("descendant" + i);
+            clientDescendant.setParentId("root");
+            clientDescendant.setTraceId("root");
+            spans.add(clientDescendant);
+
+            Span serverDescendant = new Span(null, serverAnnotations());
+            serverDescendant.setId("descendant" + i);
+            serverDescendant.setParentId("root");
+            serverDescendant.setTraceId("root");
+            spans.add(serverDescendant);
+        }
+
+        storeAndWait(null, spans, SpanUniqueIdGenerator::toUnique);
+
+        Trace trace = spanService.getTrace(null, "root");
+        Assert.assertEquals("root", trace.getFragmentId());
+        Assert.assertEquals(1, trace.getNodes().size());
+
+        InteractionNode rootConsumerNode = ((InteractionNode) trace.getNodes().get(0));
+        Assert.assertThat(rootConsumerNode, instanceOf(Consumer.class));
+        Assert.assertEquals(numDescendants, rootConsumerNode.getNodes().size());
+        Assert.assertEquals(numDescendants, extractCorrelationIds(rootConsumerNode.getNodes()).size());
+
+        for (Node node : rootConsumerNode.getNodes()) {
+            Assert.assertThat(node, instanceOf(Producer.class));
+            Assert.assertEquals(1, ((InteractionNode) node).getNodes().size());
+
+            InteractionNode consumerNode = (InteractionNode) ((InteractionNode) node).getNodes().get(0);
+            Assert.assertThat(consumerNode, instanceOf(Consumer.class));
+            Assert.assertEquals(node.getCorrelationIds(), consumerNode.getCorrelationIds());
+        }
+    }
+
     private Set<String> extractCorrelationIds(List<Node> nodes) {
         return new HashSet<>(nodes.stream()
                 .filter(node -> node.getType() != NodeType.Component)
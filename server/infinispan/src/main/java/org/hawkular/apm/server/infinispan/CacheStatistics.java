@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.infinispan;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * This class represents the statistics for a tenant's partition of a cache.
+ *
+ * @author gbrown
+ */
+public class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int entries;
+
+    /**
+     * This constructor initialises the statistics.
+     *
+     * @param hits The number of successful retrievals
+     * @param misses The number of unsuccessful retrievals
+     * @param evictions The number of entries evicted
+     * @param entries The current number of entries
+     */
+    @ConstructorProperties({ "hits", "misses", "evictions", "entries" })
+    public CacheStatistics(long hits, long misses, long evictions, int entries) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = entries;
+    }
+
+    /**
+     * @return The number of successful retrievals
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of unsuccessful retrievals
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of entries evicted
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The current number of entries
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics [hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", entries=" + entries + "]";
+    }
+
+}
@@ -35,10 +35,19 @@ public class InfinispanCacheManager {
      * @return The default cache
      */
     public static synchronized <K, V> Cache<K, V> getDefaultCache(String cacheName) {
+        return getDefaultCacheManager().getCache(cacheName);
+    }
+
+    /**
+     * This method returns the default cache manager.
+     *
+     * @return The default cache manager
+     */
+    public static synchronized DefaultCacheManager getDefaultCacheManager() {
         if (defaultCacheManager == null) {
             defaultCacheManager = new DefaultCacheManager();
         }
-        return defaultCacheManager.getCache(cacheName);
+        return defaultCacheManager;
     }
 
 }
@@ -18,6 +18,7 @@ package org.hawkular.apm.server.infinispan;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -36,6 +37,7 @@ import org.infinispan.manager.CacheContainer;
 
 /**
  * This class provides the infinispan based implementation of the communication details cache.
+ * The cache is partitioned by tenant.
  *
  * @author gbrown
  */
@@ -51,9 +53,9 @@ public class InfinispanCommunicationDetailsCache implements CommunicationDetails
     @Resource(lookup = "java:jboss/infinispan/APM")
     private CacheContainer cacheContainer;
 
-    private Cache<String, CommunicationDetails> communicationDetails;
+    private TenantCache<String, CommunicationDetails> communicationDetails;
 
-    private Cache<String, List<CommunicationDetails>> communicationDetailsMultiConsumers;
+    private TenantCache<String, List<CommunicationDetails>> communicationDetailsMultiConsumers;
 
     public InfinispanCommunicationDetailsCache() {}
 
@@ -69,25 +71,37 @@ public class InfinispanCommunicationDetailsCache implements CommunicationDetails
         }
 
         // If cache container not already provisions, then must be running outside of a JEE
-        // environment, so create a default cache container
-        if (cacheContainer == null) {
-            if (log.isLoggable(Level.FINER)) {
-                log.fine("Using default cache");
-            }
-            communicationDetails = InfinispanCacheManager.getDefaultCache(CACHE_NAME);
-            communicationDetailsMultiConsumers = InfinispanCacheManager.getDefaultCache(MULTI_CONSUMER_CACHE_NAME);
-        } else {
-            if (log.isLoggable(Level.FINER)) {
-                log.fine("Using container provided cache");
-            }
-            communicationDetails = cacheContainer.getCache(CACHE_NAME);
-            communicationDetailsMultiConsumers = cacheContainer.getCache(MULTI_CONSUMER_CACHE_NAME);
+        // environment, so the default cache manager will be used
+        if (log.isLoggable(Level.FINER)) {
+            log.fine(cacheContainer == null ? "Using default cache" : "Using container provided cache");
         }
+        communicationDetails = new TenantCache<>(cacheContainer, CACHE_NAME);
+        communicationDetailsMultiConsumers = new TenantCache<>(cacheContainer, MULTI_CONSUMER_CACHE_NAME);
+    }
+
+    /**
+     * This method returns the statistics for each tenant's partition of the single
+     * consumer cache.
+     *
+     * @return The statistics, keyed by tenant id
+     */
+    public Map<String, CacheStatistics> getStatistics() {
+        return communicationDetails.getStatistics();
+    }
+
+    /**
+     * This method returns the statistics for each tenant's partition of the multiple
+     * consumer cache.
+     *
+     * @return The statistics, keyed by tenant id
+     */
+    public Map<String, CacheStatistics> getMultiConsumerStatistics() {
+        return communicationDetailsMultiConsumers.getStatistics();
     }
 
     @Override
     public CommunicationDetails get(String tenantId, String id) {
-        CommunicationDetails ret = communicationDetails.get(id);
+        CommunicationDetails ret = communicationDetails.get(tenantId).get(id);
 
         if (log.isLoggable(Level.FINEST)) {
             log.finest("Get communication details [id="+id+"] = "+ret);
@@ -98,9 +112,12 @@ public class InfinispanCommunicationDetailsCache implements CommunicationDetails
 
     @Override
     public void store(String tenantId, List<CommunicationDetails> details) throws CacheException {
+        Cache<String, CommunicationDetails> singleConsumer = communicationDetails.get(tenantId);
+        Cache<String, List<CommunicationDetails>> multiConsumers = communicationDetailsMultiConsumers.get(tenantId);
+
         if (cacheContainer != null) {
-            communicationDetails.startBatch();
-            communicationDetailsMultiConsumers.startBatch();
+            singleConsumer.startBatch();
+            multiConsumers.startBatch();
         }
 
         for (int i = 0; i < details.size(); i++) {
@@ -119,8 +136,8 @@ public class InfinispanCommunicationDetailsCache implements CommunicationDetails
             // created after the long wait anyway.
 
             if (cd.isMultiConsumer()) {
-                synchronized (communicationDetailsMultiConsumers) {
-                    List<CommunicationDetails> list = communicationDetailsMultiConsumers.get(cd.getLinkId());
+                synchronized (multiConsumers) {
+                    List<CommunicationDetails> list = multiConsumers.get(cd.getLinkId());
                     if (list == null) {
                         list = new CopyOnWriteArrayList<>();
                     }
@@ -131,16 +148,16 @@ public class InfinispanCommunicationDetailsCache implements CommunicationDetails
                                 +cd.getLinkId()+"]: "+list);
                     }
 
-                    communicationDetailsMultiConsumers.put(cd.getLinkId(), list, 1, TimeUnit.MINUTES);
+                    multiConsumers.put(cd.getLinkId(), list, 1, TimeUnit.MINUTES);
                 }
             } else {
-                communicationDetails.put(cd.getLinkId(), cd, 1, TimeUnit.MINUTES);
+                singleConsumer.put(cd.getLinkId(), cd, 1, TimeUnit.MINUTES);
             }
         }
 
         if (cacheContainer != null) {
-            communicationDetails.endBatch(true);
-            communicationDetailsMultiConsumers.endBatch(true);
+            singleConsumer.endBatch(true);
+            multiConsumers.endBatch(true);
         }
     }
 
@@ -150,7 +167,8 @@ public class InfinispanCommunicationDetailsCache implements CommunicationDetails
             throw new NullPointerException("Id should not be null!");
         }
 
-        return communicationDetailsMultiConsumers.containsKey(id) ? communicationDetailsMultiConsumers.get(id)
-                : Collections.emptyList();
+        List<CommunicationDetails> ret = communicationDetailsMultiConsumers.get(tenantId).get(id);
+
+        return ret == null ? Collections.emptyList() : ret;
     }
 }
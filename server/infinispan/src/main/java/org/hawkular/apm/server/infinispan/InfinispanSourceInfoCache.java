@@ -17,6 +17,7 @@
 package org.hawkular.apm.server.infinispan;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -32,7 +33,8 @@ import org.infinispan.Cache;
 import org.infinispan.manager.CacheContainer;
 
 /**
- * This class provides the infinispan based implementation of the source info cache.
+ * This class provides the infinispan based implementation of the source info cache. The
+ * cache is partitioned by tenant.
  *
  * @author gbrown
  */
@@ -46,7 +48,7 @@ public class InfinispanSourceInfoCache implements SourceInfoCache, ServiceLifecy
     @Resource(lookup = "java:jboss/infinispan/APM")
     private CacheContainer cacheContainer;
 
-    private Cache<String, SourceInfo> sourceInfo;
+    private TenantCache<String, SourceInfo> sourceInfo;
 
     public InfinispanSourceInfoCache() {}
 
@@ -58,23 +60,25 @@ public class InfinispanSourceInfoCache implements SourceInfoCache, ServiceLifecy
     @PostConstruct
     public void init() {
         // If cache container not already provisions, then must be running outside of a JEE
-        // environment, so create a default cache container
-        if (cacheContainer == null) {
-            if (log.isLoggable(Level.FINER)) {
-                log.fine("Using default cache");
-            }
-            sourceInfo = InfinispanCacheManager.getDefaultCache(CACHE_NAME);
-        } else {
-            if (log.isLoggable(Level.FINER)) {
-                log.fine("Using container provided cache");
-            }
-            sourceInfo = cacheContainer.getCache(CACHE_NAME);
+        // environment, so the default cache manager will be used
+        if (log.isLoggable(Level.FINER)) {
+            log.fine(cacheContainer == null ? "Using default cache" : "Using container provided cache");
         }
+        sourceInfo = new TenantCache<>(cacheContainer, CACHE_NAME);
+    }
+
+    /**
+     * This method returns the statistics for each tenant's partition of the cache.
+     *
+     * @return The statistics, keyed by tenant id
+     */
+    public Map<String, CacheStatistics> getStatistics() {
+        return sourceInfo.getStatistics();
     }
 
     @Override
     public SourceInfo get(String tenantId, String id) {
-        SourceInfo ret = sourceInfo.get(id);
+        SourceInfo ret = sourceInfo.get(tenantId).get(id);
 
         if (log.isLoggable(Level.FINEST)) {
             log.finest("Get source info [id="+id+"] = "+ret);
@@ -85,8 +89,10 @@ public class InfinispanSourceInfoCache implements SourceInfoCache, ServiceLifecy
 
     @Override
     public void store(String tenantId, List<SourceInfo> sourceInfoList) {
+        Cache<String, SourceInfo> cache = sourceInfo.get(tenantId);
+
         if (cacheContainer != null) {
-            sourceInfo.startBatch();
+            cache.startBatch();
         }
 
         for (int i = 0; i < sourceInfoList.size(); i++) {
@@ -96,11 +102,11 @@ public class InfinispanSourceInfoCache implements SourceInfoCache, ServiceLifecy
                 log.finest("Store source info [id="+si.getId()+"]: "+si);
             }
 
-            sourceInfo.put(si.getId(), si, 1, TimeUnit.MINUTES);
+            cache.put(si.getId(), si, 1, TimeUnit.MINUTES);
         }
 
         if (cacheContainer != null) {
-            sourceInfo.endBatch(true);
+            cache.endBatch(true);
         }
     }
 
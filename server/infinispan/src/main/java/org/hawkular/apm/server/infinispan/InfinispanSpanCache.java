@@ -17,10 +17,14 @@
 
 package org.hawkular.apm.server.infinispan;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -35,9 +39,15 @@ import org.hawkular.apm.server.api.services.SpanCache;
 import org.hawkular.apm.server.api.utils.zipkin.SpanUniqueIdGenerator;
 import org.infinispan.Cache;
 import org.infinispan.manager.CacheContainer;
+import org.infinispan.transaction.LockingMode;
 import org.jboss.logging.Logger;
 
 /**
+ * This class provides the infinispan based span cache. The trace and children caches
+ * index the cache keys of the spans, rather than holding copies of the spans, and are
+ * updated atomically per key, so spans can be stored concurrently without a global lock.
+ * The caches are partitioned by tenant.
+ *
  * @author Pavol Loffay
  */
 @Singleton
@@ -52,13 +62,16 @@ public class InfinispanSpanCache implements SpanCache, ServiceLifecycle {
     @Resource(lookup = "java:jboss/infinispan/APM")
     private CacheContainer cacheContainer;
 
-    private Cache<String, Span> spansCache;
+    private TenantCache<String, Span> spansCache;
     /**
-     * key is trace and value set of spans which belongs to supplied trace
+     * key is trace and value set of span cache keys which belongs to supplied trace
      */
-    private Cache<String, Set<Span>> traceCache;
+    private TenantCache<String, Set<String>> traceCache;
 
-    private Cache<String, Set<Span>> childrenCache;
+    /**
+     * key is parent span id and value set of cache keys of its (non server) child spans
+     */
+    private TenantCache<String, Set<String>> childrenCache;
 
     public InfinispanSpanCache() {}
 
@@ -74,9 +87,21 @@ public class InfinispanSpanCache implements SpanCache, ServiceLifecycle {
             return;
         }
 
-        spansCache = createCache(SPAN_CACHE);
-        childrenCache = createCache(CHILDREN_CACHE);
-        traceCache = createCache(TRACE_CACHE);
+        log.debugf("Using %s cache manager", cacheContainer == null ? "default" : "container");
+
+        spansCache = new TenantCache<>(cacheContainer, SPAN_CACHE);
+        // Index updates must see each other's uncommitted sets, so lock them pessimistically
+        childrenCache = new TenantCache<>(cacheContainer, CHILDREN_CACHE, LockingMode.PESSIMISTIC);
+        traceCache = new TenantCache<>(cacheContainer, TRACE_CACHE, LockingMode.PESSIMISTIC);
+    }
+
+    /**
+     * This method returns the statistics for each tenant's partition of the span cache.
+     *
+     * @return The statistics, keyed by tenant id
+     */
+    public Map<String, CacheStatistics> getStatistics() {
+        return spansCache.getStatistics();
     }
 
     /**
@@ -84,7 +109,7 @@ public class InfinispanSpanCache implements SpanCache, ServiceLifecycle {
      */
     @Override
     public Span get(String tenantId, String id) {
-        Span span = spansCache.get(id);
+        Span span = spansCache.get(tenantId).get(id);
         log.debugf("Get span [id=%s] = %s", id, span);
         return span;
     }
@@ -98,39 +123,38 @@ public class InfinispanSpanCache implements SpanCache, ServiceLifecycle {
     public void store(String tenantId, List<Span> spans, Function<Span, String> cacheKeyEntrySupplier)
             throws CacheException {
 
+        Cache<String, Span> spansCache = this.spansCache.get(tenantId);
+        Cache<String, Set<String>> traceCache = this.traceCache.get(tenantId);
+        Cache<String, Set<String>> childrenCache = this.childrenCache.get(tenantId);
+
         if (cacheContainer != null) {
             spansCache.startBatch();
             childrenCache.startBatch();
             traceCache.startBatch();
         }
 
+        // Index updates are applied in key order, so concurrent batches lock the keys in the same order
+        Map<String, List<String>> traceKeys = new TreeMap<>();
+        Map<String, List<String>> childrenKeys = new TreeMap<>();
+
         for (Span span : spans) {
-            log.debugf("Store span [%s]" + span);
+            log.debugf("Store span [%s]", span);
 
-            spansCache.put(cacheKeyEntrySupplier.apply(span), span, 1, TimeUnit.MINUTES);
+            String key = cacheKeyEntrySupplier.apply(span);
+            spansCache.put(key, span, 1, TimeUnit.MINUTES);
 
             if (span.getTraceId() != null) {
-                synchronized (traceCache) {
-                    Set<Span> trace = traceCache.get(span.getTraceId());
-                    if (trace == null) {
-                        trace = new CopyOnWriteArraySet<>();
-                    }
-                    trace.add(span);
-                    traceCache.put(span.getTraceId(), trace);
-                }
+                traceKeys.computeIfAbsent(span.getTraceId(), id -> new ArrayList<>()).add(key);
             }
             if (span.getParentId() != null && !span.serverSpan()) {
-                synchronized (childrenCache) {
-                    Set<Span> children = childrenCache.get(span.getParentId());
-                    if (children == null) {
-                        children = new CopyOnWriteArraySet<>();
-                    }
-                    children.add(span);
-                    childrenCache.put(span.getParentId(), children);
-                }
+                childrenKeys.computeIfAbsent(span.getParentId(), id -> new ArrayList<>()).add(key);
             }
         }
 
+        traceKeys.forEach((traceId, added) -> traceCache.compute(traceId, (id, keys) -> addKeys(keys, added)));
+        childrenKeys.forEach((parentId, added) -> childrenCache.compute(parentId,
+                (id, keys) -> addKeys(keys, added)));
+
         if (cacheContainer != null) {
             spansCache.endBatch(true);
             childrenCache.endBatch(true);
@@ -148,9 +172,7 @@ public class InfinispanSpanCache implements SpanCache, ServiceLifecycle {
             throw new NullPointerException("Id should not be null!");
         }
 
-        Set<Span> children = childrenCache.get(id);
-
-        return children == null ? null : Collections.unmodifiableSet(children);
+        return resolve(tenant, childrenCache.get(tenant).get(id));
     }
 
     @Override
@@ -159,18 +181,46 @@ public class InfinispanSpanCache implements SpanCache, ServiceLifecycle {
             throw new NullPointerException("Id should not be null!");
         }
 
-        Set<Span> trace = traceCache.get(id);
-
-        return trace == null ? null : Collections.unmodifiableSet(trace);
+        return resolve(tenant, traceCache.get(tenant).get(id));
     }
 
-    private <K, V> Cache<K, V> createCache(String name) {
-        Function<String, Cache<K, V>> creator = cacheContainer == null ?
-                InfinispanCacheManager::getDefaultCache :
-                cacheContainer::getCache;
-
-        log.debugf("Using %s cache manager, for %s cache", cacheContainer == null ? "default" : "container", name);
+    /**
+     * This method adds the spans' cache keys to the set of keys in an index. The
+     * set is updated in place, so adding spans does not copy the existing keys.
+     *
+     * @param keys The current keys, or null
+     * @param added The spans' cache keys
+     * @return The keys
+     */
+    private static Set<String> addKeys(Set<String> keys, List<String> added) {
+        if (keys == null) {
+            keys = ConcurrentHashMap.newKeySet();
+        }
+        keys.addAll(added);
+        return keys;
+    }
 
-        return creator.apply(name);
+    /**
+     * This method resolves the spans associated with the supplied cache keys. Spans
+     * that have expired from the span cache are ignored.
+     *
+     * @param tenantId The tenant id
+     * @param keys The span cache keys, or null
+     * @return The spans, or null if no keys
+     */
+    private Set<Span> resolve(String tenantId, Set<String> keys) {
+        if (keys == null) {
+            return null;
+        }
+        Cache<String, Span> spansCache = this.spansCache.get(tenantId);
+        Set<Span> spans = new HashSet<>(keys.size() * 2);
+        for (String key : keys) {
+            Span span = spansCache.get(key);
+            if (span != null) {
+                spans.add(span);
+            }
+        }
+        return Collections.unmodifiableSet(spans);
     }
+
 }
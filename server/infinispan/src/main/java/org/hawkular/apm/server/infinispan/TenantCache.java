@@ -0,0 +1,371 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.infinispan;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.eviction.EvictionType;
+import org.infinispan.manager.CacheContainer;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.stats.Stats;
+import org.infinispan.transaction.LockingMode;
+
+/**
+ * This class manages a cache that is partitioned by tenant, so that the entries of one
+ * tenant cannot evict those of another. Each partition is a separate infinispan cache,
+ * bounded by a maximum number of entries and with statistics enabled.
+ *
+ * If a configuration has already been defined for a partition's cache name (i.e.
+ * the cache name, followed by a '/' and the tenant id), then it will be used as is.
+ *
+ * A partition that has not been accessed for the idle timeout is removed, along with
+ * its entries. The statistics for each partition are available via JMX, using the
+ * object name 'org.hawkular.apm:type=TenantCache,name=&lt;cache name&gt;'.
+ *
+ * @author gbrown
+ */
+public class TenantCache<K, V> implements TenantCacheMXBean {
+
+    private static final Logger log = Logger.getLogger(TenantCache.class.getName());
+
+    /** The default maximum number of entries in each tenant's partition */
+    private static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final String DEFAULT_EVICTION = EvictionStrategy.LIRS.name();
+
+    /** The default time (in milliseconds) after which an unused partition is removed */
+    private static final int DEFAULT_IDLE_TIMEOUT = 3600000;
+
+    /** The maximum interval (in milliseconds) between checks for idle partitions */
+    private static final long MAX_IDLE_CHECK_INTERVAL = 60000;
+
+    private final CacheContainer cacheContainer;
+
+    private final String name;
+
+    private final int maxEntries;
+
+    private final EvictionStrategy eviction;
+
+    private final LockingMode lockingMode;
+
+    private final long idleTimeout = PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_CACHE_IDLETIMEOUT,
+            DEFAULT_IDLE_TIMEOUT);
+
+    private final Map<String, Partition<K, V>> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextIdleCheck = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * This constructor initialises the tenant cache.
+     *
+     * @param cacheContainer The cache container, or null to use the default cache manager
+     * @param name The cache name
+     */
+    public TenantCache(CacheContainer cacheContainer, String name) {
+        this(cacheContainer, name, (LockingMode) null);
+    }
+
+    /**
+     * This constructor initialises the tenant cache.
+     *
+     * @param cacheContainer The cache container, or null to use the default cache manager
+     * @param name The cache name
+     * @param lockingMode The locking mode to use if the partitions are transactional, or null
+     *                  to use the configured mode
+     */
+    public TenantCache(CacheContainer cacheContainer, String name, LockingMode lockingMode) {
+        this(cacheContainer, name, PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_CACHE_MAXENTRIES + ":"
+                + name, PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_CACHE_MAXENTRIES,
+                        DEFAULT_MAX_ENTRIES)), lockingMode);
+    }
+
+    /**
+     * This constructor initialises the tenant cache.
+     *
+     * @param cacheContainer The cache container, or null to use the default cache manager
+     * @param name The cache name
+     * @param maxEntries The maximum number of entries in each tenant's partition, or zero if unbounded
+     */
+    public TenantCache(CacheContainer cacheContainer, String name, int maxEntries) {
+        this(cacheContainer, name, maxEntries, null);
+    }
+
+    /**
+     * This constructor initialises the tenant cache.
+     *
+     * @param cacheContainer The cache container, or null to use the default cache manager
+     * @param name The cache name
+     * @param maxEntries The maximum number of entries in each tenant's partition, or zero if unbounded
+     * @param lockingMode The locking mode to use if the partitions are transactional, or null
+     *                  to use the configured mode
+     */
+    public TenantCache(CacheContainer cacheContainer, String name, int maxEntries, LockingMode lockingMode) {
+        this.cacheContainer = cacheContainer;
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.lockingMode = lockingMode;
+        this.eviction = EvictionStrategy.valueOf(PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_CACHE_EVICTION,
+                DEFAULT_EVICTION).toUpperCase());
+
+        registerMBean();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * This method returns the partition of the cache associated with the tenant.
+     *
+     * @param tenantId The tenant id, or null
+     * @return The cache
+     */
+    public Cache<K, V> get(String tenantId) {
+        return get(tenantId, System.currentTimeMillis());
+    }
+
+    /**
+     * This method returns the partition of the cache associated with the tenant,
+     * recording that it has been accessed at the supplied time.
+     *
+     * @param tenantId The tenant id, or null
+     * @param now The current time (in milliseconds)
+     * @return The cache
+     */
+    protected Cache<K, V> get(String tenantId, long now) {
+        removeIdlePartitions(now);
+
+        String key = tenantId == null ? "" : tenantId;
+        Partition<K, V> partition = partitions.get(key);
+        while (partition == null || !partition.touch(now)) {
+            // Not yet created, or being removed, so wait until it has been (re)created
+            partition = partitions.compute(key, (k, p) -> p == null || p.isRemoved() ? createPartition(k) : p);
+        }
+        return partition.cache;
+    }
+
+    /**
+     * This method returns the statistics for each tenant's partition of the cache.
+     *
+     * @return The statistics, keyed by tenant id (empty string if no tenant)
+     */
+    @Override
+    public Map<String, CacheStatistics> getStatistics() {
+        Map<String, CacheStatistics> ret = new HashMap<>();
+        partitions.forEach((tenantId, partition) -> {
+            Stats stats = partition.cache.getAdvancedCache().getStats();
+            ret.put(tenantId, new CacheStatistics(stats.getHits(), stats.getMisses(),
+                    partition.evictions.count.sum(), stats.getCurrentNumberOfEntries()));
+        });
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * This method removes the partitions that have not been accessed within the idle
+     * timeout. The check is only performed periodically, by a single thread.
+     *
+     * @param now The current time (in milliseconds)
+     */
+    protected void removeIdlePartitions(long now) {
+        long next = nextIdleCheck.get();
+        if (now < next || !nextIdleCheck.compareAndSet(next, now + Math.min(idleTimeout, MAX_IDLE_CHECK_INTERVAL))) {
+            return;
+        }
+        partitions.forEach((tenantId, partition) -> {
+            long accessed = partition.lastAccessed.get();
+            if (accessed != Partition.REMOVED && now - accessed > idleTimeout) {
+                removePartition(tenantId, accessed);
+            }
+        });
+    }
+
+    /**
+     * This method removes the tenant's partition, if it has not been accessed since
+     * the supplied time. The partition is marked as removed, and its cache stopped,
+     * while holding the partition's entry in the map, so that a concurrent access
+     * either prevents the removal or waits for a new partition to be created.
+     *
+     * @param tenantId The tenant id (empty string if no tenant)
+     * @param accessed The time the partition was last accessed, when found to be idle
+     * @return Whether the partition was removed
+     */
+    boolean removePartition(String tenantId, long accessed) {
+        boolean[] removed = new boolean[1];
+        partitions.computeIfPresent(tenantId, (k, partition) -> {
+            if (!partition.lastAccessed.compareAndSet(accessed, Partition.REMOVED)) {
+                // Accessed since the idle check
+                return partition;
+            }
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("Removing idle partition for tenant '" + tenantId + "' of cache " + name);
+            }
+            EmbeddedCacheManager manager = getCacheManager();
+            if (manager == null) {
+                partition.cache.stop();
+            } else {
+                manager.removeCache(partition.cache.getName());
+            }
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    private EmbeddedCacheManager getCacheManager() {
+        return cacheContainer == null ? InfinispanCacheManager.getDefaultCacheManager()
+                : (cacheContainer instanceof EmbeddedCacheManager ? (EmbeddedCacheManager) cacheContainer : null);
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.hawkular.apm:type=TenantCache,name="
+                    + ObjectName.quote(name));
+            // Replace the cache registered by a previous deployment
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Failed to register statistics for cache " + name, e);
+        }
+    }
+
+    private Partition<K, V> createPartition(String tenantId) {
+        String cacheName = name + "/" + tenantId;
+        EmbeddedCacheManager manager = getCacheManager();
+
+        if (manager == null) {
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("Unable to define configuration for cache " + cacheName);
+            }
+            return new Partition<>(cacheContainer.getCache(cacheName));
+        }
+
+        if (manager.getCacheConfiguration(cacheName) == null) {
+            Configuration base = manager.getCacheConfiguration(name);
+            if (base == null) {
+                base = manager.getDefaultCacheConfiguration();
+            }
+            ConfigurationBuilder builder = new ConfigurationBuilder().read(base);
+            if (maxEntries > 0) {
+                builder.eviction().strategy(eviction).type(EvictionType.COUNT).size(maxEntries);
+            }
+            if (lockingMode != null && (base.transaction().transactionMode().isTransactional()
+                    || base.invocationBatching().enabled())) {
+                builder.transaction().lockingMode(lockingMode);
+            }
+            builder.jmxStatistics().enable();
+
+            manager.defineConfiguration(cacheName, builder.build());
+
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("Defined configuration for cache " + cacheName + " maxEntries=" + maxEntries
+                        + " eviction=" + eviction);
+            }
+        }
+
+        return new Partition<>(manager.getCache(cacheName));
+    }
+
+    /**
+     * This class represents a tenant's partition of the cache.
+     */
+    private static class Partition<K, V> {
+
+        /** The last accessed time of a partition that has been removed */
+        private static final long REMOVED = Long.MIN_VALUE;
+
+        private final Cache<K, V> cache;
+        private final EvictionCounter evictions = new EvictionCounter();
+        private final AtomicLong lastAccessed = new AtomicLong(System.currentTimeMillis());
+
+        Partition(Cache<K, V> cache) {
+            this.cache = cache;
+
+            // Infinispan does not include entries evicted due to the size bound in its statistics
+            cache.addListener(evictions);
+        }
+
+        /**
+         * This method records an access to the partition, unless it has been removed.
+         *
+         * @param now The current time (in milliseconds)
+         * @return Whether the partition can be used
+         */
+        boolean touch(long now) {
+            long accessed;
+            do {
+                accessed = lastAccessed.get();
+                if (accessed == REMOVED) {
+                    return false;
+                }
+            } while (!lastAccessed.compareAndSet(accessed, Math.max(accessed, now)));
+            return true;
+        }
+
+        boolean isRemoved() {
+            return lastAccessed.get() == REMOVED;
+        }
+    }
+
+    /**
+     * This class counts the entries evicted from a cache.
+     */
+    @Listener
+    public static class EvictionCounter {
+
+        private final LongAdder count = new LongAdder();
+
+        @CacheEntriesEvicted
+        public void evicted(CacheEntriesEvictedEvent<?, ?> event) {
+            count.add(event.getEntries().size());
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.infinispan;
+
+import java.util.Map;
+
+/**
+ * This interface exposes the statistics of a tenant partitioned cache via JMX.
+ *
+ * @author gbrown
+ */
+public interface TenantCacheMXBean {
+
+    /**
+     * @return The cache name
+     */
+    String getName();
+
+    /**
+     * @return The maximum number of entries in each tenant's partition
+     */
+    int getMaxEntries();
+
+    /**
+     * @return The number of tenant partitions
+     */
+    int getPartitionCount();
+
+    /**
+     * @return The statistics, keyed by tenant id (empty string if no tenant)
+     */
+    Map<String, CacheStatistics> getStatistics();
+
+}
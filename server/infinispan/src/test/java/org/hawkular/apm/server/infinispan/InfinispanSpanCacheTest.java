@@ -17,10 +17,14 @@
 
 package org.hawkular.apm.server.infinispan;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.hawkular.apm.server.api.model.zipkin.Annotation;
 import org.hawkular.apm.server.api.model.zipkin.Span;
@@ -126,6 +130,35 @@ public class InfinispanSpanCacheTest extends AbstractInfinispanTest {
                 new HashSet<>(spanCache.getTrace(null, "trace")));
     }
 
+    @Test
+    public void testStoreConcurrently() throws Exception {
+        int numThreads = 4;
+        int perThread = 250;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final int base = i * perThread;
+            results.add(executor.submit(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    Span span = new Span(null, clientAnnotations());
+                    span.setId("span" + (base + j));
+                    span.setTraceId("trace");
+                    span.setParentId("trace");
+                    storeOne(spanCache, span);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(numThreads * perThread, spanCache.getTrace(null, "trace").size());
+        Assert.assertEquals(numThreads * perThread, spanCache.getChildren(null, "trace").size());
+    }
+
     @Test
     public void testGetTraceEmpty() {
         Assert.assertNull(spanCache.getTrace(null, "id"));
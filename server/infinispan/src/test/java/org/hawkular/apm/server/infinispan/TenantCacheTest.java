@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.infinispan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.infinispan.Cache;
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class TenantCacheTest extends AbstractInfinispanTest {
+
+    @Test
+    public void testPartitionedByTenant() {
+        TenantCache<String, String> cache = new TenantCache<>(cacheManager, "test");
+
+        cache.get("tenant1").put("id", "value1");
+        cache.get("tenant2").put("id", "value2");
+
+        assertEquals("value1", cache.get("tenant1").get("id"));
+        assertEquals("value2", cache.get("tenant2").get("id"));
+        assertNull(cache.get(null).get("id"));
+    }
+
+    @Test
+    public void testBoundedPerTenant() {
+        TenantCache<String, String> cache = new TenantCache<>(cacheManager, "bounded", 10);
+
+        Cache<String, String> noisy = cache.get("noisy");
+        for (int i = 0; i < 100; i++) {
+            noisy.put("id" + i, "value");
+        }
+        cache.get("quiet").put("id", "value");
+
+        assertTrue(noisy.size() <= 10);
+        assertEquals("value", cache.get("quiet").get("id"));
+    }
+
+    @Test
+    public void testStatistics() {
+        TenantCache<String, String> cache = new TenantCache<>(cacheManager, "stats", 10);
+
+        Cache<String, String> partition = cache.get("tenant1");
+        for (int i = 0; i < 20; i++) {
+            partition.put("id" + i, "value");
+        }
+        partition.get("id19");
+        partition.get("unknown");
+
+        CacheStatistics stats = cache.getStatistics().get("tenant1");
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertTrue(stats.getEvictions() > 0);
+        assertTrue(stats.getEntries() <= 10);
+    }
+
+    @Test
+    public void testStatisticsViaJMX() throws Exception {
+        TenantCache<String, String> cache = new TenantCache<>(cacheManager, "jmx", 10);
+
+        cache.get("tenant1").put("id", "value");
+        cache.get("tenant1").get("id");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.hawkular.apm:type=TenantCache,name=" + ObjectName.quote("jmx"));
+
+        assertEquals(1, server.getAttribute(objectName, "PartitionCount"));
+
+        TabularData statistics = (TabularData) server.getAttribute(objectName, "Statistics");
+        CompositeData tenant1 = (CompositeData) statistics.get(new Object[] { "tenant1" }).get("value");
+        assertEquals(1L, tenant1.get("hits"));
+        assertEquals(1, tenant1.get("entries"));
+    }
+
+    @Test
+    public void testIdlePartitionsRemoved() {
+        TenantCache<String, String> cache = new TenantCache<>(cacheManager, "idle", 10);
+
+        cache.get("tenant1").put("id", "value1");
+        cache.get("tenant2").put("id", "value2");
+        assertEquals(2, cache.getPartitionCount());
+
+        long now = System.currentTimeMillis();
+        cache.removeIdlePartitions(now + 1800000);
+        assertEquals(2, cache.getPartitionCount());
+
+        cache.removeIdlePartitions(now + 3600001);
+        assertEquals(0, cache.getPartitionCount());
+
+        // Partition recreated on next use, without the entries
+        assertNull(cache.get("tenant1").get("id"));
+        assertEquals(1, cache.getPartitionCount());
+    }
+
+    @Test
+    public void testPartitionAccessedAfterIdleCheckNotRemoved() {
+        TenantCache<String, String> cache = new TenantCache<>(cacheManager, "inuse", 10);
+
+        long now = System.currentTimeMillis();
+        cache.get("tenant1", now).put("id", "value1");
+
+        // Idle check observed the first access, but the partition is used again before removal
+        Cache<String, String> partition = cache.get("tenant1", now + 1000);
+        assertFalse(cache.removePartition("tenant1", now));
+        assertEquals("value1", partition.get("id"));
+        assertEquals(1, cache.getPartitionCount());
+
+        assertTrue(cache.removePartition("tenant1", now + 1000));
+        assertEquals(0, cache.getPartitionCount());
+
+        // Partition recreated on next use, without the entries
+        assertNull(cache.get("tenant1").get("id"));
+        assertEquals(1, cache.getPartitionCount());
+    }
+}
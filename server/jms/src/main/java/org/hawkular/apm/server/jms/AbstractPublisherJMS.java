@@ -22,12 +22,12 @@ import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 import javax.naming.InitialContext;
 
 import org.hawkular.apm.api.services.Publisher;
@@ -50,10 +50,14 @@ public abstract class AbstractPublisherJMS<T> implements Publisher<T>, ServiceLi
 
     private static final int DEFAULT_INITIAL_RETRY_COUNT = 3;
 
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
     private final MsgLogger msgLog = MsgLogger.LOGGER;
 
     private static ObjectMapper mapper = new ObjectMapper();
 
+    private static final ThreadLocal<MessageBuffer> buffers = ThreadLocal.withInitial(MessageBuffer::new);
+
     private Connection connection;
     private Session session;
     private MessageProducer producer;
@@ -61,6 +65,9 @@ public abstract class AbstractPublisherJMS<T> implements Publisher<T>, ServiceLi
     private int initialRetryCount = PropertyUtil.getPropertyAsInteger(
             PropertyUtil.HAWKULAR_APM_PROCESSOR_MAX_RETRY_COUNT, DEFAULT_INITIAL_RETRY_COUNT);
 
+    private boolean smile = JMSUtil.SMILE_FORMAT.equalsIgnoreCase(
+            PropertyUtil.getProperty(PropertyUtil.HAWKULAR_APM_JMS_FORMAT));
+
     @Override
     public boolean isAvailable() {
         // If no publisher is defined, then this is the default implementation
@@ -104,6 +111,18 @@ public abstract class AbstractPublisherJMS<T> implements Publisher<T>, ServiceLi
         }
     }
 
+    /**
+     * This method initialises the publisher with an existing session and producer,
+     * rather than looking up the connection factory and destination.
+     *
+     * @param session The session
+     * @param producer The producer
+     */
+    void init(Session session, MessageProducer producer) {
+        this.session = session;
+        this.producer = producer;
+    }
+
     /**
      * This method publishes the supplied items.
      *
@@ -116,9 +135,20 @@ public abstract class AbstractPublisherJMS<T> implements Publisher<T>, ServiceLi
      */
     protected void doPublish(String tenantId, List<T> items, String subscriber,
             int retryCount, long delay) throws Exception {
-        String data = mapper.writeValueAsString(items);
-
-        TextMessage tm = session.createTextMessage(data);
+        // Stream the items into a reusable buffer, rather than creating an intermediate string
+        BytesMessage tm = session.createBytesMessage();
+        MessageBuffer buffer = buffers.get();
+        try {
+            if (smile) {
+                JMSUtil.getSmileMapper().writeValue(buffer, items);
+                tm.setStringProperty(JMSUtil.CONTENT_FORMAT, JMSUtil.SMILE_FORMAT);
+            } else {
+                mapper.writeValue(buffer, items);
+            }
+            tm.writeBytes(buffer.getBuffer(), 0, buffer.size());
+        } finally {
+            buffer.release(MAX_RETAINED_BUFFER_SIZE);
+        }
 
         if (tenantId != null) {
             tm.setStringProperty("tenant", tenantId);
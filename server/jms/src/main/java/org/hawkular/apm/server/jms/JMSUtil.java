@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.jms;
+
+import java.io.IOException;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * This class provides utility functions for handling JMS messages.
+ *
+ * @author gbrown
+ */
+public class JMSUtil {
+
+    /**
+     * The message property identifying the format of the message content.
+     */
+    public static final String CONTENT_FORMAT = "contentFormat";
+
+    /**
+     * The content format value for the binary Smile encoding of JSON.
+     */
+    public static final String SMILE_FORMAT = "smile";
+
+    private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES));
+
+    /**
+     * This method returns the object mapper used to serialize message content in
+     * the Smile format. Repeated field names and short string values (e.g. URIs, host names
+     * and property names) are only encoded once per message.
+     *
+     * @return The Smile object mapper
+     */
+    public static ObjectMapper getSmileMapper() {
+        return smileMapper;
+    }
+
+    /**
+     * This method deserializes the content of the supplied message, which may
+     * be a text message, or a bytes message containing JSON or Smile encoded content.
+     *
+     * @param mapper The object mapper
+     * @param message The message
+     * @param typeReference The type to deserialize
+     * @return The deserialized content
+     * @throws JMSException Failed to retrieve the message content
+     * @throws IOException Failed to deserialize the message content
+     *
+     * @param <T> The deserialized type
+     */
+    public static <T> T readValue(ObjectMapper mapper, Message message, TypeReference<T> typeReference)
+            throws JMSException, IOException {
+        if (message instanceof BytesMessage) {
+            BytesMessage bm = (BytesMessage) message;
+            byte[] data = new byte[(int) bm.getBodyLength()];
+            bm.readBytes(data);
+            if (SMILE_FORMAT.equals(message.getStringProperty(CONTENT_FORMAT))) {
+                return smileMapper.readValue(data, typeReference);
+            }
+            return mapper.readValue(data, typeReference);
+        }
+        return mapper.readValue(((TextMessage) message).getText(), typeReference);
+    }
+
+}
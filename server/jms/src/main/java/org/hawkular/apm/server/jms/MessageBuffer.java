@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.jms;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * This class provides a reusable buffer into which the content of a message can be
+ * serialized, avoiding the creation of an intermediate string for each message.
+ *
+ * @author gbrown
+ */
+class MessageBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    MessageBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * @return The underlying buffer, valid up to {@link #size()}
+     */
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * This method resets the buffer so it can be reused, releasing the underlying
+     * array if it has grown beyond the supplied maximum size.
+     *
+     * @param maxRetainedSize The maximum size of buffer to retain
+     */
+    void release(int maxRetainedSize) {
+        reset();
+        if (buf.length > maxRetainedSize) {
+            buf = new byte[INITIAL_SIZE];
+        }
+    }
+}
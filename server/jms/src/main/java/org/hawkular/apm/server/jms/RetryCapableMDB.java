@@ -22,7 +22,6 @@ import java.util.logging.Logger;
 
 import javax.jms.Message;
 import javax.jms.MessageListener;
-import javax.jms.TextMessage;
 
 import org.hawkular.apm.api.services.Publisher;
 import org.hawkular.apm.api.utils.PropertyUtil;
@@ -147,9 +146,7 @@ public abstract class RetryCapableMDB<S,T> implements MessageListener {
                 retryCount = maxRetryCount;
             }
 
-            String data = ((TextMessage) message).getText();
-
-            List<S> items = mapper.readValue(data, getTypeReference());
+            List<S> items = JMSUtil.readValue(mapper, message, getTypeReference());
 
             process(tenantId, items, retryCount);
 
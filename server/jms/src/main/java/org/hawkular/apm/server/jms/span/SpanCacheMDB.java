@@ -28,12 +28,12 @@ import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
-import javax.jms.TextMessage;
 
 import org.hawkular.apm.server.api.model.zipkin.Span;
 import org.hawkular.apm.server.api.services.CacheException;
 import org.hawkular.apm.server.api.services.SpanCache;
 import org.hawkular.apm.server.api.utils.zipkin.SpanUniqueIdGenerator;
+import org.hawkular.apm.server.jms.JMSUtil;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -73,9 +73,7 @@ public class SpanCacheMDB implements MessageListener {
         try {
             String tenantId = message.getStringProperty("tenant");
 
-            String data = ((TextMessage) message).getText();
-
-            List<Span> items = mapper.readValue(data, typeRef);
+            List<Span> items = JMSUtil.readValue(mapper, message, typeRef);
 
             spanCache.store(tenantId, items, SpanUniqueIdGenerator::toUnique);
 
@@ -27,7 +27,6 @@ import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
-import javax.jms.TextMessage;
 
 import org.hawkular.apm.api.model.events.SourceInfo;
 import org.hawkular.apm.api.model.trace.Trace;
@@ -35,6 +34,7 @@ import org.hawkular.apm.server.api.services.CacheException;
 import org.hawkular.apm.server.api.services.SourceInfoCache;
 import org.hawkular.apm.server.api.task.RetryAttemptException;
 import org.hawkular.apm.server.api.utils.SourceInfoUtil;
+import org.hawkular.apm.server.jms.JMSUtil;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -77,9 +77,7 @@ public class SourceInfoCacheMDB implements MessageListener {
         try {
             String tenantId = message.getStringProperty("tenant");
 
-            String data = ((TextMessage) message).getText();
-
-            List<Trace> items = mapper.readValue(data, typeRef);
+            List<Trace> items = JMSUtil.readValue(mapper, message, typeRef);
 
             List<SourceInfo> sourceInfoList = SourceInfoUtil.getSourceInfo(tenantId, items);
 
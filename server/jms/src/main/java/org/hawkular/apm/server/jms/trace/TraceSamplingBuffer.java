@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.jms.trace;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.services.TraceService;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.hawkular.apm.server.processor.tailsampling.TailSampler;
+
+/**
+ * This class buffers the trace fragments received by the trace store, when tail
+ * based sampling is enabled, and periodically stores the fragments of the trace
+ * instances that have been kept.
+ *
+ * The buffer is only held in memory, and the JMS messages containing the fragments
+ * have been acknowledged once buffered. When the buffer is destroyed, the pending
+ * trace instances are decided and stored, but if the server terminates abruptly,
+ * the fragments received within the sampling window (plus the one second flush
+ * interval) are lost.
+ *
+ * @author gbrown
+ */
+@Singleton
+@ConcurrencyManagement(BEAN)
+public class TraceSamplingBuffer {
+
+    private static final Logger log = Logger.getLogger(TraceSamplingBuffer.class.getName());
+
+    private static final int DEFAULT_RETRY_DELAY = 2000;
+
+    @Inject
+    private TracePublisherJMS tracePublisher;
+
+    @Inject
+    private TraceService traceService;
+
+    private final TailSampler sampler = new TailSampler();
+
+    private final long retryDelay = PropertyUtil.getPropertyAsInteger(
+            PropertyUtil.HAWKULAR_APM_PROCESSOR_RETRY_DELAY, DEFAULT_RETRY_DELAY);
+
+    /**
+     * @return Whether tail based sampling is enabled
+     */
+    public boolean isEnabled() {
+        return sampler.isEnabled();
+    }
+
+    /**
+     * This method buffers the supplied trace fragments.
+     *
+     * @param tenantId The tenant id
+     * @param fragments The trace fragments
+     * @return The fragments that should be stored immediately
+     */
+    public List<Trace> add(String tenantId, List<Trace> fragments) {
+        return sampler.add(tenantId, fragments, System.currentTimeMillis());
+    }
+
+    /**
+     * This method stores the fragments of the trace instances kept after
+     * their sampling window has elapsed.
+     */
+    @Schedule(second = "*/1", minute = "*", hour = "*", persistent = false)
+    public void flush() {
+        if (!sampler.isEnabled()) {
+            return;
+        }
+
+        store(sampler.expire(System.currentTimeMillis()));
+    }
+
+    /**
+     * This method decides and stores the trace instances that are still buffered,
+     * as the buffer is about to be discarded.
+     */
+    @PreDestroy
+    public void close() {
+        if (!sampler.isEnabled()) {
+            return;
+        }
+
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("Deciding " + sampler.getPendingCount() + " buffered traces before shutdown");
+        }
+
+        store(sampler.expireAll());
+    }
+
+    private void store(Map<String, List<Trace>> kept) {
+        for (Map.Entry<String, List<Trace>> entry : kept.entrySet()) {
+            try {
+                traceService.storeFragments(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                if (log.isLoggable(Level.FINER)) {
+                    log.log(Level.FINER, "Failed to store sampled trace fragments, so will retry", e);
+                }
+                // The decision has been recorded, so the retried fragments will be stored directly
+                try {
+                    tracePublisher.retry(entry.getKey(), entry.getValue(), TraceStoreMDB.SUBSCRIBER,
+                            tracePublisher.getInitialRetryCount(), retryDelay);
+                } catch (Exception e2) {
+                    log.log(Level.SEVERE, "Failed to retry storing " + entry.getValue().size()
+                            + " sampled trace fragments", e2);
+                }
+            }
+        }
+    }
+}
@@ -53,6 +53,9 @@ public class TraceStoreMDB extends RetryCapableMDB<Trace, Void> {
     @Inject
     private TraceService traceService;
 
+    @Inject
+    private TraceSamplingBuffer traceSampling;
+
     public static final String SUBSCRIBER = "TraceStore";
 
     public TraceStoreMDB() {
@@ -70,6 +73,14 @@ public class TraceStoreMDB extends RetryCapableMDB<Trace, Void> {
             @Override
             public List<Void> processManyToMany(String tenantId, List<Trace> items)
                     throws RetryAttemptException {
+                if (traceSampling.isEnabled()) {
+                    // Buffered fragments are only held in memory once the message is acknowledged,
+                    // see TraceSamplingBuffer
+                    items = traceSampling.add(tenantId, items);
+                    if (items.isEmpty()) {
+                        return null;
+                    }
+                }
                 try {
                     traceService.storeFragments(tenantId, items);
                 } catch (StoreException se) {
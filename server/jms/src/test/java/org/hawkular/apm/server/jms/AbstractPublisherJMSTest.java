@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.PropertyUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * @author gbrown
+ */
+public class AbstractPublisherJMSTest {
+
+    private static final TypeReference<List<Trace>> TRACE_LIST = new TypeReference<List<Trace>>() {
+    };
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<Message> sent = new ArrayList<>();
+
+    private Session session;
+
+    private MessageProducer producer;
+
+    @Before
+    public void init() throws Exception {
+        session = mock(Session.class);
+        when(session.createBytesMessage()).thenAnswer(invocation -> bytesMessage());
+
+        producer = mock(MessageProducer.class);
+        doAnswer(invocation -> sent.add((Message) invocation.getArguments()[0])).when(producer)
+                .send(any(Message.class));
+    }
+
+    @Test
+    public void testPublishReadBack() throws Exception {
+        AbstractPublisherJMS<Trace> publisher = publisher();
+
+        publisher.publish("tenant1", Arrays.asList(new Trace().setFragmentId("1"), new Trace().setFragmentId("2")));
+
+        assertEquals(1, sent.size());
+        Message message = sent.get(0);
+        assertEquals("tenant1", message.getStringProperty("tenant"));
+        assertNull(message.getStringProperty(JMSUtil.CONTENT_FORMAT));
+
+        List<Trace> traces = JMSUtil.readValue(mapper, message, TRACE_LIST);
+        assertEquals(2, traces.size());
+        assertEquals("1", traces.get(0).getFragmentId());
+        assertEquals("2", traces.get(1).getFragmentId());
+    }
+
+    @Test
+    public void testPublishLargeBatchThenSmallBatch() throws Exception {
+        AbstractPublisherJMS<Trace> publisher = publisher();
+
+        // Exceed the maximum retained buffer size, so the buffer is released after use
+        char[] padding = new char[1024];
+        Arrays.fill(padding, 'x');
+        List<Trace> large = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            large.add(new Trace().setFragmentId(i + new String(padding)));
+        }
+
+        publisher.publish(null, large);
+        publisher.publish(null, Arrays.asList(new Trace().setFragmentId("small")));
+
+        assertEquals(2, sent.size());
+        assertEquals(true, ((BytesMessage) sent.get(0)).getBodyLength() > 4 * 1024 * 1024);
+
+        List<Trace> traces = JMSUtil.readValue(mapper, sent.get(0), TRACE_LIST);
+        assertEquals(5000, traces.size());
+        assertEquals(4999 + new String(padding), traces.get(4999).getFragmentId());
+
+        traces = JMSUtil.readValue(mapper, sent.get(1), TRACE_LIST);
+        assertEquals(1, traces.size());
+        assertEquals("small", traces.get(0).getFragmentId());
+    }
+
+    @Test
+    public void testPublishSmileReadBack() throws Exception {
+        AbstractPublisherJMS<Trace> publisher = smilePublisher();
+
+        publisher.publish("tenant1", Arrays.asList(new Trace().setFragmentId("1").setTraceId("t1")));
+
+        Message message = sent.get(0);
+        assertEquals(JMSUtil.SMILE_FORMAT, message.getStringProperty(JMSUtil.CONTENT_FORMAT));
+
+        byte[] data = new byte[(int) ((BytesMessage) message).getBodyLength()];
+        ((BytesMessage) message).readBytes(data);
+        List<Trace> traces = JMSUtil.getSmileMapper().readValue(data, TRACE_LIST);
+        assertEquals("t1", traces.get(0).getTraceId());
+
+        traces = JMSUtil.readValue(mapper, message, TRACE_LIST);
+        assertEquals(1, traces.size());
+        assertEquals("1", traces.get(0).getFragmentId());
+        assertEquals("t1", traces.get(0).getTraceId());
+    }
+
+    @Test
+    public void testMixedFormats() throws Exception {
+        // A server configured to publish Smile must still consume JSON from older publishers, and vice versa
+        AbstractPublisherJMS<Trace> jsonPublisher = publisher();
+        AbstractPublisherJMS<Trace> smilePublisher = smilePublisher();
+
+        jsonPublisher.publish(null, Arrays.asList(new Trace().setFragmentId("json")));
+        smilePublisher.publish(null, Arrays.asList(new Trace().setFragmentId("smile")));
+
+        try {
+            System.setProperty(PropertyUtil.HAWKULAR_APM_JMS_FORMAT, JMSUtil.SMILE_FORMAT);
+            List<Trace> traces = JMSUtil.readValue(mapper, sent.get(0), TRACE_LIST);
+            assertEquals("json", traces.get(0).getFragmentId());
+        } finally {
+            System.clearProperty(PropertyUtil.HAWKULAR_APM_JMS_FORMAT);
+        }
+
+        List<Trace> traces = JMSUtil.readValue(mapper, sent.get(1), TRACE_LIST);
+        assertEquals("smile", traces.get(0).getFragmentId());
+    }
+
+    @Test
+    public void testReadTextMessage() throws Exception {
+        TextMessage message = mock(TextMessage.class);
+        when(message.getText()).thenReturn("[{\"fragmentId\":\"1\"}]");
+
+        List<Trace> traces = JMSUtil.readValue(mapper, message, TRACE_LIST);
+        assertEquals(1, traces.size());
+        assertEquals("1", traces.get(0).getFragmentId());
+    }
+
+    private AbstractPublisherJMS<Trace> publisher() {
+        AbstractPublisherJMS<Trace> publisher = new AbstractPublisherJMS<Trace>() {
+            @Override
+            protected String getDestinationURI() {
+                return "java:/Test";
+            }
+        };
+        publisher.init(session, producer);
+        return publisher;
+    }
+
+    private AbstractPublisherJMS<Trace> smilePublisher() {
+        try {
+            System.setProperty(PropertyUtil.HAWKULAR_APM_JMS_FORMAT, JMSUtil.SMILE_FORMAT);
+            return publisher();
+        } finally {
+            System.clearProperty(PropertyUtil.HAWKULAR_APM_JMS_FORMAT);
+        }
+    }
+
+    /**
+     * This method creates a bytes message that retains the written content and
+     * string properties, so that they can be read back.
+     *
+     * @return The bytes message
+     * @throws Exception Failed to create the message
+     */
+    static BytesMessage bytesMessage() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Map<String, String> properties = new HashMap<>();
+
+        BytesMessage message = mock(BytesMessage.class);
+        doAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            body.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+            return null;
+        }).when(message).writeBytes(any(byte[].class), anyInt(), anyInt());
+        when(message.getBodyLength()).thenAnswer(invocation -> (long) body.size());
+        when(message.readBytes(any(byte[].class))).thenAnswer(invocation -> {
+            byte[] data = body.toByteArray();
+            System.arraycopy(data, 0, invocation.getArguments()[0], 0, data.length);
+            return data.length;
+        });
+        doAnswer(invocation -> properties.put((String) invocation.getArguments()[0],
+                (String) invocation.getArguments()[1])).when(message).setStringProperty(anyString(), anyString());
+        when(message.getStringProperty(anyString())).thenAnswer(invocation ->
+                properties.get(invocation.getArguments()[0]));
+        return message;
+    }
+}
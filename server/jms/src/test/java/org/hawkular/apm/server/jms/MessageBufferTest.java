@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.jms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class MessageBufferTest {
+
+    @Test
+    public void testWriteAndReuse() {
+        MessageBuffer buffer = new MessageBuffer();
+        buffer.write(new byte[] { 1, 2, 3 }, 0, 3);
+
+        assertEquals(3, buffer.size());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOf(buffer.getBuffer(), buffer.size()));
+
+        byte[] array = buffer.getBuffer();
+        buffer.release(16 * 1024);
+
+        assertEquals(0, buffer.size());
+        assertSame(array, buffer.getBuffer());
+
+        buffer.write(new byte[] { 4 }, 0, 1);
+        assertEquals(1, buffer.size());
+        assertEquals(4, buffer.getBuffer()[0]);
+    }
+
+    @Test
+    public void testReleaseLargeBuffer() {
+        MessageBuffer buffer = new MessageBuffer();
+        byte[] content = new byte[64 * 1024];
+        buffer.write(content, 0, content.length);
+
+        byte[] array = buffer.getBuffer();
+        assertTrue(array.length >= content.length);
+
+        buffer.release(16 * 1024);
+
+        assertEquals(0, buffer.size());
+        assertNotSame(array, buffer.getBuffer());
+        assertTrue(buffer.getBuffer().length < content.length);
+    }
+}
@@ -18,7 +18,6 @@ package org.hawkular.apm.processor.alerts;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 import javax.ejb.ActivationConfigProperty;
@@ -27,9 +26,10 @@ import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
-import javax.jms.TextMessage;
 
 import org.hawkular.apm.api.model.events.NodeDetails;
+import org.hawkular.apm.api.utils.IdUtil;
+import org.hawkular.apm.server.jms.JMSUtil;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -57,8 +57,8 @@ public class InvocationAlertsPublisherMDB implements MessageListener {
     public void onMessage(Message message) {
         logger.invocationDetailsReceived();
         try {
-            String data = ((TextMessage) message).getText();
-            List<NodeDetails> items = mapper.readValue(data, new TypeReference<List<NodeDetails>>() {});
+            List<NodeDetails> items = JMSUtil.readValue(mapper, message,
+                    new TypeReference<List<NodeDetails>>() {});
 
             // The list of NodeDetails is filtered to extract the ones with the
             // 'initial' flag set. These NodeDetails represent the handling of
@@ -91,7 +91,7 @@ public class InvocationAlertsPublisherMDB implements MessageListener {
         event.setDataId("Invocation");
         event.setCategory("APM");
         event.setDataSource(nodeDetails.getHostName());
-        event.setId(UUID.randomUUID().toString());
+        event.setId(IdUtil.createId());
         event.setCtime(nodeDetails.getTimestamp());
         event.setText(Long.toString(nodeDetails.getElapsed()));
 
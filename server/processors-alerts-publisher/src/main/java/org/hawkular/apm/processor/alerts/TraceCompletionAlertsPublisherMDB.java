@@ -18,7 +18,6 @@ package org.hawkular.apm.processor.alerts;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 import javax.ejb.ActivationConfigProperty;
@@ -27,9 +26,10 @@ import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
-import javax.jms.TextMessage;
 
 import org.hawkular.apm.api.model.events.CompletionTime;
+import org.hawkular.apm.api.utils.IdUtil;
+import org.hawkular.apm.server.jms.JMSUtil;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -57,8 +57,8 @@ public class TraceCompletionAlertsPublisherMDB implements MessageListener {
     public void onMessage(Message message) {
         logger.traceCompletionTimeReceived();
         try {
-            String data = ((TextMessage) message).getText();
-            List<CompletionTime> items = mapper.readValue(data, new TypeReference<List<CompletionTime>>() {});
+            List<CompletionTime> items = JMSUtil.readValue(mapper, message,
+                    new TypeReference<List<CompletionTime>>() {});
             List<Event> events = items.stream()
                     .map(TraceCompletionAlertsPublisherMDB::toEvent)
                     .collect(Collectors.toList());
@@ -86,7 +86,7 @@ public class TraceCompletionAlertsPublisherMDB implements MessageListener {
         event.setDataId("TraceCompletion");
         event.setCategory("APM");
         event.setDataSource(completionTime.getHostName());
-        event.setId(UUID.randomUUID().toString());
+        event.setId(IdUtil.createId());
         event.setCtime(completionTime.getTimestamp());
         event.setText(Long.toString(completionTime.getDuration()));
 
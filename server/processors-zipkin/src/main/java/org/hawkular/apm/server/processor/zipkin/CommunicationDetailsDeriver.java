@@ -17,13 +17,13 @@
 package org.hawkular.apm.server.processor.zipkin;
 
 import java.net.URL;
-import java.util.UUID;
 
 import org.hawkular.apm.api.model.Constants;
 import org.hawkular.apm.api.model.Property;
 import org.hawkular.apm.api.model.events.CommunicationDetails;
 import org.hawkular.apm.api.model.events.SourceInfo;
 import org.hawkular.apm.api.utils.EndpointUtil;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.server.api.model.zipkin.Span;
 import org.hawkular.apm.server.api.services.SpanCache;
 import org.hawkular.apm.server.api.task.AbstractProcessor;
@@ -73,7 +73,7 @@ public class CommunicationDetailsDeriver extends AbstractProcessor<Span, Communi
             SourceInfo si = SourceInfoUtil.getSourceInfo(tenantId, item, spanCache);
             if (si != null) {
                 ret = new CommunicationDetails();
-                ret.setId(UUID.randomUUID().toString());
+                ret.setId(IdUtil.createId());
                 ret.setLinkId(item.getId());
 
                 ret.setSource(si.getEndpoint().toString());
@@ -17,7 +17,6 @@
 package org.hawkular.apm.server.processor.communicationdetails;
 
 import java.util.List;
-import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +32,7 @@ import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.model.trace.Producer;
 import org.hawkular.apm.api.model.trace.Trace;
 import org.hawkular.apm.api.utils.EndpointUtil;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.server.api.services.CacheException;
 import org.hawkular.apm.server.api.services.SourceInfoCache;
 import org.hawkular.apm.server.api.task.AbstractProcessor;
@@ -103,7 +103,7 @@ public class CommunicationDetailsDeriver extends AbstractProcessor<Trace, Commun
                     SourceInfo si = sourceInfoCache.get(tenantId, id);
                     if (si != null) {
                         ret = new CommunicationDetails();
-                        ret.setId(UUID.randomUUID().toString());
+                        ret.setId(IdUtil.createId());
                         ret.setLinkId(id);
                         ret.setTransaction(item.getTransaction());
 
@@ -19,7 +19,6 @@ package org.hawkular.apm.server.processor.nodedetails;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +33,7 @@ import org.hawkular.apm.api.model.trace.Node;
 import org.hawkular.apm.api.model.trace.NodeType;
 import org.hawkular.apm.api.model.trace.Producer;
 import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.IdUtil;
 import org.hawkular.apm.server.api.task.AbstractProcessor;
 import org.hawkular.apm.server.api.task.RetryAttemptException;
 
@@ -98,7 +98,7 @@ public class NodeDetailsDeriver extends AbstractProcessor<Trace, NodeDetails> {
 
             if (!ignoreNode) {
                 NodeDetails nd = new NodeDetails();
-                nd.setId(UUID.randomUUID().toString());
+                nd.setId(IdUtil.createId());
                 nd.setTraceId(trace.getTraceId());
                 nd.setFragmentId(trace.getFragmentId());
                 nd.setTransaction(trace.getTransaction());
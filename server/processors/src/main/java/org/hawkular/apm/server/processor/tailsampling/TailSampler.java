@@ -0,0 +1,359 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.processor.tailsampling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hawkular.apm.api.model.Constants;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.hawkular.apm.api.utils.PropertyUtil;
+
+/**
+ * This class provides tail based sampling of trace fragments. Fragments are buffered
+ * per trace instance for a configured window, after which the decision is made whether
+ * the trace should be stored. Traces with a fault, or whose duration is above the configured
+ * percentile for their transaction, are always kept. Of the remainder, a configured percentage
+ * are kept, chosen consistently based on the trace id.
+ *
+ * Fragments for a trace instance that arrive after the decision has been made are
+ * returned immediately if the trace was kept, or discarded otherwise.
+ *
+ * @author gbrown
+ */
+public class TailSampler {
+
+    private static final Logger log = Logger.getLogger(TailSampler.class.getName());
+
+    /** The default duration percentile above which traces are kept */
+    public static final int DEFAULT_PERCENTILE = 95;
+
+    /** The default percentage of the remaining traces that are kept */
+    public static final int DEFAULT_PERCENTAGE = 10;
+
+    /** The default maximum number of buffered traces */
+    public static final int DEFAULT_MAX_TRACES = 10000;
+
+    /** The number of recent durations used to estimate the percentile for a transaction */
+    private static final int LATENCY_SAMPLES = 256;
+
+    /** The minimum number of durations required before the percentile is used */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /** The number of durations recorded between recalculations of the percentile */
+    private static final int RECALCULATE_INTERVAL = 32;
+
+    /** The maximum number of transactions for which durations are recorded */
+    private static final int MAX_TRANSACTIONS = 1000;
+
+    /** The number of decisions retained, as a multiple of the maximum buffered traces */
+    private static final int DECISIONS_FACTOR = 10;
+
+    private final long window;
+    private final int percentile;
+    private final int percentage;
+    private final int maxTraces;
+
+    private final LinkedHashMap<String, PendingTrace> pending = new LinkedHashMap<>();
+    private final Map<String, Boolean> decisions;
+    private final Map<String, TransactionLatency> latencies;
+    private Map<String, List<Trace>> ready = new HashMap<>();
+
+    /**
+     * The default constructor, obtaining the configuration from the
+     * HAWKULAR_APM_TAILSAMPLING_* properties.
+     */
+    public TailSampler() {
+        this(PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_TAILSAMPLING_WINDOW, 0),
+                PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_TAILSAMPLING_PERCENTILE,
+                        DEFAULT_PERCENTILE),
+                PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_TAILSAMPLING_PERCENTAGE,
+                        DEFAULT_PERCENTAGE),
+                PropertyUtil.getPropertyAsInteger(PropertyUtil.HAWKULAR_APM_TAILSAMPLING_MAXTRACES,
+                        DEFAULT_MAX_TRACES));
+    }
+
+    /**
+     * This constructor initialises the sampler.
+     *
+     * @param window The time (in milliseconds) fragments are buffered, or 0 to disable sampling
+     * @param percentile The duration percentile above which traces are kept
+     * @param percentage The percentage of remaining traces that are kept
+     * @param maxTraces The maximum number of buffered traces
+     */
+    public TailSampler(long window, int percentile, int percentage, int maxTraces) {
+        this.window = window;
+        this.percentile = percentile;
+        this.percentage = percentage;
+        this.maxTraces = maxTraces;
+
+        int maxDecisions = maxTraces * DECISIONS_FACTOR;
+        this.decisions = new LinkedHashMap<String, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxDecisions;
+            }
+        };
+        this.latencies = new LinkedHashMap<String, TransactionLatency>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TransactionLatency> eldest) {
+                return size() > MAX_TRANSACTIONS;
+            }
+        };
+    }
+
+    /**
+     * @return Whether tail based sampling is enabled
+     */
+    public boolean isEnabled() {
+        return window > 0;
+    }
+
+    /**
+     * This method adds the supplied trace fragments to the buffer. Any fragments that
+     * belong to a trace instance that has already been kept are returned, to be stored
+     * immediately.
+     *
+     * @param tenantId The tenant id
+     * @param fragments The trace fragments
+     * @param now The current time (in milliseconds)
+     * @return The fragments to be stored immediately
+     */
+    public synchronized List<Trace> add(String tenantId, List<Trace> fragments, long now) {
+        List<Trace> ret = new ArrayList<>();
+
+        for (int i = 0; i < fragments.size(); i++) {
+            Trace fragment = fragments.get(i);
+            if (!isEnabled() || fragment.getTraceId() == null) {
+                ret.add(fragment);
+                continue;
+            }
+
+            String key = getKey(tenantId, fragment.getTraceId());
+            Boolean decision = decisions.get(key);
+            if (decision != null) {
+                if (decision) {
+                    ret.add(fragment);
+                }
+                continue;
+            }
+
+            PendingTrace trace = pending.get(key);
+            if (trace == null) {
+                trace = new PendingTrace(tenantId, fragment.getTraceId(), now);
+                pending.put(key, trace);
+            }
+            trace.add(fragment);
+        }
+
+        if (pending.size() > maxTraces) {
+            Iterator<Map.Entry<String, PendingTrace>> iter = pending.entrySet().iterator();
+            while (pending.size() > maxTraces) {
+                Map.Entry<String, PendingTrace> entry = iter.next();
+                iter.remove();
+                decide(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * This method decides the trace instances whose window has elapsed, and returns
+     * the fragments that should be stored.
+     *
+     * @param now The current time (in milliseconds)
+     * @return The fragments to be stored, grouped by tenant id
+     */
+    public synchronized Map<String, List<Trace>> expire(long now) {
+        Iterator<Map.Entry<String, PendingTrace>> iter = pending.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, PendingTrace> entry = iter.next();
+            if (now - entry.getValue().created < window) {
+                break;
+            }
+            iter.remove();
+            decide(entry.getKey(), entry.getValue());
+        }
+
+        Map<String, List<Trace>> ret = ready;
+        ready = new HashMap<>();
+        return ret;
+    }
+
+    /**
+     * This method decides all buffered trace instances, regardless of whether their
+     * window has elapsed, and returns the fragments that should be stored. This is
+     * used when the buffer is being discarded.
+     *
+     * @return The fragments to be stored, grouped by tenant id
+     */
+    public synchronized Map<String, List<Trace>> expireAll() {
+        pending.forEach(this::decide);
+        pending.clear();
+
+        Map<String, List<Trace>> ret = ready;
+        ready = new HashMap<>();
+        return ret;
+    }
+
+    /**
+     * @return The number of trace instances currently buffered
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void decide(String key, PendingTrace trace) {
+        boolean keep = isKept(trace);
+        decisions.put(key, keep);
+
+        if (keep) {
+            ready.computeIfAbsent(trace.tenantId, k -> new ArrayList<>()).addAll(trace.fragments);
+        }
+
+        if (log.isLoggable(Level.FINEST)) {
+            log.finest("Tail sampling decision for trace [" + trace.traceId + "] keep=" + keep);
+        }
+    }
+
+    /**
+     * This method determines whether the supplied trace instance should be kept.
+     *
+     * @param trace The buffered trace instance
+     * @return Whether the trace should be kept
+     */
+    protected boolean isKept(PendingTrace trace) {
+        TransactionLatency latency = latencies.computeIfAbsent(trace.getTransaction(),
+                k -> new TransactionLatency());
+        long duration = trace.getDuration();
+        long threshold = latency.getThreshold();
+        latency.record(duration, percentile);
+
+        if (trace.hasFault()) {
+            return true;
+        }
+        if (threshold == -1 || duration > threshold) {
+            return true;
+        }
+        return (trace.traceId.hashCode() & Integer.MAX_VALUE) % 100 < percentage;
+    }
+
+    private static String getKey(String tenantId, String traceId) {
+        return tenantId == null ? traceId : tenantId + ':' + traceId;
+    }
+
+    /**
+     * This class represents the fragments buffered for a trace instance.
+     */
+    protected static class PendingTrace {
+        private final String tenantId;
+        private final String traceId;
+        private final long created;
+        private final List<Trace> fragments = new ArrayList<>();
+        private long startTime = Long.MAX_VALUE;
+        private long endTime = Long.MIN_VALUE;
+
+        PendingTrace(String tenantId, String traceId, long created) {
+            this.tenantId = tenantId;
+            this.traceId = traceId;
+            this.created = created;
+        }
+
+        void add(Trace fragment) {
+            fragments.add(fragment);
+            if (!fragment.getNodes().isEmpty()) {
+                long start = fragment.getNodes().get(0).getTimestamp();
+                startTime = Math.min(startTime, start);
+                endTime = Math.max(endTime, start + fragment.calculateDuration());
+            }
+        }
+
+        /**
+         * @return The duration (in microseconds) spanned by the fragments
+         */
+        long getDuration() {
+            return endTime < startTime ? 0 : endTime - startTime;
+        }
+
+        /**
+         * @return The transaction name, or the URI of the earliest fragment if no transaction
+         */
+        String getTransaction() {
+            String uri = null;
+            long earliest = Long.MAX_VALUE;
+            for (int i = 0; i < fragments.size(); i++) {
+                Trace fragment = fragments.get(i);
+                if (fragment.getTransaction() != null) {
+                    return fragment.getTransaction();
+                }
+                if (!fragment.getNodes().isEmpty() && fragment.getNodes().get(0).getTimestamp() < earliest) {
+                    earliest = fragment.getNodes().get(0).getTimestamp();
+                    uri = fragment.getNodes().get(0).getUri();
+                }
+            }
+            return uri == null ? "" : uri;
+        }
+
+        boolean hasFault() {
+            for (int i = 0; i < fragments.size(); i++) {
+                if (fragments.get(i).hasProperty(Constants.PROP_FAULT)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This class maintains the recent durations for a transaction, and the
+     * duration at the configured percentile.
+     */
+    private static class TransactionLatency {
+        private final long[] durations = new long[LATENCY_SAMPLES];
+        private long count = 0;
+        private long threshold = -1;
+
+        long getThreshold() {
+            return threshold;
+        }
+
+        void record(long duration, int percentile) {
+            durations[(int) (count % LATENCY_SAMPLES)] = duration;
+            count++;
+
+            if (count == MIN_LATENCY_SAMPLES
+                    || (count > MIN_LATENCY_SAMPLES && count % RECALCULATE_INTERVAL == 0)) {
+                long[] sorted = Arrays.copyOf(durations, (int) Math.min(count, LATENCY_SAMPLES));
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+                threshold = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+            }
+        }
+    }
+}
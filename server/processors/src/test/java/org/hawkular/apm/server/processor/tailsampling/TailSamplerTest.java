@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.processor.tailsampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.apm.api.model.Constants;
+import org.hawkular.apm.api.model.Property;
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.junit.Test;
+
+/**
+ * @author gbrown
+ */
+public class TailSamplerTest {
+
+    @Test
+    public void testDisabled() {
+        TailSampler sampler = new TailSampler(0, 95, 0, 100);
+        Trace trace = createTrace("t1", "txn", 100, false);
+
+        assertEquals(1, sampler.add(null, Collections.singletonList(trace), 0).size());
+        assertEquals(0, sampler.getPendingCount());
+    }
+
+    @Test
+    public void testBufferedUntilWindowExpires() {
+        TailSampler sampler = new TailSampler(1000, 95, 100, 100);
+        Trace trace = createTrace("t1", "txn", 100, false);
+
+        assertTrue(sampler.add("tenant1", Collections.singletonList(trace), 0).isEmpty());
+        assertTrue(sampler.expire(999).isEmpty());
+
+        Map<String, List<Trace>> kept = sampler.expire(1000);
+        assertEquals(1, kept.get("tenant1").size());
+        assertEquals(0, sampler.getPendingCount());
+    }
+
+    @Test
+    public void testExpireAll() {
+        TailSampler sampler = new TailSampler(1000, 95, 100, 100);
+
+        sampler.add("tenant1", Collections.singletonList(createTrace("t1", "txn", 100, false)), 0);
+        sampler.add("tenant2", Collections.singletonList(createTrace("t2", "txn", 100, false)), 500);
+
+        Map<String, List<Trace>> kept = sampler.expireAll();
+        assertEquals(1, kept.get("tenant1").size());
+        assertEquals(1, kept.get("tenant2").size());
+        assertEquals(0, sampler.getPendingCount());
+
+        // Late fragments follow the decision
+        assertEquals(1, sampler.add("tenant1",
+                Collections.singletonList(createTrace("t1", "txn", 100, false)), 600).size());
+    }
+
+    @Test
+    public void testFaultAndSlowTracesKept() {
+        TailSampler sampler = new TailSampler(1000, 90, 0, 1000);
+
+        // Establish the duration percentile for the transaction
+        for (int i = 0; i < 100; i++) {
+            sampler.add(null, Collections.singletonList(createTrace("warm" + i, "txn", 100 + i, false)), 0);
+        }
+        sampler.expire(1000);
+
+        sampler.add(null, Collections.singletonList(createTrace("fast", "txn", 100, false)), 2000);
+        sampler.add(null, Collections.singletonList(createTrace("fault", "txn", 100, true)), 2000);
+        sampler.add(null, Collections.singletonList(createTrace("slow", "txn", 500, false)), 2000);
+
+        List<Trace> kept = sampler.expire(3000).get(null);
+        assertEquals(2, kept.size());
+        assertEquals("fault", kept.get(0).getTraceId());
+        assertEquals("slow", kept.get(1).getTraceId());
+    }
+
+    @Test
+    public void testLateFragmentsFollowDecision() {
+        TailSampler sampler = new TailSampler(1000, 95, 100, 100);
+
+        sampler.add(null, Collections.singletonList(createTrace("t1", "txn", 100, false)), 0);
+        assertEquals(1, sampler.expire(1000).get(null).size());
+
+        Trace late = createTrace("t1", "txn", 100, false);
+        late.setFragmentId("f2");
+        assertEquals(1, sampler.add(null, Collections.singletonList(late), 1500).size());
+        assertEquals(0, sampler.getPendingCount());
+    }
+
+    @Test
+    public void testDownsampled() {
+        TailSampler sampler = new TailSampler(1000, 100, 10, 10000);
+
+        for (int i = 0; i < 1000; i++) {
+            sampler.add(null, Collections.singletonList(createTrace("trace" + i, "txn", 100, false)), 0);
+        }
+        int kept = sampler.expire(1000).get(null).size();
+
+        // The first traces are kept until the percentile has been established
+        assertTrue("Kept " + kept, kept > 50 && kept < 200);
+    }
+
+    @Test
+    public void testMaxTraces() {
+        TailSampler sampler = new TailSampler(1000, 95, 100, 2);
+
+        sampler.add(null, Collections.singletonList(createTrace("t1", "txn", 100, false)), 0);
+        sampler.add(null, Collections.singletonList(createTrace("t2", "txn", 100, false)), 0);
+        sampler.add(null, Collections.singletonList(createTrace("t3", "txn", 100, false)), 0);
+
+        assertEquals(2, sampler.getPendingCount());
+        List<Trace> kept = sampler.expire(0).get(null);
+        assertEquals(1, kept.size());
+        assertEquals("t1", kept.get(0).getTraceId());
+    }
+
+    private static Trace createTrace(String traceId, String transaction, long duration, boolean fault) {
+        Trace trace = new Trace();
+        trace.setTraceId(traceId);
+        trace.setFragmentId(traceId);
+        trace.setTransaction(transaction);
+
+        Consumer consumer = new Consumer();
+        consumer.setUri("/test");
+        consumer.setTimestamp(1000);
+        consumer.setDuration(duration);
+        if (fault) {
+            consumer.getProperties().add(new Property(Constants.PROP_FAULT, "Failed"));
+        }
+        trace.getNodes().add(consumer);
+        return trace;
+    }
+}
@@ -77,6 +77,7 @@ public class TraceHandler extends BaseHandler {
 
     @POST
     @Path("fragments")
+    @Consumes({ APPLICATION_JSON, SmileMessageBodyReader.APPLICATION_SMILE })
     @ApiOperation(value = "Add a list of trace fragments")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Adding traces succeeded."),
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+
+import org.hawkular.apm.api.model.trace.Consumer;
+import org.hawkular.apm.api.model.trace.Trace;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * @author gbrown
+ */
+public class SmileMessageBodyReaderTest {
+
+    private static final Type TRACE_LIST = new TypeReference<List<Trace>>() {
+    }.getType();
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    @Test
+    public void testIsReadable() {
+        SmileMessageBodyReader reader = new SmileMessageBodyReader();
+
+        assertTrue(reader.isReadable(List.class, TRACE_LIST, NO_ANNOTATIONS,
+                SmileMessageBodyReader.APPLICATION_SMILE_TYPE));
+        assertFalse(reader.isReadable(List.class, TRACE_LIST, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE));
+        assertFalse(reader.isReadable(List.class, TRACE_LIST, NO_ANNOTATIONS, null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadTraces() throws IOException {
+        Trace trace = new Trace().setFragmentId("1").setTraceId("t1");
+        trace.getNodes().add(new Consumer().setUri("/hello"));
+
+        byte[] content = new ObjectMapper(new SmileFactory()).writeValueAsBytes(Arrays.asList(trace,
+                new Trace().setFragmentId("2")));
+
+        Object result = new SmileMessageBodyReader().readFrom((Class<Object>) (Class<?>) List.class, TRACE_LIST,
+                NO_ANNOTATIONS, SmileMessageBodyReader.APPLICATION_SMILE_TYPE, new MultivaluedHashMap<>(),
+                new ByteArrayInputStream(content));
+
+        List<Trace> traces = (List<Trace>) result;
+        assertEquals(2, traces.size());
+        assertEquals(trace, traces.get(0));
+        assertEquals("/hello", traces.get(0).getNodes().get(0).getUri());
+        assertEquals("2", traces.get(1).getFragmentId());
+    }
+}
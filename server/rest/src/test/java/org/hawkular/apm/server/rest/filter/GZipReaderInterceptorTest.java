@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.server.rest.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+import org.hawkular.apm.api.model.trace.Trace;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * @author gbrown
+ */
+public class GZipReaderInterceptorTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testGzipBatchRoundTrip() throws IOException {
+        List<Trace> batch = Arrays.asList(new Trace().setFragmentId("1").setTraceId("t1"),
+                new Trace().setFragmentId("2").setTraceId("t1"));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            mapper.writeValue(gzip, batch);
+        }
+
+        TestReaderInterceptorContext context = new TestReaderInterceptorContext(baos.toByteArray());
+        context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        @SuppressWarnings("unchecked")
+        List<Trace> result = (List<Trace>) new GZipReaderInterceptor().aroundReadFrom(context);
+
+        assertEquals(2, result.size());
+        assertEquals("1", result.get(0).getFragmentId());
+        assertEquals("2", result.get(1).getFragmentId());
+        assertEquals("t1", result.get(1).getTraceId());
+        assertNull(context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void testUncompressedPassedThrough() throws IOException {
+        List<Trace> batch = Collections.singletonList(new Trace().setFragmentId("1"));
+
+        TestReaderInterceptorContext context = new TestReaderInterceptorContext(mapper.writeValueAsBytes(batch));
+
+        @SuppressWarnings("unchecked")
+        List<Trace> result = (List<Trace>) new GZipReaderInterceptor().aroundReadFrom(context);
+
+        assertEquals(1, result.size());
+        assertEquals("1", result.get(0).getFragmentId());
+    }
+
+    /**
+     * This context reads the trace fragments from the input stream when proceeding,
+     * as the JSON message body reader would.
+     */
+    private static class TestReaderInterceptorContext implements ReaderInterceptorContext {
+
+        private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+
+        private InputStream inputStream;
+
+        TestReaderInterceptorContext(byte[] content) {
+            inputStream = new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public Object proceed() throws IOException {
+            return mapper.readValue(inputStream, new TypeReference<List<Trace>>() {
+            });
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public void setInputStream(InputStream is) {
+            this.inputStream = is;
+        }
+
+        @Override
+        public MultivaluedMap<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return null;
+        }
+
+        @Override
+        public Collection<String> getPropertyNames() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setProperty(String name, Object object) {
+        }
+
+        @Override
+        public void removeProperty(String name) {
+        }
+
+        @Override
+        public Annotation[] getAnnotations() {
+            return new Annotation[0];
+        }
+
+        @Override
+        public void setAnnotations(Annotation[] annotations) {
+        }
+
+        @Override
+        public Class<?> getType() {
+            return List.class;
+        }
+
+        @Override
+        public void setType(Class<?> type) {
+        }
+
+        @Override
+        public Type getGenericType() {
+            return List.class;
+        }
+
+        @Override
+        public void setGenericType(Type genericType) {
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return MediaType.APPLICATION_JSON_TYPE;
+        }
+
+        @Override
+        public void setMediaType(MediaType mediaType) {
+        }
+    }
+}